@@ -0,0 +1,69 @@
+package com.phoneaccessories.favorites.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
+import com.phoneaccessories.favorites.model.Favorite;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Favorites shaped like production ones, the same for every run so that results compare
+ * between commits.
+ */
+public final class BenchmarkData {
+
+    public static final String USER_ID = "user-7f3c2a91";
+
+    private static final String[] CATEGORIES = {"Cases", "Chargers", "Cables", "Screen Protectors", "Headphones"};
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param size the number of favorites
+     * @return stored favorites of one user, newest first
+     */
+    public static List<Favorite> favorites(int size) {
+        List<Favorite> favorites = new ArrayList<>(size);
+        for (int i = size - 1; i >= 0; i--) {
+            String productId = "product-" + (100_000 + i);
+            Favorite favorite = new Favorite(USER_ID, productId, "Accessory " + i + " for phones",
+                    4.99 + (i % 100), "https://cdn.example.com/images/" + productId + ".jpg",
+                    CATEGORIES[i % CATEGORIES.length]);
+            favorite.setId("65a00000%016x".formatted(i));
+            favorite.setCreatedAt(EPOCH.plusMinutes(i));
+            favorites.add(favorite);
+        }
+        return favorites;
+    }
+
+    /**
+     * @param size the number of favorites
+     * @return the favorites list the service returns and caches for one user
+     */
+    public static UserFavoritesResponse response(int size) {
+        List<FavoriteResponse> responses = new ArrayList<>(size);
+        for (Favorite favorite : favorites(size)) {
+            responses.add(new FavoriteResponse(favorite.getId(), favorite.getUserId(), favorite.getProductId(),
+                    favorite.getProductName(), favorite.getProductPrice(), favorite.getProductImageUrl(),
+                    favorite.getCategory(), favorite.getCreatedAt()));
+        }
+        return new UserFavoritesResponse(USER_ID, responses);
+    }
+
+    /**
+     * @return an object mapper configured as Spring Boot configures the application's one
+     */
+    public static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS,
+                        SerializationFeature.WRITE_DURATIONS_AS_TIMESTAMPS)
+                .build();
+    }
+}
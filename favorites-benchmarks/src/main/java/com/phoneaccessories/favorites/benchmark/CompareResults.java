@@ -0,0 +1,99 @@
+package com.phoneaccessories.favorites.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JSON result files, such as those of two commits, benchmark by benchmark: time
+ * per operation and bytes allocated per operation, with the change from the baseline.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.phoneaccessories.favorites.benchmark.CompareResults base.json head.json
+ * </pre>
+ */
+public final class CompareResults {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <candidate.json>");
+            System.exit(2);
+        }
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> candidate = read(new File(args[1]));
+
+        System.out.printf("%-64s %14s %14s %8s %14s %14s %8s%n",
+                "Benchmark", "Base time", "Time", "Change", "Base B/op", "B/op", "Change");
+        candidate.forEach((name, result) -> {
+            JsonNode base = baseline.get(name);
+            double time = result.path("primaryMetric").path("score").asDouble();
+            double allocation = allocation(result);
+            String unit = result.path("primaryMetric").path("scoreUnit").asText();
+            if (base == null) {
+                System.out.printf("%-64s %14s %14s %8s %14s %14.0f %8s%n",
+                        name, "-", format(time, unit), "new", "-", allocation, "new");
+                return;
+            }
+            double baseTime = base.path("primaryMetric").path("score").asDouble();
+            double baseAllocation = allocation(base);
+            System.out.printf("%-64s %14s %14s %8s %14.0f %14.0f %8s%n",
+                    name, format(baseTime, unit), format(time, unit), change(baseTime, time),
+                    baseAllocation, allocation, change(baseAllocation, allocation));
+        });
+    }
+
+    /**
+     * Results by benchmark name and parameters, such as {@code CacheCodecBenchmark.encodeFavorites[format=binary,size=500]}.
+     */
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            String benchmark = result.path("benchmark").asText();
+            StringBuilder name = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1));
+            Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+            if (params.hasNext()) {
+                name.append('[');
+                while (params.hasNext()) {
+                    Map.Entry<String, JsonNode> param = params.next();
+                    name.append(param.getKey()).append('=').append(param.getValue().asText());
+                    name.append(params.hasNext() ? "," : "]");
+                }
+            }
+            results.put(name.toString(), result);
+        }
+        return results;
+    }
+
+    private static double allocation(JsonNode result) {
+        // Older JMH versions prefix secondary metrics with a middle dot
+        Iterator<Map.Entry<String, JsonNode>> metrics = result.path("secondaryMetrics").fields();
+        while (metrics.hasNext()) {
+            Map.Entry<String, JsonNode> metric = metrics.next();
+            if (metric.getKey().replace("·", "").equals(ALLOCATION)) {
+                return metric.getValue().path("score").asDouble();
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static String format(double score, String unit) {
+        return String.format("%.3f %s", score, unit);
+    }
+
+    private static String change(double base, double value) {
+        if (base == 0 || Double.isNaN(base) || Double.isNaN(value)) {
+            return "-";
+        }
+        return String.format("%+.1f%%", (value - base) * 100 / base);
+    }
+}
@@ -0,0 +1,48 @@
+package com.phoneaccessories.favorites.benchmark;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line, defaulting to the GC profiler, for allocation
+ * per operation, and to a JSON result file that {@link CompareResults} reads.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar                         # everything, to target/jmh-result.json
+ * java -jar target/benchmarks.jar CacheCodec -p size=500  # a subset
+ * java -jar target/benchmarks.jar -h                      # every JMH option
+ * </pre>
+ */
+public final class FavoritesBenchmarks {
+
+    static final String DEFAULT_RESULT = "target/jmh-result.json";
+
+    private FavoritesBenchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+                || options.shouldListProfilers() || options.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+        if (options.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        if (!options.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!options.getResult().hasValue()) {
+            builder.result(DEFAULT_RESULT);
+        }
+        new Runner(builder.build()).run();
+    }
+}
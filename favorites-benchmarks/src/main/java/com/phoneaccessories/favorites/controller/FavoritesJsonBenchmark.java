@@ -0,0 +1,49 @@
+package com.phoneaccessories.favorites.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.phoneaccessories.favorites.benchmark.BenchmarkData;
+import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON body of {@code GET /favorites/{userId}}, written by the same Jackson configuration that
+ * renders {@link FavoriteController} responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FavoritesJsonBenchmark {
+
+    @Param({"1", "50", "500", "5000"})
+    private int size;
+
+    private ObjectWriter writer;
+    private UserFavoritesResponse favorites;
+
+    @Setup
+    public void setUp() {
+        writer = BenchmarkData.objectMapper().writerFor(UserFavoritesResponse.class);
+        favorites = BenchmarkData.response(size);
+    }
+
+    @Benchmark
+    public byte[] writeFavorites() throws JsonProcessingException {
+        return writer.writeValueAsBytes(favorites);
+    }
+}
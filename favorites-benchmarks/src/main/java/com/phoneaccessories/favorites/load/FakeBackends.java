@@ -0,0 +1,78 @@
+package com.phoneaccessories.favorites.load;
+
+import com.phoneaccessories.favorites.repository.FavoriteCounterRepository;
+import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import com.phoneaccessories.favorites.repository.ReactiveFavoriteCounterRepository;
+import com.phoneaccessories.favorites.repository.ReactiveFavoriteRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Puts the in-memory stores registered by {@link LoadHarness} in place of MongoDB and Redis.
+ *
+ * <p>The stand-ins are primary beans next to the real ones rather than replacements: the
+ * MongoDB client and the Jedis pool are still created but, with no server to reach and no idle
+ * connections to keep, are never used. Redis is replaced at the connection factory, so the
+ * service's templates, serializers and pipelines run as in production. With {@code --redis} the
+ * service uses that Redis server through its own clients instead, which the reactive stack
+ * requires: its Lettuce templates need a reactive connection factory.
+ *
+ * <p>The reactive repositories run on the same in-memory stores as the blocking ones, so the two
+ * stacks are loaded against the same data and latencies.
+ */
+@Configuration(proxyBeanMethods = false)
+public class FakeBackends {
+
+    @Bean
+    @Primary
+    public FavoriteRepository inMemoryFavoriteRepository(InMemoryFavoriteRepository favorites,
+                                                         @Value("${harness.mongo-latency:0ms}") Duration latency) {
+        return Fakes.proxy(FavoriteRepository.class, favorites, latency);
+    }
+
+    @Bean
+    @Primary
+    public FavoriteCounterRepository inMemoryFavoriteCounterRepository(InMemoryFavoriteCounterRepository counters,
+                                                                       @Value("${harness.mongo-latency:0ms}") Duration latency) {
+        return Fakes.proxy(FavoriteCounterRepository.class, counters, latency);
+    }
+
+    @Bean
+    @Primary
+    public ReactiveFavoriteRepository inMemoryReactiveFavoriteRepository(InMemoryFavoriteRepository favorites,
+                                                                         @Value("${harness.mongo-latency:0ms}") Duration latency) {
+        return Fakes.reactiveProxy(ReactiveFavoriteRepository.class, favorites, latency);
+    }
+
+    @Bean
+    @Primary
+    public ReactiveFavoriteCounterRepository inMemoryReactiveFavoriteCounterRepository(InMemoryFavoriteCounterRepository counters,
+                                                                                       @Value("${harness.mongo-latency:0ms}") Duration latency) {
+        return Fakes.reactiveProxy(ReactiveFavoriteCounterRepository.class, counters, latency);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "harness.redis", havingValue = "in-memory", matchIfMissing = true)
+    public RedisConnectionFactory inMemoryRedisConnectionFactory(InMemoryRedis redis,
+                                                                 @Value("${harness.redis-latency:0ms}") Duration latency) {
+        return new InMemoryRedisConnectionFactory(redis, latency);
+    }
+
+    /**
+     * Fail MongoDB calls the stand-ins do not cover at once, such as ensuring indexes, instead of
+     * waiting for a server.
+     */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer failFastMongoClient() {
+        return settings -> settings.applyToClusterSettings(cluster -> cluster.serverSelectionTimeout(0, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,151 @@
+package com.phoneaccessories.favorites.load;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Plumbing of the in-memory stand-ins: interfaces too wide to implement in full, such as
+ * {@code MongoRepository} or {@code RedisConnection}, are proxied to a plain class implementing
+ * only the methods the service calls. Any other method fails loudly, so a service change that
+ * needs more of the fake shows up on the first run.
+ */
+final class Fakes {
+
+    private static final Map<Class<?>, Map<Method, Optional<Method>>> RESOLVED = new ConcurrentHashMap<>();
+
+    private Fakes() {
+    }
+
+    /**
+     * Proxy an interface to the matching methods of a target, pausing for the latency before each call.
+     */
+    static <T> T proxy(Class<T> type, Object target, Duration latency) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(proxy, method, args, type.getSimpleName() + " backed by " + target);
+            }
+            Method implementation = resolve(target.getClass(), method)
+                    .orElseThrow(() -> unsupported(type, method));
+            pause(latency);
+            return invoke(implementation, target, args);
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    /**
+     * Proxy a reactive repository interface to the matching blocking methods of a target, for
+     * instance {@code Mono<Long> countByUserId(String)} to {@code long countByUserId(String)}. The
+     * call runs when the result is subscribed to, after the latency has elapsed on a timer rather
+     * than on a parked thread, as a non-blocking driver waits for a response.
+     */
+    static <T> T reactiveProxy(Class<T> type, Object target, Duration latency) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(proxy, method, args, type.getSimpleName() + " backed by " + target);
+            }
+            Method implementation = resolve(target.getClass(), method)
+                    .orElseThrow(() -> unsupported(type, method));
+            Mono<Object> result = Mono.defer(() -> {
+                try {
+                    return Mono.justOrEmpty(invoke(implementation, target, args));
+                } catch (Throwable e) {
+                    return Mono.error(e);
+                }
+            });
+            Mono<Object> delayed = latency.isZero() ? result : Mono.delay(latency).then(result);
+            if (method.getReturnType() == Flux.class) {
+                return delayed.flatMapMany(Fakes::elements);
+            }
+            return delayed.flatMap(value -> value instanceof Optional<?> optional ? Mono.justOrEmpty(optional) : Mono.just(value));
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Flux<Object> elements(Object value) {
+        return value instanceof Stream<?> stream ? Flux.fromStream(stream.map(Object.class::cast))
+                : Flux.fromIterable((Iterable<?>) value);
+    }
+
+    /**
+     * The public method of the target class with the same name and parameter types, or failing
+     * that the only one with the same name and related parameter types, which covers methods of
+     * generic interfaces whose parameters are erased, such as {@code findById(Object)}.
+     */
+    static Optional<Method> resolve(Class<?> targetClass, Method method) {
+        return RESOLVED.computeIfAbsent(targetClass, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(method, key -> {
+                    try {
+                        return Optional.of(targetClass.getMethod(method.getName(), method.getParameterTypes()));
+                    } catch (NoSuchMethodException e) {
+                        List<Method> candidates = Arrays.stream(targetClass.getMethods())
+                                .filter(candidate -> candidate.getName().equals(method.getName())
+                                        && related(candidate.getParameterTypes(), method.getParameterTypes()))
+                                .toList();
+                        return candidates.size() == 1 ? Optional.of(candidates.get(0)) : Optional.empty();
+                    }
+                });
+    }
+
+    private static boolean related(Class<?>[] candidate, Class<?>[] declared) {
+        if (candidate.length != declared.length) {
+            return false;
+        }
+        for (int i = 0; i < candidate.length; i++) {
+            if (!candidate[i].isAssignableFrom(declared[i]) && !declared[i].isAssignableFrom(candidate[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * {@code equals}, {@code hashCode} and {@code toString} of a proxy, by identity.
+     */
+    static Object objectMethod(Object proxy, Method method, Object[] args, String description) {
+        return switch (method.getName()) {
+            case "equals" -> proxy == args[0];
+            case "hashCode" -> System.identityHashCode(proxy);
+            default -> description;
+        };
+    }
+
+    static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    static UnsupportedOperationException unsupported(Class<?> type, Method method) {
+        return new UnsupportedOperationException(type.getSimpleName() + "." + method.getName()
+                + " is not supported by the in-memory stand-in");
+    }
+
+    /**
+     * Wait out an injected latency without holding a CPU, as a thread blocked on a socket would.
+     */
+    static void pause(Duration latency) {
+        long nanos = latency.toNanos();
+        if (nanos <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + nanos;
+        while ((nanos = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(nanos);
+        }
+    }
+}
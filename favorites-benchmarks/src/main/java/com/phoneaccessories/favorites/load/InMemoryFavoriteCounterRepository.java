@@ -0,0 +1,90 @@
+package com.phoneaccessories.favorites.load;
+
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import com.phoneaccessories.favorites.repository.FavoriteCounterRepository;
+import com.phoneaccessories.favorites.repository.FavoriteCounterRepositoryCustom.CounterChange;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The favorite counters collection, in memory, for the {@link FavoriteCounterRepository} methods
+ * the service calls. Each counter is updated atomically, as {@code $inc} updates a document.
+ */
+public class InMemoryFavoriteCounterRepository {
+
+    private final Map<String, FavoriteCounter> counters = new ConcurrentHashMap<>();
+    public Optional<FavoriteCounter> findById(String userId) {
+        return Optional.ofNullable(counters.get(userId)).map(InMemoryFavoriteCounterRepository::copy);
+    }
+
+    public FavoriteCounter save(FavoriteCounter counter) {
+        counters.put(counter.getUserId(), copy(counter));
+        return counter;
+    }
+
+    public void increment(String userId, long delta) {
+        counters.computeIfPresent(userId, (key, counter) -> withCount(counter, counter.getCount() + delta));
+    }
+
+    public void incrementOnce(List<CounterChange> changes) {
+        for (CounterChange change : changes) {
+            counters.computeIfPresent(change.userId(), (key, counter) -> {
+                Long sequence = counter.getWriteBehindSequence();
+                if (sequence != null && sequence >= change.sequence()) {
+                    return counter;
+                }
+                FavoriteCounter changed = withCount(counter, counter.getCount() + change.delta());
+                changed.setWriteBehindSequence(change.sequence());
+                return changed;
+            });
+        }
+    }
+
+    public void clearSequences() {
+        counters.replaceAll((key, counter) -> {
+            FavoriteCounter cleared = copy(counter);
+            cleared.setWriteBehindSequence(null);
+            return cleared;
+        });
+    }
+
+    public long initialize(String userId, long count) {
+        return counters.computeIfAbsent(userId, key -> new FavoriteCounter(key, count)).getCount();
+    }
+
+    public List<FavoriteCounter> findUpdatedSince(LocalDateTime since) {
+        return counters.values().stream()
+                .filter(counter -> !counter.getUpdatedAt().isBefore(since))
+                .map(InMemoryFavoriteCounterRepository::copy)
+                .toList();
+    }
+
+    public boolean replaceCount(String userId, long expected, long count) {
+        boolean[] replaced = new boolean[1];
+        counters.computeIfPresent(userId, (key, counter) -> {
+            replaced[0] = counter.getCount() == expected;
+            return replaced[0] ? withCount(counter, count) : counter;
+        });
+        return replaced[0];
+    }
+
+    /**
+     * The counter with another count, updated now, as {@code $inc} and {@code $set} leave the other fields.
+     */
+    private static FavoriteCounter withCount(FavoriteCounter counter, long count) {
+        FavoriteCounter changed = new FavoriteCounter(counter.getUserId(), count);
+        changed.setWriteBehindSequence(counter.getWriteBehindSequence());
+        return changed;
+    }
+
+    private static FavoriteCounter copy(FavoriteCounter counter) {
+        FavoriteCounter copy = new FavoriteCounter(counter.getUserId(), counter.getCount());
+        copy.setUpdatedAt(counter.getUpdatedAt() != null ? counter.getUpdatedAt() : LocalDateTime.now());
+        copy.setWriteBehindSequence(counter.getWriteBehindSequence());
+        return copy;
+    }
+}
@@ -0,0 +1,254 @@
+package com.phoneaccessories.favorites.load;
+
+import com.phoneaccessories.favorites.dto.FavoriteExportFilter;
+import com.phoneaccessories.favorites.dto.ProductFavoriteCount;
+import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import org.bson.types.ObjectId;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * The favorites collection, in memory, for the {@link FavoriteRepository} methods the service
+ * calls. Each user's favorites are guarded by their own lock, as MongoDB serializes writes per
+ * document; queries across users see each user's favorites at a different moment.
+ *
+ * <p>Callers get copies, as they would get freshly decoded documents.
+ */
+public class InMemoryFavoriteRepository {
+
+    private static final Comparator<Favorite> NEWEST_FIRST = Comparator
+            .comparing(Favorite::getCreatedAt, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(Favorite::getId, Comparator.reverseOrder());
+
+    private final Map<String, UserFavorites> users = new ConcurrentHashMap<>();
+
+    /**
+     * Store favorites as they are, for seeding a data set; favorites without an ID get one.
+     */
+    public void seed(Collection<Favorite> favorites) {
+        for (Favorite favorite : favorites) {
+            if (favorite.getId() == null) {
+                favorite.setId(ObjectId.get().toHexString());
+            }
+            UserFavorites user = user(favorite.getUserId());
+            user.lock.lock();
+            try {
+                user.favorites.put(favorite.getProductId(), copy(favorite));
+            } finally {
+                user.lock.unlock();
+            }
+        }
+    }
+
+    public List<Favorite> findByUserId(String userId) {
+        return read(userId, favorites -> favorites.values().stream().map(InMemoryFavoriteRepository::copy).toList());
+    }
+
+    public List<Favorite> findProductIdsByUserId(String userId) {
+        return read(userId, favorites -> favorites.keySet().stream().map(InMemoryFavoriteRepository::productOnly).toList());
+    }
+
+    public Optional<Favorite> findByUserIdAndProductId(String userId, String productId) {
+        return read(userId, favorites -> Optional.ofNullable(favorites.get(productId)).map(InMemoryFavoriteRepository::copy));
+    }
+
+    public List<Favorite> findProductIdsByUserIdAndProductIdIn(String userId, Collection<String> productIds) {
+        return read(userId, favorites -> productIds.stream()
+                .distinct()
+                .filter(favorites::containsKey)
+                .map(InMemoryFavoriteRepository::productOnly)
+                .toList());
+    }
+
+    public boolean existsByUserIdAndProductId(String userId, String productId) {
+        return read(userId, favorites -> favorites.containsKey(productId));
+    }
+
+    public long deleteByUserIdAndProductId(String userId, String productId) {
+        return write(userId, favorites -> favorites.remove(productId) != null ? 1L : 0L);
+    }
+
+    public long countByUserId(String userId) {
+        return read(userId, favorites -> (long) favorites.size());
+    }
+
+    public List<Favorite> findByUserIdOrderByCreatedAtDesc(String userId) {
+        return read(userId, favorites -> favorites.values().stream()
+                .sorted(NEWEST_FIRST)
+                .map(InMemoryFavoriteRepository::copy)
+                .toList());
+    }
+
+    public long deleteByUserId(String userId) {
+        return write(userId, favorites -> {
+            long deleted = favorites.size();
+            favorites.clear();
+            return deleted;
+        });
+    }
+
+    public Optional<Favorite> findFirstByOrderByIdAsc() {
+        return all().min(Comparator.comparing(Favorite::getId)).map(InMemoryFavoriteRepository::copy);
+    }
+
+    public Optional<Favorite> findFirstByOrderByIdDesc() {
+        return all().max(Comparator.comparing(Favorite::getId)).map(InMemoryFavoriteRepository::copy);
+    }
+
+    public List<Favorite> findPageByUserId(String userId, LocalDateTime createdAt, String id, int limit) {
+        return read(userId, favorites -> favorites.values().stream()
+                .filter(favorite -> createdAt == null || id == null
+                        || favorite.getCreatedAt().isBefore(createdAt)
+                        || (favorite.getCreatedAt().isEqual(createdAt) && favorite.getId().compareTo(id) < 0))
+                .sorted(NEWEST_FIRST)
+                .limit(limit)
+                .map(InMemoryFavoriteRepository::copy)
+                .toList());
+    }
+
+    public boolean insertIfAbsent(Favorite favorite) {
+        return write(favorite.getUserId(), favorites -> insert(favorites, favorite));
+    }
+
+    public long bulkWrite(String userId, List<Favorite> additions, Collection<String> removals) {
+        return write(userId, favorites -> {
+            additions.forEach(favorite -> insert(favorites, favorite));
+            return removals.stream().filter(productId -> favorites.remove(productId) != null).count();
+        });
+    }
+
+    public void applyWrites(Collection<Favorite> additions, Collection<Favorite> removals) {
+        // Removals first, keeping a stored favorite with the ID of one being removed, as a replacement
+        removals.forEach(favorite -> write(favorite.getUserId(), favorites -> favorites.computeIfPresent(favorite.getProductId(),
+                (productId, stored) -> favorite.getId() != null && favorite.getId().equals(stored.getId()) ? stored : null)));
+        additions.forEach(favorite -> write(favorite.getUserId(), favorites -> insert(favorites, copy(favorite))));
+    }
+
+    public Stream<Favorite> streamForExport(FavoriteExportFilter filter, int batchSize) {
+        return all()
+                .filter(favorite -> filter.getUserId() == null || filter.getUserId().equals(favorite.getUserId()))
+                .filter(favorite -> filter.getCategory() == null || filter.getCategory().equals(favorite.getCategory()))
+                .filter(favorite -> filter.getFrom() == null || !favorite.getCreatedAt().isBefore(filter.getFrom()))
+                .filter(favorite -> filter.getTo() == null || favorite.getCreatedAt().isBefore(filter.getTo()))
+                .map(InMemoryFavoriteRepository::copy);
+    }
+
+    public List<ProductFavoriteCount> countByProduct(String fromId, String toId) {
+        Map<String, ProductFavoriteCount> counts = new LinkedHashMap<>();
+        all().filter(favorite -> fromId == null || favorite.getId().compareTo(fromId) >= 0)
+                .filter(favorite -> toId == null || favorite.getId().compareTo(toId) < 0)
+                .forEach(favorite -> {
+                    ProductFavoriteCount count = counts.computeIfAbsent(favorite.getProductId(),
+                            productId -> new ProductFavoriteCount(productId, null, 0));
+                    count.setCount(count.getCount() + 1);
+                    if (favorite.getCategory() != null
+                            && (count.getCategory() == null || favorite.getCategory().compareTo(count.getCategory()) > 0)) {
+                        count.setCategory(favorite.getCategory());
+                    }
+                });
+        return new ArrayList<>(counts.values());
+    }
+
+    /**
+     * Number of favorites of each user, for reconciling counters.
+     */
+    Map<String, Long> countsByUser() {
+        Map<String, Long> counts = new HashMap<>();
+        users.forEach((userId, user) -> {
+            long count = read(userId, Map::size);
+            if (count > 0) {
+                counts.put(userId, count);
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * The IDs of users with at least one favorite.
+     */
+    public Set<String> userIds() {
+        return new HashSet<>(countsByUser().keySet());
+    }
+
+    private boolean insert(Map<String, Favorite> favorites, Favorite favorite) {
+        if (favorites.containsKey(favorite.getProductId())) {
+            return false;
+        }
+        if (favorite.getId() == null) {
+            favorite.setId(ObjectId.get().toHexString());
+        }
+        favorites.put(favorite.getProductId(), copy(favorite));
+        return true;
+    }
+
+    private Stream<Favorite> all() {
+        List<Favorite> all = new ArrayList<>();
+        users.keySet().forEach(userId -> all.addAll(read(userId, favorites -> new ArrayList<>(favorites.values()))));
+        return all.stream();
+    }
+
+    private <T> T read(String userId, Function<Map<String, Favorite>, T> query) {
+        UserFavorites user = users.get(userId);
+        if (user == null) {
+            return query.apply(Map.of());
+        }
+        user.lock.lock();
+        try {
+            return query.apply(user.favorites);
+        } finally {
+            user.lock.unlock();
+        }
+    }
+
+    private <T> T write(String userId, Function<Map<String, Favorite>, T> update) {
+        UserFavorites user = user(userId);
+        user.lock.lock();
+        try {
+            return update.apply(user.favorites);
+        } finally {
+            user.lock.unlock();
+        }
+    }
+
+    private UserFavorites user(String userId) {
+        return users.computeIfAbsent(userId, key -> new UserFavorites());
+    }
+
+    private static Favorite productOnly(String productId) {
+        Favorite favorite = new Favorite();
+        favorite.setProductId(productId);
+        return favorite;
+    }
+
+    private static Favorite copy(Favorite favorite) {
+        Favorite copy = new Favorite(favorite.getUserId(), favorite.getProductId(), favorite.getProductName(),
+                favorite.getProductPrice(), favorite.getProductImageUrl(), favorite.getCategory());
+        copy.setId(favorite.getId());
+        copy.setCreatedAt(favorite.getCreatedAt());
+        return copy;
+    }
+
+    /**
+     * One user's favorites by product, in insertion order.
+     */
+    private static final class UserFavorites {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Favorite> favorites = new LinkedHashMap<>();
+    }
+}
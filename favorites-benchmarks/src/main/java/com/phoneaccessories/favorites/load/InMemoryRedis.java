@@ -0,0 +1,678 @@
+package com.phoneaccessories.favorites.load;
+
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import com.phoneaccessories.favorites.service.InMemoryScripts;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.RedisStringCommands.BitOperation;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.connection.RedisZSetCommands.ZAddArgs;
+import org.springframework.data.redis.connection.zset.DefaultTuple;
+import org.springframework.data.redis.connection.zset.Tuple;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * A Redis server, in memory, for the commands the service sends. Commands take one lock and so
+ * run one at a time, as on a Redis server; the latency of a round trip is paid by the connection,
+ * outside the lock, see {@link InMemoryRedisConnectionFactory}.
+ *
+ * <p>Keys, fields and members are held as ISO-8859-1 strings, which map bytes one to one.
+ * Expired keys are dropped when next touched.
+ *
+ * <p>There is no Lua interpreter: the service's scripts are emulated in Java, by SHA1, see
+ * {@link InMemoryScripts}, and like on a Redis server each runs under the lock as one command.
+ */
+public class InMemoryRedis {
+
+    private static final Comparator<ScoredMember> BY_SCORE = Comparator
+            .comparingDouble(ScoredMember::score)
+            .thenComparing(ScoredMember::member);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Entry> keys = new HashMap<>();
+    private final Set<InMemoryRedisConnectionFactory.InMemorySubscription> subscriptions = new CopyOnWriteArraySet<>();
+    private final Map<String, Script> scripts = new ConcurrentHashMap<>();
+
+    public InMemoryRedis() {
+        InMemoryScripts.define(this);
+    }
+
+    // Strings
+
+    public byte[] get(byte[] key) {
+        return locked(() -> {
+            byte[] value = value(key, byte[].class);
+            return value != null ? value.clone() : null;
+        });
+    }
+
+    public List<byte[]> mGet(byte[]... keys) {
+        return locked(() -> {
+            List<byte[]> values = new ArrayList<>(keys.length);
+            for (byte[] key : keys) {
+                Entry entry = entry(key);
+                values.add(entry != null && entry.value instanceof byte[] value ? value.clone() : null);
+            }
+            return values;
+        });
+    }
+
+    public Boolean set(byte[] key, byte[] value) {
+        return locked(() -> {
+            keys.put(string(key), new Entry(value.clone()));
+            return true;
+        });
+    }
+
+    public Boolean set(byte[] key, byte[] value, Expiration expiration, SetOption option) {
+        return locked(() -> {
+            Entry existing = entry(key);
+            if ((option == SetOption.SET_IF_ABSENT && existing != null)
+                    || (option == SetOption.SET_IF_PRESENT && existing == null)) {
+                return false;
+            }
+            Entry entry = new Entry(value.clone());
+            if (expiration.isKeepTtl()) {
+                entry.expiresAt = existing != null ? existing.expiresAt : Long.MAX_VALUE;
+            } else if (!expiration.isPersistent()) {
+                entry.expiresAt = System.currentTimeMillis() + expiration.getExpirationTimeInMilliseconds();
+            }
+            keys.put(string(key), entry);
+            return true;
+        });
+    }
+
+    public Boolean setNX(byte[] key, byte[] value) {
+        return set(key, value, Expiration.persistent(), SetOption.SET_IF_ABSENT);
+    }
+
+    public Boolean setEx(byte[] key, long seconds, byte[] value) {
+        return pSetEx(key, seconds * 1000, value);
+    }
+
+    public Boolean pSetEx(byte[] key, long milliseconds, byte[] value) {
+        return set(key, value, Expiration.milliseconds(milliseconds), SetOption.UPSERT);
+    }
+
+    public Long incr(byte[] key) {
+        return incrBy(key, 1);
+    }
+
+    public Long incrBy(byte[] key, long delta) {
+        return locked(() -> {
+            Entry entry = entry(key);
+            byte[] value = entry != null ? cast(entry.value, byte[].class) : null;
+            long incremented;
+            try {
+                incremented = Math.addExact(value != null ? Long.parseLong(new String(value, StandardCharsets.US_ASCII)) : 0, delta);
+            } catch (NumberFormatException | ArithmeticException e) {
+                throw new InvalidDataAccessApiUsageException("ERR value is not an integer or out of range");
+            }
+            byte[] stored = Long.toString(incremented).getBytes(StandardCharsets.US_ASCII);
+            if (entry != null) {
+                entry.value = stored;
+            } else {
+                keys.put(string(key), new Entry(stored));
+            }
+            return incremented;
+        });
+    }
+
+    public Boolean getBit(byte[] key, long offset) {
+        return locked(() -> {
+            byte[] value = value(key, byte[].class);
+            int index = (int) (offset >>> 3);
+            return value != null && index < value.length && (value[index] & (0x80 >>> (offset & 7))) != 0;
+        });
+    }
+
+    public Boolean setBit(byte[] key, long offset, boolean bit) {
+        return locked(() -> {
+            Entry entry = entry(key);
+            byte[] value = entry != null ? cast(entry.value, byte[].class) : new byte[0];
+            int index = (int) (offset >>> 3);
+            if (index >= value.length) {
+                value = Arrays.copyOf(value, index + 1);
+            }
+            int mask = 0x80 >>> (offset & 7);
+            boolean previous = (value[index] & mask) != 0;
+            value[index] = (byte) (bit ? value[index] | mask : value[index] & ~mask);
+            if (entry != null) {
+                entry.value = value;
+            } else {
+                keys.put(string(key), new Entry(value));
+            }
+            return previous;
+        });
+    }
+
+    public Long bitOp(BitOperation operation, byte[] destination, byte[]... sources) {
+        if (operation != BitOperation.OR && operation != BitOperation.AND && operation != BitOperation.XOR) {
+            throw new UnsupportedOperationException("BITOP " + operation + " is not supported by the in-memory stand-in");
+        }
+        return locked(() -> {
+            byte[] result = new byte[0];
+            for (int i = 0; i < sources.length; i++) {
+                byte[] source = value(sources[i], byte[].class);
+                source = source != null ? source : new byte[0];
+                byte[] combined = new byte[Math.max(result.length, source.length)];
+                for (int j = 0; j < combined.length; j++) {
+                    int a = j < result.length ? result[j] : 0;
+                    int b = j < source.length ? source[j] : 0;
+                    combined[j] = (byte) (i == 0 ? b : switch (operation) {
+                        case OR -> a | b;
+                        case AND -> a & b;
+                        default -> a ^ b;
+                    });
+                }
+                result = combined;
+            }
+            if (result.length == 0) {
+                keys.remove(string(destination));
+            } else {
+                keys.put(string(destination), new Entry(result));
+            }
+            return (long) result.length;
+        });
+    }
+
+    // Keys
+
+    public Boolean exists(byte[] key) {
+        return exists(new byte[][]{key}) > 0;
+    }
+
+    public Long exists(byte[]... keys) {
+        return locked(() -> Arrays.stream(keys).filter(key -> entry(key) != null).count());
+    }
+
+    public Long del(byte[]... keys) {
+        return locked(() -> {
+            long deleted = 0;
+            for (byte[] key : keys) {
+                if (entry(key) != null) {
+                    this.keys.remove(string(key));
+                    deleted++;
+                }
+            }
+            return deleted;
+        });
+    }
+
+    /**
+     * Keys matching a glob pattern of {@code *} and {@code ?}; like Redis, this walks every key.
+     */
+    public Set<byte[]> keys(byte[] pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : string(pattern).toCharArray()) {
+            switch (c) {
+                case '*' -> regex.append(".*");
+                case '?' -> regex.append('.');
+                default -> regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        Pattern compiled = Pattern.compile(regex.toString(), Pattern.DOTALL);
+        return locked(() -> {
+            Set<byte[]> matching = new LinkedHashSet<>();
+            long now = System.currentTimeMillis();
+            keys.forEach((name, entry) -> {
+                if (entry.expiresAt > now && compiled.matcher(name).matches()) {
+                    matching.add(bytes(name));
+                }
+            });
+            return matching;
+        });
+    }
+
+    public Long unlink(byte[]... keys) {
+        return del(keys);
+    }
+
+    public void rename(byte[] key, byte[] newKey) {
+        locked(() -> {
+            Entry entry = entry(key);
+            if (entry == null) {
+                throw new InvalidDataAccessApiUsageException("ERR no such key");
+            }
+            keys.remove(string(key));
+            keys.put(string(newKey), entry);
+            return null;
+        });
+    }
+
+    public Boolean expire(byte[] key, long seconds) {
+        return pExpire(key, seconds * 1000);
+    }
+
+    public Boolean pExpire(byte[] key, long milliseconds) {
+        return locked(() -> {
+            Entry entry = entry(key);
+            if (entry == null) {
+                return false;
+            }
+            if (milliseconds <= 0) {
+                keys.remove(string(key));
+            } else {
+                entry.expiresAt = System.currentTimeMillis() + milliseconds;
+            }
+            return true;
+        });
+    }
+
+    public Long ttl(byte[] key) {
+        return locked(() -> {
+            Entry entry = entry(key);
+            if (entry == null) {
+                return -2L;
+            }
+            if (entry.expiresAt == Long.MAX_VALUE) {
+                return -1L;
+            }
+            return (entry.expiresAt - System.currentTimeMillis() + 500) / 1000;
+        });
+    }
+
+    // Hashes
+
+    public Boolean hSet(byte[] key, byte[] field, byte[] value) {
+        return locked(() -> hash(key, true).put(string(field), value.clone()) == null);
+    }
+
+    public byte[] hGet(byte[] key, byte[] field) {
+        return locked(() -> {
+            Map<String, byte[]> hash = hash(key, false);
+            byte[] value = hash != null ? hash.get(string(field)) : null;
+            return value != null ? value.clone() : null;
+        });
+    }
+
+    public List<byte[]> hMGet(byte[] key, byte[]... fields) {
+        return locked(() -> {
+            Map<String, byte[]> hash = hash(key, false);
+            List<byte[]> values = new ArrayList<>(fields.length);
+            for (byte[] field : fields) {
+                byte[] value = hash != null ? hash.get(string(field)) : null;
+                values.add(value != null ? value.clone() : null);
+            }
+            return values;
+        });
+    }
+
+    public void hMSet(byte[] key, Map<byte[], byte[]> values) {
+        locked(() -> {
+            Map<String, byte[]> hash = hash(key, true);
+            values.forEach((field, value) -> hash.put(string(field), value.clone()));
+            return null;
+        });
+    }
+
+    public Long hDel(byte[] key, byte[]... fields) {
+        return locked(() -> {
+            Map<String, byte[]> hash = hash(key, false);
+            if (hash == null) {
+                return 0L;
+            }
+            long deleted = Arrays.stream(fields).filter(field -> hash.remove(string(field)) != null).count();
+            if (hash.isEmpty()) {
+                keys.remove(string(key));
+            }
+            return deleted;
+        });
+    }
+
+    public Map<byte[], byte[]> hGetAll(byte[] key) {
+        return locked(() -> {
+            Map<String, byte[]> hash = hash(key, false);
+            Map<byte[], byte[]> entries = new LinkedHashMap<>();
+            if (hash != null) {
+                hash.forEach((field, value) -> entries.put(bytes(field), value.clone()));
+            }
+            return entries;
+        });
+    }
+
+    // Sets
+
+    public Long sAdd(byte[] key, byte[]... members) {
+        return locked(() -> {
+            Set<String> set = set(key, true);
+            return Arrays.stream(members).filter(member -> set.add(string(member))).count();
+        });
+    }
+
+    public Set<byte[]> sMembers(byte[] key) {
+        return locked(() -> {
+            Set<String> set = set(key, false);
+            Set<byte[]> members = new LinkedHashSet<>();
+            if (set != null) {
+                set.forEach(member -> members.add(bytes(member)));
+            }
+            return members;
+        });
+    }
+
+    // Sorted sets
+
+    public Boolean zAdd(byte[] key, double score, byte[] value) {
+        return zAdd(key, score, value, ZAddArgs.empty());
+    }
+
+    public Long zAdd(byte[] key, Set<Tuple> tuples) {
+        return zAdd(key, tuples, ZAddArgs.empty());
+    }
+
+    public Boolean zAdd(byte[] key, double score, byte[] value, ZAddArgs args) {
+        return zAdd(key, Set.of(new DefaultTuple(value, score)), args) > 0;
+    }
+
+    public Long zAdd(byte[] key, Set<Tuple> tuples, ZAddArgs args) {
+        if (!args.isEmpty()) {
+            throw new UnsupportedOperationException("ZADD flags are not supported by the in-memory stand-in");
+        }
+        return locked(() -> {
+            SortedSet set = sortedSet(key, true);
+            long added = 0;
+            for (Tuple tuple : tuples) {
+                if (set.put(string(tuple.getValue()), tuple.getScore()) == null) {
+                    added++;
+                }
+            }
+            return added;
+        });
+    }
+
+    public Long zRem(byte[] key, byte[]... values) {
+        return locked(() -> {
+            SortedSet set = sortedSet(key, false);
+            if (set == null) {
+                return 0L;
+            }
+            long removed = Arrays.stream(values).filter(value -> set.remove(string(value)) != null).count();
+            dropIfEmpty(key, set);
+            return removed;
+        });
+    }
+
+    public Double zIncrBy(byte[] key, double increment, byte[] value) {
+        return locked(() -> {
+            SortedSet set = sortedSet(key, true);
+            String member = string(value);
+            Double score = set.scores.get(member);
+            double incremented = (score != null ? score : 0) + increment;
+            set.put(member, incremented);
+            return incremented;
+        });
+    }
+
+    public Set<Tuple> zRevRangeWithScores(byte[] key, long start, long end) {
+        return locked(() -> {
+            SortedSet set = sortedSet(key, false);
+            Set<Tuple> range = new LinkedHashSet<>();
+            if (set == null) {
+                return range;
+            }
+            int size = set.scores.size();
+            long from = start < 0 ? Math.max(0, size + start) : start;
+            long to = end < 0 ? size + end : Math.min(end, size - 1);
+            Iterator<ScoredMember> members = set.ordered.descendingIterator();
+            for (long i = 0; i <= to && members.hasNext(); i++) {
+                ScoredMember member = members.next();
+                if (i >= from) {
+                    range.add(new DefaultTuple(bytes(member.member()), member.score()));
+                }
+            }
+            return range;
+        });
+    }
+
+    public Double zScore(byte[] key, byte[] value) {
+        return locked(() -> {
+            SortedSet set = sortedSet(key, false);
+            return set != null ? set.scores.get(string(value)) : null;
+        });
+    }
+
+    public List<Double> zMScore(byte[] key, byte[]... values) {
+        return locked(() -> {
+            SortedSet set = sortedSet(key, false);
+            List<Double> scores = new ArrayList<>(values.length);
+            for (byte[] value : values) {
+                scores.add(set != null ? set.scores.get(string(value)) : null);
+            }
+            return scores;
+        });
+    }
+
+    public Long zRemRangeByScore(byte[] key, double min, double max) {
+        return locked(() -> {
+            SortedSet set = sortedSet(key, false);
+            if (set == null) {
+                return 0L;
+            }
+            NavigableSet<ScoredMember> range = set.ordered.subSet(
+                    new ScoredMember(min, ""), true, new ScoredMember(max, "\uffff"), true);
+            List<ScoredMember> removed = new ArrayList<>(range);
+            removed.forEach(member -> set.remove(member.member()));
+            dropIfEmpty(key, set);
+            return (long) removed.size();
+        });
+    }
+
+    // Scripting
+
+    /**
+     * Emulate the script with the given SHA1.
+     */
+    public void define(String sha, Script script) {
+        scripts.put(sha, script);
+    }
+
+    /**
+     * Whether the script with the given SHA1 is emulated.
+     */
+    public boolean isDefined(String sha) {
+        return scripts.containsKey(sha);
+    }
+
+    public <T> T evalSha(String sha, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        Script script = scripts.get(sha);
+        if (script == null) {
+            throw new UnsupportedOperationException("Script " + sha + " is not emulated by the in-memory stand-in");
+        }
+        byte[][] keys = Arrays.copyOfRange(keysAndArgs, 0, numKeys);
+        byte[][] args = Arrays.copyOfRange(keysAndArgs, numKeys, keysAndArgs.length);
+        @SuppressWarnings("unchecked")
+        T result = (T) locked(() -> script.run(this, keys, args));
+        return result;
+    }
+
+    /**
+     * Scripts sent in full run the emulation of their SHA1.
+     */
+    public <T> T eval(byte[] script, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        return evalSha(sha1(script), returnType, numKeys, keysAndArgs);
+    }
+
+    private static String sha1(byte[] script) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(script));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Pub/sub
+
+    public Long publish(byte[] channel, byte[] message) {
+        long receivers = 0;
+        for (InMemoryRedisConnectionFactory.InMemorySubscription subscription : subscriptions) {
+            if (subscription.deliver(new DefaultMessage(channel.clone(), message.clone()))) {
+                receivers++;
+            }
+        }
+        return receivers;
+    }
+
+    void register(InMemoryRedisConnectionFactory.InMemorySubscription subscription) {
+        subscriptions.add(subscription);
+    }
+
+    void unregister(InMemoryRedisConnectionFactory.InMemorySubscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    /**
+     * The number of keys, expired ones included until they are touched.
+     */
+    public int size() {
+        return locked(keys::size);
+    }
+
+    private <T> T locked(Supplier<T> command) {
+        lock.lock();
+        try {
+            return command.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Entry entry(byte[] key) {
+        String name = string(key);
+        Entry entry = keys.get(name);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            keys.remove(name);
+            return null;
+        }
+        return entry;
+    }
+
+    private <T> T value(byte[] key, Class<T> type) {
+        Entry entry = entry(key);
+        return entry != null ? cast(entry.value, type) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, byte[]> hash(byte[] key, boolean create) {
+        return (Map<String, byte[]>) container(key, Map.class, create, LinkedHashMap::new);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> set(byte[] key, boolean create) {
+        return (Set<String>) container(key, Set.class, create, LinkedHashSet::new);
+    }
+
+    private SortedSet sortedSet(byte[] key, boolean create) {
+        return container(key, SortedSet.class, create, SortedSet::new);
+    }
+
+    private <T> T container(byte[] key, Class<T> type, boolean create, Supplier<T> factory) {
+        Entry entry = entry(key);
+        if (entry != null) {
+            return cast(entry.value, type);
+        }
+        if (!create) {
+            return null;
+        }
+        T value = factory.get();
+        keys.put(string(key), new Entry(value));
+        return value;
+    }
+
+    private void dropIfEmpty(byte[] key, SortedSet set) {
+        if (set.scores.isEmpty()) {
+            keys.remove(string(key));
+        }
+    }
+
+    private static <T> T cast(Object value, Class<T> type) {
+        if (!type.isInstance(value)) {
+            throw new InvalidDataAccessApiUsageException("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        return type.cast(value);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static byte[] bytes(String string) {
+        return string.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * A value and when it expires, in epoch milliseconds.
+     */
+    private static final class Entry {
+
+        private Object value;
+        private long expiresAt = Long.MAX_VALUE;
+
+        private Entry(Object value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * Scores by member, and members ordered by score then member, as Redis orders them.
+     */
+    private static final class SortedSet {
+
+        private final Map<String, Double> scores = new HashMap<>();
+        private final TreeSet<ScoredMember> ordered = new TreeSet<>(BY_SCORE);
+
+        private Double put(String member, double score) {
+            Double previous = scores.put(member, score);
+            if (previous != null) {
+                ordered.remove(new ScoredMember(previous, member));
+            }
+            ordered.add(new ScoredMember(score, member));
+            return previous;
+        }
+
+        private Double remove(String member) {
+            Double previous = scores.remove(member);
+            if (previous != null) {
+                ordered.remove(new ScoredMember(previous, member));
+            }
+            return previous;
+        }
+    }
+
+    private record ScoredMember(double score, String member) {
+    }
+
+    /**
+     * A Lua script emulated in Java. It runs under the lock and may call any command.
+     */
+    @FunctionalInterface
+    public interface Script {
+
+        /**
+         * @return the reply, a {@code Long} for an integer reply
+         */
+        Object run(InMemoryRedis redis, byte[][] keys, byte[][] args);
+    }
+}
@@ -0,0 +1,241 @@
+package com.phoneaccessories.favorites.load;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisCommandsProvider;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.data.redis.connection.SubscriptionListener;
+import org.springframework.data.redis.connection.util.AbstractSubscription;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connections to an {@link InMemoryRedis}, so that the service's {@code RedisTemplate} and
+ * listener container run unchanged against it.
+ *
+ * <p>Each round trip waits out the configured latency: every command outside a pipeline, and a
+ * pipeline once when it is closed.
+ */
+public class InMemoryRedisConnectionFactory implements RedisConnectionFactory {
+
+    /** Commands Jedis refuses in a pipeline, refused here too so that the harness finds them. */
+    private static final Set<String> UNPIPELINED = Set.of("eval", "evalSha", "publish");
+
+    private final InMemoryRedis redis;
+    private final Duration latency;
+
+    public InMemoryRedisConnectionFactory(InMemoryRedis redis, Duration latency) {
+        this.redis = redis;
+        this.latency = latency;
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        return (RedisConnection) Proxy.newProxyInstance(RedisConnection.class.getClassLoader(),
+                new Class<?>[]{RedisConnection.class}, new Connection());
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        throw new UnsupportedOperationException("The in-memory stand-in is a single server");
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        throw new UnsupportedOperationException("The in-memory stand-in is a single server");
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return true;
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return null;
+    }
+
+    /**
+     * One connection: its pipeline and its subscription.
+     */
+    private final class Connection implements InvocationHandler {
+
+        private List<Object> pipeline;
+        private volatile InMemorySubscription subscription;
+        private volatile boolean closed;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return Fakes.objectMethod(proxy, method, args, "in-memory Redis connection");
+            }
+            if (method.getDeclaringClass() == RedisCommandsProvider.class) {
+                return proxy;
+            }
+            switch (method.getName()) {
+                case "close" -> {
+                    closed = true;
+                    if (subscription != null) {
+                        subscription.close();
+                    }
+                    return null;
+                }
+                case "isClosed" -> {
+                    return closed;
+                }
+                case "getNativeConnection" -> {
+                    return redis;
+                }
+                case "isQueueing" -> {
+                    return false;
+                }
+                case "isPipelined" -> {
+                    return pipeline != null;
+                }
+                case "openPipeline" -> {
+                    if (pipeline == null) {
+                        pipeline = new ArrayList<>();
+                    }
+                    return null;
+                }
+                case "closePipeline" -> {
+                    List<Object> results = pipeline != null ? pipeline : List.of();
+                    pipeline = null;
+                    Fakes.pause(latency);
+                    return results;
+                }
+                case "isSubscribed" -> {
+                    return subscription != null && subscription.isAlive();
+                }
+                case "getSubscription" -> {
+                    return subscription;
+                }
+                case "subscribe" -> {
+                    subscribe((MessageListener) args[0], (byte[][]) args[1]);
+                    return null;
+                }
+                default -> {
+                    return command(method, args);
+                }
+            }
+        }
+
+        private Object command(Method method, Object[] args) throws Throwable {
+            if (closed) {
+                throw new RedisConnectionFailureException("Connection is closed");
+            }
+            Method implementation = Fakes.resolve(InMemoryRedis.class, method)
+                    .orElseThrow(() -> Fakes.unsupported(RedisConnection.class, method));
+            if (pipeline != null) {
+                if (UNPIPELINED.contains(method.getName())) {
+                    throw new InvalidDataAccessApiUsageException(method.getName() + " is not supported by Jedis in a pipeline");
+                }
+                Object result = Fakes.invoke(implementation, redis, args);
+                if (method.getReturnType() != void.class) {
+                    pipeline.add(result);
+                }
+                return null;
+            }
+            Fakes.pause(latency);
+            return Fakes.invoke(implementation, redis, args);
+        }
+
+        /**
+         * Subscribe and deliver messages on the calling thread until the subscription is closed,
+         * as the blocking subscribe of Jedis does.
+         */
+        private void subscribe(MessageListener listener, byte[][] channels) throws InterruptedException {
+            if (subscription != null) {
+                throw new RedisConnectionFailureException("Connection already subscribed");
+            }
+            InMemorySubscription subscribed = new InMemorySubscription(listener);
+            subscription = subscribed;
+            redis.register(subscribed);
+            try {
+                Fakes.pause(latency);
+                subscribed.subscribe(channels);
+                while (subscribed.isAlive()) {
+                    Message message = subscribed.messages.poll(100, TimeUnit.MILLISECONDS);
+                    if (message != null) {
+                        listener.onMessage(message, null);
+                    }
+                }
+            } finally {
+                redis.unregister(subscribed);
+            }
+        }
+    }
+
+    /**
+     * Channels of a subscribed connection and the messages published to them but not yet
+     * delivered.
+     */
+    static final class InMemorySubscription extends AbstractSubscription {
+
+        private final BlockingQueue<Message> messages = new LinkedBlockingQueue<>();
+
+        InMemorySubscription(MessageListener listener) {
+            super(listener);
+        }
+
+        /**
+         * Queue a published message if it is on a subscribed channel.
+         *
+         * @return whether the message was queued
+         */
+        boolean deliver(Message message) {
+            boolean subscribed = isAlive() && getChannels().stream()
+                    .anyMatch(channel -> Arrays.equals(channel, message.getChannel()));
+            return subscribed && messages.offer(message);
+        }
+
+        @Override
+        protected void doSubscribe(byte[]... channels) {
+            if (getListener() instanceof SubscriptionListener listener) {
+                long count = getChannels().size();
+                for (byte[] channel : channels) {
+                    listener.onChannelSubscribed(channel, ++count);
+                }
+            }
+        }
+
+        @Override
+        protected void doUnsubscribe(boolean all, byte[]... channels) {
+            if (getListener() instanceof SubscriptionListener listener) {
+                for (byte[] channel : all ? getChannels().toArray(byte[][]::new) : channels) {
+                    listener.onChannelUnsubscribed(channel, 0);
+                }
+            }
+        }
+
+        @Override
+        protected void doPsubscribe(byte[]... patterns) {
+            throw new UnsupportedOperationException("Pattern subscriptions are not supported by the in-memory stand-in");
+        }
+
+        @Override
+        protected void doPUnsubscribe(boolean all, byte[]... patterns) {
+        }
+
+        @Override
+        protected void doClose() {
+            messages.clear();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.phoneaccessories.favorites.load;
+
+import com.phoneaccessories.favorites.FavoritesServiceApplication;
+import com.phoneaccessories.favorites.model.Favorite;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test of {@code FavoriteController}: boots the whole service on in-memory
+ * stand-ins of MongoDB and Redis with injected latencies, see {@link FakeBackends}, and sends it a
+ * mix of requests at a fixed rate.
+ *
+ * <p>With {@code --url} it loads a service started separately instead, against real backends and
+ * in any of its stacks (servlet, servlet on virtual threads, reactive), after storing the data set
+ * through the service's API. Runs at the same rate against each stack compare their latencies.
+ *
+ * <p>The load is open: request {@code i} is due at {@code start + i / rate} and is sent then,
+ * however many earlier requests are still waiting for a response, as independent clients would
+ * send it. Its latency is measured from when it was due rather than when it was sent, so a stall
+ * of the service or of this driver counts against every request that should have been sent during
+ * it. Measuring from the send time instead, as closed-loop drivers do, leaves those requests out
+ * of the percentiles (coordinated omission).
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.phoneaccessories.favorites.load.LoadHarness --rate=2000 --duration=60s
+ * java -cp target/benchmarks.jar com.phoneaccessories.favorites.load.LoadHarness --help
+ * </pre>
+ */
+public final class LoadHarness {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_LABELS = {"p50", "p90", "p99", "p99.9"};
+    private static final int SEED_CONCURRENCY = 32;
+
+    private final LoadOptions options;
+    private final Workload workload;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    private final Recorder all = new Recorder(3);
+    private final Map<Workload.Operation, Recorder> byOperation = new EnumMap<>(Workload.Operation.class);
+    private final ConcurrentMap<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private LoadHarness(LoadOptions options, Workload workload) {
+        this.options = options;
+        this.workload = workload;
+        for (Workload.Operation operation : Workload.Operation.values()) {
+            byOperation.put(operation, new Recorder(3));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (List.of(args).contains("--help")) {
+            System.out.print(LoadOptions.USAGE);
+            return;
+        }
+        LoadOptions options = LoadOptions.parse(args);
+
+        Workload workload = new Workload(options);
+        if (options.url != null) {
+            workload.target(URI.create(options.url + "/favorites/"));
+            LoadHarness harness = new LoadHarness(options, workload);
+            List<Favorite> seeded = workload.seed();
+            harness.seed(seeded);
+            System.out.printf("Stored %d favorites of %d users at %s; sending %d requests/s for %s after %s of warmup%n",
+                    seeded.size(), options.users, options.url, options.rate, options.duration, options.warmup);
+            harness.run();
+            return;
+        }
+
+        InMemoryFavoriteRepository favorites = new InMemoryFavoriteRepository();
+        favorites.seed(workload.seed());
+        InMemoryFavoriteCounterRepository counters = new InMemoryFavoriteCounterRepository();
+        InMemoryRedis redis = new InMemoryRedis();
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(FavoritesServiceApplication.class, FakeBackends.class)
+                .initializers(applicationContext -> {
+                    applicationContext.getBeanFactory().registerSingleton("inMemoryFavorites", favorites);
+                    applicationContext.getBeanFactory().registerSingleton("inMemoryCounters", counters);
+                    applicationContext.getBeanFactory().registerSingleton("inMemoryRedis", redis);
+                })
+                .run(serviceArguments(options))) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            String contextPath = context.getEnvironment().getProperty("server.servlet.context-path",
+                    context.getEnvironment().getProperty("spring.webflux.base-path", ""));
+            workload.target(URI.create("http://localhost:" + port + contextPath + "/favorites/"));
+
+            System.out.printf("Seeded %d favorites of %d users on the %s stack; sending %d requests/s for %s after %s of warmup%n",
+                    favorites.countsByUser().values().stream().mapToLong(Long::longValue).sum(), options.users,
+                    options.stack, options.rate, options.duration, options.warmup);
+            new LoadHarness(options, workload).run();
+        }
+    }
+
+    /**
+     * Command line arguments of the service, which take precedence over its {@code application.yml};
+     * service properties given to the harness replace these defaults.
+     */
+    private static String[] serviceArguments(LoadOptions options) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("favorites.product-events.broker", "none");
+        properties.put("spring.data.redis.jedis.pool.min-idle", "0");
+        properties.put("harness.mongo-latency", options.mongoLatency.toNanos() + "ns");
+        properties.put("harness.redis-latency", options.redisLatency.toNanos() + "ns");
+        if (options.stack.equals("reactive")) {
+            properties.put("spring.profiles.active", "reactive");
+        }
+        if (options.redis != null) {
+            int separator = options.redis.lastIndexOf(':');
+            properties.put("harness.redis", "external");
+            properties.put("spring.data.redis.host", options.redis.substring(0, separator));
+            properties.put("spring.data.redis.port", options.redis.substring(separator + 1));
+            // Keys of earlier runs would hold favorites the freshly seeded stores no longer have
+            properties.put("cache.redis.key-prefix", "favorites-harness-" + System.currentTimeMillis());
+        }
+        properties.put("logging.level.root", "WARN");
+        properties.put("logging.level.com.phoneaccessories.favorites", "WARN");
+        // Duplicate adds and removes of missing favorites are part of the mix
+        properties.put("logging.level.com.phoneaccessories.favorites.exception", "ERROR");
+        properties.put("logging.level.org.mongodb.driver", "OFF");
+        properties.put("logging.level.com.phoneaccessories.favorites.config.MongoIndexInitializer", "OFF");
+        properties.putAll(options.serviceProperties);
+        return properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Add the favorites through the API, a bounded number at a time. Favorites stored by an earlier
+     * run are answered with 409 and kept; the service's own creation times replace the seeded ones.
+     */
+    private void seed(List<Favorite> favorites) throws InterruptedException {
+        Semaphore permits = new Semaphore(SEED_CONCURRENCY);
+        LongAdder failed = new LongAdder();
+        for (Favorite favorite : favorites) {
+            permits.acquire();
+            client.sendAsync(workload.add(favorite), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        if (failure != null || (response.statusCode() / 100 != 2 && response.statusCode() != 409)) {
+                            failed.increment();
+                        }
+                        permits.release();
+                    });
+        }
+        permits.acquire(SEED_CONCURRENCY);
+        if (failed.sum() > 0) {
+            throw new IllegalStateException(failed.sum() + " of " + favorites.size() + " favorites could not be stored");
+        }
+    }
+
+    private void run() throws IOException {
+        long interval = NANOS_PER_SECOND / options.rate;
+        long warmupRequests = options.warmup.toNanos() / interval;
+        long total = warmupRequests + options.duration.toNanos() / interval;
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmupRequests * interval;
+        for (long i = 0; i < total; i++) {
+            long due = start + i * interval;
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(workload.next(), due, due >= measureFrom);
+        }
+        long lastDue = start + (total - 1) * interval;
+
+        long deadline = System.nanoTime() + options.timeout.toNanos() + NANOS_PER_SECOND;
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        report(total - warmupRequests, (lastDue - measureFrom + interval) / (double) NANOS_PER_SECOND);
+    }
+
+    private void send(Workload.Request request, long due, boolean measured) {
+        outstanding.incrementAndGet();
+        client.sendAsync(request.request(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> {
+                    long latency = System.nanoTime() - due;
+                    if (measured) {
+                        long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(latency));
+                        all.recordValue(micros);
+                        byOperation.get(request.operation()).recordValue(micros);
+                        String outcome = failure != null
+                                ? rootCause(failure).getClass().getSimpleName()
+                                : String.valueOf(response.statusCode());
+                        outcomes.computeIfAbsent(request.operation().key + " " + outcome, key -> new LongAdder()).increment();
+                    }
+                    outstanding.decrementAndGet();
+                });
+    }
+
+    private void report(long measuredRequests, double seconds) throws IOException {
+        Histogram overall = all.getIntervalHistogram();
+        System.out.printf("%nSent %d requests in %.1f s (%.0f/s), %d answered or failed, %d unanswered%n",
+                measuredRequests, seconds, measuredRequests / seconds, overall.getTotalCount(),
+                measuredRequests - overall.getTotalCount());
+
+        System.out.println("\nOutcomes");
+        new TreeMap<>(outcomes).forEach((outcome, count) -> System.out.printf("  %-28s %10d%n", outcome, count.sum()));
+
+        System.out.printf("%nLatency from due time, ms  %10s", "requests");
+        for (String label : PERCENTILE_LABELS) {
+            System.out.printf(" %9s", label);
+        }
+        System.out.printf(" %9s%n", "max");
+        row("all", overall);
+        byOperation.forEach((operation, recorder) -> {
+            Histogram histogram = recorder.getIntervalHistogram();
+            if (histogram.getTotalCount() > 0) {
+                row(operation.key, histogram);
+            }
+        });
+
+        if (options.histogramFile != null) {
+            try (PrintStream out = new PrintStream(new FileOutputStream(options.histogramFile))) {
+                overall.outputPercentileDistribution(out, 1000.0);
+            }
+            System.out.printf("%nLatency distribution in milliseconds written to %s%n", options.histogramFile);
+        }
+    }
+
+    private static void row(String name, Histogram histogram) {
+        System.out.printf("  %-24s %10d", name, histogram.getTotalCount());
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %9.2f", histogram.getValueAtPercentile(percentile) / 1000.0);
+        }
+        System.out.printf(" %9.2f%n", histogram.getMaxValue() / 1000.0);
+    }
+
+    private static Throwable rootCause(Throwable failure) {
+        Throwable cause = failure;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,152 @@
+package com.phoneaccessories.favorites.load;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Options of a {@link LoadHarness} run, from {@code --name=value} arguments. Arguments whose
+ * name contains a dot, such as {@code --cache.lease.enabled=true}, are passed on to the service
+ * the harness boots; they cannot be combined with {@code --url}.
+ */
+final class LoadOptions {
+
+    static final String USAGE = """
+            Usage: LoadHarness [--option=value ...] [--service.property=value ...]
+              --url=base-url          load a running service, e.g. http://localhost:8080/api/v1, seeding it
+                                      through its API, instead of booting one on in-memory backends
+              --stack=servlet         stack of the booted service, servlet or reactive (which needs --redis)
+              --redis=host:port       use this Redis server, with keys under a prefix of their own, instead of
+                                      the in-memory one; --redis-latency does not apply
+              --rate=1000             requests per second, sent on schedule whatever the response times
+              --duration=60s          measured time
+              --warmup=15s            time before measuring, at the same rate
+              --users=10000           users seeded
+              --products=5000         products favorited
+              --max-favorites=500     favorites of the largest user
+              --size-skew=1.0         Zipf exponent of favorites per user, 0 for all users the largest size
+              --access-skew=1.0       Zipf exponent of requests per user, the largest users the most requested
+              --product-skew=1.0      Zipf exponent of favorites per product
+              --mix=get:50,exists:20,exists-batch:10,count:10,add:5,remove:5
+                                      weights of get, exists, exists-batch, count, add, remove, top, product-counts
+              --mongo-latency=1ms     added to every repository call
+              --redis-latency=250us   added to every Redis round trip
+              --timeout=10s           response timeout, counted as an error
+              --seed=42               random seed of the data set and the requests
+              --histogram-file=path   full latency distribution, in HdrHistogram's percentile format
+            """;
+
+    int rate = 1000;
+    Duration duration = Duration.ofSeconds(60);
+    Duration warmup = Duration.ofSeconds(15);
+    int users = 10_000;
+    int products = 5_000;
+    int maxFavorites = 500;
+    double sizeSkew = 1.0;
+    double accessSkew = 1.0;
+    double productSkew = 1.0;
+    Map<Workload.Operation, Integer> mix = parseMix("get:50,exists:20,exists-batch:10,count:10,add:5,remove:5");
+    Duration mongoLatency = Duration.ofMillis(1);
+    Duration redisLatency = Duration.ofNanos(250_000);
+    Duration timeout = Duration.ofSeconds(10);
+    long seed = 42;
+    String histogramFile;
+    String url;
+    String stack = "servlet";
+    String redis;
+    final Map<String, String> serviceProperties = new LinkedHashMap<>();
+
+    static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value: " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            if (name.contains(".")) {
+                options.serviceProperties.put(name, value);
+                continue;
+            }
+            switch (name) {
+                case "rate" -> options.rate = positive(name, Integer.parseInt(value));
+                case "duration" -> options.duration = DurationStyle.detectAndParse(value);
+                case "warmup" -> options.warmup = DurationStyle.detectAndParse(value);
+                case "users" -> options.users = positive(name, Integer.parseInt(value));
+                case "products" -> options.products = positive(name, Integer.parseInt(value));
+                case "max-favorites" -> options.maxFavorites = positive(name, Integer.parseInt(value));
+                case "size-skew" -> options.sizeSkew = Double.parseDouble(value);
+                case "access-skew" -> options.accessSkew = Double.parseDouble(value);
+                case "product-skew" -> options.productSkew = Double.parseDouble(value);
+                case "mix" -> options.mix = parseMix(value);
+                case "mongo-latency" -> options.mongoLatency = DurationStyle.detectAndParse(value);
+                case "redis-latency" -> options.redisLatency = DurationStyle.detectAndParse(value);
+                case "timeout" -> options.timeout = DurationStyle.detectAndParse(value);
+                case "seed" -> options.seed = Long.parseLong(value);
+                case "histogram-file" -> options.histogramFile = value;
+                case "url" -> options.url = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                case "stack" -> options.stack = oneOf(name, value, "servlet", "reactive");
+                case "redis" -> options.redis = value;
+                default -> throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+        }
+        if (options.url != null && !options.serviceProperties.isEmpty()) {
+            throw new IllegalArgumentException("Service properties cannot be set on a service started with --url: "
+                    + options.serviceProperties.keySet());
+        }
+        if (options.url != null && (options.redis != null || !options.stack.equals("servlet"))) {
+            throw new IllegalArgumentException("--stack and --redis apply to the booted service, not to --url");
+        }
+        if (options.stack.equals("reactive") && options.redis == null) {
+            throw new IllegalArgumentException("--stack=reactive needs --redis: the in-memory Redis has no reactive client");
+        }
+        if (options.redis != null && options.redis.lastIndexOf(':') < 1) {
+            throw new IllegalArgumentException("Expected --redis=host:port: " + options.redis);
+        }
+        if (options.maxFavorites > options.products) {
+            throw new IllegalArgumentException("--max-favorites cannot exceed --products");
+        }
+        return options;
+    }
+
+    /**
+     * @param mix comma separated {@code operation:weight} pairs
+     */
+    static Map<Workload.Operation, Integer> parseMix(String mix) {
+        Map<Workload.Operation, Integer> weights = new EnumMap<>(Workload.Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected operation:weight in --mix: " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight in --mix: " + entry);
+            }
+            weights.merge(Workload.Operation.of(parts[0].trim()), weight, Integer::sum);
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("--mix has no operation with a positive weight");
+        }
+        return weights;
+    }
+
+    private static String oneOf(String name, String value, String... allowed) {
+        if (!List.of(allowed).contains(value)) {
+            throw new IllegalArgumentException("--" + name + " must be one of " + String.join(", ", allowed));
+        }
+        return value;
+    }
+
+    private static int positive(String name, int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException("--" + name + " must be positive");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,268 @@
+package com.phoneaccessories.favorites.load;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.phoneaccessories.favorites.benchmark.BenchmarkData;
+import com.phoneaccessories.favorites.model.Favorite;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * The data set and the requests of a run.
+ *
+ * <p>User {@code k} is the {@code k}-th largest and, under access skew, the {@code k}-th most
+ * requested, as heavy users are also the most active. The workload keeps its own copy of each
+ * user's favorites, as of the requests sent so far, so that removals and half of the existence
+ * checks hit favorites that exist. Requests are built on the scheduling thread only.
+ */
+final class Workload {
+
+    private static final String[] CATEGORIES = {"Cases", "Chargers", "Cables", "Screen Protectors", "Headphones"};
+    private static final int BATCH_SIZE = 20;
+
+    /**
+     * Requests of the mix, named as in {@code --mix}.
+     */
+    enum Operation {
+        GET("get"),
+        EXISTS("exists"),
+        EXISTS_BATCH("exists-batch"),
+        COUNT("count"),
+        ADD("add"),
+        REMOVE("remove"),
+        TOP("top"),
+        PRODUCT_COUNTS("product-counts");
+
+        final String key;
+
+        Operation(String key) {
+            this.key = key;
+        }
+
+        static Operation of(String key) {
+            return Arrays.stream(values())
+                    .filter(operation -> operation.key.equals(key))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown operation in --mix: " + key));
+        }
+    }
+
+    record Request(Operation operation, HttpRequest request) {
+    }
+
+    private final LoadOptions options;
+    private final SplittableRandom random;
+    private final Zipf userAccess;
+    private final Zipf productPopularity;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final List<UserFavorites> users = new ArrayList<>();
+    private final ObjectMapper objectMapper = BenchmarkData.objectMapper();
+    private URI baseUri;
+
+    Workload(LoadOptions options) {
+        this.options = options;
+        this.random = new SplittableRandom(options.seed);
+        this.userAccess = new Zipf(options.users, options.accessSkew);
+        this.productPopularity = new Zipf(options.products, options.productSkew);
+
+        Map<Operation, Integer> mix = new LinkedHashMap<>(options.mix);
+        mix.values().removeIf(weight -> weight == 0);
+        operations = mix.keySet().toArray(Operation[]::new);
+        cumulativeWeights = new int[operations.length];
+        int sum = 0;
+        for (int i = 0; i < operations.length; i++) {
+            sum += mix.get(operations[i]);
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    /**
+     * Draw every user's favorites: the size of user {@code k} is {@code max-favorites / (k + 1)^size-skew},
+     * at least one, and products are drawn by popularity.
+     *
+     * @return the favorites to store before the service starts
+     */
+    List<Favorite> seed() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Favorite> favorites = new ArrayList<>();
+        for (int user = 0; user < options.users; user++) {
+            int size = (int) Math.max(1, Math.round(options.maxFavorites / Math.pow(user + 1, options.sizeSkew)));
+            UserFavorites userFavorites = new UserFavorites();
+            while (userFavorites.size() < size) {
+                int product = userFavorites.size() * 2 < options.products
+                        ? productPopularity.sample(random)
+                        : random.nextInt(options.products);
+                if (userFavorites.add(product)) {
+                    Favorite favorite = favorite(user, product);
+                    favorite.setCreatedAt(now.minusMinutes(random.nextInt(525_600)));
+                    favorites.add(favorite);
+                }
+            }
+            users.add(userFavorites);
+        }
+        return favorites;
+    }
+
+    /**
+     * @param baseUri the service's {@code /favorites/} resource
+     */
+    void target(URI baseUri) {
+        this.baseUri = baseUri;
+    }
+
+    Request next() {
+        int user = userAccess.sample(random);
+        UserFavorites favorites = users.get(user);
+        Operation operation = operation();
+        HttpRequest.Builder request = switch (operation) {
+            case GET -> get(userId(user));
+            case EXISTS -> get(userId(user) + "/" + productId(checkedProduct(favorites)) + "/exists");
+            case EXISTS_BATCH -> post(userId(user) + "/exists", Map.of("productIds", checkedProducts(favorites)));
+            case COUNT -> get(userId(user) + "/count");
+            case ADD -> {
+                int product = productPopularity.sample(random);
+                favorites.add(product);
+                yield post(userId(user), addRequest(product));
+            }
+            case REMOVE -> {
+                int product = favorites.isEmpty() ? productPopularity.sample(random) : favorites.removeAny(random);
+                yield request(userId(user) + "/" + productId(product)).DELETE();
+            }
+            case TOP -> get("products/top?k=10");
+            case PRODUCT_COUNTS -> {
+                List<String> productIds = new ArrayList<>();
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    productIds.add(productId(productPopularity.sample(random)));
+                }
+                yield post("products/counts", Map.of("productIds", productIds));
+            }
+        };
+        return new Request(operation, request.build());
+    }
+
+    /**
+     * Store a seeded favorite through the service's API.
+     */
+    HttpRequest add(Favorite favorite) {
+        return post(favorite.getUserId(), addRequest(favorite)).build();
+    }
+
+    private Operation operation() {
+        int draw = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (draw >= cumulativeWeights[i]) {
+            i++;
+        }
+        return operations[i];
+    }
+
+    /**
+     * One of the user's favorites or, half the time, a product drawn by popularity.
+     */
+    private int checkedProduct(UserFavorites favorites) {
+        return !favorites.isEmpty() && random.nextBoolean() ? favorites.any(random) : productPopularity.sample(random);
+    }
+
+    private List<String> checkedProducts(UserFavorites favorites) {
+        Set<String> productIds = new HashSet<>();
+        while (productIds.size() < Math.min(BATCH_SIZE, options.products)) {
+            productIds.add(productId(checkedProduct(favorites)));
+        }
+        return new ArrayList<>(productIds);
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return request(path).GET();
+    }
+
+    private HttpRequest.Builder post(String path, Object body) {
+        try {
+            return request(path)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(baseUri.resolve(path)).timeout(options.timeout);
+    }
+
+    private static Map<String, Object> addRequest(int product) {
+        return addRequest(favorite(0, product));
+    }
+
+    private static Map<String, Object> addRequest(Favorite favorite) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("productId", favorite.getProductId());
+        body.put("productName", favorite.getProductName());
+        body.put("productPrice", favorite.getProductPrice());
+        body.put("productImageUrl", favorite.getProductImageUrl());
+        body.put("category", favorite.getCategory());
+        return body;
+    }
+
+    private static Favorite favorite(int user, int product) {
+        String productId = productId(product);
+        return new Favorite(userId(user), productId, "Accessory " + product + " for phones", 4.99 + (product % 100),
+                "https://cdn.example.com/images/" + productId + ".jpg", CATEGORIES[product % CATEGORIES.length]);
+    }
+
+    static String userId(int user) {
+        return "load-user-%07d".formatted(user);
+    }
+
+    static String productId(int product) {
+        return "product-%07d".formatted(product);
+    }
+
+    /**
+     * Products of one user, with constant time membership and removal of a random one.
+     */
+    private static final class UserFavorites {
+
+        private final List<Integer> products = new ArrayList<>();
+        private final Set<Integer> members = new HashSet<>();
+
+        int size() {
+            return products.size();
+        }
+
+        boolean isEmpty() {
+            return products.isEmpty();
+        }
+
+        boolean add(int product) {
+            if (!members.add(product)) {
+                return false;
+            }
+            products.add(product);
+            return true;
+        }
+
+        int any(SplittableRandom random) {
+            return products.get(random.nextInt(products.size()));
+        }
+
+        int removeAny(SplittableRandom random) {
+            int index = random.nextInt(products.size());
+            int product = products.get(index);
+            products.set(index, products.get(products.size() - 1));
+            products.remove(products.size() - 1);
+            members.remove(product);
+            return product;
+        }
+    }
+}
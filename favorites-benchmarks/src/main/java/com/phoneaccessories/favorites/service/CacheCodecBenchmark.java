@@ -0,0 +1,60 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.benchmark.BenchmarkData;
+import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of a user's cached favorites list, done by {@link CacheService} on every
+ * cache fill and every Redis hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    @Param({"1", "50", "500", "5000"})
+    private int size;
+
+    /** {@code cache.codec.format}. */
+    @Param({"binary", "json"})
+    private String format;
+
+    private CacheCodec codec;
+    private UserFavoritesResponse favorites;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        JsonCacheCodec jsonCodec = new JsonCacheCodec(BenchmarkData.objectMapper());
+        // The default cache.codec.compression-threshold
+        codec = format.equals("binary") ? new BinaryCacheCodec(jsonCodec, 512) : jsonCodec;
+        favorites = BenchmarkData.response(size);
+        encoded = codec.encodeFavorites(favorites);
+    }
+
+    @Benchmark
+    public byte[] encodeFavorites() {
+        return codec.encodeFavorites(favorites);
+    }
+
+    @Benchmark
+    public UserFavoritesResponse decodeFavorites() {
+        return codec.decodeFavorites(encoded);
+    }
+}
@@ -0,0 +1,85 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.benchmark.BenchmarkData;
+import com.phoneaccessories.favorites.load.InMemoryRedis;
+import com.phoneaccessories.favorites.load.InMemoryRedisConnectionFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Eviction of all of a user's cache entries with {@link CacheService#evictAllUserCache}, which
+ * bumps the user's generation, against the former KEYS-and-DEL eviction, as the keyspace grows.
+ *
+ * <p>Redis is the in-memory stand-in of the load harness with no injected latency, so this
+ * measures the work of the commands: KEYS walks the whole keyspace, as on a Redis server, while
+ * the generation bump does not depend on its size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CacheEvictionBenchmark {
+
+    private static final String PREFIX = "favorites";
+
+    /** Keys of other users in Redis. */
+    @Param({"10000", "100000", "1000000"})
+    private int keyspace;
+
+    private InMemoryRedis redis;
+    private RedisTemplate<String, String> redisTemplate;
+    private CacheService cacheService;
+    private byte[] userKey;
+    private byte[] value;
+
+    @Setup
+    public void setUp() {
+        redis = new InMemoryRedis();
+        redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(new InMemoryRedisConnectionFactory(redis, Duration.ZERO));
+        redisTemplate.setDefaultSerializer(new StringRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+        cacheService = new CacheService(redisTemplate, new JsonCacheCodec(BenchmarkData.objectMapper()),
+                new SimpleMeterRegistry(), PREFIX, 3600, 100_000, 60, 1.0, false, 1000);
+
+        value = "{}".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < keyspace; i++) {
+            redis.set((PREFIX + ":user:filler-" + i + ":g0:favorites").getBytes(StandardCharsets.UTF_8), value);
+        }
+        userKey = (PREFIX + ":user:" + BenchmarkData.USER_ID + ":g0:exists:product-100042").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void generation() {
+        redis.set(userKey, value);
+        cacheService.evictAllUserCache(BenchmarkData.USER_ID);
+    }
+
+    @Benchmark
+    public void keysAndDelete() {
+        redis.set(userKey, value);
+        Set<String> keys = redisTemplate.keys(PREFIX + ":user:" + BenchmarkData.USER_ID + ":*");
+        if (keys != null && !keys.isEmpty()) {
+            redisTemplate.delete(keys);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.benchmark.BenchmarkData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building of user-scoped cache keys, done by {@link CacheService} for every cache read and write.
+ * The user's cache generation is held locally, as it is for any active user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheKeyBenchmark {
+
+    private CacheService cacheService;
+
+    @Setup
+    public void setUp() {
+        cacheService = new CacheService(new GenerationOnlyRedisTemplate(), new JsonCacheCodec(BenchmarkData.objectMapper()),
+                new SimpleMeterRegistry(), "favorites", 3600, 100_000, 60, 1.0, false, 1000);
+        // Loads the generation into the local cache
+        cacheService.buildKey(BenchmarkData.USER_ID, "favorites");
+    }
+
+    @Benchmark
+    public String buildKey() {
+        return cacheService.buildKey(BenchmarkData.USER_ID, "favorites");
+    }
+
+    @Benchmark
+    public String buildExistsKey() {
+        return cacheService.buildKey(BenchmarkData.USER_ID, "exists", "product-100042");
+    }
+
+    /**
+     * Answers the generation lookup the first key needs; any other Redis command fails.
+     */
+    private static final class GenerationOnlyRedisTemplate extends RedisTemplate<String, String> {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public ValueOperations<String, String> opsForValue() {
+            return (ValueOperations<String, String>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{ValueOperations.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("get")) {
+                            return "3";
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    });
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.benchmark.BenchmarkData;
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.model.Favorite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Mapping of stored favorites to responses, done by {@link FavoriteService} for every list read
+ * from MongoDB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FavoriteMapperBenchmark {
+
+    @Param({"1", "50", "500", "5000"})
+    private int size;
+
+    private List<Favorite> favorites;
+
+    @Setup
+    public void setUp() {
+        favorites = BenchmarkData.favorites(size);
+    }
+
+    @Benchmark
+    public List<FavoriteResponse> toResponses() {
+        return favorites.stream()
+                .map(FavoriteMapper::toResponse)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,115 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.load.InMemoryRedis;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The service's Lua scripts emulated in Java for {@link InMemoryRedis}. It sits in the service
+ * package to reach the package-private script constants.
+ *
+ * <p>The Lua itself never runs in the harness or the benchmarks. Each emulation is pinned to the
+ * SHA1 of the script it was written from, and defining them fails once a script was edited, so
+ * that an emulation is updated with its script rather than drifting from it.
+ */
+public final class InMemoryScripts {
+
+    private static final byte[] ZERO = "0".getBytes(StandardCharsets.US_ASCII);
+
+    private InMemoryScripts() {
+    }
+
+    public static void define(InMemoryRedis redis) {
+        emulate(redis, RedisLeaseLock.RENEW_SCRIPT, "9136fcf51831e5cf49f109b6e9c97d5b675280d6", (r, keys, args) ->
+                Arrays.equals(r.get(keys[0]), args[0]) && r.pExpire(keys[0], number(args[1])) ? 1L : 0L);
+        emulate(redis, RedisLeaseLock.RELEASE_SCRIPT, "e9f69f2beb755be68b5e456ee2ce9aadfbc4ebf4", (r, keys, args) ->
+                Arrays.equals(r.get(keys[0]), args[0]) ? r.del(keys[0]) : 0L);
+        emulate(redis, CacheService.REPLACE_FAVORITES_SCRIPT, "9d0b3742ad5e6ded44a1c0003c80152e857a5f08", (r, keys, args) -> {
+            byte[] writes = r.get(keys[2]);
+            if (Arrays.equals(writes == null ? ZERO : writes, args[0])) {
+                r.rename(keys[0], keys[1]);
+                return 1L;
+            }
+            r.del(keys[0]);
+            return 0L;
+        });
+        emulate(redis, CacheService.CACHE_FILTER_SCRIPT, "74c7ca08d2311c826f5c78f3b3331cc26c81a2ba", (r, keys, args) -> {
+            byte[] writes = r.get(keys[1]);
+            if (!Arrays.equals(writes == null ? ZERO : writes, args[0])) {
+                return 0L;
+            }
+            r.set(keys[0], args[1], Expiration.seconds(number(args[2])), SetOption.upsert());
+            return 1L;
+        });
+        emulate(redis, CacheService.CACHE_PAGE_SCRIPT, "13672288676971588a09a715bb51827e6989966d", (r, keys, args) -> {
+            byte[] writes = r.get(keys[1]);
+            if (!Arrays.equals(writes == null ? ZERO : writes, args[0])) {
+                return 0L;
+            }
+            boolean created = !r.exists(keys[0]);
+            r.hSet(keys[0], args[1], args[2]);
+            if (created) {
+                r.expire(keys[0], number(args[3]));
+            }
+            return 1L;
+        });
+        emulate(redis, FavoritesBloomFilter.ADD_SCRIPT, "62bc1a70b15a92ad02e822be2e5cc51554b17bf0", InMemoryScripts::addToFilter);
+        emulate(redis, CacheService.PUBLISH_SCRIPT, "a8f5faf8b8f5950aa5bc2c5f3939e335cf62eb3c", (r, keys, args) -> {
+            for (int i = 1; i < args.length; i++) {
+                r.publish(args[0], args[i]);
+            }
+            return (long) args.length - 1;
+        });
+    }
+
+    /**
+     * Emulate a script, provided it is still the one the emulation was written from.
+     *
+     * @param sha1 the SHA1 of the script the emulation was written from
+     * @throws IllegalStateException if the script changed since
+     */
+    private static void emulate(InMemoryRedis redis, RedisScript<?> script, String sha1, InMemoryRedis.Script emulation) {
+        if (!script.getSha1().equals(sha1)) {
+            throw new IllegalStateException("A script emulated by the in-memory Redis changed, update its emulation in "
+                    + "InMemoryScripts and the SHA1 it is pinned to (" + sha1 + " -> " + script.getSha1() + "): "
+                    + script.getScriptAsString());
+        }
+        redis.define(sha1, emulation);
+    }
+
+    private static Object addToFilter(InMemoryRedis redis, byte[][] keys, byte[][] args) {
+        byte[] filter = redis.get(keys[0]);
+        if (filter == null || filter.length < FavoritesBloomFilter.HEADER_BYTES || filter[0] == 0) {
+            return 0L;
+        }
+        long added = args.length / 2;
+        ByteBuffer header = ByteBuffer.wrap(filter);
+        long capacity = Integer.toUnsignedLong(header.getInt(4));
+        long entries = Integer.toUnsignedLong(header.getInt(8));
+        if (entries + added > capacity) {
+            redis.del(keys[0]);
+            return -1L;
+        }
+        long bits = 1L << filter[0];
+        for (int j = 0; j < args.length; j += 2) {
+            long h1 = number(args[j]);
+            long h2 = number(args[j + 1]);
+            for (long i = 0; i < filter[1]; i++) {
+                long offset = FavoritesBloomFilter.HEADER_BYTES * 8 + (h1 + i * h2 + (i * i * i - i) / 6) % bits;
+                filter[(int) (offset >>> 3)] |= (byte) (0x80 >>> (offset & 7));
+            }
+        }
+        header.putInt(8, (int) (entries + added));
+        redis.set(keys[0], filter, Expiration.keepTtl(), SetOption.upsert());
+        return 1L;
+    }
+
+    private static long number(byte[] arg) {
+        return Long.parseLong(new String(arg, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,50 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.load.InMemoryRedis;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryScriptsTest {
+
+    @Test
+    void everyServiceScriptIsEmulatedAsWritten() throws Exception {
+        // Defines the emulations, failing if a script changed since its emulation was written
+        InMemoryRedis redis = new InMemoryRedis();
+
+        List<String> scripts = new ArrayList<>();
+        for (Field field : scriptFields()) {
+            field.setAccessible(true);
+            RedisScript<?> script = (RedisScript<?>) field.get(null);
+            String name = field.getDeclaringClass().getSimpleName() + "." + field.getName();
+            assertTrue(redis.isDefined(script.getSha1()), name + " is not emulated by InMemoryScripts");
+            scripts.add(name);
+        }
+        assertTrue(scripts.contains("CacheService.REPLACE_FAVORITES_SCRIPT"), "No scripts found: " + scripts);
+    }
+
+    /**
+     * The static script constants of every class of the service.
+     */
+    private static List<Field> scriptFields() throws ClassNotFoundException {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter((reader, factory) -> true);
+        List<Field> fields = new ArrayList<>();
+        for (BeanDefinition candidate : scanner.findCandidateComponents("com.phoneaccessories.favorites")) {
+            for (Field field : Class.forName(candidate.getBeanClassName(), false, InMemoryScriptsTest.class.getClassLoader()).getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) && RedisScript.class.isAssignableFrom(field.getType())) {
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+}
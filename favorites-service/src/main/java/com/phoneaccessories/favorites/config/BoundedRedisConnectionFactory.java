@@ -0,0 +1,148 @@
+package com.phoneaccessories.favorites.config;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisSentinelConnection;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Jedis connection factory that bounds concurrent connections with a semaphore.
+ *
+ * <p>On virtual threads nothing else bounds the callers, and borrowers beyond the pool size park
+ * in the pool's object monitor while connections are being created, pinning their carrier
+ * threads. Holding one permit per pool slot keeps borrowers within the pool size, so callers
+ * wait on the semaphore instead, which unmounts them. A connection releases its permit on close.
+ */
+final class BoundedRedisConnectionFactory implements RedisConnectionFactory, InitializingBean, DisposableBean, SmartLifecycle {
+
+    private final JedisConnectionFactory delegate;
+    private final Semaphore permits;
+    private final long maxWaitNanos;
+
+    BoundedRedisConnectionFactory(JedisConnectionFactory delegate, int maxConnections, Duration maxWait) {
+        this.delegate = delegate;
+        this.permits = new Semaphore(maxConnections, true);
+        this.maxWaitNanos = maxWait != null && !maxWait.isNegative() ? maxWait.toNanos() : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the unbounded factory, for connections held for the life of the application
+     */
+    JedisConnectionFactory getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public RedisConnection getConnection() {
+        try {
+            if (!permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                throw new RedisConnectionFailureException("Timed out waiting for a Redis connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisConnectionFailureException("Interrupted waiting for a Redis connection", e);
+        }
+
+        RedisConnection connection;
+        try {
+            connection = delegate.getConnection();
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        return releasingOnClose(connection);
+    }
+
+    @Override
+    public RedisClusterConnection getClusterConnection() {
+        return delegate.getClusterConnection();
+    }
+
+    @Override
+    public RedisSentinelConnection getSentinelConnection() {
+        return delegate.getSentinelConnection();
+    }
+
+    @Override
+    public boolean getConvertPipelineAndTxResults() {
+        return delegate.getConvertPipelineAndTxResults();
+    }
+
+    @Override
+    public DataAccessException translateExceptionIfPossible(RuntimeException ex) {
+        return delegate.translateExceptionIfPossible(ex);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        delegate.afterPropertiesSet();
+    }
+
+    @Override
+    public void destroy() {
+        delegate.destroy();
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public void stop() {
+        delegate.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return delegate.isRunning();
+    }
+
+    @Override
+    public int getPhase() {
+        return delegate.getPhase();
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return delegate.isAutoStartup();
+    }
+
+    /**
+     * @return the number of connections that can be taken without waiting
+     */
+    int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    private RedisConnection releasingOnClose(RedisConnection connection) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (RedisConnection) Proxy.newProxyInstance(RedisConnection.class.getClassLoader(),
+                new Class<?>[] {RedisConnection.class},
+                (proxy, method, args) -> {
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    } finally {
+                        if ("close".equals(method.getName()) && method.getParameterCount() == 0
+                                && released.compareAndSet(false, true)) {
+                            permits.release();
+                        }
+                    }
+                });
+    }
+}
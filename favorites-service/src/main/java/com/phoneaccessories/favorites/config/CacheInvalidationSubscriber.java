@@ -0,0 +1,55 @@
+package com.phoneaccessories.favorites.config;
+
+import com.phoneaccessories.favorites.service.CacheService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the local cache tier subscribed to invalidation broadcasts.
+ *
+ * <p>The listener container gives up for good when its very first subscription cannot reach
+ * Redis, so the subscription is made here, after startup, and retried until it is listening.
+ * Once listening, the container recovers from later connection losses on its own.
+ */
+@Component
+public class CacheInvalidationSubscriber {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationSubscriber.class);
+
+    private final RedisMessageListenerContainer listenerContainer;
+    private final CacheService cacheService;
+    private boolean registered;
+
+    public CacheInvalidationSubscriber(RedisMessageListenerContainer listenerContainer, CacheService cacheService) {
+        this.listenerContainer = listenerContainer;
+        this.cacheService = cacheService;
+    }
+
+    /**
+     * Subscribe (or retry subscribing) if the container is not listening.
+     */
+    @Scheduled(fixedDelayString = "${cache.local.resubscribe-interval:10000}")
+    public void ensureSubscribed() {
+        if (listenerContainer.isListening()) {
+            return;
+        }
+
+        try {
+            if (!registered) {
+                registered = true;
+                listenerContainer.addMessageListener(cacheService, new ChannelTopic(cacheService.getInvalidationChannel()));
+            } else {
+                listenerContainer.stop();
+                listenerContainer.start();
+            }
+            logger.info("Subscribed to cache invalidation broadcasts");
+        } catch (RuntimeException e) {
+            logger.warn("Cache invalidation subscription failed, local entries expire by TTL only until retried: {}",
+                    e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.phoneaccessories.favorites.config;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the indexes declared on the documents.
+ *
+ * <p>Automatic index creation is off in Spring Data MongoDB, so the annotated indexes are
+ * resolved and ensured here, after startup, and retried until MongoDB accepts them. Ensuring an
+ * index that already exists is a no-op.
+ *
+ * <p>The unique user and product index cannot be built over duplicates, which the collection may
+ * hold from before the index existed. Until it exists, each attempt first counts them. By default
+ * duplicates are left alone: the unique index is skipped, the other indexes are ensured, and the
+ * duplicates are reported, and nothing is retried until a restart. With
+ * {@code favorites.indexes.dedupe} on, every favorite that duplicates an older one of the same
+ * user and product is deleted instead; the per-user counters are then corrected by
+ * {@link com.phoneaccessories.favorites.service.FavoriteCounterReconciler}.
+ *
+ * <p>The outcome is reported as the {@code mongoIndexes} health component: down while an attempt
+ * failed, and {@value #DUPLICATES_STATUS} while duplicates keep the unique index from being built,
+ * a status that does not change the overall health.
+ */
+@Component("mongoIndexes")
+public class MongoIndexInitializer implements HealthIndicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(MongoIndexInitializer.class);
+
+    static final String UNIQUE_INDEX = "user_product_unique";
+
+    static final String DUPLICATES_STATUS = "DUPLICATES";
+
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+    private final boolean dedupe;
+    private volatile boolean initialized;
+    private volatile String failure;
+    private volatile long duplicates;
+
+    public MongoIndexInitializer(MongoTemplate mongoTemplate, MongoMappingContext mappingContext,
+                                 @Value("${favorites.indexes.dedupe:false}") boolean dedupe) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+        this.dedupe = dedupe;
+    }
+
+    /**
+     * Ensure the indexes (or retry doing so) until it succeeded once.
+     */
+    @Scheduled(fixedDelayString = "${mongodb.index-retry-interval:30000}")
+    public void ensureIndexes() {
+        if (initialized) {
+            return;
+        }
+
+        try {
+            IndexOperations indexOperations = mongoTemplate.indexOps(Favorite.class);
+            long found = 0;
+            if (indexOperations.getIndexInfo().stream().map(IndexInfo::getName).noneMatch(UNIQUE_INDEX::equals)) {
+                if (dedupe) {
+                    removeDuplicateFavorites();
+                } else {
+                    found = countDuplicateFavorites();
+                }
+            }
+            IndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+            for (IndexDefinition index : resolver.resolveIndexFor(Favorite.class)) {
+                if (found == 0 || !UNIQUE_INDEX.equals(index.getIndexOptions().get("name"))) {
+                    indexOperations.ensureIndex(index);
+                }
+            }
+            resolver.resolveIndexFor(FavoriteCounter.class).forEach(mongoTemplate.indexOps(FavoriteCounter.class)::ensureIndex);
+            initialized = true;
+            failure = null;
+            duplicates = found;
+            if (found > 0) {
+                logger.warn("Skipped the {} index of the {} collection over {} duplicate favorites; remove them, "
+                                + "or set favorites.indexes.dedupe to delete them, and restart to build it",
+                        UNIQUE_INDEX, mongoTemplate.getCollectionName(Favorite.class), found);
+            } else {
+                logger.info("Ensured indexes of the {} collection", mongoTemplate.getCollectionName(Favorite.class));
+            }
+        } catch (DuplicateKeyException e) {
+            // Duplicates written since they were counted or removed; the next attempt finds them too
+            failure = e.getMessage();
+            logger.error("Could not build the unique index of the {} collection over duplicate favorites, will retry: {}",
+                    mongoTemplate.getCollectionName(Favorite.class), e.getMessage());
+        } catch (RuntimeException e) {
+            failure = e.getMessage();
+            logger.warn("Could not ensure MongoDB indexes, will retry: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Count the favorites that duplicate an older favorite of the same user and product.
+     */
+    long countDuplicateFavorites() {
+        List<Document> pipeline = List.of(
+                new Document("$group", new Document("_id",
+                        new Document("user_id", "$user_id").append("product_id", "$product_id"))
+                        .append("count", new Document("$sum", 1))),
+                new Document("$match", new Document("count", new Document("$gt", 1))),
+                new Document("$group", new Document("_id", null)
+                        .append("duplicates", new Document("$sum", new Document("$subtract", List.of("$count", 1))))));
+
+        Document total = favorites().aggregate(pipeline).allowDiskUse(true).first();
+        return total != null ? ((Number) total.get("duplicates")).longValue() : 0;
+    }
+
+    /**
+     * Delete the favorites that duplicate an older favorite of the same user and product.
+     *
+     * @return the number of favorites deleted
+     */
+    long removeDuplicateFavorites() {
+        MongoCollection<Document> collection = favorites();
+        List<Document> pipeline = List.of(
+                new Document("$sort", new Document("created_at", 1).append("_id", 1)),
+                new Document("$group", new Document("_id",
+                        new Document("user_id", "$user_id").append("product_id", "$product_id"))
+                        .append("ids", new Document("$push", "$_id"))
+                        .append("count", new Document("$sum", 1))),
+                new Document("$match", new Document("count", new Document("$gt", 1))));
+
+        List<Object> duplicates = new ArrayList<>();
+        long deleted = 0;
+        for (Document group : collection.aggregate(pipeline).allowDiskUse(true)) {
+            List<?> ids = group.getList("ids", Object.class);
+            duplicates.addAll(ids.subList(1, ids.size()));
+            if (duplicates.size() >= DELETE_BATCH_SIZE) {
+                deleted += collection.deleteMany(Filters.in("_id", duplicates)).getDeletedCount();
+                duplicates.clear();
+            }
+        }
+        if (!duplicates.isEmpty()) {
+            deleted += collection.deleteMany(Filters.in("_id", duplicates)).getDeletedCount();
+        }
+
+        if (deleted > 0) {
+            logger.warn("Deleted {} duplicate favorites before building the {} index", deleted, UNIQUE_INDEX);
+        }
+        return deleted;
+    }
+
+    private MongoCollection<Document> favorites() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Favorite.class));
+    }
+
+    @Override
+    public Health health() {
+        if (initialized && duplicates > 0) {
+            return Health.status(DUPLICATES_STATUS)
+                    .withDetail("duplicateFavorites", duplicates)
+                    .withDetail("skippedIndex", UNIQUE_INDEX)
+                    .build();
+        }
+        if (initialized) {
+            return Health.up().build();
+        }
+        if (failure != null) {
+            return Health.down().withDetail("error", failure).build();
+        }
+        return Health.unknown().build();
+    }
+}
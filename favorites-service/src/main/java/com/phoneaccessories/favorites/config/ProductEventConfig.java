@@ -0,0 +1,39 @@
+package com.phoneaccessories.favorites.config;
+
+import com.phoneaccessories.favorites.event.InMemoryProductEventBroker;
+import com.phoneaccessories.favorites.event.ProductEventBroker;
+import com.phoneaccessories.favorites.event.RedisStreamProductEventBroker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+
+/**
+ * Product catalog event transport, chosen with {@code favorites.product-events.broker}:
+ * {@code redis} reads a Redis stream, {@code memory} only sees events published in this process,
+ * and {@code none} (the default) disables catalog updates.
+ */
+@Configuration
+public class ProductEventConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "favorites.product-events.broker", havingValue = "redis")
+    public ProductEventBroker redisStreamProductEventBroker(
+            StringRedisTemplate redisTemplate,
+            @Value("${favorites.product-events.stream:product-events}") String stream,
+            @Value("${favorites.product-events.group:favorites-service}") String group,
+            @Value("${favorites.product-events.consumer:${HOSTNAME:favorites-service}}") String consumer,
+            @Value("${favorites.product-events.poll-timeout:1s}") Duration pollTimeout,
+            @Value("${favorites.product-events.claim-idle:60s}") Duration claimIdle) {
+        return new RedisStreamProductEventBroker(redisTemplate, stream, group, consumer, pollTimeout, claimIdle);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "favorites.product-events.broker", havingValue = "memory")
+    public ProductEventBroker inMemoryProductEventBroker() {
+        return new InMemoryProductEventBroker();
+    }
+}
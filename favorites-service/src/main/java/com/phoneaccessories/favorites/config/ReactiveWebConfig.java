@@ -0,0 +1,23 @@
+package com.phoneaccessories.favorites.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Web server of the reactive stack, enabled by the {@code reactive} profile.
+ *
+ * <p>Tomcat is on the classpath for the servlet stack, and Spring Boot prefers it over Netty for
+ * WebFlux as well. Declaring the Netty factory makes the reactive stack serve requests on Netty's
+ * event loops, which the reactive MongoDB and Redis drivers complete on.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebConfig {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -2,49 +2,140 @@ package com.phoneaccessories.favorites.config;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.phoneaccessories.favorites.service.BinaryCacheCodec;
+import com.phoneaccessories.favorites.service.CacheCodec;
+import com.phoneaccessories.favorites.service.JsonCacheCodec;
+import io.lettuce.core.ClientOptions;
+import io.lettuce.core.SocketOptions;
+import io.lettuce.core.resource.ClientResources;
+import io.micrometer.core.instrument.binder.commonspool2.CommonsObjectPool2Metrics;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.StringUtils;
+import redis.clients.jedis.JedisPoolConfig;
 
 /**
  * Redis configuration for caching.
+ *
+ * <p>Connections are configured from the {@code spring.data.redis} properties. The default Jedis
+ * client borrows connections from a bounded pool whose borrow wait and usage are exported as
+ * {@code commons.pool2.*} metrics; setting {@code spring.data.redis.client-type=lettuce} switches
+ * to a single multiplexed, non-blocking Lettuce connection shared by all threads. On virtual
+ * threads the Jedis pool is fronted by a semaphore, see {@link BoundedRedisConnectionFactory}.
  */
 @Configuration
 public class RedisConfig {
 
-    @Value("${spring.data.redis.host}")
-    private String redisHost;
-
-    @Value("${spring.data.redis.port}")
-    private int redisPort;
-
-    @Value("${spring.data.redis.password:}")
-    private String redisPassword;
-
-    @Value("${spring.data.redis.database}")
-    private int database;
+    /** JMX name prefix of the Jedis pool, also the {@code name} tag of its metrics. */
+    static final String POOL_JMX_PREFIX = "redis";
 
     /**
      * Redis connection factory configuration.
      */
     @Bean
-    public RedisConnectionFactory redisConnectionFactory() {
-        JedisConnectionFactory factory = new JedisConnectionFactory();
-        factory.setHostName(redisHost);
-        factory.setPort(redisPort);
-        factory.setDatabase(database);
-
-        if (redisPassword != null && !redisPassword.trim().isEmpty()) {
-            factory.setPassword(redisPassword);
+    public RedisConnectionFactory redisConnectionFactory(RedisProperties properties,
+                                                         ObjectProvider<ClientResources> clientResources,
+                                                         Environment environment) {
+        RedisStandaloneConfiguration server = new RedisStandaloneConfiguration(properties.getHost(), properties.getPort());
+        server.setDatabase(properties.getDatabase());
+        if (StringUtils.hasText(properties.getUsername())) {
+            server.setUsername(properties.getUsername());
+        }
+        if (StringUtils.hasText(properties.getPassword())) {
+            server.setPassword(properties.getPassword());
         }
 
+        if (properties.getClientType() == RedisProperties.ClientType.LETTUCE) {
+            return lettuceConnectionFactory(server, properties, clientResources.getIfAvailable());
+        }
+        JedisConnectionFactory factory = jedisConnectionFactory(server, properties);
+        RedisProperties.Pool pool = properties.getJedis().getPool();
+        if (Threading.VIRTUAL.isActive(environment) && !Boolean.FALSE.equals(pool.getEnabled())) {
+            return new BoundedRedisConnectionFactory(factory, pool.getMaxActive(), pool.getMaxWait());
+        }
         return factory;
     }
 
+    private static JedisConnectionFactory jedisConnectionFactory(RedisStandaloneConfiguration server,
+                                                                 RedisProperties properties) {
+        JedisClientConfiguration.JedisClientConfigurationBuilder client = JedisClientConfiguration.builder();
+        if (properties.getConnectTimeout() != null) {
+            client.connectTimeout(properties.getConnectTimeout());
+        }
+        if (properties.getTimeout() != null) {
+            client.readTimeout(properties.getTimeout());
+        }
+
+        RedisProperties.Pool pool = properties.getJedis().getPool();
+        if (!Boolean.FALSE.equals(pool.getEnabled())) {
+            JedisPoolConfig poolConfig = new JedisPoolConfig();
+            poolConfig.setMaxTotal(pool.getMaxActive());
+            poolConfig.setMaxIdle(pool.getMaxIdle());
+            poolConfig.setMinIdle(pool.getMinIdle());
+            // A negative wait blocks until a connection is returned; callers rely on a bound
+            if (pool.getMaxWait() != null && !pool.getMaxWait().isNegative()) {
+                poolConfig.setMaxWait(pool.getMaxWait());
+            }
+            if (pool.getTimeBetweenEvictionRuns() != null) {
+                poolConfig.setTimeBetweenEvictionRuns(pool.getTimeBetweenEvictionRuns());
+            }
+            poolConfig.setJmxEnabled(true);
+            poolConfig.setJmxNamePrefix(POOL_JMX_PREFIX);
+            client.usePooling().poolConfig(poolConfig);
+        }
+
+        return new JedisConnectionFactory(server, client.build());
+    }
+
+    private static LettuceConnectionFactory lettuceConnectionFactory(RedisStandaloneConfiguration server,
+                                                                     RedisProperties properties,
+                                                                     ClientResources clientResources) {
+        LettuceClientConfiguration.LettuceClientConfigurationBuilder client = LettuceClientConfiguration.builder();
+        if (clientResources != null) {
+            // Carries the command latency metrics registered by Spring Boot
+            client.clientResources(clientResources);
+        }
+        if (properties.getTimeout() != null) {
+            client.commandTimeout(properties.getTimeout());
+        }
+        if (properties.getConnectTimeout() != null) {
+            client.clientOptions(ClientOptions.builder()
+                    .socketOptions(SocketOptions.builder().connectTimeout(properties.getConnectTimeout()).build())
+                    .build());
+        }
+
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(server, client.build());
+        factory.setShareNativeConnection(true);
+        return factory;
+    }
+
+    /**
+     * Exports the Jedis pool's active, idle and waiting connections and its borrow wait times.
+     */
+    @Bean
+    public CommonsObjectPool2Metrics redisPoolMetrics() {
+        return new CommonsObjectPool2Metrics();
+    }
+
     /**
      * Redis template configuration.
      */
@@ -53,17 +144,64 @@ public class RedisConfig {
         RedisTemplate<String, String> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
 
-        // Use String serializer for both keys and values
+        // Use String serializer for keys and values; hash values are raw bytes written by the CacheCodec
         StringRedisSerializer stringSerializer = new StringRedisSerializer();
         template.setKeySerializer(stringSerializer);
         template.setValueSerializer(stringSerializer);
         template.setHashKeySerializer(stringSerializer);
-        template.setHashValueSerializer(stringSerializer);
+        template.setHashValueSerializer(RedisSerializer.byteArray());
 
         template.afterPropertiesSet();
         return template;
     }
 
+    /**
+     * Reactive Redis template for the reactive stack, serializing like {@link #redisTemplate}.
+     */
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public ReactiveRedisTemplate<String, String> reactiveRedisTemplate(RedisConnectionFactory connectionFactory) {
+        if (!(connectionFactory instanceof ReactiveRedisConnectionFactory reactiveFactory)) {
+            throw new IllegalStateException("The reactive stack needs spring.data.redis.client-type=lettuce");
+        }
+
+        RedisSerializationContext<String, String> context = RedisSerializationContext
+                .<String, String>newSerializationContext(RedisSerializer.string())
+                .hashValue(RedisSerializer.byteArray())
+                .build();
+        return new ReactiveRedisTemplate<>(reactiveFactory, context);
+    }
+
+    /**
+     * Pub/sub listener container; listeners are registered by {@link CacheInvalidationSubscriber}
+     * so that an unreachable Redis does not abort startup.
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        // The subscription holds its connection for good, outside the bound on request connections
+        container.setConnectionFactory(connectionFactory instanceof BoundedRedisConnectionFactory bounded
+                ? bounded.getDelegate()
+                : connectionFactory);
+        return container;
+    }
+
+    /**
+     * Codec of cached values: compact binary by default, JSON while replicas that only read JSON
+     * are still running.
+     */
+    @Bean
+    public CacheCodec cacheCodec(ObjectMapper objectMapper,
+                                 @Value("${cache.codec.format:binary}") String format,
+                                 @Value("${cache.codec.compression-threshold:512}") int compressionThreshold) {
+        JsonCacheCodec jsonCodec = new JsonCacheCodec(objectMapper);
+        return switch (format) {
+            case "binary" -> new BinaryCacheCodec(jsonCodec, compressionThreshold);
+            case "json" -> jsonCodec;
+            default -> throw new IllegalStateException("Unknown cache.codec.format: " + format);
+        };
+    }
+
     /**
      * ObjectMapper configuration for JSON serialization.
      */
@@ -0,0 +1,45 @@
+package com.phoneaccessories.favorites.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+
+/**
+ * Virtual-thread execution mode, enabled with {@code spring.threads.virtual.enabled=true} on
+ * Java 21 or later.
+ *
+ * <p>Spring Boot then runs Tomcat request handling and the application task executor on virtual
+ * threads, so the blocking MongoDB and Jedis calls of each request park a virtual thread instead
+ * of holding a pool thread. Concurrency is bounded by semaphores rather than pool sizes: requests
+ * by {@link ConcurrencyLimitFilter}, Redis connections by {@link BoundedRedisConnectionFactory}
+ * and early refreshes by {@code FavoriteService}.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class VirtualThreadConfig {
+
+    /**
+     * Request concurrency limit, ahead of every other filter.
+     */
+    @Bean
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${favorites.concurrency.max-requests:200}") int maxConcurrentRequests,
+            @Value("${favorites.concurrency.max-wait:100ms}") Duration maxWait) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(
+                new ConcurrencyLimitFilter(maxConcurrentRequests, maxWait, objectMapper, meterRegistry));
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
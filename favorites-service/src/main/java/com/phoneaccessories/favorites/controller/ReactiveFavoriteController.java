@@ -0,0 +1,332 @@
+package com.phoneaccessories.favorites.controller;
+
+import com.phoneaccessories.favorites.dto.AddFavoriteRequest;
+import com.phoneaccessories.favorites.dto.FavoriteBatchRequest;
+import com.phoneaccessories.favorites.dto.FavoriteBatchResponse;
+import com.phoneaccessories.favorites.dto.FavoriteExistsRequest;
+import com.phoneaccessories.favorites.dto.FavoriteExportFilter;
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.dto.ProductFavoriteCount;
+import com.phoneaccessories.favorites.dto.ProductFavoriteCountsRequest;
+import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
+import com.phoneaccessories.favorites.service.ReactiveFavoriteExportService;
+import com.phoneaccessories.favorites.service.ReactiveFavoriteLeaderboard;
+import com.phoneaccessories.favorites.service.TrendingFavorites;
+import com.phoneaccessories.favorites.service.ReactiveFavoriteService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reactive REST controller for managing user favorites, active with the {@code reactive} profile.
+ * Exposes the same contract as {@link FavoriteController}.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/favorites")
+@Validated
+@Tag(name = "Favorites", description = "User favorites management API")
+public class ReactiveFavoriteController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveFavoriteController.class);
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int DEFAULT_TOP_SIZE = 10;
+    private static final int MAX_TOP_SIZE = 100;
+    private static final String DEFAULT_TRENDING_WINDOW = "1h";
+
+    private final ReactiveFavoriteService favoriteService;
+    private final ReactiveFavoriteExportService exportService;
+    private final ReactiveFavoriteLeaderboard leaderboard;
+    private final TrendingFavorites trending;
+
+    public ReactiveFavoriteController(ReactiveFavoriteService favoriteService, ReactiveFavoriteExportService exportService,
+                                      ReactiveFavoriteLeaderboard leaderboard, TrendingFavorites trending) {
+        this.favoriteService = favoriteService;
+        this.exportService = exportService;
+        this.leaderboard = leaderboard;
+        this.trending = trending;
+    }
+
+    /**
+     * Add a product to user's favorites.
+     */
+    @PostMapping("/{userId}")
+    @Operation(summary = "Add product to favorites", description = "Add a product to user's favorites list")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "Product added to favorites successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid input data"),
+            @ApiResponse(responseCode = "409", description = "Product already in favorites")
+    })
+    public Mono<ResponseEntity<FavoriteResponse>> addFavorite(
+            @Parameter(description = "User ID", required = true)
+            @PathVariable @NotBlank String userId,
+            @Parameter(description = "Add favorite request", required = true)
+            @Valid @RequestBody AddFavoriteRequest request) {
+
+        logger.info("Received request to add favorite for user: {}", userId);
+
+        return favoriteService.addFavorite(userId, request)
+                .map(response -> ResponseEntity.status(HttpStatus.CREATED).body(response));
+    }
+
+    /**
+     * Add and remove several products at once.
+     */
+    @PostMapping("/{userId}/batch")
+    @Operation(summary = "Add and remove favorites in bulk",
+            description = "Apply several add and remove operations at once and report the outcome of each")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Operations applied; see the result of each"),
+            @ApiResponse(responseCode = "400", description = "Invalid input data")
+    })
+    public Mono<ResponseEntity<FavoriteBatchResponse>> applyBatch(
+            @Parameter(description = "User ID", required = true)
+            @PathVariable @NotBlank String userId,
+            @Parameter(description = "Operations to apply", required = true)
+            @Valid @RequestBody FavoriteBatchRequest request) {
+
+        logger.info("Received request to apply {} favorite operations for user: {}", request.getOperations().size(), userId);
+
+        return favoriteService.applyBatch(userId, request.getOperations())
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Remove a product from user's favorites.
+     */
+    @DeleteMapping("/{userId}/{productId}")
+    @Operation(summary = "Remove product from favorites", description = "Remove a product from user's favorites list")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "204", description = "Product removed from favorites successfully"),
+            @ApiResponse(responseCode = "404", description = "Favorite not found")
+    })
+    public Mono<ResponseEntity<Void>> removeFavorite(
+            @Parameter(description = "User ID", required = true)
+            @PathVariable @NotBlank String userId,
+            @Parameter(description = "Product ID", required = true)
+            @PathVariable @NotBlank String productId) {
+
+        logger.info("Received request to remove favorite for user: {} and product: {}", userId, productId);
+
+        return favoriteService.removeFavorite(userId, productId)
+                .then(Mono.fromSupplier(() -> ResponseEntity.noContent().<Void>build()));
+    }
+
+    /**
+     * Get favorite products for a user: all of them, or one page when a limit or cursor is given.
+     */
+    @GetMapping("/{userId}")
+    @Operation(summary = "Get user favorites",
+            description = "Retrieve all favorite products for a user, or one newest-first page when limit or cursor is given")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "User favorites retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid limit or cursor"),
+            @ApiResponse(responseCode = "404", description = "User not found")
+    })
+    public Mono<ResponseEntity<UserFavoritesResponse>> getUserFavorites(
+            @Parameter(description = "User ID", required = true)
+            @PathVariable @NotBlank String userId,
+            @Parameter(description = "Page size (default " + DEFAULT_PAGE_SIZE + ")")
+            @RequestParam(required = false) @Min(1) @Max(MAX_PAGE_SIZE) Integer limit,
+            @Parameter(description = "nextCursor of the previous page")
+            @RequestParam(required = false) String cursor) {
+
+        logger.info("Received request to get favorites for user: {}", userId);
+
+        Mono<UserFavoritesResponse> response = limit == null && cursor == null
+                ? favoriteService.getUserFavorites(userId)
+                : favoriteService.getUserFavoritesPage(userId, limit != null ? limit : DEFAULT_PAGE_SIZE, cursor);
+        return response.map(ResponseEntity::ok);
+    }
+
+    /**
+     * Check if a product is in user's favorites.
+     */
+    @GetMapping("/{userId}/{productId}/exists")
+    @Operation(summary = "Check if product is favorite", description = "Check if a product is in user's favorites")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Check completed successfully")
+    })
+    public Mono<ResponseEntity<Map<String, Boolean>>> isFavorite(
+            @Parameter(description = "User ID", required = true)
+            @PathVariable @NotBlank String userId,
+            @Parameter(description = "Product ID", required = true)
+            @PathVariable @NotBlank String productId) {
+
+        logger.debug("Received request to check if product {} is favorite for user: {}", productId, userId);
+
+        return favoriteService.isFavorite(userId, productId)
+                .map(isFavorite -> ResponseEntity.ok(Map.of("isFavorite", isFavorite)));
+    }
+
+    /**
+     * Check which of several products are in user's favorites.
+     */
+    @PostMapping("/{userId}/exists")
+    @Operation(summary = "Check several products", description = "Check which of the given products are in user's favorites")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Check completed successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid input data")
+    })
+    public Mono<ResponseEntity<Map<String, Boolean>>> areFavorites(
+            @Parameter(description = "User ID", required = true)
+            @PathVariable @NotBlank String userId,
+            @Parameter(description = "Products to check", required = true)
+            @Valid @RequestBody FavoriteExistsRequest request) {
+
+        logger.debug("Received request to check {} products for user: {}", request.getProductIds().size(), userId);
+
+        return favoriteService.areFavorites(userId, request.getProductIds())
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Get the count of favorites for a user.
+     */
+    @GetMapping("/{userId}/count")
+    @Operation(summary = "Get favorites count", description = "Get the count of favorites for a user")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Count retrieved successfully")
+    })
+    public Mono<ResponseEntity<Map<String, Long>>> getFavoriteCount(
+            @Parameter(description = "User ID", required = true)
+            @PathVariable @NotBlank String userId) {
+
+        logger.debug("Received request to get favorite count for user: {}", userId);
+
+        return favoriteService.getFavoriteCount(userId)
+                .map(count -> ResponseEntity.ok(Map.of("count", count)));
+    }
+
+    /**
+     * Remove all favorites for a user.
+     */
+    @DeleteMapping("/{userId}")
+    @Operation(summary = "Remove all favorites", description = "Remove all favorites for a user")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "All favorites removed successfully")
+    })
+    public Mono<ResponseEntity<Map<String, Long>>> removeAllFavorites(
+            @Parameter(description = "User ID", required = true)
+            @PathVariable @NotBlank String userId) {
+
+        logger.info("Received request to remove all favorites for user: {}", userId);
+
+        return favoriteService.removeAllFavorites(userId)
+                .map(deletedCount -> ResponseEntity.ok(Map.of("deletedCount", deletedCount)));
+    }
+
+    /**
+     * Get how many users favorited each of several products.
+     */
+    @PostMapping("/products/counts")
+    @Operation(summary = "Count favorites of products",
+            description = "Get how many users favorited each of the given products, for product cards")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Counts retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid input data")
+    })
+    public Mono<ResponseEntity<Map<String, Long>>> getProductFavoriteCounts(
+            @Parameter(description = "Products to count", required = true)
+            @Valid @RequestBody ProductFavoriteCountsRequest request) {
+
+        logger.debug("Received request to count favorites of {} products", request.getProductIds().size());
+
+        return leaderboard.counts(request.getProductIds())
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Get the most favorited products, overall or in one category.
+     */
+    @GetMapping("/products/top")
+    @Operation(summary = "Get most favorited products",
+            description = "Get the products favorited by the most users, most favorited first")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Invalid number of products")
+    })
+    public Mono<ResponseEntity<List<ProductFavoriteCount>>> getTopProducts(
+            @Parameter(description = "Only products in this category")
+            @RequestParam(required = false) String category,
+            @Parameter(description = "Number of products (default " + DEFAULT_TOP_SIZE + ")")
+            @RequestParam(required = false) @Min(1) @Max(MAX_TOP_SIZE) Integer k) {
+
+        logger.debug("Received request to get the top {} favorited products in category {}", k, category);
+
+        return leaderboard.top(category, k != null ? k : DEFAULT_TOP_SIZE)
+                .map(ResponseEntity::ok);
+    }
+
+    /**
+     * Get the products favorited most over a recent window.
+     */
+    @GetMapping("/products/trending")
+    @Operation(summary = "Get trending products",
+            description = "Get the products favorited most over a recent window, most favorited first. "
+                    + "Counts are estimates, refreshed every few seconds")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products retrieved successfully"),
+            @ApiResponse(responseCode = "400", description = "Unknown window or invalid number of products")
+    })
+    public Mono<ResponseEntity<List<ProductFavoriteCount>>> getTrendingProducts(
+            @Parameter(description = "Window, one of the configured ones such as 1h or 24h (default " + DEFAULT_TRENDING_WINDOW + ")")
+            @RequestParam(required = false) String window,
+            @Parameter(description = "Number of products (default " + DEFAULT_TOP_SIZE + ")")
+            @RequestParam(required = false) @Min(1) @Max(MAX_TOP_SIZE) Integer k) {
+
+        logger.debug("Received request to get the top {} trending products over {}", k, window);
+
+        return Mono.fromSupplier(() -> ResponseEntity.ok(
+                trending.trending(window != null ? window : DEFAULT_TRENDING_WINDOW, k != null ? k : DEFAULT_TOP_SIZE)));
+    }
+
+    /**
+     * Export favorites as newline-delimited JSON, streamed as the client reads them.
+     */
+    @GetMapping(value = "/products/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Export favorites",
+            description = "Stream all favorites, or those matching the given filters, one JSON object per line")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Favorites streamed"),
+            @ApiResponse(responseCode = "400", description = "Invalid date range")
+    })
+    public Flux<FavoriteResponse> exportFavorites(
+            @Parameter(description = "Only favorites of this user")
+            @RequestParam(required = false) String userId,
+            @Parameter(description = "Only favorites in this category")
+            @RequestParam(required = false) String category,
+            @Parameter(description = "Only favorites added at or after this time (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @Parameter(description = "Only favorites added before this time (ISO-8601)")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+
+        FavoriteExportFilter filter = new FavoriteExportFilter(userId, category, from, to);
+        logger.info("Received request to export favorites matching {}", filter);
+
+        return exportService.export(filter);
+    }
+}
@@ -0,0 +1,44 @@
+package com.phoneaccessories.favorites.dto;
+
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * DTO for one operation of a batch request: adding a product (with its details) or removing it.
+ */
+public class FavoriteBatchOperation extends AddFavoriteRequest {
+
+    /**
+     * What to do with the product.
+     */
+    public enum Action {
+        ADD,
+        REMOVE
+    }
+
+    @NotNull(message = "Action cannot be null")
+    private Action action;
+
+    public FavoriteBatchOperation() {}
+
+    public FavoriteBatchOperation(Action action, String productId) {
+        this.action = action;
+        setProductId(productId);
+    }
+
+    // Getters and Setters
+    public Action getAction() {
+        return action;
+    }
+
+    public void setAction(Action action) {
+        this.action = action;
+    }
+
+    @Override
+    public String toString() {
+        return "FavoriteBatchOperation{" +
+                "action=" + action +
+                ", productId='" + getProductId() + '\'' +
+                '}';
+    }
+}
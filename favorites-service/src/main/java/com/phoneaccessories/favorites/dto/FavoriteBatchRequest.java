@@ -0,0 +1,40 @@
+package com.phoneaccessories.favorites.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * DTO for adding and removing several favorites at once.
+ */
+public class FavoriteBatchRequest {
+
+    @NotEmpty(message = "Operations cannot be empty")
+    @Size(max = 100, message = "At most 100 operations can be sent at once")
+    private List<@Valid @NotNull(message = "Operation cannot be null") FavoriteBatchOperation> operations;
+
+    public FavoriteBatchRequest() {}
+
+    public FavoriteBatchRequest(List<FavoriteBatchOperation> operations) {
+        this.operations = operations;
+    }
+
+    // Getters and Setters
+    public List<FavoriteBatchOperation> getOperations() {
+        return operations;
+    }
+
+    public void setOperations(List<FavoriteBatchOperation> operations) {
+        this.operations = operations;
+    }
+
+    @Override
+    public String toString() {
+        return "FavoriteBatchRequest{" +
+                "operations=" + operations +
+                '}';
+    }
+}
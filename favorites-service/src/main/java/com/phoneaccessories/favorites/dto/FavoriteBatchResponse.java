@@ -0,0 +1,44 @@
+package com.phoneaccessories.favorites.dto;
+
+import java.util.List;
+
+/**
+ * DTO for the per-operation outcomes of a batch request, in request order.
+ */
+public class FavoriteBatchResponse {
+
+    private String userId;
+    private List<FavoriteBatchResult> results;
+
+    public FavoriteBatchResponse() {}
+
+    public FavoriteBatchResponse(String userId, List<FavoriteBatchResult> results) {
+        this.userId = userId;
+        this.results = results;
+    }
+
+    // Getters and Setters
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public List<FavoriteBatchResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<FavoriteBatchResult> results) {
+        this.results = results;
+    }
+
+    @Override
+    public String toString() {
+        return "FavoriteBatchResponse{" +
+                "userId='" + userId + '\'' +
+                ", results=" + results +
+                '}';
+    }
+}
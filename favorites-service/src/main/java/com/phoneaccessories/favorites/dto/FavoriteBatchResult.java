@@ -0,0 +1,78 @@
+package com.phoneaccessories.favorites.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * DTO for the outcome of one operation of a batch request.
+ */
+public class FavoriteBatchResult {
+
+    /**
+     * Outcome of an operation.
+     */
+    public enum Status {
+        ADDED,
+        ALREADY_EXISTS,
+        REMOVED,
+        NOT_FOUND
+    }
+
+    private String productId;
+    private FavoriteBatchOperation.Action action;
+    private Status status;
+
+    /** The added favorite; only set for {@link Status#ADDED}. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private FavoriteResponse favorite;
+
+    public FavoriteBatchResult() {}
+
+    public FavoriteBatchResult(String productId, FavoriteBatchOperation.Action action, Status status, FavoriteResponse favorite) {
+        this.productId = productId;
+        this.action = action;
+        this.status = status;
+        this.favorite = favorite;
+    }
+
+    // Getters and Setters
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public FavoriteBatchOperation.Action getAction() {
+        return action;
+    }
+
+    public void setAction(FavoriteBatchOperation.Action action) {
+        this.action = action;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public FavoriteResponse getFavorite() {
+        return favorite;
+    }
+
+    public void setFavorite(FavoriteResponse favorite) {
+        this.favorite = favorite;
+    }
+
+    @Override
+    public String toString() {
+        return "FavoriteBatchResult{" +
+                "productId='" + productId + '\'' +
+                ", action=" + action +
+                ", status=" + status +
+                '}';
+    }
+}
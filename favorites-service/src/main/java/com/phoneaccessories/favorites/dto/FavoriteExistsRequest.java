@@ -0,0 +1,39 @@
+package com.phoneaccessories.favorites.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * DTO for checking several products against a user's favorites at once.
+ */
+public class FavoriteExistsRequest {
+
+    @NotEmpty(message = "Product IDs cannot be empty")
+    @Size(max = 200, message = "At most 200 product IDs can be checked at once")
+    private List<@NotBlank(message = "Product ID cannot be blank") String> productIds;
+
+    public FavoriteExistsRequest() {}
+
+    public FavoriteExistsRequest(List<String> productIds) {
+        this.productIds = productIds;
+    }
+
+    // Getters and Setters
+    public List<String> getProductIds() {
+        return productIds;
+    }
+
+    public void setProductIds(List<String> productIds) {
+        this.productIds = productIds;
+    }
+
+    @Override
+    public String toString() {
+        return "FavoriteExistsRequest{" +
+                "productIds=" + productIds +
+                '}';
+    }
+}
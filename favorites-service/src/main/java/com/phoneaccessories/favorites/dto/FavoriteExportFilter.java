@@ -0,0 +1,56 @@
+package com.phoneaccessories.favorites.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Criteria of a favorites export; unset criteria match every favorite.
+ */
+public class FavoriteExportFilter {
+
+    private final String userId;
+    private final String category;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+
+    /**
+     * @param userId only favorites of this user
+     * @param category only favorites of products in this category
+     * @param from only favorites added at or after this time
+     * @param to only favorites added before this time
+     */
+    public FavoriteExportFilter(String userId, String category, LocalDateTime from, LocalDateTime to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        this.userId = userId;
+        this.category = category;
+        this.from = from;
+        this.to = to;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    @Override
+    public String toString() {
+        return "FavoriteExportFilter{" +
+                "userId='" + userId + '\'' +
+                ", category='" + category + '\'' +
+                ", from=" + from +
+                ", to=" + to +
+                '}';
+    }
+}
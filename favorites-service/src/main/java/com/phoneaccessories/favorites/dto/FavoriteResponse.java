@@ -8,6 +8,7 @@ import java.time.LocalDateTime;
 public class FavoriteResponse {
 
     private String favoriteId;
+    private String userId;
     private String productId;
     private String productName;
     private Double productPrice;
@@ -17,10 +18,11 @@ public class FavoriteResponse {
 
     public FavoriteResponse() {}
 
-    public FavoriteResponse(String favoriteId, String productId, String productName,
+    public FavoriteResponse(String favoriteId, String userId, String productId, String productName,
                             Double productPrice, String productImageUrl, String category,
                             LocalDateTime createdAt) {
         this.favoriteId = favoriteId;
+        this.userId = userId;
         this.productId = productId;
         this.productName = productName;
         this.productPrice = productPrice;
@@ -38,6 +40,14 @@ public class FavoriteResponse {
         this.favoriteId = favoriteId;
     }
 
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
     public String getProductId() {
         return productId;
     }
@@ -90,6 +100,7 @@ public class FavoriteResponse {
     public String toString() {
         return "FavoriteResponse{" +
                 "favoriteId='" + favoriteId + '\'' +
+                ", userId='" + userId + '\'' +
                 ", productId='" + productId + '\'' +
                 ", productName='" + productName + '\'' +
                 ", productPrice=" + productPrice +
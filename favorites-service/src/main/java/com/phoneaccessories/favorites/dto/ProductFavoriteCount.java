@@ -0,0 +1,53 @@
+package com.phoneaccessories.favorites.dto;
+
+/**
+ * DTO for the number of users who favorited a product.
+ */
+public class ProductFavoriteCount {
+
+    private String productId;
+    private String category;
+    private long count;
+
+    public ProductFavoriteCount() {}
+
+    public ProductFavoriteCount(String productId, String category, long count) {
+        this.productId = productId;
+        this.category = category;
+        this.count = count;
+    }
+
+    // Getters and Setters
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductFavoriteCount{" +
+                "productId='" + productId + '\'' +
+                ", category='" + category + '\'' +
+                ", count=" + count +
+                '}';
+    }
+}
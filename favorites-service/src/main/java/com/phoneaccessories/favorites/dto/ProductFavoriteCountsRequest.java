@@ -0,0 +1,39 @@
+package com.phoneaccessories.favorites.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * DTO for getting the favorite counts of several products at once.
+ */
+public class ProductFavoriteCountsRequest {
+
+    @NotEmpty(message = "Product IDs cannot be empty")
+    @Size(max = 500, message = "At most 500 products can be counted at once")
+    private List<@NotBlank(message = "Product ID cannot be blank") String> productIds;
+
+    public ProductFavoriteCountsRequest() {}
+
+    public ProductFavoriteCountsRequest(List<String> productIds) {
+        this.productIds = productIds;
+    }
+
+    // Getters and Setters
+    public List<String> getProductIds() {
+        return productIds;
+    }
+
+    public void setProductIds(List<String> productIds) {
+        this.productIds = productIds;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductFavoriteCountsRequest{" +
+                "productIds=" + productIds +
+                '}';
+    }
+}
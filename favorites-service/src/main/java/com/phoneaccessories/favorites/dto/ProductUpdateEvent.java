@@ -0,0 +1,95 @@
+package com.phoneaccessories.favorites.dto;
+
+/**
+ * Event published when a product of the catalog changes.
+ *
+ * <p>Only the fields that changed need to be set; a null field leaves the denormalized copy on
+ * favorites as it is.
+ */
+public class ProductUpdateEvent {
+
+    private String productId;
+    private String productName;
+    private Double productPrice;
+    private String productImageUrl;
+    private String category;
+
+    public ProductUpdateEvent() {}
+
+    public ProductUpdateEvent(String productId, String productName, Double productPrice,
+                              String productImageUrl, String category) {
+        this.productId = productId;
+        this.productName = productName;
+        this.productPrice = productPrice;
+        this.productImageUrl = productImageUrl;
+        this.category = category;
+    }
+
+    /**
+     * Combine this event with a later one for the same product: fields set by the later event win.
+     *
+     * @param later the later event
+     * @return the combined event
+     */
+    public ProductUpdateEvent mergedWith(ProductUpdateEvent later) {
+        return new ProductUpdateEvent(
+                productId,
+                later.productName != null ? later.productName : productName,
+                later.productPrice != null ? later.productPrice : productPrice,
+                later.productImageUrl != null ? later.productImageUrl : productImageUrl,
+                later.category != null ? later.category : category
+        );
+    }
+
+    // Getters and Setters
+    public String getProductId() {
+        return productId;
+    }
+
+    public void setProductId(String productId) {
+        this.productId = productId;
+    }
+
+    public String getProductName() {
+        return productName;
+    }
+
+    public void setProductName(String productName) {
+        this.productName = productName;
+    }
+
+    public Double getProductPrice() {
+        return productPrice;
+    }
+
+    public void setProductPrice(Double productPrice) {
+        this.productPrice = productPrice;
+    }
+
+    public String getProductImageUrl() {
+        return productImageUrl;
+    }
+
+    public void setProductImageUrl(String productImageUrl) {
+        this.productImageUrl = productImageUrl;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    @Override
+    public String toString() {
+        return "ProductUpdateEvent{" +
+                "productId='" + productId + '\'' +
+                ", productName='" + productName + '\'' +
+                ", productPrice=" + productPrice +
+                ", productImageUrl='" + productImageUrl + '\'' +
+                ", category='" + category + '\'' +
+                '}';
+    }
+}
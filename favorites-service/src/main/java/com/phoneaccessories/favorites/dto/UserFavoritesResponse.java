@@ -1,5 +1,7 @@
 package com.phoneaccessories.favorites.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.List;
 
 /**
@@ -11,8 +13,16 @@ public class UserFavoritesResponse {
     private int totalCount;
     private List<FavoriteResponse> favorites;
 
+    /** Token of the next page; only set on paged responses that have more favorites. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
     public UserFavoritesResponse() {}
 
+    public UserFavoritesResponse(String userId, List<FavoriteResponse> favorites) {
+        this(userId, favorites != null ? favorites.size() : 0, favorites);
+    }
+
     public UserFavoritesResponse(String userId, int totalCount, List<FavoriteResponse> favorites) {
         this.userId = userId;
         this.totalCount = totalCount;
@@ -45,12 +55,21 @@ public class UserFavoritesResponse {
         this.totalCount = favorites != null ? favorites.size() : 0;
     }
 
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
     @Override
     public String toString() {
         return "UserFavoritesResponse{" +
                 "userId='" + userId + '\'' +
                 ", totalCount=" + totalCount +
                 ", favorites=" + favorites +
+                ", nextCursor='" + nextCursor + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,25 @@
+package com.phoneaccessories.favorites.event;
+
+import com.phoneaccessories.favorites.dto.ProductUpdateEvent;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Broker within this JVM, for tests and local runs without Redis: events are delivered to the
+ * listeners on the publishing thread, and acknowledging them has no effect.
+ */
+public class InMemoryProductEventBroker implements ProductEventBroker {
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(ProductUpdateEvent event) {
+        listeners.forEach(listener -> listener.onEvent(event, () -> { }));
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,40 @@
+package com.phoneaccessories.favorites.event;
+
+import com.phoneaccessories.favorites.dto.ProductUpdateEvent;
+
+/**
+ * Transport of product catalog events.
+ *
+ * <p>When several replicas subscribe, each event is delivered to one of them. Listeners
+ * acknowledge an event once its update is applied; a broker that keeps events may deliver an
+ * unacknowledged one again.
+ */
+public interface ProductEventBroker {
+
+    /**
+     * Receives product updates.
+     */
+    @FunctionalInterface
+    interface Listener {
+
+        /**
+         * @param event the event
+         * @param acknowledge to run once the update is applied
+         */
+        void onEvent(ProductUpdateEvent event, Runnable acknowledge);
+    }
+
+    /**
+     * Publish a product update.
+     *
+     * @param event the event
+     */
+    void publish(ProductUpdateEvent event);
+
+    /**
+     * Start delivering product updates to a listener.
+     *
+     * @param listener receives each event, on a broker thread
+     */
+    void subscribe(Listener listener);
+}
@@ -0,0 +1,209 @@
+package com.phoneaccessories.favorites.event;
+
+import com.phoneaccessories.favorites.dto.ProductUpdateEvent;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamMessageListenerContainerOptions;
+import org.springframework.data.redis.stream.StreamMessageListenerContainer.StreamReadRequest;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Broker on a Redis stream read through a consumer group, so each event is handled by one
+ * replica and events published while no replica runs wait in the stream.
+ *
+ * <p>Entries are flat field maps ({@code productId}, {@code productName}, {@code productPrice},
+ * {@code productImageUrl}, {@code category}; absent fields are unchanged), which any producer can
+ * {@code XADD}. Entries are acknowledged once the listener applied them, so an entry buffered by
+ * a replica that dies stays pending in the group. On subscribing, a replica takes over and
+ * delivers again its own pending entries, left by its previous run, and those of other consumers
+ * idle for longer than the claim idle time. Entries that cannot be parsed are acknowledged and
+ * dropped.
+ */
+public class RedisStreamProductEventBroker implements ProductEventBroker {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisStreamProductEventBroker.class);
+
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+    private static final int PENDING_BATCH = 1000;
+
+    private final StringRedisTemplate redisTemplate;
+    private final String stream;
+    private final String group;
+    private final String consumer;
+    private final Duration claimIdle;
+    private final StreamMessageListenerContainer<String, MapRecord<String, String, String>> container;
+
+    public RedisStreamProductEventBroker(StringRedisTemplate redisTemplate, String stream, String group,
+                                         String consumer, Duration pollTimeout, Duration claimIdle) {
+        this.redisTemplate = redisTemplate;
+        this.stream = stream;
+        this.group = group;
+        this.consumer = consumer;
+        this.claimIdle = claimIdle;
+        StreamMessageListenerContainerOptions<String, MapRecord<String, String, String>> options =
+                StreamMessageListenerContainerOptions.builder()
+                        .pollTimeout(pollTimeout)
+                        .build();
+        this.container = StreamMessageListenerContainer.create(redisTemplate.getRequiredConnectionFactory(), options);
+    }
+
+    @Override
+    public void publish(ProductUpdateEvent event) {
+        redisTemplate.opsForStream().add(StreamRecords.mapBacked(toFields(event)).withStreamKey(stream));
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        claimPending(listener);
+
+        StreamReadRequest<String> request = StreamReadRequest
+                .builder(StreamOffset.create(stream, ReadOffset.lastConsumed()))
+                .consumer(Consumer.from(group, consumer))
+                .autoAcknowledge(false)
+                // Keep polling through errors; onError backs off and creates the group if needed
+                .cancelOnError(e -> false)
+                .errorHandler(this::onError)
+                .build();
+        container.register(request, record -> deliver(record.getId(), record.getValue(), listener));
+        if (!container.isRunning()) {
+            container.start();
+        }
+    }
+
+    /**
+     * Take over the pending entries of this consumer and of idle consumers, and deliver them.
+     */
+    private void claimPending(Listener listener) {
+        try {
+            List<PendingMessage> pending = redisTemplate.opsForStream()
+                    .pending(stream, group, Range.unbounded(), PENDING_BATCH)
+                    .stream()
+                    .toList();
+            RecordId[] own = pending.stream()
+                    .filter(message -> message.getConsumerName().equals(consumer))
+                    .map(PendingMessage::getId)
+                    .toArray(RecordId[]::new);
+            RecordId[] idle = pending.stream()
+                    .filter(message -> !message.getConsumerName().equals(consumer))
+                    .filter(message -> message.getElapsedTimeSinceLastDelivery().compareTo(claimIdle) >= 0)
+                    .map(PendingMessage::getId)
+                    .toArray(RecordId[]::new);
+            if (own.length > 0) {
+                redisTemplate.opsForStream().claim(stream, group, consumer, Duration.ZERO, own)
+                        .forEach(record -> deliver(record.getId(), record.getValue(), listener));
+            }
+            if (idle.length > 0) {
+                redisTemplate.opsForStream().claim(stream, group, consumer, claimIdle, idle)
+                        .forEach(record -> deliver(record.getId(), record.getValue(), listener));
+            }
+            if (own.length + idle.length > 0) {
+                logger.info("Claimed {} pending product events from {}", own.length + idle.length, stream);
+            }
+        } catch (RuntimeException e) {
+            // NOGROUP on first start; entries left pending are claimed on the next start
+            logger.debug("Could not claim pending product events from {}: {}", stream, e.getMessage());
+        }
+    }
+
+    private void deliver(RecordId id, Map<?, ?> fields, Listener listener) {
+        ProductUpdateEvent event;
+        try {
+            Map<String, String> values = new HashMap<>();
+            fields.forEach((field, value) -> values.put(String.valueOf(field), String.valueOf(value)));
+            event = fromFields(values);
+        } catch (RuntimeException e) {
+            logger.warn("Dropped product event {}: {}", id, e.getMessage());
+            acknowledge(id);
+            return;
+        }
+        listener.onEvent(event, () -> acknowledge(id));
+    }
+
+    private void acknowledge(RecordId id) {
+        try {
+            redisTemplate.opsForStream().acknowledge(stream, group, id);
+        } catch (RuntimeException e) {
+            // Left pending; claimed and applied again after a restart, which is harmless
+            logger.warn("Could not acknowledge product event {}: {}", id, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        container.stop();
+    }
+
+    private void onError(Throwable error) {
+        String message = String.valueOf(error.getMessage());
+        if (message.contains("NOGROUP")) {
+            createGroup();
+        } else {
+            logger.warn("Reading product events from {} failed, retrying: {}", stream, message);
+        }
+
+        try {
+            Thread.sleep(RETRY_DELAY.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void createGroup() {
+        try {
+            // Also creates the stream; a new group starts with the events published from now on
+            redisTemplate.opsForStream().createGroup(stream, ReadOffset.latest(), group);
+            logger.info("Created consumer group {} on stream {}", group, stream);
+        } catch (RuntimeException e) {
+            // BUSYGROUP: another replica created it first
+            logger.debug("Could not create consumer group {} on stream {}: {}", group, stream, e.getMessage());
+        }
+    }
+
+    static Map<String, String> toFields(ProductUpdateEvent event) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("productId", event.getProductId());
+        if (event.getProductName() != null) {
+            fields.put("productName", event.getProductName());
+        }
+        if (event.getProductPrice() != null) {
+            fields.put("productPrice", event.getProductPrice().toString());
+        }
+        if (event.getProductImageUrl() != null) {
+            fields.put("productImageUrl", event.getProductImageUrl());
+        }
+        if (event.getCategory() != null) {
+            fields.put("category", event.getCategory());
+        }
+        return fields;
+    }
+
+    static ProductUpdateEvent fromFields(Map<String, String> fields) {
+        String productId = fields.get("productId");
+        if (productId == null || productId.isBlank()) {
+            throw new IllegalArgumentException("Product event without productId");
+        }
+        String price = fields.get("productPrice");
+        return new ProductUpdateEvent(
+                productId,
+                fields.get("productName"),
+                price != null ? Double.valueOf(price) : null,
+                fields.get("productImageUrl"),
+                fields.get("category")
+        );
+    }
+}
@@ -0,0 +1,11 @@
+package com.phoneaccessories.favorites.exception;
+
+/**
+ * Exception thrown when too many favorite writes wait to be flushed to the database.
+ */
+public class WriteBacklogFullException extends RuntimeException {
+
+    public WriteBacklogFullException(String message) {
+        super(message);
+    }
+}
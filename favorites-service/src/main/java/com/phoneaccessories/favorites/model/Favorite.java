@@ -1,9 +1,10 @@
 package com.phoneaccessories.favorites.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
-import org.springframework.data.mongodb.core.index.Indexed;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
@@ -12,15 +13,23 @@ import java.util.Objects;
 
 /**
  * Entity representing a user's favorite product.
+ *
+ * <p>The first compound index serves user lookups as well as newest-first keyset pages. The
+ * unique one makes a product a favorite of a user at most once. The product index serves
+ * catalog updates, which touch every favorite of a product.
  */
 @Document(collection = "favorites")
+@CompoundIndexes({
+        @CompoundIndex(name = "user_created_at_id", def = "{'user_id': 1, 'created_at': -1, '_id': -1}"),
+        @CompoundIndex(name = "user_product_unique", def = "{'user_id': 1, 'product_id': 1}", unique = true),
+        @CompoundIndex(name = "product_id", def = "{'product_id': 1}")
+})
 public class Favorite {
 
     @Id
     private String id;
 
     @NotBlank(message = "User ID cannot be blank")
-    @Indexed
     @Field("user_id")
     private String userId;
 
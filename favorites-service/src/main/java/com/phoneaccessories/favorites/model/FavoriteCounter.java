@@ -0,0 +1,81 @@
+package com.phoneaccessories.favorites.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+
+import java.time.LocalDateTime;
+
+/**
+ * Materialized number of favorites of a user, kept next to the favorites so that counting
+ * them does not scan the user's documents.
+ */
+@Document(collection = "favorite_counters")
+public class FavoriteCounter {
+
+    /** The user ID. */
+    @Id
+    private String userId;
+
+    @Field("count")
+    private long count;
+
+    @Indexed(name = "updated_at")
+    @Field("updated_at")
+    private LocalDateTime updatedAt;
+
+    /** Sequence number of the last write-behind change counted, null if none was. */
+    @Field("write_behind_sequence")
+    private Long writeBehindSequence;
+
+    public FavoriteCounter() {}
+
+    public FavoriteCounter(String userId, long count) {
+        this.userId = userId;
+        this.count = count;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    // Getters and Setters
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public Long getWriteBehindSequence() {
+        return writeBehindSequence;
+    }
+
+    public void setWriteBehindSequence(Long writeBehindSequence) {
+        this.writeBehindSequence = writeBehindSequence;
+    }
+
+    @Override
+    public String toString() {
+        return "FavoriteCounter{" +
+                "userId='" + userId + '\'' +
+                ", count=" + count +
+                ", updatedAt=" + updatedAt +
+                '}';
+    }
+}
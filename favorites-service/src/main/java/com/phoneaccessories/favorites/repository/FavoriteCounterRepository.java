@@ -0,0 +1,12 @@
+package com.phoneaccessories.favorites.repository;
+
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository interface for FavoriteCounter entity.
+ */
+@Repository
+public interface FavoriteCounterRepository extends MongoRepository<FavoriteCounter, String>, FavoriteCounterRepositoryCustom {
+}
@@ -0,0 +1,78 @@
+package com.phoneaccessories.favorites.repository;
+
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Atomic updates of {@link FavoriteCounterRepository}.
+ */
+public interface FavoriteCounterRepositoryCustom {
+
+    /**
+     * Atomically add to a user's counter with {@code $inc}.
+     *
+     * <p>A missing counter is left missing rather than created from the delta alone; it is
+     * initialized from a full count on its first read.
+     *
+     * @param userId the user ID
+     * @param delta the change in the number of favorites
+     */
+    void increment(String userId, long delta);
+
+    /**
+     * Add the changes of logged writes to users' counters in one ordered bulk write, like
+     * {@link #increment}, each at most once.
+     *
+     * <p>A counter stores the sequence number of the last change added to it, and a change with a
+     * sequence number not above it is skipped, so that changes applied again after a failed flush
+     * are not counted twice. Sequence numbers must grow with each change of a user.
+     *
+     * @param changes the changes, in sequence order
+     */
+    void incrementOnce(List<CounterChange> changes);
+
+    /**
+     * Forget the sequence numbers stored by {@link #incrementOnce}, before changes numbered from
+     * the start again are added.
+     */
+    void clearSequences();
+
+    /**
+     * Create a user's counter unless it exists.
+     *
+     * @param userId the user ID
+     * @param count the counted number of favorites
+     * @return the stored count: the given one, or the existing one if the counter already existed
+     */
+    long initialize(String userId, long count);
+
+    /**
+     * Find the counters created or updated since the given time.
+     *
+     * @param since the earliest update time
+     * @return the counters
+     */
+    List<FavoriteCounter> findUpdatedSince(LocalDateTime since);
+
+    /**
+     * Overwrite a user's counter, unless it changed since it was read.
+     *
+     * @param userId the user ID
+     * @param expected the count the counter was read with
+     * @param count the new count
+     * @return whether the counter still held the expected count and was overwritten
+     */
+    boolean replaceCount(String userId, long expected, long count);
+
+    /**
+     * A change of a user's number of favorites, numbered by the write that made it.
+     *
+     * @param userId the user ID
+     * @param sequence the sequence number of the write
+     * @param delta the change in the number of favorites
+     */
+    record CounterChange(String userId, long sequence, long delta) {
+    }
+}
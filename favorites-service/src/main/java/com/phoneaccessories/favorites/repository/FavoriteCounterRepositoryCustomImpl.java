@@ -0,0 +1,91 @@
+package com.phoneaccessories.favorites.repository;
+
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * {@link MongoTemplate} based implementation of {@link FavoriteCounterRepositoryCustom}.
+ */
+public class FavoriteCounterRepositoryCustomImpl implements FavoriteCounterRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    public FavoriteCounterRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void increment(String userId, long delta) {
+        Update update = new Update()
+                .inc("count", delta)
+                .set("updatedAt", LocalDateTime.now());
+        mongoTemplate.updateFirst(Query.query(Criteria.where("userId").is(userId)), update, FavoriteCounter.class);
+    }
+
+    @Override
+    public void incrementOnce(List<CounterChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        // Ordered, so that each change of a user sees the sequence number stored by the previous one
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, FavoriteCounter.class);
+        LocalDateTime now = LocalDateTime.now();
+        for (CounterChange change : changes) {
+            // Also matches counters without a sequence number
+            Query query = Query.query(Criteria.where("userId").is(change.userId())
+                    .and("writeBehindSequence").not().gte(change.sequence()));
+            operations.updateOne(query, new Update()
+                    .inc("count", change.delta())
+                    .set("writeBehindSequence", change.sequence())
+                    .set("updatedAt", now));
+        }
+        operations.execute();
+    }
+
+    @Override
+    public void clearSequences() {
+        mongoTemplate.updateMulti(Query.query(Criteria.where("writeBehindSequence").exists(true)),
+                new Update().unset("writeBehindSequence"), FavoriteCounter.class);
+    }
+
+    @Override
+    public long initialize(String userId, long count) {
+        Update update = new Update()
+                .setOnInsert("count", count)
+                .setOnInsert("updatedAt", LocalDateTime.now());
+        FavoriteCounter counter = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("userId").is(userId)),
+                update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                FavoriteCounter.class
+        );
+        return counter != null ? counter.getCount() : count;
+    }
+
+    @Override
+    public List<FavoriteCounter> findUpdatedSince(LocalDateTime since) {
+        return mongoTemplate.find(Query.query(Criteria.where("updatedAt").gte(since)), FavoriteCounter.class);
+    }
+
+    @Override
+    public boolean replaceCount(String userId, long expected, long count) {
+        Update update = new Update()
+                .set("count", count)
+                .set("updatedAt", LocalDateTime.now());
+        FavoriteCounter replaced = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("userId").is(userId).and("count").is(expected)),
+                update,
+                FavoriteCounter.class
+        );
+        return replaced != null;
+    }
+}
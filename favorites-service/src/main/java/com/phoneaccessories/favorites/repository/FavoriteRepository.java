@@ -5,6 +5,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,7 +13,7 @@ import java.util.Optional;
  * Repository interface for Favorite entity.
  */
 @Repository
-public interface FavoriteRepository extends MongoRepository<Favorite, String> {
+public interface FavoriteRepository extends MongoRepository<Favorite, String>, FavoriteRepositoryCustom {
 
     /**
      * Find all favorites for a specific user.
@@ -22,6 +23,15 @@ public interface FavoriteRepository extends MongoRepository<Favorite, String> {
      */
     List<Favorite> findByUserId(String userId);
 
+    /**
+     * Find the product IDs a user has favorited. Only the product ID is fetched.
+     *
+     * @param userId the user ID
+     * @return the user's favorites, with only the product ID populated
+     */
+    @Query(value = "{'user_id': ?0}", fields = "{'product_id': 1}")
+    List<Favorite> findProductIdsByUserId(String userId);
+
     /**
      * Find a specific favorite by user ID and product ID.
      *
@@ -31,6 +41,17 @@ public interface FavoriteRepository extends MongoRepository<Favorite, String> {
      */
     Optional<Favorite> findByUserIdAndProductId(String userId, String productId);
 
+    /**
+     * Find which of the given products are favorites of a user, in a single {@code $in} query.
+     * Only the product ID is fetched.
+     *
+     * @param userId the user ID
+     * @param productIds the product IDs to check
+     * @return the matching favorites, with only the product ID populated
+     */
+    @Query(value = "{'user_id': ?0, 'product_id': {$in: ?1}}", fields = "{'product_id': 1}")
+    List<Favorite> findProductIdsByUserIdAndProductIdIn(String userId, Collection<String> productIds);
+
     /**
      * Check if a favorite exists for a user and product.
      *
@@ -63,7 +84,7 @@ public interface FavoriteRepository extends MongoRepository<Favorite, String> {
      * @param userId the user ID
      * @return list of favorites ordered by creation date
      */
-    @Query("{'user_id': ?0}")
+    @Query(value = "{'user_id': ?0}", sort = "{'created_at': -1, '_id': -1}")
     List<Favorite> findByUserIdOrderByCreatedAtDesc(String userId);
 
     /**
@@ -73,4 +94,18 @@ public interface FavoriteRepository extends MongoRepository<Favorite, String> {
      * @return number of deleted documents
      */
     long deleteByUserId(String userId);
+
+    /**
+     * Find the favorite with the lowest ID, the oldest one unless IDs were assigned out of order.
+     *
+     * @return the first favorite in {@code _id} order, if any
+     */
+    Optional<Favorite> findFirstByOrderByIdAsc();
+
+    /**
+     * Find the favorite with the highest ID, the newest one unless IDs were assigned out of order.
+     *
+     * @return the last favorite in {@code _id} order, if any
+     */
+    Optional<Favorite> findFirstByOrderByIdDesc();
 }
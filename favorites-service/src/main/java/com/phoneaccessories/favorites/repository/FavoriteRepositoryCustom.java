@@ -0,0 +1,121 @@
+package com.phoneaccessories.favorites.repository;
+
+import com.phoneaccessories.favorites.dto.FavoriteExportFilter;
+import com.phoneaccessories.favorites.dto.ProductFavoriteCount;
+import com.phoneaccessories.favorites.dto.ProductUpdateEvent;
+import com.phoneaccessories.favorites.model.Favorite;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Queries of {@link FavoriteRepository} that cannot be derived from method names.
+ */
+public interface FavoriteRepositoryCustom {
+
+    /**
+     * Find a page of a user's favorites, newest first, using keyset pagination.
+     *
+     * <p>The page starts right after the favorite identified by {@code createdAt} and {@code id}
+     * in {@code (created_at desc, _id desc)} order, so the query walks the
+     * {@code (user_id, created_at, _id)} index instead of skipping documents.
+     *
+     * @param userId the user ID
+     * @param createdAt creation date of the last favorite of the previous page, or null for the first page
+     * @param id ID of the last favorite of the previous page, or null for the first page
+     * @param limit maximum number of favorites to return
+     * @return the favorites of the page
+     */
+    List<Favorite> findPageByUserId(String userId, LocalDateTime createdAt, String id, int limit);
+
+    /**
+     * Insert a favorite unless the user already has the product, in a single upsert.
+     *
+     * <p>All fields are written with {@code $setOnInsert}, so an existing favorite is left as it
+     * is. The unique {@code (user_id, product_id)} index decides between concurrent inserts.
+     *
+     * @param favorite the favorite to insert; its ID is set when it was inserted
+     * @return true if the favorite was inserted, false if the user already had the product
+     */
+    boolean insertIfAbsent(Favorite favorite);
+
+    /**
+     * Insert and delete several favorites of a user in one unordered bulk write.
+     *
+     * <p>Insertions are the same upserts as {@link #insertIfAbsent(Favorite)}.
+     *
+     * @param userId the user ID
+     * @param additions favorites to insert unless the user already has the product; the ID is
+     *                  set on each favorite that was inserted
+     * @param removals product IDs to delete
+     * @return number of deleted favorites
+     */
+    long bulkWrite(String userId, List<Favorite> additions, Collection<String> removals);
+
+    /**
+     * Insert and delete favorites of any users in one unordered bulk write.
+     *
+     * <p>Insertions are the same upserts as {@link #insertIfAbsent(Favorite)}, keeping the ID
+     * already assigned to each favorite. A removal of a favorite that has an ID deletes the
+     * stored document unless it has that ID, and runs before the insertions: passing the same
+     * favorite in both replaces the stored one with it. Repeating a call has no further effect.
+     *
+     * @param additions favorites to insert unless the user already has the product
+     * @param removals favorites to delete, identified by user and product, and by ID if they have one
+     */
+    void applyWrites(Collection<Favorite> additions, Collection<Favorite> removals);
+
+    /**
+     * Stream the favorites matching an export filter from a cursor, in no particular order.
+     *
+     * <p>Documents are fetched {@code batchSize} at a time; the stream must be closed to release
+     * the cursor.
+     *
+     * @param filter the export criteria
+     * @param batchSize the number of documents per cursor batch
+     * @return the matching favorites
+     */
+    Stream<Favorite> streamForExport(FavoriteExportFilter filter, int batchSize);
+
+    /**
+     * Find the users holding a favorite whose product details differ from the given updates,
+     * in a single distinct query over the {@code product_id} index.
+     *
+     * @param updates product updates; null fields are ignored
+     * @return IDs of the users whose favorites {@link #applyProductUpdates(Collection)} would change
+     */
+    Set<String> findUserIdsAffectedBy(Collection<ProductUpdateEvent> updates);
+
+    /**
+     * Copy product details onto the favorites of those products, with one {@code updateMany} per
+     * product sent in a single unordered bulk write. Favorites already up to date are not matched,
+     * so they are not rewritten.
+     *
+     * @param updates product updates; null fields are left as they are
+     * @return number of modified favorites
+     */
+    long applyProductUpdates(Collection<ProductUpdateEvent> updates);
+
+    /**
+     * Count the favorites of each product among those whose ID lies in {@code [fromId, toId)}, in
+     * one aggregation that reads the range from the {@code _id} index. Disjoint ranges can be
+     * counted in parallel and their counts added up.
+     *
+     * @param fromId the lowest ID counted, or null for no lower bound
+     * @param toId the ID above the highest one counted, or null for no upper bound
+     * @return one count per product, with a category the product was favorited in if any
+     */
+    List<ProductFavoriteCount> countByProduct(String fromId, String toId);
+
+    /**
+     * Count the favorites of each of the given products, in one aggregation over the
+     * {@code product_id} index.
+     *
+     * @param productIds the products
+     * @return one count per product favorited at least once, without a category
+     */
+    List<ProductFavoriteCount> countByProductIdIn(Collection<String> productIds);
+}
@@ -0,0 +1,313 @@
+package com.phoneaccessories.favorites.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.result.UpdateResult;
+import com.phoneaccessories.favorites.dto.FavoriteExportFilter;
+import com.phoneaccessories.favorites.dto.ProductFavoriteCount;
+import com.phoneaccessories.favorites.dto.ProductUpdateEvent;
+import com.phoneaccessories.favorites.model.Favorite;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * {@link MongoTemplate} based implementation of {@link FavoriteRepositoryCustom}.
+ */
+public class FavoriteRepositoryCustomImpl implements FavoriteRepositoryCustom {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+
+    private final MongoTemplate mongoTemplate;
+
+    public FavoriteRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public List<Favorite> findPageByUserId(String userId, LocalDateTime createdAt, String id, int limit) {
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if (createdAt != null && id != null) {
+            criteria = criteria.orOperator(
+                    Criteria.where("createdAt").lt(createdAt),
+                    Criteria.where("createdAt").is(createdAt).and("id").lt(id)
+            );
+        }
+
+        Query query = Query.query(criteria)
+                .with(NEWEST_FIRST)
+                .limit(limit);
+        return mongoTemplate.find(query, Favorite.class);
+    }
+
+    @Override
+    public boolean insertIfAbsent(Favorite favorite) {
+        try {
+            UpdateResult result = mongoTemplate.upsert(productQuery(favorite.getUserId(), favorite.getProductId()),
+                    insertUpdate(favorite), Favorite.class);
+            if (result.getUpsertedId() == null) {
+                return false;
+            }
+            favorite.setId(toId(result.getUpsertedId()));
+            return true;
+        } catch (DuplicateKeyException e) {
+            // A concurrent upsert inserted the same favorite first
+            return false;
+        }
+    }
+
+    @Override
+    public long bulkWrite(String userId, List<Favorite> additions, Collection<String> removals) {
+        if (additions.isEmpty() && removals.isEmpty()) {
+            return 0;
+        }
+
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Favorite.class);
+        for (Favorite favorite : additions) {
+            operations.upsert(productQuery(userId, favorite.getProductId()), insertUpdate(favorite));
+        }
+        for (String productId : removals) {
+            operations.remove(productQuery(userId, productId));
+        }
+
+        BulkWriteResult result;
+        try {
+            result = operations.execute();
+        } catch (BulkOperationException e) {
+            // Concurrent upserts of the same favorite lose on the unique index: those already existed
+            boolean onlyDuplicates = e.getErrors().stream().allMatch(error -> error.getCode() == DUPLICATE_KEY);
+            if (!onlyDuplicates) {
+                throw e;
+            }
+            result = e.getResult();
+        }
+
+        // Upserts come first in the bulk, so their index is the position in additions
+        for (BulkWriteUpsert upsert : result.getUpserts()) {
+            additions.get(upsert.getIndex()).setId(toId(upsert.getId()));
+        }
+        return result.getDeletedCount();
+    }
+
+    @Override
+    public void applyWrites(Collection<Favorite> additions, Collection<Favorite> removals) {
+        if (additions.isEmpty() && removals.isEmpty()) {
+            return;
+        }
+
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Favorite.class);
+        boolean replacing = false;
+        for (Favorite favorite : removals) {
+            Query query = productQuery(favorite.getUserId(), favorite.getProductId());
+            if (favorite.getId() != null) {
+                // Replaced: the new document, if a previous call inserted it already, is kept
+                query.addCriteria(Criteria.where("id").ne(favorite.getId()));
+                replacing = true;
+            }
+            operations.remove(query);
+        }
+        if (replacing) {
+            // An unordered bulk write may run the upsert before the removal it has to follow
+            executeIgnoringDuplicates(operations);
+            operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Favorite.class);
+        }
+        for (Favorite favorite : additions) {
+            operations.upsert(productQuery(favorite.getUserId(), favorite.getProductId()), insertUpdate(favorite));
+        }
+        executeIgnoringDuplicates(operations);
+    }
+
+    private static void executeIgnoringDuplicates(BulkOperations operations) {
+        try {
+            operations.execute();
+        } catch (BulkOperationException e) {
+            // Favorites inserted concurrently already exist, which is all that was asked
+            if (!e.getErrors().stream().allMatch(error -> error.getCode() == DUPLICATE_KEY)) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public Stream<Favorite> streamForExport(FavoriteExportFilter filter, int batchSize) {
+        return mongoTemplate.stream(exportQuery(filter).cursorBatchSize(batchSize), Favorite.class);
+    }
+
+    @Override
+    public Set<String> findUserIdsAffectedBy(Collection<ProductUpdateEvent> updates) {
+        List<Criteria> stale = new ArrayList<>(updates.size());
+        for (ProductUpdateEvent update : updates) {
+            Map<String, Object> fields = productFields(update);
+            if (!fields.isEmpty()) {
+                stale.add(staleCriteria(update.getProductId(), fields));
+            }
+        }
+        if (stale.isEmpty()) {
+            return Set.of();
+        }
+
+        Query query = Query.query(new Criteria().orOperator(stale));
+        return new HashSet<>(mongoTemplate.findDistinct(query, "userId", Favorite.class, String.class));
+    }
+
+    @Override
+    public long applyProductUpdates(Collection<ProductUpdateEvent> updates) {
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Favorite.class);
+        boolean empty = true;
+        for (ProductUpdateEvent update : updates) {
+            Map<String, Object> fields = productFields(update);
+            if (fields.isEmpty()) {
+                continue;
+            }
+            Update set = new Update();
+            fields.forEach(set::set);
+            operations.updateMulti(Query.query(staleCriteria(update.getProductId(), fields)), set);
+            empty = false;
+        }
+        return empty ? 0 : operations.execute().getModifiedCount();
+    }
+
+    @Override
+    public List<ProductFavoriteCount> countByProduct(String fromId, String toId) {
+        List<Document> pipeline = new ArrayList<>();
+        Document range = new Document();
+        if (fromId != null) {
+            range.append("$gte", new ObjectId(fromId));
+        }
+        if (toId != null) {
+            range.append("$lt", new ObjectId(toId));
+        }
+        if (!range.isEmpty()) {
+            pipeline.add(new Document("$match", new Document("_id", range)));
+        }
+        pipeline.add(new Document("$group", new Document("_id", "$product_id")
+                .append("category", new Document("$max", "$category"))
+                .append("count", new Document("$sum", 1L))));
+
+        List<ProductFavoriteCount> counts = new ArrayList<>();
+        for (Document document : mongoTemplate.getCollection(mongoTemplate.getCollectionName(Favorite.class))
+                .aggregate(pipeline).allowDiskUse(true)) {
+            counts.add(new ProductFavoriteCount(document.getString("_id"), document.getString("category"),
+                    ((Number) document.get("count")).longValue()));
+        }
+        return counts;
+    }
+
+    @Override
+    public List<ProductFavoriteCount> countByProductIdIn(Collection<String> productIds) {
+        List<ProductFavoriteCount> counts = new ArrayList<>();
+        for (Document document : mongoTemplate.getCollection(mongoTemplate.getCollectionName(Favorite.class))
+                .aggregate(productCountsPipeline(productIds))) {
+            counts.add(toProductCount(document));
+        }
+        return counts;
+    }
+
+    static List<Document> productCountsPipeline(Collection<String> productIds) {
+        return List.of(
+                new Document("$match", new Document("product_id", new Document("$in", List.copyOf(productIds)))),
+                new Document("$group", new Document("_id", "$product_id")
+                        .append("count", new Document("$sum", 1L))));
+    }
+
+    static ProductFavoriteCount toProductCount(Document document) {
+        return new ProductFavoriteCount(document.getString("_id"), null, ((Number) document.get("count")).longValue());
+    }
+
+    /**
+     * Favorites of the product where at least one of the fields differs from its new value.
+     */
+    private static Criteria staleCriteria(String productId, Map<String, Object> fields) {
+        Criteria[] differs = fields.entrySet().stream()
+                .map(field -> Criteria.where(field.getKey()).ne(field.getValue()))
+                .toArray(Criteria[]::new);
+        return Criteria.where("productId").is(productId).orOperator(differs);
+    }
+
+    /**
+     * The product details set by an update, keyed by property name.
+     */
+    private static Map<String, Object> productFields(ProductUpdateEvent update) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        if (update.getProductName() != null) {
+            fields.put("productName", update.getProductName());
+        }
+        if (update.getProductPrice() != null) {
+            fields.put("productPrice", update.getProductPrice());
+        }
+        if (update.getProductImageUrl() != null) {
+            fields.put("productImageUrl", update.getProductImageUrl());
+        }
+        if (update.getCategory() != null) {
+            fields.put("category", update.getCategory());
+        }
+        return fields;
+    }
+
+    /**
+     * Query of the favorites matching an export filter, shared with the reactive repository.
+     */
+    static Query exportQuery(FavoriteExportFilter filter) {
+        Criteria criteria = new Criteria();
+        if (filter.getUserId() != null) {
+            criteria.and("userId").is(filter.getUserId());
+        }
+        if (filter.getCategory() != null) {
+            criteria.and("category").is(filter.getCategory());
+        }
+        if (filter.getFrom() != null || filter.getTo() != null) {
+            Criteria createdAt = criteria.and("createdAt");
+            if (filter.getFrom() != null) {
+                createdAt.gte(filter.getFrom());
+            }
+            if (filter.getTo() != null) {
+                createdAt.lt(filter.getTo());
+            }
+        }
+        return Query.query(criteria);
+    }
+
+    private static Query productQuery(String userId, String productId) {
+        return Query.query(Criteria.where("userId").is(userId).and("productId").is(productId));
+    }
+
+    /**
+     * Update writing every field of the favorite with {@code $setOnInsert}, including its ID if
+     * one was already assigned.
+     */
+    private Update insertUpdate(Favorite favorite) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(favorite, document);
+        if (favorite.getId() == null) {
+            document.remove("_id");
+        }
+
+        Update update = new Update();
+        document.forEach(update::setOnInsert);
+        return update;
+    }
+
+    private static String toId(BsonValue id) {
+        return id.asObjectId().getValue().toHexString();
+    }
+}
@@ -0,0 +1,13 @@
+package com.phoneaccessories.favorites.repository;
+
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Non-blocking counterpart of {@link FavoriteCounterRepository}, used by the reactive stack.
+ */
+@Repository
+public interface ReactiveFavoriteCounterRepository extends ReactiveMongoRepository<FavoriteCounter, String>,
+        ReactiveFavoriteCounterRepositoryCustom {
+}
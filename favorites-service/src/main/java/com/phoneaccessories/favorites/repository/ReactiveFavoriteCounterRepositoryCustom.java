@@ -0,0 +1,21 @@
+package com.phoneaccessories.favorites.repository;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Atomic updates of {@link ReactiveFavoriteCounterRepository}. They behave like their
+ * {@link FavoriteCounterRepositoryCustom} counterparts; drift is repaired by the blocking
+ * reconciler, which runs on either stack.
+ */
+public interface ReactiveFavoriteCounterRepositoryCustom {
+
+    /**
+     * @see FavoriteCounterRepositoryCustom#increment(String, long)
+     */
+    Mono<Void> increment(String userId, long delta);
+
+    /**
+     * @see FavoriteCounterRepositoryCustom#initialize(String, long)
+     */
+    Mono<Long> initialize(String userId, long count);
+}
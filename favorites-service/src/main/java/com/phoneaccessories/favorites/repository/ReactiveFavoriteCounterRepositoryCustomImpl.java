@@ -0,0 +1,46 @@
+package com.phoneaccessories.favorites.repository;
+
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * {@link ReactiveMongoTemplate} based implementation of {@link ReactiveFavoriteCounterRepositoryCustom}.
+ */
+public class ReactiveFavoriteCounterRepositoryCustomImpl implements ReactiveFavoriteCounterRepositoryCustom {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public ReactiveFavoriteCounterRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<Void> increment(String userId, long delta) {
+        Update update = new Update()
+                .inc("count", delta)
+                .set("updatedAt", LocalDateTime.now());
+        return mongoTemplate.updateFirst(Query.query(Criteria.where("userId").is(userId)), update, FavoriteCounter.class)
+                .then();
+    }
+
+    @Override
+    public Mono<Long> initialize(String userId, long count) {
+        Update update = new Update()
+                .setOnInsert("count", count)
+                .setOnInsert("updatedAt", LocalDateTime.now());
+        return mongoTemplate.findAndModify(
+                        Query.query(Criteria.where("userId").is(userId)),
+                        update,
+                        FindAndModifyOptions.options().upsert(true).returnNew(true),
+                        FavoriteCounter.class)
+                .map(FavoriteCounter::getCount)
+                .defaultIfEmpty(count);
+    }
+}
@@ -0,0 +1,79 @@
+package com.phoneaccessories.favorites.repository;
+
+import com.phoneaccessories.favorites.model.Favorite;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Non-blocking counterpart of {@link FavoriteRepository}, used by the reactive stack.
+ */
+@Repository
+public interface ReactiveFavoriteRepository extends ReactiveMongoRepository<Favorite, String>, ReactiveFavoriteRepositoryCustom {
+
+    /**
+     * Find all favorites for a specific user.
+     *
+     * @param userId the user ID
+     * @return the favorites of the user
+     */
+    Flux<Favorite> findByUserId(String userId);
+
+    /**
+     * Find the product IDs a user has favorited. Only the product ID is fetched.
+     *
+     * @param userId the user ID
+     * @return the user's favorites, with only the product ID populated
+     */
+    @Query(value = "{'user_id': ?0}", fields = "{'product_id': 1}")
+    Flux<Favorite> findProductIdsByUserId(String userId);
+
+    /**
+     * Find which of the given products are favorites of a user, in a single {@code $in} query.
+     * Only the product ID is fetched.
+     *
+     * @param userId the user ID
+     * @param productIds the product IDs to check
+     * @return the matching favorites, with only the product ID populated
+     */
+    @Query(value = "{'user_id': ?0, 'product_id': {$in: ?1}}", fields = "{'product_id': 1}")
+    Flux<Favorite> findProductIdsByUserIdAndProductIdIn(String userId, Collection<String> productIds);
+
+    /**
+     * Check if a favorite exists for a user and product.
+     *
+     * @param userId the user ID
+     * @param productId the product ID
+     * @return true if favorite exists, false otherwise
+     */
+    Mono<Boolean> existsByUserIdAndProductId(String userId, String productId);
+
+    /**
+     * Delete a favorite by user ID and product ID.
+     *
+     * @param userId the user ID
+     * @param productId the product ID
+     * @return number of deleted documents
+     */
+    Mono<Long> deleteByUserIdAndProductId(String userId, String productId);
+
+    /**
+     * Count favorites for a specific user.
+     *
+     * @param userId the user ID
+     * @return count of favorites for the user
+     */
+    Mono<Long> countByUserId(String userId);
+
+    /**
+     * Delete all favorites for a specific user.
+     *
+     * @param userId the user ID
+     * @return number of deleted documents
+     */
+    Mono<Long> deleteByUserId(String userId);
+}
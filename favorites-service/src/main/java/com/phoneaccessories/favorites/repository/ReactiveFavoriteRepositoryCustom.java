@@ -0,0 +1,45 @@
+package com.phoneaccessories.favorites.repository;
+
+import com.phoneaccessories.favorites.dto.FavoriteExportFilter;
+import com.phoneaccessories.favorites.dto.ProductFavoriteCount;
+import com.phoneaccessories.favorites.model.Favorite;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Queries of {@link ReactiveFavoriteRepository} that cannot be derived from method names. They
+ * behave like their {@link FavoriteRepositoryCustom} counterparts.
+ */
+public interface ReactiveFavoriteRepositoryCustom {
+
+    /**
+     * @see FavoriteRepositoryCustom#findPageByUserId(String, LocalDateTime, String, int)
+     */
+    Flux<Favorite> findPageByUserId(String userId, LocalDateTime createdAt, String id, int limit);
+
+    /**
+     * @see FavoriteRepositoryCustom#insertIfAbsent(Favorite)
+     */
+    Mono<Boolean> insertIfAbsent(Favorite favorite);
+
+    /**
+     * @see FavoriteRepositoryCustom#bulkWrite(String, List, Collection)
+     */
+    Mono<Long> bulkWrite(String userId, List<Favorite> additions, Collection<String> removals);
+
+    /**
+     * Favorites matching an export filter, read from a cursor as they are requested.
+     *
+     * @see FavoriteRepositoryCustom#streamForExport(FavoriteExportFilter, int)
+     */
+    Flux<Favorite> findForExport(FavoriteExportFilter filter, int batchSize);
+
+    /**
+     * @see FavoriteRepositoryCustom#countByProductIdIn(Collection)
+     */
+    Flux<ProductFavoriteCount> countByProductIdIn(Collection<String> productIds);
+}
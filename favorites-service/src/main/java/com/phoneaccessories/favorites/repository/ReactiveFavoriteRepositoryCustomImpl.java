@@ -0,0 +1,150 @@
+package com.phoneaccessories.favorites.repository;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.phoneaccessories.favorites.dto.FavoriteExportFilter;
+import com.phoneaccessories.favorites.dto.ProductFavoriteCount;
+import com.phoneaccessories.favorites.model.Favorite;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link ReactiveMongoTemplate} based implementation of {@link ReactiveFavoriteRepositoryCustom}.
+ */
+public class ReactiveFavoriteRepositoryCustomImpl implements ReactiveFavoriteRepositoryCustom {
+
+    private static final int DUPLICATE_KEY = 11000;
+
+    private static final Sort NEWEST_FIRST = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public ReactiveFavoriteRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Flux<Favorite> findPageByUserId(String userId, LocalDateTime createdAt, String id, int limit) {
+        Criteria criteria = Criteria.where("userId").is(userId);
+        if (createdAt != null && id != null) {
+            criteria = criteria.orOperator(
+                    Criteria.where("createdAt").lt(createdAt),
+                    Criteria.where("createdAt").is(createdAt).and("id").lt(id)
+            );
+        }
+
+        Query query = Query.query(criteria)
+                .with(NEWEST_FIRST)
+                .limit(limit);
+        return mongoTemplate.find(query, Favorite.class);
+    }
+
+    @Override
+    public Mono<Boolean> insertIfAbsent(Favorite favorite) {
+        return mongoTemplate.upsert(productQuery(favorite.getUserId(), favorite.getProductId()),
+                        insertUpdate(favorite), Favorite.class)
+                .map(result -> {
+                    if (result.getUpsertedId() == null) {
+                        return false;
+                    }
+                    favorite.setId(toId(result.getUpsertedId()));
+                    return true;
+                })
+                // A concurrent upsert inserted the same favorite first
+                .onErrorReturn(DuplicateKeyException.class, false);
+    }
+
+    @Override
+    public Mono<Long> bulkWrite(String userId, List<Favorite> additions, Collection<String> removals) {
+        if (additions.isEmpty() && removals.isEmpty()) {
+            return Mono.just(0L);
+        }
+
+        ReactiveBulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Favorite.class);
+        for (Favorite favorite : additions) {
+            operations.upsert(productQuery(userId, favorite.getProductId()), insertUpdate(favorite));
+        }
+        for (String productId : removals) {
+            operations.remove(productQuery(userId, productId));
+        }
+
+        return operations.execute()
+                .onErrorResume(e -> {
+                    // Concurrent upserts of the same favorite lose on the unique index: those already existed
+                    BulkWriteResult result = duplicatesOnlyResult(e);
+                    return result != null ? Mono.just(result) : Mono.error(e);
+                })
+                .map(result -> {
+                    // Upserts come first in the bulk, so their index is the position in additions
+                    for (BulkWriteUpsert upsert : result.getUpserts()) {
+                        additions.get(upsert.getIndex()).setId(toId(upsert.getId()));
+                    }
+                    return (long) result.getDeletedCount();
+                });
+    }
+
+    @Override
+    public Flux<Favorite> findForExport(FavoriteExportFilter filter, int batchSize) {
+        return mongoTemplate.find(FavoriteRepositoryCustomImpl.exportQuery(filter).cursorBatchSize(batchSize), Favorite.class);
+    }
+
+    @Override
+    public Flux<ProductFavoriteCount> countByProductIdIn(Collection<String> productIds) {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(Favorite.class))
+                .flatMapMany(collection -> collection.aggregate(FavoriteRepositoryCustomImpl.productCountsPipeline(productIds)))
+                .map(FavoriteRepositoryCustomImpl::toProductCount);
+    }
+
+    /**
+     * The partial result of a bulk write that only failed on duplicate keys, or null. The error
+     * may arrive translated or as the driver's exception, depending on where it was raised.
+     */
+    private static BulkWriteResult duplicatesOnlyResult(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BulkOperationException bulk) {
+                return bulk.getErrors().stream().allMatch(e -> e.getCode() == DUPLICATE_KEY) ? bulk.getResult() : null;
+            }
+            if (cause instanceof MongoBulkWriteException bulk) {
+                return bulk.getWriteErrors().stream().allMatch(e -> e.getCode() == DUPLICATE_KEY) ? bulk.getWriteResult() : null;
+            }
+        }
+        return null;
+    }
+
+    private static Query productQuery(String userId, String productId) {
+        return Query.query(Criteria.where("userId").is(userId).and("productId").is(productId));
+    }
+
+    /**
+     * Update writing every field of the favorite with {@code $setOnInsert}.
+     */
+    private Update insertUpdate(Favorite favorite) {
+        Document document = new Document();
+        mongoTemplate.getConverter().write(favorite, document);
+        document.remove("_id");
+
+        Update update = new Update();
+        document.forEach(update::setOnInsert);
+        return update;
+    }
+
+    private static String toId(BsonValue id) {
+        return id.asObjectId().getValue().toHexString();
+    }
+}
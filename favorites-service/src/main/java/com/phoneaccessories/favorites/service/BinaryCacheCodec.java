@@ -0,0 +1,393 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary encoding of cached values.
+ *
+ * <p>Every value starts with a format version byte and a flags byte. Fields are written in a
+ * fixed order without names: a bitmask of the non-null fields, then varint-prefixed UTF-8
+ * strings, the price as an IEEE 754 double and the creation time as epoch seconds and nanos.
+ * Bodies of at least {@code compressionThreshold} bytes are LZ4-compressed when that makes them
+ * smaller.
+ *
+ * <p>Values starting with <code>'{'</code> were written by {@link JsonCacheCodec} and are still
+ * decoded, so replicas can switch codecs without flushing the cache. A version this class does
+ * not know is rejected and handled as a miss.
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    /** Current format version. */
+    static final byte VERSION = 1;
+
+    /** Flag set when the body is LZ4-compressed. */
+    static final int FLAG_COMPRESSED = 1;
+
+    /** Largest body a value may claim to decompress to. */
+    private static final int MAX_BODY_BYTES = 16 * 1024 * 1024;
+
+    private static final byte JSON_START = '{';
+
+    private static final int FAVORITE_ID = 1;
+    private static final int USER_ID = 1 << 1;
+    private static final int PRODUCT_ID = 1 << 2;
+    private static final int PRODUCT_NAME = 1 << 3;
+    private static final int PRODUCT_PRICE = 1 << 4;
+    private static final int PRODUCT_IMAGE_URL = 1 << 5;
+    private static final int CATEGORY = 1 << 6;
+    private static final int CREATED_AT = 1 << 7;
+
+    private static final int LIST_USER_ID = 1;
+    private static final int LIST_NEXT_CURSOR = 1 << 1;
+    private static final int LIST_FAVORITES = 1 << 2;
+
+    private final JsonCacheCodec legacyCodec;
+    private final int compressionThreshold;
+    private final LZ4Compressor compressor;
+    private final LZ4SafeDecompressor decompressor;
+
+    /**
+     * @param legacyCodec decoder for values written as JSON
+     * @param compressionThreshold smallest body size in bytes worth compressing; 0 or less disables compression
+     */
+    public BinaryCacheCodec(JsonCacheCodec legacyCodec, int compressionThreshold) {
+        this.legacyCodec = legacyCodec;
+        this.compressionThreshold = compressionThreshold;
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.safeDecompressor();
+    }
+
+    @Override
+    public byte[] encodeFavorite(FavoriteResponse favorite) {
+        Writer writer = new Writer(128);
+        writeFavorite(writer, favorite);
+        return frame(writer);
+    }
+
+    @Override
+    public FavoriteResponse decodeFavorite(byte[] value) {
+        if (isJson(value)) {
+            return legacyCodec.decodeFavorite(value);
+        }
+        Reader reader = unframe(value);
+        FavoriteResponse favorite = readFavorite(reader);
+        reader.expectEnd();
+        return favorite;
+    }
+
+    @Override
+    public byte[] encodeFavorites(UserFavoritesResponse favorites) {
+        List<FavoriteResponse> list = favorites.getFavorites();
+        Writer writer = new Writer(64 + (list != null ? list.size() * 128 : 0));
+        writer.writeByte(mask(LIST_USER_ID, favorites.getUserId())
+                | mask(LIST_NEXT_CURSOR, favorites.getNextCursor())
+                | mask(LIST_FAVORITES, list));
+        writer.writeString(favorites.getUserId());
+        writer.writeString(favorites.getNextCursor());
+        writer.writeVarLong(favorites.getTotalCount());
+        if (list != null) {
+            writer.writeVarLong(list.size());
+            for (FavoriteResponse favorite : list) {
+                writeFavorite(writer, favorite);
+            }
+        }
+        return frame(writer);
+    }
+
+    @Override
+    public UserFavoritesResponse decodeFavorites(byte[] value) {
+        if (isJson(value)) {
+            return legacyCodec.decodeFavorites(value);
+        }
+        Reader reader = unframe(value);
+        int present = reader.readByte();
+        String userId = (present & LIST_USER_ID) != 0 ? reader.readString() : null;
+        String nextCursor = (present & LIST_NEXT_CURSOR) != 0 ? reader.readString() : null;
+        int totalCount = reader.readLength();
+        List<FavoriteResponse> favorites = null;
+        if ((present & LIST_FAVORITES) != 0) {
+            int size = reader.readLength();
+            favorites = new ArrayList<>(Math.min(size, 1024));
+            for (int i = 0; i < size; i++) {
+                favorites.add(readFavorite(reader));
+            }
+        }
+        reader.expectEnd();
+
+        UserFavoritesResponse response = new UserFavoritesResponse(userId, totalCount, favorites);
+        response.setNextCursor(nextCursor);
+        return response;
+    }
+
+    private static void writeFavorite(Writer writer, FavoriteResponse favorite) {
+        writer.writeByte(mask(FAVORITE_ID, favorite.getFavoriteId())
+                | mask(USER_ID, favorite.getUserId())
+                | mask(PRODUCT_ID, favorite.getProductId())
+                | mask(PRODUCT_NAME, favorite.getProductName())
+                | mask(PRODUCT_PRICE, favorite.getProductPrice())
+                | mask(PRODUCT_IMAGE_URL, favorite.getProductImageUrl())
+                | mask(CATEGORY, favorite.getCategory())
+                | mask(CREATED_AT, favorite.getCreatedAt()));
+        writer.writeString(favorite.getFavoriteId());
+        writer.writeString(favorite.getUserId());
+        writer.writeString(favorite.getProductId());
+        writer.writeString(favorite.getProductName());
+        if (favorite.getProductPrice() != null) {
+            writer.writeLong(Double.doubleToRawLongBits(favorite.getProductPrice()));
+        }
+        writer.writeString(favorite.getProductImageUrl());
+        writer.writeString(favorite.getCategory());
+        LocalDateTime createdAt = favorite.getCreatedAt();
+        if (createdAt != null) {
+            long seconds = createdAt.toEpochSecond(ZoneOffset.UTC);
+            writer.writeVarLong((seconds << 1) ^ (seconds >> 63));
+            writer.writeVarLong(createdAt.getNano());
+        }
+    }
+
+    private static FavoriteResponse readFavorite(Reader reader) {
+        int present = reader.readByte();
+        FavoriteResponse favorite = new FavoriteResponse();
+        favorite.setFavoriteId((present & FAVORITE_ID) != 0 ? reader.readString() : null);
+        favorite.setUserId((present & USER_ID) != 0 ? reader.readString() : null);
+        favorite.setProductId((present & PRODUCT_ID) != 0 ? reader.readString() : null);
+        favorite.setProductName((present & PRODUCT_NAME) != 0 ? reader.readString() : null);
+        if ((present & PRODUCT_PRICE) != 0) {
+            favorite.setProductPrice(Double.longBitsToDouble(reader.readLong()));
+        }
+        favorite.setProductImageUrl((present & PRODUCT_IMAGE_URL) != 0 ? reader.readString() : null);
+        favorite.setCategory((present & CATEGORY) != 0 ? reader.readString() : null);
+        if ((present & CREATED_AT) != 0) {
+            long zigzag = reader.readVarLong();
+            long seconds = (zigzag >>> 1) ^ -(zigzag & 1);
+            long nanos = reader.readVarLong();
+            if (nanos < 0 || nanos > 999_999_999) {
+                throw new IllegalArgumentException("Malformed cached value: invalid nanos");
+            }
+            favorite.setCreatedAt(LocalDateTime.ofEpochSecond(seconds, (int) nanos, ZoneOffset.UTC));
+        }
+        return favorite;
+    }
+
+    /**
+     * Prefix the body with the version and flags, compressing it when large enough.
+     */
+    private byte[] frame(Writer body) {
+        int length = body.size();
+        if (compressionThreshold > 0 && length >= compressionThreshold) {
+            byte[] compressed = new byte[compressor.maxCompressedLength(length)];
+            int compressedLength = compressor.compress(body.buffer(), 0, length, compressed, 0, compressed.length);
+
+            Writer framed = new Writer(compressedLength + 7);
+            framed.writeByte(VERSION);
+            framed.writeByte(FLAG_COMPRESSED);
+            framed.writeVarLong(length);
+            if (framed.size() + compressedLength < length + 2) {
+                framed.writeBytes(compressed, 0, compressedLength);
+                return framed.toByteArray();
+            }
+        }
+
+        byte[] value = new byte[length + 2];
+        value[0] = VERSION;
+        value[1] = 0;
+        System.arraycopy(body.buffer(), 0, value, 2, length);
+        return value;
+    }
+
+    private Reader unframe(byte[] value) {
+        if (value == null || value.length < 2) {
+            throw new IllegalArgumentException("Malformed cached value: too short");
+        }
+        if (value[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported cached value format version: " + value[0]);
+        }
+        int flags = value[1];
+        if ((flags & ~FLAG_COMPRESSED) != 0) {
+            throw new IllegalArgumentException("Unsupported cached value flags: " + flags);
+        }
+        if ((flags & FLAG_COMPRESSED) == 0) {
+            return new Reader(value, 2, value.length);
+        }
+
+        Reader header = new Reader(value, 2, value.length);
+        int length = header.readLength();
+        if (length > MAX_BODY_BYTES) {
+            throw new IllegalArgumentException("Malformed cached value: body too large");
+        }
+        byte[] body = new byte[length];
+        try {
+            int decompressed = decompressor.decompress(value, header.position(), value.length - header.position(),
+                    body, 0, length);
+            if (decompressed != length) {
+                throw new IllegalArgumentException("Malformed cached value: truncated body");
+            }
+        } catch (LZ4Exception e) {
+            throw new IllegalArgumentException("Malformed cached value: " + e.getMessage(), e);
+        }
+        return new Reader(body, 0, length);
+    }
+
+    private static boolean isJson(byte[] value) {
+        return value != null && value.length > 0 && value[0] == JSON_START;
+    }
+
+    private static int mask(int bit, Object value) {
+        return value != null ? bit : 0;
+    }
+
+    /**
+     * Growable output buffer.
+     */
+    private static final class Writer {
+        private byte[] buffer;
+        private int size;
+
+        private Writer(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buffer, size, length);
+            size += length;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[size++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        /**
+         * Write a length-prefixed UTF-8 string; null strings are left out, their absence is
+         * recorded in the field bitmask.
+         */
+        void writeString(String value) {
+            if (value != null) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarLong(bytes.length);
+                writeBytes(bytes, 0, bytes.length);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] buffer() {
+            return buffer;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Bounds-checked input cursor; running past the end fails as a malformed value.
+     */
+    private static final class Reader {
+        private final byte[] buffer;
+        private final int limit;
+        private int position;
+
+        private Reader(byte[] buffer, int offset, int limit) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        int readByte() {
+            require(1);
+            return buffer[position++] & 0xFF;
+        }
+
+        long readLong() {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed cached value: varint too long");
+        }
+
+        int readLength() {
+            long length = readVarLong();
+            if (length < 0 || length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Malformed cached value: invalid length");
+            }
+            return (int) length;
+        }
+
+        String readString() {
+            int length = readLength();
+            require(length);
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        int position() {
+            return position;
+        }
+
+        void expectEnd() {
+            if (position != limit) {
+                throw new IllegalArgumentException("Malformed cached value: trailing bytes");
+            }
+        }
+
+        private void require(int length) {
+            if (length > limit - position) {
+                throw new IllegalArgumentException("Malformed cached value: truncated");
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
+
+/**
+ * Encoding of the values {@link CacheService} stores in Redis.
+ *
+ * <p>Decoding a value that is corrupt or written in an unknown format fails with an
+ * {@link IllegalArgumentException}; the cache treats such a value as a miss, and the reload
+ * that follows overwrites it.
+ */
+public interface CacheCodec {
+
+    /**
+     * Encode a single favorite, as stored in a user's favorites hash.
+     */
+    byte[] encodeFavorite(FavoriteResponse favorite);
+
+    /**
+     * Decode a value written by {@link #encodeFavorite}.
+     */
+    FavoriteResponse decodeFavorite(byte[] value);
+
+    /**
+     * Encode a list of favorites, as stored for a cached page.
+     */
+    byte[] encodeFavorites(UserFavoritesResponse favorites);
+
+    /**
+     * Decode a value written by {@link #encodeFavorites}.
+     */
+    UserFavoritesResponse decodeFavorites(byte[] value);
+}
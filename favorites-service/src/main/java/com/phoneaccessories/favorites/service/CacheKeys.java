@@ -0,0 +1,80 @@
+package com.phoneaccessories.favorites.service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the favorites cache in Redis: key names, hash fields and the encoding of metadata
+ * values. {@link CacheService} and {@link ReactiveCacheService} both build their keys here, so
+ * the two stacks read and write the same entries and honour each other's invalidations.
+ *
+ * <p>User entries live under {@code <prefix>:user:<userId>:g<generation>:}, where the generation
+ * is a per-user counter that is bumped to drop every entry of the user at once.
+ */
+final class CacheKeys {
+
+    /** Hash field marking a fully loaded favorites hash. */
+    static final String LOADED_FIELD = "m:loaded";
+
+    /** Hash field holding how long the list took to load, in milliseconds. */
+    static final String DELTA_FIELD = "m:delta";
+
+    /** Hash field holding when the list expires, in epoch milliseconds. */
+    static final String EXPIRES_FIELD = "m:expires";
+
+    /** Prefix of the hash fields holding favorites, which keeps any product ID apart from the metadata fields. */
+    static final String PRODUCT_FIELD_PREFIX = "p:";
+
+    private final String keyPrefix;
+
+    CacheKeys(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    /**
+     * Channel on which changed keys are broadcast, so that replicas drop their local copies.
+     */
+    String invalidationChannel() {
+        return keyPrefix + ":cache:invalidation";
+    }
+
+    /**
+     * Key of the per-user generation counter. It has no TTL: letting it expire would reset the
+     * counter and could resurrect entries of an older generation that are still alive.
+     */
+    String generationKey(String userId) {
+        return keyPrefix + ":user:" + userId + ":generation";
+    }
+
+    /**
+     * Prefix, ending in a colon, of the user's keys in the given generation.
+     */
+    String userPrefix(String userId, long generation) {
+        return keyPrefix + ":user:" + userId + ":g" + generation + ":";
+    }
+
+    /**
+     * User-scoped key in the given generation, e.g. {@code favorites} or {@code exists:<productId>}.
+     */
+    String userKey(String userId, long generation, String... parts) {
+        return userPrefix(userId, generation) + String.join(":", parts);
+    }
+
+    static String productField(String productId) {
+        return PRODUCT_FIELD_PREFIX + productId;
+    }
+
+    static String pageField(int limit, String cursor) {
+        return limit + ":" + (cursor != null ? cursor : "");
+    }
+
+    /**
+     * Encode a metadata value; hash values and script arguments are raw bytes, these are ASCII digits.
+     */
+    static byte[] metaValue(long value) {
+        return String.valueOf(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static long parseMillis(byte[] value) {
+        return value != null ? Long.parseLong(new String(value, StandardCharsets.US_ASCII)) : 0L;
+    }
+}
@@ -0,0 +1,135 @@
+package com.phoneaccessories.favorites.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Meters of the cache tiers, shared by {@link CacheService} and {@link ReactiveCacheService} so
+ * that both register each name with the same tag keys, as Prometheus requires.
+ *
+ * <ul>
+ *   <li>{@code favorites.cache.requests}: lookups per key family ({@code cache}), tier and
+ *       result ({@code hit}, {@code miss}, or {@code error} when Redis failed or a value could
+ *       not be decoded)</li>
+ *   <li>{@code favorites.cache.redis}: Redis round trips per {@code CacheService} operation, with
+ *       the exception thrown if any</li>
+ *   <li>{@code favorites.cache.payload}: size in bytes of values written to Redis, per key family</li>
+ * </ul>
+ */
+final class CacheMetrics {
+
+    // Key families, the values of the cache tag
+    static final String FAVORITES = "user:favorites";
+    static final String PAGES = "user:favorites-page";
+    static final String EXISTS = "favorite:exists";
+    static final String COUNT = "user:count";
+    static final String BLOOM = "user:bloom";
+
+    private static final String NO_EXCEPTION = "none";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> redisTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> payloads = new ConcurrentHashMap<>();
+
+    CacheMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Lookup counters of one key family.
+     */
+    Lookups lookups(String cache) {
+        return new Lookups(meterRegistry, cache);
+    }
+
+    /**
+     * Run Redis commands, recording how long they took under the given operation.
+     */
+    <T> T call(String operation, Supplier<T> commands) {
+        long start = System.nanoTime();
+        try {
+            T result = commands.get();
+            redisTimers.computeIfAbsent(operation, key -> redisTimer(key, NO_EXCEPTION))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (RuntimeException e) {
+            redisTimer(operation, e.getClass().getSimpleName())
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    /**
+     * Run Redis commands reading one key family, counting their failure as a lookup error.
+     */
+    <T> T lookup(String operation, Lookups lookups, Supplier<T> commands) {
+        try {
+            return call(operation, commands);
+        } catch (RuntimeException e) {
+            lookups.redisErrors.increment();
+            throw e;
+        }
+    }
+
+    void run(String operation, Runnable commands) {
+        call(operation, () -> {
+            commands.run();
+            return null;
+        });
+    }
+
+    /**
+     * Record the size of a value written to the given key family.
+     */
+    void payload(String cache, long bytes) {
+        payloads.computeIfAbsent(cache, key -> DistributionSummary.builder("favorites.cache.payload")
+                        .description("Size of values written to Redis per key family")
+                        .baseUnit("bytes")
+                        .tag("cache", key)
+                        .register(meterRegistry))
+                .record(bytes);
+    }
+
+    private Timer redisTimer(String operation, String exception) {
+        return Timer.builder("favorites.cache.redis")
+                .description("Redis round trips of cache operations")
+                .tag("operation", operation)
+                .tag("exception", exception)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Hit, miss and error counters of one key family, per tier.
+     */
+    static final class Lookups {
+        final Counter localHits;
+        final Counter localMisses;
+        final Counter redisHits;
+        final Counter redisMisses;
+        final Counter redisErrors;
+
+        private Lookups(MeterRegistry meterRegistry, String cache) {
+            this.localHits = counter(meterRegistry, cache, CacheService.TIER_LOCAL, "hit");
+            this.localMisses = counter(meterRegistry, cache, CacheService.TIER_LOCAL, "miss");
+            this.redisHits = counter(meterRegistry, cache, CacheService.TIER_REDIS, "hit");
+            this.redisMisses = counter(meterRegistry, cache, CacheService.TIER_REDIS, "miss");
+            this.redisErrors = counter(meterRegistry, cache, CacheService.TIER_REDIS, "error");
+        }
+
+        private static Counter counter(MeterRegistry meterRegistry, String cache, String tier, String result) {
+            return Counter.builder("favorites.cache.requests")
+                    .description("Cache lookups per key family, tier and outcome")
+                    .tag("cache", cache)
+                    .tag("tier", tier)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -1,83 +1,577 @@
 package com.phoneaccessories.favorites.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.phoneaccessories.favorites.dto.FavoriteResponse;
 import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.phoneaccessories.favorites.service.CacheKeys.DELTA_FIELD;
+import static com.phoneaccessories.favorites.service.CacheKeys.EXPIRES_FIELD;
+import static com.phoneaccessories.favorites.service.CacheKeys.LOADED_FIELD;
+import static com.phoneaccessories.favorites.service.CacheKeys.PRODUCT_FIELD_PREFIX;
+import static com.phoneaccessories.favorites.service.CacheKeys.metaValue;
+import static com.phoneaccessories.favorites.service.CacheKeys.pageField;
+import static com.phoneaccessories.favorites.service.CacheKeys.parseMillis;
+import static com.phoneaccessories.favorites.service.CacheKeys.productField;
 
 /**
- * Service for Redis caching operations.
+ * Service for two-tier caching operations.
+ *
+ * <p>A bounded in-process cache (L1) sits in front of Redis (L2). The local tier keeps
+ * deserialized values, so a hit costs neither a network round trip nor decoding. It is
+ * bounded by weight, evicts with Caffeine's frequency-aware W-TinyLFU policy and expires each
+ * entry after its own TTL. Evictions are broadcast over Redis pub/sub so that the local tier
+ * of every replica drops the same keys.
+ *
+ * <p>Cached favorites lists remember how long they took to load and when they expire, so that
+ * reads can refresh them ahead of expiry with XFetch-style probabilistic early expiration.
+ *
+ * <p>Favorites are stored as Redis hash values encoded by the configured {@link CacheCodec}.
+ *
+ * <p>Cache fills (writing values just loaded from the repository) can optionally be sent to Redis
+ * from a background thread, so reads return without waiting for the write. Invalidations and
+ * write-through updates are always synchronous.
+ *
+ * <p>Lookups per key family and tier, Redis round trips per operation and the size of written
+ * values are metered, see {@link CacheMetrics}.
  */
 @Service
-public class CacheService {
+public class CacheService implements MessageListener {
 
     private static final Logger logger = LoggerFactory.getLogger(CacheService.class);
 
+    static final String TIER_LOCAL = "local";
+    static final String TIER_REDIS = "redis";
+
+    /**
+     * Renames a built favorites hash over the cached one if the user's write counter still holds
+     * the value read when the load began, and drops it otherwise; returns 1 if it was renamed.
+     * Keys: the built hash, the cached hash, the write counter. Argument: the value read.
+     */
+    static final RedisScript<Long> REPLACE_FAVORITES_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('get', KEYS[3]) or '0') == ARGV[1] then"
+                    + " redis.call('rename', KEYS[1], KEYS[2]) return 1"
+                    + " else redis.call('del', KEYS[1]) return 0 end",
+            Long.class);
+
+    /**
+     * Sets a built Bloom filter, with a TTL, if the user's write counter still holds the value read
+     * when the build began; returns 1 if it was set. Keys: the filter, the write counter.
+     * Arguments: the value read, the filter, the TTL in seconds.
+     */
+    static final RedisScript<Long> CACHE_FILTER_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('get', KEYS[2]) or '0') == ARGV[1] then"
+                    + " redis.call('set', KEYS[1], ARGV[2], 'EX', ARGV[3]) return 1"
+                    + " else return 0 end",
+            Long.class);
+
+    /**
+     * Sets a page in the user's pages hash if the user's write counter still holds the value read
+     * when the page load began; returns 1 if it was set. The TTL is only given to a new hash, so
+     * fills do not extend the life of pages cached before them. Keys: the pages hash, the write
+     * counter. Arguments: the value read, the page field, the page, the TTL in seconds.
+     */
+    static final RedisScript<Long> CACHE_PAGE_SCRIPT = new DefaultRedisScript<>(
+            "if (redis.call('get', KEYS[2]) or '0') ~= ARGV[1] then return 0 end"
+                    + " local created = redis.call('exists', KEYS[1]) == 0"
+                    + " redis.call('hset', KEYS[1], ARGV[2], ARGV[3])"
+                    + " if created then redis.call('expire', KEYS[1], ARGV[4]) end"
+                    + " return 1",
+            Long.class);
+
+    /**
+     * Publishes each argument after the first on the channel given first, so that several
+     * invalidations take one round trip: Jedis sends neither PUBLISH nor scripts in a pipeline.
+     */
+    static final RedisScript<Long> PUBLISH_SCRIPT = new DefaultRedisScript<>(
+            "for i = 2, #ARGV do redis.call('publish', ARGV[1], ARGV[i]) end return #ARGV - 1",
+            Long.class);
+
+    /** Approximate local footprint of a cached favorite, in bytes; Bloom filters are weighed in it. */
+    private static final int FAVORITE_FOOTPRINT = 200;
+
+    static final Comparator<FavoriteResponse> CACHED_ORDER = Comparator
+            .comparing(FavoriteResponse::getCreatedAt, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(FavoriteResponse::getFavoriteId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
     private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
-    private final String keyPrefix;
+    private final CacheCodec codec;
+    private final CacheKeys cacheKeys;
     private final Duration ttl;
+    private final Duration localTtl;
+    private final double refreshAheadBeta;
+    private final String invalidationChannel;
+    private final Cache<String, LocalEntry> localCache;
+    private final ThreadPoolExecutor fillExecutor;
+
+    private final CacheMetrics metrics;
+    private final CacheMetrics.Lookups favoritesLookups;
+    private final CacheMetrics.Lookups pagesLookups;
+    private final CacheMetrics.Lookups existsLookups;
+    private final CacheMetrics.Lookups countLookups;
+    private final CacheMetrics.Lookups bloomLookups;
+    private final Counter earlyRefreshes;
+    private final Counter droppedFills;
 
     public CacheService(RedisTemplate<String, String> redisTemplate,
-                        ObjectMapper objectMapper,
+                        CacheCodec codec,
+                        MeterRegistry meterRegistry,
                         @Value("${cache.redis.key-prefix}") String keyPrefix,
-                        @Value("${cache.redis.ttl}") long ttlSeconds) {
+                        @Value("${cache.redis.ttl}") long ttlSeconds,
+                        @Value("${cache.local.max-weight:100000}") long localMaxWeight,
+                        @Value("${cache.local.ttl:60}") long localTtlSeconds,
+                        @Value("${cache.refresh-ahead.beta:1.0}") double refreshAheadBeta,
+                        @Value("${cache.redis.async-fills.enabled:false}") boolean asyncFills,
+                        @Value("${cache.redis.async-fills.queue-capacity:1000}") int asyncFillQueueCapacity) {
         this.redisTemplate = redisTemplate;
-        this.objectMapper = objectMapper;
-        this.keyPrefix = keyPrefix;
+        this.codec = codec;
+        this.cacheKeys = new CacheKeys(keyPrefix);
         this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.localTtl = Duration.ofSeconds(Math.min(localTtlSeconds, ttlSeconds));
+        this.refreshAheadBeta = refreshAheadBeta;
+        this.invalidationChannel = cacheKeys.invalidationChannel();
+        this.localCache = Caffeine.newBuilder()
+                .maximumWeight(localMaxWeight)
+                .weigher((String key, LocalEntry entry) -> entry.weight)
+                .expireAfter(new LocalEntryExpiry())
+                .build();
+
+        this.metrics = new CacheMetrics(meterRegistry);
+        this.favoritesLookups = metrics.lookups(CacheMetrics.FAVORITES);
+        this.pagesLookups = metrics.lookups(CacheMetrics.PAGES);
+        this.existsLookups = metrics.lookups(CacheMetrics.EXISTS);
+        this.countLookups = metrics.lookups(CacheMetrics.COUNT);
+        this.bloomLookups = metrics.lookups(CacheMetrics.BLOOM);
+        this.earlyRefreshes = Counter.builder("favorites.cache.early.refreshes")
+                .description("Cached favorites lists picked for refresh ahead of expiry")
+                .register(meterRegistry);
+        this.droppedFills = Counter.builder("favorites.cache.fills.dropped")
+                .description("Asynchronous cache fills dropped because the queue was full")
+                .register(meterRegistry);
+
+        // One thread keeps fills in submission order; a full queue drops fills, which only
+        // costs a later cache miss
+        this.fillExecutor = asyncFills
+                ? new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(asyncFillQueueCapacity),
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "cache-fill");
+                            thread.setDaemon(true);
+                            return thread;
+                        },
+                        (runnable, executor) -> droppedFills.increment())
+                : null;
+    }
+
+    /**
+     * Stop the asynchronous fill thread; queued fills are dropped.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (fillExecutor != null) {
+            fillExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Where a load of a user's favorites began: the user's cache generation and the number of
+     * writes through to the cached favorites at that time, see {@link #startFavoritesLoad}.
+     */
+    public record FavoritesLoad(long generation, long writes) {
+    }
+
+    /**
+     * Mark the start of a load of a user's favorites, before the repository is queried.
+     *
+     * <p>Every write through to the cached favorites, and every eviction of them, counts itself
+     * in a per-user counter. The loaded list is only cached if the counter still holds the value
+     * read here, so a write that lands between the query and the fill is never overwritten by
+     * the older list.
+     *
+     * @param userId the user ID
+     * @return the start of the load, to pass to {@link #cacheUserFavorites}
+     */
+    public FavoritesLoad startFavoritesLoad(String userId) {
+        long generation = getGeneration(userId);
+        String writes = metrics.call("startFavoritesLoad",
+                () -> redisTemplate.opsForValue().get(cacheKeys.userKey(userId, generation, "writes")));
+        return new FavoritesLoad(generation, writes != null ? Long.parseLong(writes) : 0L);
     }
 
     /**
      * Cache user favorites.
      *
+     * <p>The favorites are stored as a Redis hash with a field per product, see
+     * {@link CacheKeys#productField}, plus a marker field telling a complete list apart from a hash that
+     * only holds write-through entries. The recompute time
+     * and expiry are stored next to them for refresh-ahead.
+     *
+     * <p>The hash is written under a key of its own and renamed over the cached one, so it replaces
+     * the previous contents at once: favorites removed since are dropped, and readers never see a
+     * partly written list. The rename is skipped if favorites were written since the load began.
+     *
      * @param userId the user ID
-     * @param favorites list of user favorites
+     * @param load the start of the load, from {@link #startFavoritesLoad}
+     * @param response the user favorites to cache
+     * @param recomputeTime how long loading the favorites took
      */
-    public void cacheUserFavorites(String userId, List<FavoriteResponse> favorites) {
+    public void cacheUserFavorites(String userId, FavoritesLoad load, UserFavoritesResponse response, Duration recomputeTime) {
         try {
-            String key = buildKey("user", userId, "favorites");
-            UserFavoritesResponse response = new UserFavoritesResponse(userId, favorites.size(), favorites);
-            String value = objectMapper.writeValueAsString(response);
-            redisTemplate.opsForValue().set(key, value, ttl);
-            logger.debug("Cached favorites for user: {}", userId);
-        } catch (JsonProcessingException e) {
+            String key = cacheKeys.userKey(userId, load.generation(), "favorites");
+            String writesKey = cacheKeys.userKey(userId, load.generation(), "writes");
+            long deltaMillis = recomputeTime.toMillis();
+            long expiresAtMillis = System.currentTimeMillis() + ttl.toMillis();
+            Map<String, byte[]> fields = new HashMap<>();
+            long payloadBytes = 0;
+            for (FavoriteResponse favorite : response.getFavorites()) {
+                byte[] value = codec.encodeFavorite(favorite);
+                fields.put(productField(favorite.getProductId()), value);
+                payloadBytes += value.length;
+            }
+            fields.put(LOADED_FIELD, metaValue(1));
+            fields.put(DELTA_FIELD, metaValue(deltaMillis));
+            fields.put(EXPIRES_FIELD, metaValue(expiresAtMillis));
+            metrics.payload(CacheMetrics.FAVORITES, payloadBytes);
+
+            // Unique, so that concurrent loads of the same user do not write into each other's hash
+            String buildKey = key + ":build:" + UUID.randomUUID();
+            fill(() -> {
+                Long replaced = metrics.call("cacheUserFavorites", () -> {
+                    pipelined(operations -> {
+                        operations.opsForHash().putAll(buildKey, fields);
+                        operations.expire(buildKey, ttl);
+                    });
+                    // Not in the pipeline: Jedis does not pipeline scripts
+                    return redisTemplate.execute(REPLACE_FAVORITES_SCRIPT, List.of(buildKey, key, writesKey),
+                            Long.toString(load.writes()));
+                });
+                if (Long.valueOf(1).equals(replaced)) {
+                    putLocal(key, response, 1 + response.getTotalCount(), deltaMillis, expiresAtMillis);
+                    logger.debug("Cached favorites for user: {}", userId);
+                } else {
+                    logger.debug("Favorites of user {} were written while loading, not caching them", userId);
+                }
+            });
+        } catch (IllegalArgumentException e) {
             logger.error("Error serializing favorites for caching: {}", e.getMessage());
         }
     }
 
     /**
-     * Get cached user favorites.
+     * Get cached user favorites, trying the local tier before Redis.
      *
      * @param userId the user ID
-     * @return cached user favorites or null if not found
+     * @return cached user favorites or empty if not found
      */
-    public UserFavoritesResponse getCachedUserFavorites(String userId) {
+    public Optional<UserFavoritesResponse> getCachedUserFavorites(String userId) {
+        String key = buildKey(userId, "favorites");
+
+        UserFavoritesResponse local = getLocal(key, UserFavoritesResponse.class, favoritesLookups);
+        if (local != null) {
+            logger.debug("Local cache hit for user favorites: {}", userId);
+            return Optional.of(local);
+        }
+
         try {
-            String key = buildKey("user", userId, "favorites");
-            String value = redisTemplate.opsForValue().get(key);
+            HashOperations<String, String, byte[]> hashOperations = redisTemplate.opsForHash();
+            Map<String, byte[]> fields = metrics.lookup("getCachedUserFavorites", favoritesLookups,
+                    () -> hashOperations.entries(key));
 
-            if (value != null) {
+            if (fields.containsKey(LOADED_FIELD)) {
+                favoritesLookups.redisHits.increment();
                 logger.debug("Cache hit for user favorites: {}", userId);
-                return objectMapper.readValue(value, UserFavoritesResponse.class);
+                List<FavoriteResponse> favorites = new ArrayList<>(fields.size());
+                for (Map.Entry<String, byte[]> field : fields.entrySet()) {
+                    if (field.getKey().startsWith(PRODUCT_FIELD_PREFIX)) {
+                        favorites.add(codec.decodeFavorite(field.getValue()));
+                    }
+                }
+                favorites.sort(CACHED_ORDER);
+                UserFavoritesResponse response = new UserFavoritesResponse(userId, favorites);
+                putLocal(key, response, 1 + response.getTotalCount(),
+                        parseMillis(fields.get(DELTA_FIELD)), parseMillis(fields.get(EXPIRES_FIELD)));
+                return Optional.of(response);
             }
 
+            favoritesLookups.redisMisses.increment();
             logger.debug("Cache miss for user favorites: {}", userId);
-            return null;
-        } catch (JsonProcessingException e) {
+            return Optional.empty();
+        } catch (IllegalArgumentException e) {
+            favoritesLookups.redisErrors.increment();
             logger.error("Error deserializing cached favorites: {}", e.getMessage());
-            return null;
+            return Optional.empty();
         }
     }
 
+    /**
+     * Write a newly added favorite through to the cache (HSET) instead of dropping the list.
+     *
+     * @param userId the user ID
+     * @param favorite the added favorite
+     */
+    public void addCachedFavorite(String userId, FavoriteResponse favorite) {
+        updateCachedFavorites(userId, List.of(favorite), List.of());
+    }
+
+    /**
+     * Remove a favorite from the cached list (HDEL) instead of dropping the list.
+     *
+     * @param userId the user ID
+     * @param productId the removed product ID
+     */
+    public void removeCachedFavorite(String userId, String productId) {
+        updateCachedFavorites(userId, List.of(), List.of(productId));
+    }
+
+    /**
+     * Write added and removed favorites through to the cache in one pipelined round trip.
+     *
+     * <p>Updates the favorites hash, the existence keys, the Bloom filter and the favorites count,
+     * and drops the cached pages; the local-tier invalidations are then published together. The
+     * cached entries keep the TTLs they were loaded with.
+     *
+     * @param userId the user ID
+     * @param added the added favorites
+     * @param removed the removed product IDs
+     */
+    public void updateCachedFavorites(String userId, List<FavoriteResponse> added, Collection<String> removed) {
+        writeThrough("updateCachedFavorites", userId, added, removed, true);
+    }
+
+    /**
+     * Apply favorites written or removed by anyone, possibly already applied, to the cache.
+     *
+     * <p>Unlike {@link #updateCachedFavorites} this is idempotent: the favorites count is dropped
+     * rather than adjusted, since whether the change was already counted is unknown.
+     *
+     * @param userId the user ID
+     * @param upserted the current state of inserted or updated favorites
+     * @param removed the removed product IDs
+     */
+    public void applyFavoriteChanges(String userId, List<FavoriteResponse> upserted, Collection<String> removed) {
+        writeThrough("applyFavoriteChanges", userId, upserted, removed, false);
+    }
+
+    private void writeThrough(String operation, String userId, List<FavoriteResponse> added,
+                              Collection<String> removed, boolean adjustCount) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+
+        String key = buildKey(userId, "favorites");
+        String filterKey = buildKey(userId, "bloom");
+        String pagesKey = buildKey(userId, "pages");
+        String countKey = buildKey(userId, "count");
+        String writesKey = buildKey(userId, "writes");
+        long countDelta = adjustCount ? (long) added.size() - removed.size() : 0;
+        Map<String, byte[]> values = new HashMap<>();
+        try {
+            for (FavoriteResponse favorite : added) {
+                values.put(favorite.getProductId(), codec.encodeFavorite(favorite));
+            }
+        } catch (IllegalArgumentException e) {
+            logger.error("Error serializing favorite for caching: {}", e.getMessage());
+            invalidateUserFavorites(userId);
+            return;
+        }
+
+        Map<String, String> existsKeys = new HashMap<>();
+        values.keySet().forEach(productId -> existsKeys.put(productId, buildKey(userId, "exists", productId)));
+        removed.forEach(productId -> existsKeys.put(productId, buildKey(userId, "exists", productId)));
+        List<String> evicted = new ArrayList<>(existsKeys.values());
+        evicted.add(key);
+        evicted.add(filterKey);
+        if (countDelta != 0 || !adjustCount) {
+            evicted.add(countKey);
+        }
+
+        if (!values.isEmpty()) {
+            // Counted before the filter add, so that a filter rebuilt from a snapshot without the
+            // added products is not cached after the add found no filter to update
+            metrics.run("countFavoritesWrite", () -> redisTemplate.opsForValue().increment(writesKey));
+            // Not in the pipeline, Jedis runs no scripts in one. Keeps the filter's expiry, so that
+            // it is rebuilt at least once per TTL
+            metrics.run("addToFavoritesFilter", () -> redisTemplate.execute(FavoritesBloomFilter.ADD_SCRIPT,
+                    List.of(filterKey), FavoritesBloomFilter.addArguments(values.keySet()).toArray()));
+        }
+        List<Object> results = metrics.call(operation, () -> pipelined(operations -> {
+            // First, so that its reply comes first
+            if (countDelta != 0) {
+                operations.opsForValue().increment(countKey, countDelta);
+                operations.expire(countKey, ttl);
+            }
+            if (!adjustCount) {
+                operations.delete(countKey);
+            }
+            if (values.isEmpty()) {
+                operations.opsForValue().increment(writesKey);
+            }
+            operations.expire(writesKey, ttl);
+            // The list and the exists keys keep the expiry they got when loaded, so that a user
+            // who keeps writing still has them reloaded at least once per TTL
+            values.forEach((productId, value) -> {
+                operations.opsForHash().put(key, productField(productId), value);
+                updateExists(operations, existsKeys.get(productId), "true");
+            });
+            if (!removed.isEmpty()) {
+                operations.opsForHash().delete(key, removed.stream().map(CacheKeys::productField).toArray());
+                removed.forEach(productId -> updateExists(operations, existsKeys.get(productId), "false"));
+            }
+            operations.delete(pagesKey);
+            // Last, so that its reply comes last
+            if (!values.isEmpty()) {
+                operations.getExpire(key);
+            }
+        }));
+        localCache.invalidateAll(evicted);
+        publishInvalidations(evicted);
+
+        // INCRBY creates a missing key from the delta alone; drop such a count so that it is
+        // loaded again from the counter (a count that really went from 0 is dropped as well)
+        if (countDelta != 0 && !results.isEmpty() && Long.valueOf(countDelta).equals(results.get(0))) {
+            metrics.run("dropCreatedFavoriteCount", () -> redisTemplate.delete(countKey));
+        }
+        // Likewise HSET creates a missing hash, without a TTL and without the loaded marker; such
+        // a hash is never read as a list, drop it rather than let it outlive every TTL
+        if (!values.isEmpty() && !results.isEmpty() && Long.valueOf(-1).equals(results.get(results.size() - 1))) {
+            metrics.run("dropCreatedFavorites", () -> redisTemplate.delete(key));
+        }
+        logger.debug("Updated cached favorites for user {}: {} added, {} removed", userId, added.size(), removed.size());
+    }
+
+    /**
+     * Cache one page of a user's favorites.
+     *
+     * <p>All pages of a user live in one Redis hash keyed by limit and cursor, so that any change
+     * to the favorites drops every page with a single DEL. Like {@link #cacheUserFavorites}, the
+     * page is only cached if no favorites were written since the load began, and the hash keeps
+     * the TTL it got when its first page was cached.
+     *
+     * @param userId the user ID
+     * @param load the start of the load, from {@link #startFavoritesLoad}
+     * @param limit the page size
+     * @param cursor the cursor the page starts after, or null for the first page
+     * @param page the page
+     */
+    public void cacheFavoritesPage(String userId, FavoritesLoad load, int limit, String cursor, UserFavoritesResponse page) {
+        try {
+            String key = cacheKeys.userKey(userId, load.generation(), "pages");
+            String writesKey = cacheKeys.userKey(userId, load.generation(), "writes");
+            byte[] value = codec.encodeFavorites(page);
+            metrics.payload(CacheMetrics.PAGES, value.length);
+
+            fill(() -> {
+                Long set = metrics.call("cacheFavoritesPage", () -> redisTemplate.execute(CACHE_PAGE_SCRIPT,
+                        RedisSerializer.byteArray(), new GenericToStringSerializer<>(Long.class), List.of(key, writesKey),
+                        metaValue(load.writes()), pageField(limit, cursor).getBytes(StandardCharsets.UTF_8), value,
+                        metaValue(ttl.getSeconds())));
+                logger.debug(Long.valueOf(1).equals(set)
+                        ? "Cached favorites page for user: {}"
+                        : "Favorites of user {} were written while loading a page, not caching it", userId);
+            });
+        } catch (IllegalArgumentException e) {
+            logger.error("Error serializing favorites page for caching: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Get a cached page of a user's favorites.
+     *
+     * @param userId the user ID
+     * @param limit the page size
+     * @param cursor the cursor the page starts after, or null for the first page
+     * @return the cached page or empty if not found
+     */
+    public Optional<UserFavoritesResponse> getCachedFavoritesPage(String userId, int limit, String cursor) {
+        String key = buildKey(userId, "pages");
+
+        try {
+            HashOperations<String, String, byte[]> hashOperations = redisTemplate.opsForHash();
+            byte[] value = metrics.lookup("getCachedFavoritesPage", pagesLookups,
+                    () -> hashOperations.get(key, pageField(limit, cursor)));
+
+            if (value != null) {
+                pagesLookups.redisHits.increment();
+                logger.debug("Cache hit for favorites page: {}", userId);
+                return Optional.of(codec.decodeFavorites(value));
+            }
+
+            pagesLookups.redisMisses.increment();
+            logger.debug("Cache miss for favorites page: {}", userId);
+            return Optional.empty();
+        } catch (IllegalArgumentException e) {
+            pagesLookups.redisErrors.increment();
+            logger.error("Error deserializing cached favorites page: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Decide whether a read of the user's cached favorites should trigger a background refresh.
+     *
+     * <p>XFetch: refresh once {@code now - delta * beta * ln(random) >= expiry}, where delta is
+     * the time the list took to load. The closer the entry is to expiry, and the more expensive
+     * it is to load, the likelier a read picks it, so hot entries are reloaded before they
+     * expire while each read only has a small chance of doing so.
+     *
+     * @param userId the user ID
+     * @return true if the caller should reload the favorites in the background
+     */
+    public boolean shouldRefreshEarly(String userId) {
+        LocalEntry entry = localCache.getIfPresent(buildKey(userId, "favorites"));
+        if (entry == null || entry.expiresAtMillis <= 0 || refreshAheadBeta <= 0) {
+            return false;
+        }
+
+        double gap = -entry.deltaMillis * refreshAheadBeta * Math.log(ThreadLocalRandom.current().nextDouble());
+        boolean refresh = System.currentTimeMillis() + gap >= entry.expiresAtMillis;
+        if (refresh) {
+            earlyRefreshes.increment();
+            logger.debug("Picked favorites of user {} for early refresh", userId);
+        }
+        return refresh;
+    }
+
     /**
      * Cache favorite existence check.
      *
@@ -86,73 +580,343 @@ public class CacheService {
      * @param exists whether the favorite exists
      */
     public void cacheFavoriteExists(String userId, String productId, boolean exists) {
-        String key = buildKey("favorite", "exists", userId, productId);
-        redisTemplate.opsForValue().set(key, String.valueOf(exists), ttl);
+        String key = buildKey(userId, "exists", productId);
+        fill(() -> metrics.run("cacheFavoriteExists", () -> redisTemplate.opsForValue().set(key, String.valueOf(exists), ttl)));
+        putLocal(key, exists, 1);
         logger.debug("Cached favorite existence for user {} and product {}: {}", userId, productId, exists);
     }
 
     /**
-     * Get cached favorite existence.
+     * Get cached favorite existence, trying the local tier before Redis.
      *
      * @param userId the user ID
      * @param productId the product ID
-     * @return cached favorite existence or null if not found
+     * @return cached favorite existence or empty if not found
      */
-    public Boolean getCachedFavoriteExists(String userId, String productId) {
-        String key = buildKey("favorite", "exists", userId, productId);
-        String value = redisTemplate.opsForValue().get(key);
+    public Optional<Boolean> getCachedFavoriteExists(String userId, String productId) {
+        String key = buildKey(userId, "exists", productId);
+
+        Boolean local = getLocal(key, Boolean.class, existsLookups);
+        if (local != null) {
+            logger.debug("Local cache hit for favorite exists: user {} product {}", userId, productId);
+            return Optional.of(local);
+        }
+
+        String value = metrics.lookup("getCachedFavoriteExists", existsLookups, () -> redisTemplate.opsForValue().get(key));
 
         if (value != null) {
+            existsLookups.redisHits.increment();
             logger.debug("Cache hit for favorite exists: user {} product {}", userId, productId);
-            return Boolean.valueOf(value);
+            Boolean exists = Boolean.valueOf(value);
+            putLocal(key, exists, 1);
+            return Optional.of(exists);
         }
 
+        existsLookups.redisMisses.increment();
         logger.debug("Cache miss for favorite exists: user {} product {}", userId, productId);
-        return null;
+        return Optional.empty();
     }
 
     /**
-     * Evict user favorites cache.
+     * Get cached existence for several products in at most one Redis round trip.
+     *
+     * <p>A locally cached favorites list answers everything. Otherwise local existence entries are
+     * used first, and the rest are resolved with one pipelined HMGET on the favorites hash (which
+     * is authoritative once fully loaded) and MGET on the existence keys.
+     *
+     * @param userId the user ID
+     * @param productIds the product IDs
+     * @return existence per product ID; products missing from the map were not cached
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Boolean> getCachedFavoritesExist(String userId, Collection<String> productIds) {
+        Map<String, Boolean> found = new HashMap<>();
+        String key = buildKey(userId, "favorites");
+
+        UserFavoritesResponse local = getLocal(key, UserFavoritesResponse.class, favoritesLookups);
+        if (local != null) {
+            Set<String> favoriteIds = local.getFavorites().stream()
+                    .map(FavoriteResponse::getProductId)
+                    .collect(Collectors.toSet());
+            productIds.forEach(productId -> found.put(productId, favoriteIds.contains(productId)));
+            return found;
+        }
+
+        List<String> misses = new ArrayList<>();
+        List<String> missKeys = new ArrayList<>();
+        for (String productId : productIds) {
+            String existsKey = buildKey(userId, "exists", productId);
+            Boolean exists = getLocal(existsKey, Boolean.class, existsLookups);
+            if (exists != null) {
+                found.put(productId, exists);
+            } else {
+                misses.add(productId);
+                missKeys.add(existsKey);
+            }
+        }
+        if (misses.isEmpty()) {
+            return found;
+        }
+
+        List<Object> fields = new ArrayList<>(misses.size() + 1);
+        fields.add(LOADED_FIELD);
+        misses.forEach(productId -> fields.add(productField(productId)));
+        List<Object> results = metrics.lookup("getCachedFavoritesExist", existsLookups, () -> pipelined(operations -> {
+            operations.opsForHash().multiGet(key, fields);
+            operations.opsForValue().multiGet(missKeys);
+        }));
+        List<Object> hashValues = (List<Object>) results.get(0);
+        List<String> existsValues = (List<String>) results.get(1);
+        boolean loaded = hashValues.get(0) != null;
+
+        for (int i = 0; i < misses.size(); i++) {
+            if (loaded) {
+                found.put(misses.get(i), hashValues.get(i + 1) != null);
+            } else if (existsValues.get(i) != null) {
+                found.put(misses.get(i), Boolean.valueOf(existsValues.get(i)));
+            }
+        }
+        existsLookups.redisHits.increment(found.size() - (productIds.size() - misses.size()));
+        existsLookups.redisMisses.increment(productIds.size() - found.size());
+        logger.debug("Batch exists for user {}: {} of {} products cached", userId, found.size(), productIds.size());
+        return found;
+    }
+
+    /**
+     * Cache existence for several products in one pipelined round trip.
+     *
+     * @param userId the user ID
+     * @param existence existence per product ID
+     */
+    public void cacheFavoritesExist(String userId, Map<String, Boolean> existence) {
+        Map<String, String> keys = new HashMap<>();
+        existence.forEach((productId, exists) -> keys.put(buildKey(userId, "exists", productId), String.valueOf(exists)));
+
+        fill(() -> metrics.run("cacheFavoritesExist",
+                () -> pipelined(operations -> keys.forEach((key, value) -> operations.opsForValue().set(key, value, ttl)))));
+        keys.forEach((key, value) -> putLocal(key, Boolean.valueOf(value), 1));
+        logger.debug("Cached favorite existence for user {} and {} products", userId, existence.size());
+    }
+
+    /**
+     * Cache the number of favorites of a user, unless a count is already cached: that one is kept
+     * up to date by INCRBY/DECRBY and must not be overwritten by an older read.
+     *
+     * @param userId the user ID
+     * @param count the number of favorites
+     */
+    public void cacheFavoriteCount(String userId, long count) {
+        String key = buildKey(userId, "count");
+        if (Boolean.TRUE.equals(metrics.call("cacheFavoriteCount",
+                () -> redisTemplate.opsForValue().setIfAbsent(key, String.valueOf(count), ttl)))) {
+            putLocal(key, count, 1);
+        }
+        logger.debug("Cached favorite count for user {}: {}", userId, count);
+    }
+
+    /**
+     * Get the cached number of favorites of a user, trying the local tier before Redis.
+     *
+     * @param userId the user ID
+     * @return cached count or empty if not found
+     */
+    public Optional<Long> getCachedFavoriteCount(String userId) {
+        String key = buildKey(userId, "count");
+
+        Long local = getLocal(key, Long.class, countLookups);
+        if (local != null) {
+            return Optional.of(local);
+        }
+
+        String value = metrics.lookup("getCachedFavoriteCount", countLookups, () -> redisTemplate.opsForValue().get(key));
+
+        if (value != null) {
+            countLookups.redisHits.increment();
+            Long count = Long.valueOf(value);
+            putLocal(key, count, 1);
+            return Optional.of(count);
+        }
+
+        countLookups.redisMisses.increment();
+        logger.debug("Cache miss for favorite count: {}", userId);
+        return Optional.empty();
+    }
+
+    /**
+     * Evict the cached number of favorites of a user on every replica.
+     *
+     * @param userId the user ID
+     */
+    public void evictFavoriteCount(String userId) {
+        String key = buildKey(userId, "count");
+        metrics.run("evictFavoriteCount", () -> redisTemplate.delete(key));
+        evictEverywhere(key);
+        logger.debug("Evicted favorite count for user: {}", userId);
+    }
+
+    /**
+     * Get the user's Bloom filter, trying the local mirror before the Redis bitmap.
+     *
+     * @param userId the user ID
+     * @return the filter, or empty if it is missing or was never completely built
+     */
+    public Optional<FavoritesBloomFilter> getFavoritesFilter(String userId) {
+        String key = buildKey(userId, "bloom");
+
+        FavoritesBloomFilter local = getLocal(key, FavoritesBloomFilter.class, bloomLookups);
+        if (local != null) {
+            return Optional.of(local);
+        }
+
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] value = metrics.lookup("getFavoritesFilter", bloomLookups, () -> redisTemplate.execute(
+                (RedisCallback<byte[]>) connection -> connection.stringCommands().get(rawKey)));
+        FavoritesBloomFilter filter = FavoritesBloomFilter.fromBytes(value);
+
+        if (filter != null) {
+            bloomLookups.redisHits.increment();
+            putLocal(key, filter, Math.max(1, filter.sizeInBytes() / FAVORITE_FOOTPRINT));
+            return Optional.of(filter);
+        }
+
+        bloomLookups.redisMisses.increment();
+        logger.debug("No complete Bloom filter cached for user: {}", userId);
+        return Optional.empty();
+    }
+
+    /**
+     * Cache a Bloom filter built from the user's complete favorites.
+     *
+     * <p>Adds written through since the build began are not in the built filter, so it is only
+     * set if the user's write counter did not move, like {@link #cacheUserFavorites}; otherwise
+     * the next read builds it again. Write-throughs only add to a filter that exists, and drop it
+     * once it is full, see {@link FavoritesBloomFilter#ADD_SCRIPT}.
+     *
+     * @param userId the user ID
+     * @param load the start of the build, from {@link #startFavoritesLoad}
+     * @param filter the filter built from the repository
+     */
+    public void cacheFavoritesFilter(String userId, FavoritesLoad load, FavoritesBloomFilter filter) {
+        String key = cacheKeys.userKey(userId, load.generation(), "bloom");
+        String writesKey = cacheKeys.userKey(userId, load.generation(), "writes");
+        byte[] bits = filter.toBytes();
+        metrics.payload(CacheMetrics.BLOOM, bits.length);
+
+        fill(() -> {
+            Long set = metrics.call("cacheFavoritesFilter", () -> redisTemplate.execute(CACHE_FILTER_SCRIPT,
+                    RedisSerializer.byteArray(), new GenericToStringSerializer<>(Long.class), List.of(key, writesKey),
+                    metaValue(load.writes()), bits, metaValue(ttl.getSeconds())));
+            evictEverywhere(key);
+            logger.debug("Cached Bloom filter for user {}: {}", userId, Long.valueOf(1).equals(set));
+        });
+    }
+
+    /**
+     * Invalidate cached favorites after the user's favorites changed.
+     *
+     * @param userId the user ID
+     */
+    public void invalidateUserFavorites(String userId) {
+        evictUserFavoritesCache(userId);
+    }
+
+    /**
+     * Evict user favorites cache on every replica.
      *
      * @param userId the user ID
      */
     public void evictUserFavoritesCache(String userId) {
-        String key = buildKey("user", userId, "favorites");
-        redisTemplate.delete(key);
+        String key = buildKey(userId, "favorites");
+        String pagesKey = buildKey(userId, "pages");
+        String writesKey = buildKey(userId, "writes");
+        metrics.run("evictUserFavoritesCache", () -> pipelined(operations -> {
+            operations.delete(key);
+            operations.delete(pagesKey);
+            operations.opsForValue().increment(writesKey);
+            operations.expire(writesKey, ttl);
+        }));
+        evictEverywhere(key);
         logger.debug("Evicted favorites cache for user: {}", userId);
     }
 
     /**
-     * Evict favorite existence cache.
+     * Evict the favorites cache of several users on every replica, in one pipelined round trip
+     * plus one to publish the invalidations.
+     *
+     * @param userIds the user IDs
+     */
+    public void evictUserFavoritesCaches(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+
+        Map<String, Long> generations = getGenerations(userIds);
+        List<String> keys = new ArrayList<>(userIds.size());
+        List<String> pagesKeys = new ArrayList<>(userIds.size());
+        List<String> writesKeys = new ArrayList<>(userIds.size());
+        generations.forEach((userId, generation) -> {
+            keys.add(cacheKeys.userKey(userId, generation, "favorites"));
+            pagesKeys.add(cacheKeys.userKey(userId, generation, "pages"));
+            writesKeys.add(cacheKeys.userKey(userId, generation, "writes"));
+        });
+        metrics.run("evictUserFavoritesCaches", () -> pipelined(operations -> {
+            operations.delete(keys);
+            operations.delete(pagesKeys);
+            writesKeys.forEach(writesKey -> {
+                operations.opsForValue().increment(writesKey);
+                operations.expire(writesKey, ttl);
+            });
+        }));
+        localCache.invalidateAll(keys);
+        publishInvalidations(keys);
+        logger.debug("Evicted favorites cache for {} users", userIds.size());
+    }
+
+    /**
+     * Evict favorite existence cache on every replica.
      *
      * @param userId the user ID
      * @param productId the product ID
      */
     public void evictFavoriteExistsCache(String userId, String productId) {
-        String key = buildKey("favorite", "exists", userId, productId);
-        redisTemplate.delete(key);
+        String key = buildKey(userId, "exists", productId);
+        metrics.run("evictFavoriteExistsCache", () -> redisTemplate.delete(key));
+        evictEverywhere(key);
         logger.debug("Evicted favorite exists cache for user {} and product {}", userId, productId);
     }
 
     /**
      * Evict all cache entries for a user.
      *
+     * <p>Bumps the user's cache generation with a single INCR instead of scanning the keyspace.
+     * Every key of the previous generation becomes unreachable and ages out through its TTL.
+     *
      * @param userId the user ID
      */
     public void evictAllUserCache(String userId) {
-        String pattern = buildKey("*", userId, "*");
-        redisTemplate.delete(redisTemplate.keys(pattern));
-        logger.debug("Evicted all cache entries for user: {}", userId);
+        String generationKey = cacheKeys.generationKey(userId);
+        Long generation = metrics.call("evictAllUserCache", () -> redisTemplate.opsForValue().increment(generationKey));
+        evictEverywhere(generationKey);
+        logger.debug("Evicted all cache entries for user: {} (generation {})", userId, generation);
+    }
+
+    /**
+     * Handle an invalidation broadcast by another replica (or by this one).
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        localCache.invalidate(key);
+        logger.trace("Evicted local cache entry on broadcast: {}", key);
     }
 
     /**
-     * Build cache key.
+     * Redis pub/sub channel carrying local cache invalidations.
      *
-     * @param parts key parts
-     * @return formatted cache key
+     * @return the channel name
      */
-    private String buildKey(String... parts) {
-        return keyPrefix + ":" + String.join(":", parts);
+    public String getInvalidationChannel() {
+        return invalidationChannel;
     }
 
     /**
@@ -162,11 +926,178 @@ public class CacheService {
      */
     public boolean isRedisAvailable() {
         try {
-            redisTemplate.opsForValue().get("health-check");
+            metrics.run("isRedisAvailable", () -> redisTemplate.opsForValue().get("health-check"));
             return true;
         } catch (Exception e) {
             logger.warn("Redis is not available: {}", e.getMessage());
             return false;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Build a user-scoped cache key embedding the user's current cache generation.
+     *
+     * @param userId the user ID
+     * @param parts key parts
+     * @return formatted cache key
+     */
+    String buildKey(String userId, String... parts) {
+        return cacheKeys.userKey(userId, getGeneration(userId), parts);
+    }
+
+    private long getGeneration(String userId) {
+        String key = cacheKeys.generationKey(userId);
+
+        LocalEntry local = localCache.getIfPresent(key);
+        if (local != null) {
+            return (Long) local.value;
+        }
+
+        String value = metrics.call("getGeneration", () -> redisTemplate.opsForValue().get(key));
+        long generation = value != null ? Long.parseLong(value) : 0L;
+        putLocal(key, generation, 1);
+        return generation;
+    }
+
+    /**
+     * Generations of several users, reading those not held locally in one round trip.
+     */
+    private Map<String, Long> getGenerations(Collection<String> userIds) {
+        Map<String, Long> generations = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String userId : userIds) {
+            LocalEntry local = localCache.getIfPresent(cacheKeys.generationKey(userId));
+            generations.put(userId, local != null ? (Long) local.value : null);
+            if (local == null) {
+                missing.add(userId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return generations;
+        }
+
+        List<String> generationKeys = missing.stream().map(cacheKeys::generationKey).toList();
+        List<String> values = metrics.call("getGenerations", () -> redisTemplate.opsForValue().multiGet(generationKeys));
+        for (int i = 0; i < missing.size(); i++) {
+            String value = values != null ? values.get(i) : null;
+            long generation = value != null ? Long.parseLong(value) : 0L;
+            putLocal(cacheKeys.generationKey(missing.get(i)), generation, 1);
+            generations.put(missing.get(i), generation);
+        }
+        return generations;
+    }
+
+    /**
+     * Run the given commands in a single pipelined round trip.
+     *
+     * @return the deserialized replies, in command order
+     */
+    @SuppressWarnings("unchecked")
+    /**
+     * Update a cached exists key in a pipeline, keeping its TTL. A missing key is left missing: set
+     * without a TTL it would never expire.
+     */
+    private static void updateExists(RedisOperations<String, String> operations, String key, String value) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        byte[] rawValue = value.getBytes(StandardCharsets.UTF_8);
+        operations.execute((RedisCallback<Boolean>) connection ->
+                connection.stringCommands().set(rawKey, rawValue, Expiration.keepTtl(), SetOption.ifPresent()));
+    }
+
+    private List<Object> pipelined(Consumer<RedisOperations<String, String>> commands) {
+        return redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                commands.accept((RedisOperations<String, String>) operations);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Write a cache fill to Redis, on the fill thread when asynchronous fills are enabled.
+     */
+    private void fill(Runnable write) {
+        if (fillExecutor == null) {
+            write.run();
+            return;
+        }
+        fillExecutor.execute(() -> {
+            try {
+                write.run();
+            } catch (RuntimeException e) {
+                logger.warn("Asynchronous cache fill failed: {}", e.getMessage());
+            }
+        });
+    }
+
+    private <T> T getLocal(String key, Class<T> type, CacheMetrics.Lookups lookups) {
+        LocalEntry entry = localCache.getIfPresent(key);
+        if (entry != null && type.isInstance(entry.value)) {
+            lookups.localHits.increment();
+            return type.cast(entry.value);
+        }
+        lookups.localMisses.increment();
+        return null;
+    }
+
+    private void putLocal(String key, Object value, int weight) {
+        putLocal(key, value, weight, 0, 0);
+    }
+
+    private void putLocal(String key, Object value, int weight, long deltaMillis, long expiresAtMillis) {
+        localCache.put(key, new LocalEntry(value, weight, localTtl.toNanos(), deltaMillis, expiresAtMillis));
+    }
+
+    private void evictEverywhere(String key) {
+        localCache.invalidate(key);
+        metrics.run("publishInvalidation", () -> redisTemplate.convertAndSend(invalidationChannel, key));
+    }
+
+    private void publishInvalidations(Collection<String> keys) {
+        List<String> arguments = new ArrayList<>(keys.size() + 1);
+        arguments.add(invalidationChannel);
+        arguments.addAll(keys);
+        metrics.run("publishInvalidations", () -> redisTemplate.execute(PUBLISH_SCRIPT, List.of(), arguments.toArray()));
+    }
+
+    /**
+     * Local cache entry carrying its own weight and time-to-live, plus the recompute time and
+     * Redis expiry used for refresh-ahead (zero when not tracked).
+     */
+    private static final class LocalEntry {
+        private final Object value;
+        private final int weight;
+        private final long ttlNanos;
+        private final long deltaMillis;
+        private final long expiresAtMillis;
+
+        private LocalEntry(Object value, int weight, long ttlNanos, long deltaMillis, long expiresAtMillis) {
+            this.value = value;
+            this.weight = weight;
+            this.ttlNanos = ttlNanos;
+            this.deltaMillis = deltaMillis;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    /**
+     * Expires each local entry after the TTL it was stored with; reads do not extend it.
+     */
+    private static final class LocalEntryExpiry implements Expiry<String, LocalEntry> {
+        @Override
+        public long expireAfterCreate(String key, LocalEntry entry, long currentTime) {
+            return entry.ttlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, LocalEntry entry, long currentTime, long currentDuration) {
+            return entry.ttlNanos;
+        }
+
+        @Override
+        public long expireAfterRead(String key, LocalEntry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.phoneaccessories.favorites.service;
+
+import com.mongodb.MongoServerException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.FullDocumentBeforeChange;
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.model.Favorite;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the cache in step with every write to the favorites collection, including writes that
+ * bypass {@link FavoriteService} such as scripts and migrations.
+ *
+ * <p>A MongoDB change stream (replica set or sharded cluster only) is read on a dedicated
+ * thread. Buffered changes are grouped per user and applied with
+ * {@link CacheService#applyFavoriteChanges}, which is idempotent, so changes the service already
+ * wrote through are harmless and a replay after a restart is safe. The resume token is saved in
+ * MongoDB after each applied batch, so changes made while no listener ran are applied on
+ * startup, as long as they are still in the oplog. Replicas share the token, so only the one
+ * holding the change stream's {@link RedisLeaseLock} reads the stream; the others stand by and take
+ * over from the saved token when the lock expires.
+ *
+ * <p>Deletes carry only the document ID. Their user and product come from the pre-image, which
+ * is enabled on the collection at startup (MongoDB 6.0 or later); deletes without one are
+ * counted as unresolved and left to the cache TTL. Without pre-images a change cannot be patched
+ * into the cache safely: an insert read after the service already wrote through a later removal
+ * would add the favorite back, and the delete that corrects it cannot be resolved. Changes of a
+ * resolvable user then evict that user's cache instead, as do updates without a pre-image.
+ */
+@Service
+@ConditionalOnProperty(name = "cache.change-stream.enabled", havingValue = "true")
+public class FavoriteChangeStreamListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(FavoriteChangeStreamListener.class);
+
+    static final String TOKENS_COLLECTION = "resume_tokens";
+
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+    private static final String LOCK_PREFIX = "favorites:change-stream:";
+    // ChangeStreamHistoryLost and ChangeStreamFatalError: the token points before the oplog
+    private static final Set<Integer> HISTORY_LOST_CODES = Set.of(286, 280);
+
+    private final MongoTemplate mongoTemplate;
+    private final CacheService cacheService;
+    private final RedisLeaseLock jobLock;
+    private final String name;
+    private final boolean enablePreImages;
+    private final int batchSize;
+    private final Duration lockTtl;
+    private final Counter applied;
+    private final Counter evicted;
+    private final Counter unresolved;
+    private volatile boolean preImages;
+    private volatile boolean running;
+    private Thread thread;
+    private BsonDocument savedToken;
+
+    public FavoriteChangeStreamListener(MongoTemplate mongoTemplate,
+                                        CacheService cacheService,
+                                        RedisLeaseLock jobLock,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${cache.change-stream.name:favorites-cache}") String name,
+                                        @Value("${cache.change-stream.pre-images:true}") boolean enablePreImages,
+                                        @Value("${cache.change-stream.batch-size:500}") int batchSize,
+                                        @Value("${cache.change-stream.lock-ttl:30000}") long lockTtlMillis) {
+        this.mongoTemplate = mongoTemplate;
+        this.cacheService = cacheService;
+        this.jobLock = jobLock;
+        this.name = name;
+        this.enablePreImages = enablePreImages;
+        this.preImages = enablePreImages;
+        this.batchSize = batchSize;
+        this.lockTtl = Duration.ofMillis(lockTtlMillis);
+        this.applied = Counter.builder("favorites.change-stream.changes")
+                .tag("outcome", "applied")
+                .description("Favorites changes read from the change stream")
+                .register(meterRegistry);
+        this.evicted = Counter.builder("favorites.change-stream.changes")
+                .tag("outcome", "evicted")
+                .description("Favorites changes read from the change stream")
+                .register(meterRegistry);
+        this.unresolved = Counter.builder("favorites.change-stream.changes")
+                .tag("outcome", "unresolved")
+                .description("Favorites changes read from the change stream")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start listening once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "favorites-change-stream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        if (enablePreImages) {
+            preImages = enablePreImages();
+        }
+
+        String lock = LOCK_PREFIX + name;
+        while (running) {
+            Optional<String> token = jobLock.tryAcquire(lock, lockTtl);
+            if (token.isEmpty()) {
+                // Another replica reads the stream, or Redis is unavailable
+                pause(RETRY_DELAY);
+                continue;
+            }
+            try {
+                listen(lock, token.get());
+            } finally {
+                jobLock.release(lock, token.get());
+            }
+        }
+    }
+
+    /**
+     * Read the stream while holding the lock, renewing it every third of its TTL.
+     */
+    private void listen(String lock, String token) {
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = open(loadResumeToken())) {
+            logger.info("Listening to favorites changes");
+            long renewedAt = System.nanoTime();
+            while (running) {
+                if (System.nanoTime() - renewedAt > lockTtl.toNanos() / 3) {
+                    if (!jobLock.renew(lock, token, lockTtl)) {
+                        logger.warn("Lost the favorites change stream lock, standing by");
+                        return;
+                    }
+                    renewedAt = System.nanoTime();
+                }
+                List<ChangeStreamDocument<Document>> batch = nextBatch(cursor);
+                apply(batch);
+                saveResumeToken(cursor.getResumeToken());
+            }
+        } catch (MongoServerException e) {
+            if (HISTORY_LOST_CODES.contains(e.getCode())) {
+                // Changes were missed; cached entries written before now expire by TTL
+                logger.warn("Favorites change stream cannot resume, restarting from now: {}", e.getMessage());
+                deleteResumeToken();
+            } else {
+                retryLater(e);
+            }
+        } catch (RuntimeException e) {
+            // MongoDB or Redis unavailable; the failed batch is read again from the saved token
+            retryLater(e);
+        }
+    }
+
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> open(BsonDocument resumeToken) {
+        MongoCollection<Document> collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Favorite.class));
+        var changeStream = collection
+                .watch(List.of(Aggregates.match(Filters.in("operationType", "insert", "update", "replace", "delete"))))
+                .fullDocument(FullDocument.UPDATE_LOOKUP)
+                .fullDocumentBeforeChange(FullDocumentBeforeChange.WHEN_AVAILABLE)
+                .batchSize(batchSize)
+                .maxAwaitTime(1, TimeUnit.SECONDS);
+        if (resumeToken != null) {
+            changeStream.resumeAfter(resumeToken);
+        }
+        return changeStream.cursor();
+    }
+
+    /**
+     * Wait up to a second for a change, then take the changes already buffered with it.
+     */
+    private List<ChangeStreamDocument<Document>> nextBatch(MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor) {
+        ChangeStreamDocument<Document> first = cursor.tryNext();
+        if (first == null) {
+            return List.of();
+        }
+
+        List<ChangeStreamDocument<Document>> batch = new ArrayList<>();
+        batch.add(first);
+        while (batch.size() < batchSize && cursor.available() > 0) {
+            batch.add(cursor.next());
+        }
+        return batch;
+    }
+
+    /**
+     * Apply changes to the cache, one pipelined write or one eviction per user.
+     *
+     * @param changes changes in stream order
+     */
+    void apply(List<ChangeStreamDocument<Document>> changes) {
+        Map<String, UserChanges> byUser = new LinkedHashMap<>();
+        for (ChangeStreamDocument<Document> change : changes) {
+            Document before = change.getFullDocumentBeforeChange();
+            Document after = change.getFullDocument();
+            String operation = change.getOperationTypeString();
+            boolean deleted = operation.equals("delete");
+            // An insert has no pre-image, but is only patched in while deletes can be resolved
+            boolean patchable = before != null || (operation.equals("insert") && preImages);
+
+            if (!patchable) {
+                if (!deleted && after != null) {
+                    byUser.computeIfAbsent(after.getString("user_id"), userId -> new UserChanges()).evict();
+                    evicted.increment();
+                } else {
+                    unresolved.increment();
+                    logger.debug("No pre-image for {} of favorite {}", operation, change.getDocumentKey());
+                }
+                continue;
+            }
+
+            if (before != null && (deleted || after == null || !sameFavorite(before, after))) {
+                byUser.computeIfAbsent(before.getString("user_id"), userId -> new UserChanges())
+                        .remove(before.getString("product_id"));
+            }
+            if (!deleted && after != null) {
+                FavoriteResponse favorite = FavoriteMapper.toResponse(mongoTemplate.getConverter().read(Favorite.class, after));
+                byUser.computeIfAbsent(favorite.getUserId(), userId -> new UserChanges()).upsert(favorite);
+            }
+            applied.increment();
+        }
+
+        byUser.forEach((userId, userChanges) -> {
+            if (userChanges.evicted) {
+                cacheService.evictAllUserCache(userId);
+            } else {
+                cacheService.applyFavoriteChanges(userId, new ArrayList<>(userChanges.upserted.values()), userChanges.removed);
+            }
+        });
+    }
+
+    private static boolean sameFavorite(Document before, Document after) {
+        return before.getString("user_id").equals(after.getString("user_id"))
+                && before.getString("product_id").equals(after.getString("product_id"));
+    }
+
+    /**
+     * @return whether the collection records pre-images
+     */
+    private boolean enablePreImages() {
+        try {
+            mongoTemplate.executeCommand(new Document("collMod", mongoTemplate.getCollectionName(Favorite.class))
+                    .append("changeStreamPreAndPostImages", new Document("enabled", true)));
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("Could not enable pre-images, changes evict the user's cache and favorites deleted outside "
+                    + "the service stay cached until TTL: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private BsonDocument loadResumeToken() {
+        Document saved = mongoTemplate.getCollection(TOKENS_COLLECTION).find(Filters.eq("_id", name)).first();
+        savedToken = saved != null ? saved.get("token", Document.class).toBsonDocument() : null;
+        return savedToken;
+    }
+
+    private void saveResumeToken(BsonDocument token) {
+        if (token == null || token.equals(savedToken)) {
+            return;
+        }
+        mongoTemplate.getCollection(TOKENS_COLLECTION).replaceOne(Filters.eq("_id", name),
+                new Document("_id", name).append("token", token).append("updated_at", new Date()),
+                new ReplaceOptions().upsert(true));
+        savedToken = token;
+    }
+
+    private void deleteResumeToken() {
+        savedToken = null;
+        mongoTemplate.getCollection(TOKENS_COLLECTION).deleteOne(Filters.eq("_id", name));
+    }
+
+    private void retryLater(RuntimeException e) {
+        if (!running) {
+            return;
+        }
+        logger.warn("Favorites change stream failed, retrying in {}s: {}", RETRY_DELAY.toSeconds(), e.getMessage());
+        pause(RETRY_DELAY);
+    }
+
+    private void pause(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private static final class UserChanges {
+        final Map<String, FavoriteResponse> upserted = new LinkedHashMap<>();
+        final Set<String> removed = new LinkedHashSet<>();
+        boolean evicted;
+
+        void upsert(FavoriteResponse favorite) {
+            removed.remove(favorite.getProductId());
+            upserted.put(favorite.getProductId(), favorite);
+        }
+
+        void remove(String productId) {
+            upserted.remove(productId);
+            removed.add(productId);
+        }
+
+        void evict() {
+            evicted = true;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import com.phoneaccessories.favorites.repository.FavoriteCounterRepository;
+import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Periodically repairs favorite counters that drifted from the favorites collection.
+ *
+ * <p>The favorite and its counter are separate documents updated one after the other, so a
+ * crash in between, or a counter created from a count that raced with a write, can leave a
+ * counter off. Only counters touched within the reconcile window are checked, so a run does not
+ * scan the whole collection; a counter left off by a lost update is checked again the next time
+ * the user's favorites change.
+ *
+ * <p>Each counter is read, its user's favorites counted, and the count written only if the
+ * counter still holds the value read, so increments that land meanwhile are never overwritten;
+ * a counter that moved is left to the next run. A write whose favorite is counted but whose
+ * increment lands after the repair leaves the counter off by one and touched, so the next run
+ * repairs it. Only the node holding the job lease reconciles; it checks the lease is still held
+ * before each write.
+ */
+@Service
+public class FavoriteCounterReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FavoriteCounterReconciler.class);
+
+    private static final String LOCK = "favorite-counters:reconcile";
+
+    private final FavoriteRepository favoriteRepository;
+    private final FavoriteCounterRepository favoriteCounterRepository;
+    private final CacheService cacheService;
+    private final RedisLeaseLock jobLock;
+    private final Duration lockTtl;
+    private final Duration window;
+
+    public FavoriteCounterReconciler(FavoriteRepository favoriteRepository,
+                                     FavoriteCounterRepository favoriteCounterRepository,
+                                     CacheService cacheService,
+                                     RedisLeaseLock jobLock,
+                                     @Value("${favorites.counters.reconcile-lock-ttl:600000}") long lockTtlMillis,
+                                     @Value("${favorites.counters.reconcile-window:7200000}") long windowMillis) {
+        this.favoriteRepository = favoriteRepository;
+        this.favoriteCounterRepository = favoriteCounterRepository;
+        this.cacheService = cacheService;
+        this.jobLock = jobLock;
+        this.lockTtl = Duration.ofMillis(lockTtlMillis);
+        this.window = Duration.ofMillis(windowMillis);
+    }
+
+    /**
+     * Fix the drifted counters touched within the reconcile window.
+     *
+     * @return the number of counters fixed
+     */
+    @Scheduled(initialDelayString = "${favorites.counters.reconcile-interval:3600000}",
+            fixedDelayString = "${favorites.counters.reconcile-interval:3600000}")
+    public int reconcile() {
+        Optional<String> token = jobLock.tryAcquire(LOCK, lockTtl);
+        if (token.isEmpty()) {
+            logger.debug("Favorite counters are being reconciled by another node");
+            return 0;
+        }
+
+        try {
+            List<FavoriteCounter> touched = favoriteCounterRepository.findUpdatedSince(LocalDateTime.now().minus(window));
+            int fixed = 0;
+            int moved = 0;
+            for (FavoriteCounter counter : touched) {
+                long counted = favoriteRepository.countByUserId(counter.getUserId());
+                if (counted == counter.getCount()) {
+                    continue;
+                }
+                if (!jobLock.renew(LOCK, token.get(), lockTtl)) {
+                    logger.warn("Lost the favorite counters lock, leaving the remaining counters to the next run");
+                    break;
+                }
+                if (favoriteCounterRepository.replaceCount(counter.getUserId(), counter.getCount(), counted)) {
+                    cacheService.evictFavoriteCount(counter.getUserId());
+                    fixed++;
+                } else {
+                    moved++;
+                }
+            }
+            if (fixed > 0 || moved > 0) {
+                logger.info("Reconciled {} drifted favorite counters of {} touched, {} changed meanwhile and were left to the next run",
+                        fixed, touched.size(), moved);
+            }
+            return fixed;
+        } catch (RuntimeException e) {
+            logger.warn("Favorite counter reconciliation failed: {}", e.getMessage());
+            return 0;
+        } finally {
+            jobLock.release(LOCK, token.get());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.phoneaccessories.favorites.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.phoneaccessories.favorites.dto.FavoriteExportFilter;
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Exports favorites as newline-delimited JSON, one {@link FavoriteResponse} per line.
+ *
+ * <p>Favorites are read from a MongoDB cursor a batch at a time and written to the output as
+ * they arrive, so memory use does not depend on the number of favorites exported. The output
+ * is flushed after each batch.
+ */
+@Service
+public class FavoriteExportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FavoriteExportService.class);
+
+    private final FavoriteRepository favoriteRepository;
+    private final ObjectWriter writer;
+    private final int batchSize;
+
+    public FavoriteExportService(FavoriteRepository favoriteRepository,
+                                 ObjectMapper objectMapper,
+                                 @Value("${favorites.export.batch-size:1000}") int batchSize) {
+        this.favoriteRepository = favoriteRepository;
+        this.writer = objectMapper.writerFor(FavoriteResponse.class)
+                .withRootValueSeparator("\n")
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Write the matching favorites to an output stream, which is left open.
+     *
+     * @param filter the export criteria
+     * @param out the output
+     * @return the number of favorites written
+     */
+    public long export(FavoriteExportFilter filter, OutputStream out) throws IOException {
+        logger.debug("Exporting favorites matching {}", filter);
+
+        long count = 0;
+        try (Stream<Favorite> favorites = favoriteRepository.streamForExport(filter, batchSize);
+             JsonGenerator generator = writer.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            Iterator<Favorite> iterator = favorites.iterator();
+            while (iterator.hasNext()) {
+                // The generator writes the separator before every value but the first
+                writer.writeValue(generator, FavoriteMapper.toResponse(iterator.next()));
+                if (++count % batchSize == 0) {
+                    generator.flush();
+                }
+            }
+            if (count > 0) {
+                generator.writeRaw('\n');
+            }
+            generator.flush();
+        }
+
+        logger.debug("Exported {} favorites", count);
+        return count;
+    }
+}
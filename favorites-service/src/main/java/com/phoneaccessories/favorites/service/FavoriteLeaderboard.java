@@ -0,0 +1,425 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.ProductFavoriteCount;
+import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Most favorited products, overall and per category, kept in Redis sorted sets scored by the
+ * number of users who favorited each product.
+ *
+ * <p>{@link FavoriteService} adjusts the scores as favorites are added and removed, so the top
+ * products are read with one {@code ZREVRANGE} in O(log N + k), and the counts of any products
+ * with one {@code ZMSCORE}, instead of counting favorites.
+ * A removal only names the product, so the category each product was last favorited in is kept
+ * in a hash next to the sets. Updates are pipelined and best effort: a failed update, or a
+ * product moved to another category, leaves the sets off until the next rebuild.
+ *
+ * <p>A rebuild counts the favorites in MongoDB over parallel partitions of the {@code _id} range,
+ * writes fresh sets under temporary keys and swaps each one in with {@code RENAME}. Updates made
+ * while it counts are lost with the sets they were applied to. Only the node holding the job lock
+ * rebuilds; it renews the lock after counting and gives up if the lock was lost.
+ */
+@Service
+public class FavoriteLeaderboard {
+
+    private static final Logger logger = LoggerFactory.getLogger(FavoriteLeaderboard.class);
+
+    private static final String LOCK = "favorites:leaderboard:rebuild";
+
+    /** Members per {@code ZADD} or {@code HSET} of a rebuild, and commands per pipeline. */
+    static final int WRITE_CHUNK = 1000;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final FavoriteRepository favoriteRepository;
+    private final RedisLeaseLock jobLock;
+    private final Executor rebuildExecutor;
+    private final String keyPrefix;
+    private final boolean enabled;
+    private final int partitions;
+    private final Duration lockTtl;
+
+    public FavoriteLeaderboard(RedisTemplate<String, String> redisTemplate,
+                               FavoriteRepository favoriteRepository,
+                               RedisLeaseLock jobLock,
+                               @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor rebuildExecutor,
+                               @Value("${cache.redis.key-prefix}") String keyPrefix,
+                               @Value("${favorites.leaderboard.enabled:true}") boolean enabled,
+                               @Value("${favorites.leaderboard.rebuild-partitions:4}") int partitions,
+                               @Value("${favorites.leaderboard.rebuild-lock-ttl:600000}") long lockTtlMillis) {
+        this.redisTemplate = redisTemplate;
+        this.favoriteRepository = favoriteRepository;
+        this.jobLock = jobLock;
+        this.rebuildExecutor = rebuildExecutor;
+        this.keyPrefix = keyPrefix;
+        this.enabled = enabled;
+        this.partitions = Math.max(1, partitions);
+        this.lockTtl = Duration.ofMillis(lockTtlMillis);
+    }
+
+    /**
+     * Whether the leaderboard is maintained; when it is not, changes are ignored.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Count added favorites and discount removed ones, in one pipelined round trip after one
+     * {@code HMGET} for the categories of removed products. Failures are logged, not thrown.
+     *
+     * @param added favorites that were added
+     * @param removed products of favorites that were removed, once per removed favorite
+     */
+    public void recordChanges(Collection<Favorite> added, Collection<String> removed) {
+        if (!enabled || (added.isEmpty() && removed.isEmpty())) {
+            return;
+        }
+
+        try {
+            List<String> removedIds = new ArrayList<>(removed);
+            List<byte[]> categories = removedIds.isEmpty()
+                    ? List.of()
+                    : hashOperations().multiGet(productCategoriesKey(), removedIds);
+
+            pipelined(operations -> {
+                ZSetOperations<String, String> zSet = operations.opsForZSet();
+                HashOperations<String, String, byte[]> hash = operations.opsForHash();
+                for (Favorite favorite : added) {
+                    zSet.incrementScore(productsKey(), favorite.getProductId(), 1);
+                    if (favorite.getCategory() != null) {
+                        zSet.incrementScore(categoryKey(favorite.getCategory()), favorite.getProductId(), 1);
+                        hash.put(productCategoriesKey(), favorite.getProductId(), favorite.getCategory().getBytes(StandardCharsets.UTF_8));
+                        operations.opsForSet().add(categoriesKey(), favorite.getCategory());
+                    }
+                }
+
+                Set<String> decremented = new LinkedHashSet<>();
+                for (int i = 0; i < removedIds.size(); i++) {
+                    decremented.add(productsKey());
+                    zSet.incrementScore(productsKey(), removedIds.get(i), -1);
+                    byte[] category = categories != null ? categories.get(i) : null;
+                    if (category != null) {
+                        String key = categoryKey(new String(category, StandardCharsets.UTF_8));
+                        decremented.add(key);
+                        zSet.incrementScore(key, removedIds.get(i), -1);
+                    }
+                }
+                // Products nobody favorites any more leave the sets
+                decremented.forEach(key -> zSet.removeRangeByScore(key, Double.NEGATIVE_INFINITY, 0));
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Could not update the favorites leaderboard, it is off until rebuilt: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Get the most favorited products.
+     *
+     * @param category only products of this category, or null for all products
+     * @param k the number of products
+     * @return up to {@code k} products, most favorited first
+     */
+    public List<ProductFavoriteCount> top(String category, int k) {
+        Set<TypedTuple<String>> entries = redisTemplate.opsForZSet()
+                .reverseRangeWithScores(category != null ? categoryKey(category) : productsKey(), 0, k - 1);
+
+        List<ProductFavoriteCount> top = new ArrayList<>();
+        if (entries != null) {
+            for (TypedTuple<String> entry : entries) {
+                long count = entry.getScore() != null ? entry.getScore().longValue() : 0;
+                top.add(new ProductFavoriteCount(entry.getValue(), category, count));
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Get how many users favorited each of several products, with one {@code ZMSCORE} on the
+     * overall set. Counts are as exact as the set, which the rebuild corrects. While the
+     * leaderboard is disabled, or its set does not exist yet, they are counted in MongoDB.
+     *
+     * @param productIds the products
+     * @return the count of each distinct product, in request order, zero for products nobody favorites
+     */
+    public Map<String, Long> counts(Collection<String> productIds) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(productIds));
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        if (!enabled) {
+            return fromProductCounts(ids, favoriteRepository.countByProductIdIn(ids));
+        }
+
+        List<Double> scores = redisTemplate.opsForZSet().score(productsKey(), ids.toArray());
+        // A missing set scores nothing, like a set without the products: only then tell them apart
+        if (isUnscored(scores) && !Boolean.TRUE.equals(redisTemplate.hasKey(productsKey()))) {
+            return fromProductCounts(ids, favoriteRepository.countByProductIdIn(ids));
+        }
+        return toCounts(ids, scores);
+    }
+
+    static boolean isUnscored(List<Double> scores) {
+        return scores == null || scores.stream().allMatch(Objects::isNull);
+    }
+
+    /**
+     * Pair products with their counts from MongoDB, missing counts counting as zero.
+     */
+    static Map<String, Long> fromProductCounts(List<String> productIds, List<ProductFavoriteCount> productCounts) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        productIds.forEach(productId -> counts.put(productId, 0L));
+        productCounts.forEach(count -> counts.put(count.getProductId(), count.getCount()));
+        return counts;
+    }
+
+    /**
+     * Pair products with their scores from a {@code ZMSCORE}, missing scores counting as zero.
+     */
+    static Map<String, Long> toCounts(List<String> productIds, List<Double> scores) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < productIds.size(); i++) {
+            Double score = scores != null && i < scores.size() ? scores.get(i) : null;
+            counts.put(productIds.get(i), score != null ? Math.max(0, score.longValue()) : 0L);
+        }
+        return counts;
+    }
+
+    /**
+     * Build the leaderboard on startup if it has never been built, without delaying startup.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfMissing() {
+        if (!enabled) {
+            return;
+        }
+        rebuildExecutor.execute(() -> {
+            try {
+                if (!Boolean.TRUE.equals(redisTemplate.hasKey(productsKey()))) {
+                    rebuild();
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Could not check the favorites leaderboard: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Recompute the leaderboard from MongoDB.
+     *
+     * @return the number of ranked products
+     */
+    @Scheduled(initialDelayString = "${favorites.leaderboard.rebuild-interval:21600000}",
+            fixedDelayString = "${favorites.leaderboard.rebuild-interval:21600000}")
+    public int rebuild() {
+        if (!enabled) {
+            return 0;
+        }
+        Optional<String> token = jobLock.tryAcquire(LOCK, lockTtl);
+        if (token.isEmpty()) {
+            logger.debug("The favorites leaderboard is being rebuilt by another node");
+            return 0;
+        }
+
+        try {
+            long start = System.nanoTime();
+            Collection<ProductFavoriteCount> counts = countFavorites();
+            if (!jobLock.renew(LOCK, token.get(), lockTtl)) {
+                logger.warn("Lost the favorites leaderboard lock while counting, leaving the rebuild to its holder");
+                return 0;
+            }
+            replace(counts, token.get());
+            logger.info("Rebuilt the favorites leaderboard of {} products in {} ms",
+                    counts.size(), (System.nanoTime() - start) / 1_000_000);
+            return counts.size();
+        } catch (RuntimeException e) {
+            logger.warn("Favorites leaderboard rebuild failed: {}", e.getMessage());
+            return 0;
+        } finally {
+            jobLock.release(LOCK, token.get());
+        }
+    }
+
+    /**
+     * Count favorites per product, one partition of the {@code _id} range per task.
+     */
+    private Collection<ProductFavoriteCount> countFavorites() {
+        List<String> bounds = partitionBounds();
+        List<CompletableFuture<List<ProductFavoriteCount>>> parts = new ArrayList<>();
+        for (int i = 0; i < bounds.size() - 1; i++) {
+            String fromId = bounds.get(i);
+            String toId = bounds.get(i + 1);
+            parts.add(CompletableFuture.supplyAsync(() -> favoriteRepository.countByProduct(fromId, toId), rebuildExecutor));
+        }
+
+        Map<String, ProductFavoriteCount> merged = new HashMap<>();
+        for (CompletableFuture<List<ProductFavoriteCount>> part : parts) {
+            for (ProductFavoriteCount count : part.join()) {
+                merged.merge(count.getProductId(), count, (left, right) -> new ProductFavoriteCount(
+                        left.getProductId(),
+                        left.getCategory() != null ? left.getCategory() : right.getCategory(),
+                        left.getCount() + right.getCount()));
+            }
+        }
+        return merged.values();
+    }
+
+    /**
+     * Split the {@code _id} range into partitions of equal time spans: ObjectIds start with their
+     * creation second, so a bound is the smallest ObjectId of a second. The outer bounds are open,
+     * so every favorite falls into a partition even if its ID is not an ObjectId.
+     *
+     * @return the bounds, null for unbounded ends; partition {@code i} is {@code [i, i + 1)}
+     */
+    List<String> partitionBounds() {
+        List<String> bounds = new ArrayList<>();
+        bounds.add(null);
+
+        Optional<String> first = favoriteRepository.findFirstByOrderByIdAsc().map(Favorite::getId);
+        Optional<String> last = favoriteRepository.findFirstByOrderByIdDesc().map(Favorite::getId);
+        if (partitions > 1 && first.filter(ObjectId::isValid).isPresent() && last.filter(ObjectId::isValid).isPresent()) {
+            long from = Integer.toUnsignedLong(new ObjectId(first.get()).getTimestamp());
+            long to = Integer.toUnsignedLong(new ObjectId(last.get()).getTimestamp()) + 1;
+            long previous = from;
+            for (int i = 1; i < partitions; i++) {
+                long second = from + (to - from) * i / partitions;
+                if (second > previous) {
+                    bounds.add(String.format("%08x%016x", second, 0));
+                    previous = second;
+                }
+            }
+        }
+
+        bounds.add(null);
+        return bounds;
+    }
+
+    /**
+     * Write the counts under temporary keys, then rename them over the live keys and delete the
+     * sets of categories left without products.
+     */
+    private void replace(Collection<ProductFavoriteCount> counts, String token) {
+        Map<String, Set<TypedTuple<String>>> sets = new HashMap<>();
+        Map<String, byte[]> productCategories = new HashMap<>();
+        Set<String> categories = new HashSet<>();
+        for (ProductFavoriteCount count : counts) {
+            TypedTuple<String> entry = new DefaultTypedTuple<>(count.getProductId(), (double) count.getCount());
+            sets.computeIfAbsent(productsKey(), key -> new HashSet<>()).add(entry);
+            if (count.getCategory() != null) {
+                sets.computeIfAbsent(categoryKey(count.getCategory()), key -> new HashSet<>()).add(entry);
+                productCategories.put(count.getProductId(), count.getCategory().getBytes(StandardCharsets.UTF_8));
+                categories.add(count.getCategory());
+            }
+        }
+
+        // The lock token keeps the temporary keys apart from those of a rebuild that outlived its lock
+        String suffix = ":rebuild:" + token;
+        List<Consumer<RedisOperations<String, String>>> writes = new ArrayList<>();
+        sets.forEach((key, entries) -> chunks(new ArrayList<>(entries)).forEach(chunk ->
+                writes.add(operations -> operations.opsForZSet().add(key + suffix, new HashSet<>(chunk)))));
+        chunks(new ArrayList<>(productCategories.entrySet())).forEach(chunk -> writes.add(operations ->
+                operations.<String, byte[]>opsForHash().putAll(productCategoriesKey() + suffix, chunk.stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)))));
+        chunks(new ArrayList<>(categories)).forEach(chunk -> writes.add(operations ->
+                operations.opsForSet().add(categoriesKey() + suffix, chunk.toArray(String[]::new))));
+        for (List<Consumer<RedisOperations<String, String>>> chunk : chunks(writes)) {
+            pipelined(operations -> chunk.forEach(write -> write.accept(operations)));
+        }
+
+        Set<String> written = new HashSet<>(sets.keySet());
+        if (!categories.isEmpty()) {
+            written.add(productCategoriesKey());
+            written.add(categoriesKey());
+        }
+        Set<String> stale = new HashSet<>(List.of(productsKey(), productCategoriesKey(), categoriesKey()));
+        Set<String> previousCategories = redisTemplate.opsForSet().members(categoriesKey());
+        if (previousCategories != null) {
+            previousCategories.forEach(category -> stale.add(categoryKey(category)));
+        }
+        stale.removeAll(written);
+
+        pipelined(operations -> {
+            written.forEach(key -> operations.rename(key + suffix, key));
+            stale.forEach(operations::delete);
+        });
+    }
+
+    private static <T> List<List<T>> chunks(List<T> values) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < values.size(); i += WRITE_CHUNK) {
+            chunks.add(values.subList(i, Math.min(i + WRITE_CHUNK, values.size())));
+        }
+        return chunks;
+    }
+
+    /**
+     * Run the given commands in a single pipelined round trip.
+     */
+    @SuppressWarnings("unchecked")
+    private void pipelined(Consumer<RedisOperations<String, String>> commands) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                commands.accept((RedisOperations<String, String>) operations);
+                return null;
+            }
+        });
+    }
+
+    private HashOperations<String, String, byte[]> hashOperations() {
+        return redisTemplate.opsForHash();
+    }
+
+    String productsKey() {
+        return keyPrefix + ":leaderboard:products";
+    }
+
+    String categoryKey(String category) {
+        return keyPrefix + ":leaderboard:category:" + category;
+    }
+
+    /** Hash of the category each product was last favorited in, to discount removals. */
+    String productCategoriesKey() {
+        return keyPrefix + ":leaderboard:product-categories";
+    }
+
+    /** Set of the categories that have a sorted set, to delete those left empty by a rebuild. */
+    String categoriesKey() {
+        return keyPrefix + ":leaderboard:categories";
+    }
+}
@@ -0,0 +1,38 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.AddFavoriteRequest;
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.model.Favorite;
+
+/**
+ * Conversions between favorite documents and DTOs, shared by the blocking and reactive services.
+ */
+final class FavoriteMapper {
+
+    private FavoriteMapper() {
+    }
+
+    static Favorite toFavorite(String userId, AddFavoriteRequest request) {
+        Favorite favorite = new Favorite();
+        favorite.setUserId(userId);
+        favorite.setProductId(request.getProductId());
+        favorite.setProductName(request.getProductName());
+        favorite.setProductPrice(request.getProductPrice());
+        favorite.setProductImageUrl(request.getProductImageUrl());
+        favorite.setCategory(request.getCategory());
+        return favorite;
+    }
+
+    static FavoriteResponse toResponse(Favorite favorite) {
+        return new FavoriteResponse(
+                favorite.getId(),
+                favorite.getUserId(),
+                favorite.getProductId(),
+                favorite.getProductName(),
+                favorite.getProductPrice(),
+                favorite.getProductImageUrl(),
+                favorite.getCategory(),
+                favorite.getCreatedAt()
+        );
+    }
+}
@@ -1,30 +1,84 @@
 package com.phoneaccessories.favorites.service;
 
 import com.phoneaccessories.favorites.dto.AddFavoriteRequest;
+import com.phoneaccessories.favorites.dto.FavoriteBatchOperation;
+import com.phoneaccessories.favorites.dto.FavoriteBatchResponse;
+import com.phoneaccessories.favorites.dto.FavoriteBatchResult;
 import com.phoneaccessories.favorites.dto.FavoriteResponse;
 import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
 import com.phoneaccessories.favorites.exception.DuplicateFavoriteException;
 import com.phoneaccessories.favorites.exception.FavoriteNotFoundException;
 import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import com.phoneaccessories.favorites.repository.FavoriteCounterRepository;
 import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import io.micrometer.core.annotation.Timed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.stream.Collectors;
 
+/**
+ * Favorites of users, read through {@link CacheService} and written to MongoDB, directly or
+ * through the write-behind log.
+ *
+ * <p>Every public method is timed as {@code favorites.service}, tagged with its name.
+ */
 @Service
+@Timed(value = "favorites.service", description = "FavoriteService calls, including cache and repository work")
 public class FavoriteService {
     private static final Logger logger = LoggerFactory.getLogger(FavoriteService.class);
 
     private final FavoriteRepository favoriteRepository;
+    private final FavoriteCounterRepository favoriteCounterRepository;
     private final CacheService cacheService;
+    private final FavoriteLeaderboard leaderboard;
+    private final TrendingFavorites trending;
+    private final RedisLeaseLock leaseLock;
+    private final Executor refreshExecutor;
+    private final SingleFlight<String, UserFavoritesResponse> favoritesLoads = new SingleFlight<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final Semaphore refreshPermits;
+    private final WriteBehindFavoriteWriter writeBehind;
 
-    public FavoriteService(FavoriteRepository favoriteRepository, CacheService cacheService) {
+    public FavoriteService(FavoriteRepository favoriteRepository,
+                           FavoriteCounterRepository favoriteCounterRepository,
+                           CacheService cacheService,
+                           FavoriteLeaderboard leaderboard,
+                           TrendingFavorites trending,
+                           RedisLeaseLock leaseLock,
+                           @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor refreshExecutor,
+                           @Value("${cache.refresh-ahead.max-concurrent:8}") int maxConcurrentRefreshes,
+                           ObjectProvider<WriteBehindFavoriteWriter> writeBehind) {
         this.favoriteRepository = favoriteRepository;
+        this.favoriteCounterRepository = favoriteCounterRepository;
         this.cacheService = cacheService;
+        this.leaderboard = leaderboard;
+        this.trending = trending;
+        this.leaseLock = leaseLock;
+        this.refreshExecutor = refreshExecutor;
+        this.refreshPermits = new Semaphore(maxConcurrentRefreshes);
+        this.writeBehind = writeBehind.getIfAvailable();
     }
 
     /**
@@ -34,25 +88,29 @@ public class FavoriteService {
     public FavoriteResponse addFavorite(String userId, AddFavoriteRequest request) {
         logger.debug("Adding product {} to favorites for user {}", request.getProductId(), userId);
 
-        // Check if the product is already in favorites
-        if (favoriteRepository.existsByUserIdAndProductId(userId, request.getProductId())) {
-            throw new DuplicateFavoriteException("Product is already in favorites");
-        }
-
-        Favorite favorite = new Favorite();
-        favorite.setUserId(userId);
-        favorite.setProductId(request.getProductId());
-        favorite.setProductName(request.getProductName());
-        favorite.setProductPrice(request.getProductPrice());
-        favorite.setProductImageUrl(request.getProductImageUrl());
-        favorite.setCategory(request.getCategory());
+        Favorite favorite = FavoriteMapper.toFavorite(userId, request);
 
-        Favorite savedFavorite = favoriteRepository.save(favorite);
+        if (writeBehind != null) {
+            // Logged locally now, written to Mongo by the next flush
+            // Decided against Mongo, not the cache, which may lag behind flushed writes
+            if (!writeBehind.add(favorite, () -> favoriteRepository.existsByUserIdAndProductId(userId, request.getProductId()))) {
+                throw new DuplicateFavoriteException("Product is already in favorites");
+            }
+        } else {
+            // One upsert both checks for and inserts the favorite
+            if (!favoriteRepository.insertIfAbsent(favorite)) {
+                throw new DuplicateFavoriteException("Product is already in favorites");
+            }
+            favoriteCounterRepository.increment(userId, 1);
+        }
+        FavoriteResponse response = FavoriteMapper.toResponse(favorite);
 
-        // Invalidate cache
-        cacheService.invalidateUserFavorites(userId);
+        // Write through to the cached list
+        cacheService.addCachedFavorite(userId, response);
+        leaderboard.recordChanges(List.of(favorite), List.of());
+        trending.record(favorite.getProductId());
 
-        return mapToFavoriteResponse(savedFavorite);
+        return response;
     }
 
     /**
@@ -62,50 +120,371 @@ public class FavoriteService {
     public void removeFavorite(String userId, String productId) {
         logger.debug("Removing product {} from favorites for user {}", productId, userId);
 
-        Favorite favorite = favoriteRepository.findByUserIdAndProductId(userId, productId)
-                .orElseThrow(() -> new FavoriteNotFoundException("Favorite not found"));
+        if (writeBehind != null) {
+            if (!writeBehind.remove(userId, productId, () -> favoriteRepository.existsByUserIdAndProductId(userId, productId))) {
+                throw new FavoriteNotFoundException("Favorite not found");
+            }
+        } else {
+            // The delete count decides, so concurrent removals decrement the counter only once
+            if (favoriteRepository.deleteByUserIdAndProductId(userId, productId) == 0) {
+                throw new FavoriteNotFoundException("Favorite not found");
+            }
+            favoriteCounterRepository.increment(userId, -1);
+        }
+
+        // Write through to the cached list
+        cacheService.removeCachedFavorite(userId, productId);
+        leaderboard.recordChanges(List.of(), List.of(productId));
+    }
+
+    /**
+     * Add and remove several favorites at once.
+     *
+     * <p>All writes go to Mongo in one unordered bulk write and to Redis in one pipeline. When the
+     * batch removes products, one {@code $in} query first finds which of them are favorites, so
+     * that each removal can report whether it removed anything.
+     *
+     * @return one result per operation, in request order
+     */
+    @Transactional
+    public FavoriteBatchResponse applyBatch(String userId, List<FavoriteBatchOperation> operations) {
+        logger.debug("Applying {} favorite operations for user {}", operations.size(), userId);
+        awaitWriteBehind();
+
+        Set<String> productIds = new HashSet<>();
+        for (FavoriteBatchOperation operation : operations) {
+            if (!productIds.add(operation.getProductId())) {
+                throw new IllegalArgumentException("Product " + operation.getProductId() + " appears more than once in the batch");
+            }
+        }
+
+        Map<String, Favorite> additions = new LinkedHashMap<>();
+        List<String> removals = new ArrayList<>();
+        for (FavoriteBatchOperation operation : operations) {
+            if (operation.getAction() == FavoriteBatchOperation.Action.ADD) {
+                additions.put(operation.getProductId(), FavoriteMapper.toFavorite(userId, operation));
+            } else {
+                removals.add(operation.getProductId());
+            }
+        }
+
+        Set<String> existing = removals.isEmpty()
+                ? Set.of()
+                : favoriteRepository.findProductIdsByUserIdAndProductIdIn(userId, removals).stream()
+                        .map(Favorite::getProductId)
+                        .collect(Collectors.toSet());
+        long removedCount = favoriteRepository.bulkWrite(userId, new ArrayList<>(additions.values()), removals);
+        long addedCount = additions.values().stream().filter(favorite -> favorite.getId() != null).count();
+        if (addedCount != removedCount) {
+            favoriteCounterRepository.increment(userId, addedCount - removedCount);
+        }
+
+        List<Favorite> inserted = new ArrayList<>();
+        List<FavoriteResponse> added = new ArrayList<>();
+        List<FavoriteBatchResult> results = new ArrayList<>(operations.size());
+        for (FavoriteBatchOperation operation : operations) {
+            String productId = operation.getProductId();
+            if (operation.getAction() == FavoriteBatchOperation.Action.ADD) {
+                Favorite favorite = additions.get(productId);
+                if (favorite.getId() != null) {
+                    inserted.add(favorite);
+                    FavoriteResponse response = FavoriteMapper.toResponse(favorite);
+                    added.add(response);
+                    results.add(new FavoriteBatchResult(productId, operation.getAction(), FavoriteBatchResult.Status.ADDED, response));
+                } else {
+                    results.add(new FavoriteBatchResult(productId, operation.getAction(), FavoriteBatchResult.Status.ALREADY_EXISTS, null));
+                }
+            } else {
+                FavoriteBatchResult.Status status = existing.contains(productId)
+                        ? FavoriteBatchResult.Status.REMOVED
+                        : FavoriteBatchResult.Status.NOT_FOUND;
+                results.add(new FavoriteBatchResult(productId, operation.getAction(), status, null));
+            }
+        }
 
-        favoriteRepository.delete(favorite);
+        // Write through to the cache
+        List<String> removed = removals.stream().filter(existing::contains).collect(Collectors.toList());
+        cacheService.updateCachedFavorites(userId, added, removed);
+        leaderboard.recordChanges(inserted, removed);
+        inserted.forEach(favorite -> trending.record(favorite.getProductId()));
 
-        // Invalidate cache
-        cacheService.invalidateUserFavorites(userId);
+        return new FavoriteBatchResponse(userId, results);
     }
 
     /**
      * Get all favorite products for a user.
+     *
+     * <p>Concurrent cache misses for the same user share one load. A cached list nearing expiry
+     * may be reloaded in the background while the caller still gets the cached one.
      */
     @Transactional(readOnly = true)
     public UserFavoritesResponse getUserFavorites(String userId) {
         logger.debug("Retrieving favorites for user {}", userId);
 
         // Try to get from cache first
-        return cacheService.getUserFavorites(userId)
+        Optional<UserFavoritesResponse> cached = cacheService.getCachedUserFavorites(userId);
+        if (cached.isPresent()) {
+            if (cacheService.shouldRefreshEarly(userId)) {
+                refreshInBackground(userId);
+            }
+            return cached.get();
+        }
+
+        return favoritesLoads.execute(userId, () -> loadUserFavorites(userId));
+    }
+
+    /**
+     * Get one page of a user's favorites, newest first.
+     *
+     * <p>Pages are read with keyset pagination, so a page costs the same however deep it is and
+     * however many favorites the user has. One extra favorite is fetched to tell whether another
+     * page follows.
+     *
+     * @param userId the user ID
+     * @param limit the page size
+     * @param cursor the {@code nextCursor} of the previous page, or null for the first page
+     * @return the page, with a next cursor if more favorites follow
+     */
+    @Transactional(readOnly = true)
+    public UserFavoritesResponse getUserFavoritesPage(String userId, int limit, String cursor) {
+        logger.debug("Retrieving {} favorites for user {} after cursor {}", limit, userId, cursor);
+
+        FavoritesCursor after = cursor != null ? FavoritesCursor.decode(cursor) : null;
+
+        return cacheService.getCachedFavoritesPage(userId, limit, cursor)
                 .orElseGet(() -> {
-                    List<Favorite> favorites = favoriteRepository.findByUserId(userId);
+                    CacheService.FavoritesLoad load = cacheService.startFavoritesLoad(userId);
+                    List<Favorite> favorites = favoriteRepository.findPageByUserId(
+                            userId,
+                            after != null ? after.getCreatedAt() : null,
+                            after != null ? after.getId() : null,
+                            limit + 1
+                    );
+                    boolean hasMore = favorites.size() > limit;
+                    List<Favorite> page = hasMore ? favorites.subList(0, limit) : favorites;
+
                     UserFavoritesResponse response = new UserFavoritesResponse(
                             userId,
-                            favorites.stream()
-                                    .map(this::mapToFavoriteResponse)
+                            page.stream()
+                                    .map(FavoriteMapper::toResponse)
                                     .collect(Collectors.toList())
                     );
-                    
-                    // Cache the response
-                    cacheService.cacheUserFavorites(userId, response);
-                    
+                    if (hasMore) {
+                        Favorite last = page.get(page.size() - 1);
+                        response.setNextCursor(new FavoritesCursor(last.getCreatedAt(), last.getId()).encode());
+                    }
+
+                    cacheService.cacheFavoritesPage(userId, load, limit, cursor, response);
+
                     return response;
                 });
     }
 
-    private FavoriteResponse mapToFavoriteResponse(Favorite favorite) {
-        return new FavoriteResponse(
-                favorite.getId(),
-                favorite.getUserId(),
-                favorite.getProductId(),
-                favorite.getProductName(),
-                favorite.getProductPrice(),
-                favorite.getProductImageUrl(),
-                favorite.getCategory(),
-                favorite.getCreatedAt()
-        );
+    /**
+     * Check if a product is in user's favorites.
+     */
+    @Transactional(readOnly = true)
+    public boolean isFavorite(String userId, String productId) {
+        logger.debug("Checking if product {} is favorite for user {}", productId, userId);
+
+        // Most products are not favorites: answer those without an existence lookup
+        if (!getFavoritesFilter(userId).mightContain(productId)) {
+            return false;
+        }
+
+        return cacheService.getCachedFavoriteExists(userId, productId)
+                .orElseGet(() -> {
+                    boolean exists = favoriteRepository.existsByUserIdAndProductId(userId, productId);
+                    cacheService.cacheFavoriteExists(userId, productId, exists);
+                    return exists;
+                });
+    }
+
+    /**
+     * Check which of the given products are in user's favorites.
+     *
+     * <p>Products ruled out by the user's Bloom filter are answered directly. Cached answers for the
+     * rest come from one Redis round trip; the remainder from one Mongo {@code $in} query.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Boolean> areFavorites(String userId, List<String> productIds) {
+        logger.debug("Checking {} products against favorites of user {}", productIds.size(), userId);
+
+        Set<String> requested = new LinkedHashSet<>(productIds);
+        FavoritesBloomFilter filter = getFavoritesFilter(userId);
+        Set<String> candidates = requested.stream()
+                .filter(filter::mightContain)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        Map<String, Boolean> cached = candidates.isEmpty()
+                ? Map.of()
+                : cacheService.getCachedFavoritesExist(userId, candidates);
+
+        List<String> misses = candidates.stream()
+                .filter(productId -> !cached.containsKey(productId))
+                .collect(Collectors.toList());
+        Map<String, Boolean> loaded = new HashMap<>();
+        if (!misses.isEmpty()) {
+            Set<String> favoriteIds = favoriteRepository.findProductIdsByUserIdAndProductIdIn(userId, misses).stream()
+                    .map(Favorite::getProductId)
+                    .collect(Collectors.toSet());
+            misses.forEach(productId -> loaded.put(productId, favoriteIds.contains(productId)));
+            cacheService.cacheFavoritesExist(userId, loaded);
+        }
+
+        Map<String, Boolean> result = new LinkedHashMap<>();
+        for (String productId : requested) {
+            if (!candidates.contains(productId)) {
+                result.put(productId, false);
+            } else {
+                result.put(productId, cached.containsKey(productId) ? cached.get(productId) : loaded.get(productId));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the count of favorites for a user.
+     *
+     * <p>Reads the materialized counter (cached in Redis) instead of counting documents; only a
+     * user without a counter yet is counted once to create it.
+     */
+    @Transactional(readOnly = true)
+    public long getFavoriteCount(String userId) {
+        logger.debug("Counting favorites for user {}", userId);
+
+        return cacheService.getCachedFavoriteCount(userId)
+                .orElseGet(() -> {
+                    long count = favoriteCounterRepository.findById(userId)
+                            .map(FavoriteCounter::getCount)
+                            .orElseGet(() -> favoriteCounterRepository.initialize(userId, favoriteRepository.countByUserId(userId)));
+                    cacheService.cacheFavoriteCount(userId, count);
+                    return count;
+                });
+    }
+
+    /**
+     * Remove all favorites for a user.
+     */
+    @Transactional
+    public long removeAllFavorites(String userId) {
+        logger.debug("Removing all favorites for user {}", userId);
+        awaitWriteBehind();
+
+        // The delete does not say which products it removed, so the leaderboard asks first
+        List<String> productIds = leaderboard.isEnabled()
+                ? favoriteRepository.findProductIdsByUserId(userId).stream().map(Favorite::getProductId).toList()
+                : List.of();
+        long deletedCount = favoriteRepository.deleteByUserId(userId);
+        if (deletedCount > 0) {
+            favoriteCounterRepository.increment(userId, -deletedCount);
+        }
+
+        // Invalidate every cache entry of the user
+        cacheService.evictAllUserCache(userId);
+        if (deletedCount > 0) {
+            leaderboard.recordChanges(List.of(), productIds);
+        }
+
+        return deletedCount;
+    }
+
+    /**
+     * Flush logged writes before writing to Mongo directly, so that they cannot overwrite the
+     * direct writes later.
+     */
+    private void awaitWriteBehind() {
+        if (writeBehind != null && !writeBehind.flush()) {
+            throw new IllegalStateException("Pending favorite writes could not be flushed");
+        }
+    }
+
+    /**
+     * Load a user's favorites from the repository and cache them.
+     *
+     * <p>If another node holds the recompute lease, its result is read from the cache once the
+     * lease is released; the repository is only queried if that result does not show up.
+     */
+    private UserFavoritesResponse loadUserFavorites(String userId) {
+        String lease = "user-favorites:" + userId;
+        Optional<String> token = leaseLock.tryAcquire(lease);
+        if (token.isEmpty()) {
+            leaseLock.awaitRelease(lease);
+            Optional<UserFavoritesResponse> cached = cacheService.getCachedUserFavorites(userId);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+        }
+
+        try {
+            CacheService.FavoritesLoad load = cacheService.startFavoritesLoad(userId);
+            long start = System.nanoTime();
+            List<Favorite> favorites = favoriteRepository.findByUserId(userId);
+            UserFavoritesResponse response = new UserFavoritesResponse(
+                    userId,
+                    favorites.stream()
+                            .map(FavoriteMapper::toResponse)
+                            .collect(Collectors.toList())
+            );
+
+            // Cache the response
+            cacheService.cacheUserFavorites(userId, load, response, Duration.ofNanos(System.nanoTime() - start));
+
+            return response;
+        } finally {
+            token.ifPresent(value -> leaseLock.release(lease, value));
+        }
+    }
+
+    /**
+     * Reload a user's favorites on the refresh executor, unless a refresh is already queued or
+     * too many are running. The limit is a semaphore because on virtual threads the executor
+     * has no pool size to bound it; a skipped refresh is retried by a later read.
+     */
+    private void refreshInBackground(String userId) {
+        if (!refreshing.add(userId)) {
+            return;
+        }
+        if (!refreshPermits.tryAcquire()) {
+            refreshing.remove(userId);
+            logger.debug("Early refresh of favorites for user {} skipped, too many refreshes running", userId);
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    favoritesLoads.execute(userId, () -> loadUserFavorites(userId));
+                } catch (RuntimeException e) {
+                    logger.warn("Early refresh of favorites for user {} failed: {}", userId, e.getMessage());
+                } finally {
+                    refreshPermits.release();
+                    refreshing.remove(userId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshPermits.release();
+            refreshing.remove(userId);
+            logger.debug("Early refresh of favorites for user {} rejected", userId);
+        }
+    }
+
+    /**
+     * Get the user's Bloom filter, rebuilding it from the repository when missing, expired or
+     * full. In write-behind mode the rebuilt filter also holds the logged adds not yet flushed.
+     */
+    private FavoritesBloomFilter getFavoritesFilter(String userId) {
+        return cacheService.getFavoritesFilter(userId)
+                .orElseGet(() -> {
+                    CacheService.FavoritesLoad load = cacheService.startFavoritesLoad(userId);
+                    List<String> productIds = favoriteRepository.findProductIdsByUserId(userId).stream()
+                            .map(Favorite::getProductId)
+                            .collect(Collectors.toCollection(ArrayList::new));
+                    if (writeBehind != null) {
+                        productIds.addAll(writeBehind.pendingAdds(userId));
+                    }
+                    FavoritesBloomFilter filter = FavoritesBloomFilter.of(productIds);
+                    cacheService.cacheFavoritesFilter(userId, load, filter);
+                    return filter;
+                });
     }
 }
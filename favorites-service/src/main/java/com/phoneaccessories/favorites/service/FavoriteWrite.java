@@ -0,0 +1,90 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.model.Favorite;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * A favorite added or removed in write-behind mode, as recorded in the {@link WriteBehindLog}.
+ *
+ * @param sequence position in the log, assigned on append
+ * @param type whether the favorite was added or removed
+ * @param favorite the added favorite, or only the user and product of a removed one
+ */
+record FavoriteWrite(long sequence, Type type, Favorite favorite) {
+
+    enum Type {
+        ADD, REMOVE
+    }
+
+    static FavoriteWrite add(Favorite favorite) {
+        return new FavoriteWrite(0, Type.ADD, favorite);
+    }
+
+    static FavoriteWrite remove(String userId, String productId) {
+        return new FavoriteWrite(0, Type.REMOVE, new Favorite(userId, productId));
+    }
+
+    FavoriteWrite withSequence(long sequence) {
+        return new FavoriteWrite(sequence, type, favorite);
+    }
+
+    /**
+     * Key of the favorite within the log: writes with the same key supersede each other.
+     */
+    String key() {
+        return key(favorite.getUserId(), favorite.getProductId());
+    }
+
+    static String key(String userId, String productId) {
+        return userId + '\u0000' + productId;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeLong(sequence);
+        out.writeByte(type.ordinal());
+        out.writeUTF(favorite.getUserId());
+        out.writeUTF(favorite.getProductId());
+        if (type == Type.ADD) {
+            writeNullable(out, favorite.getId());
+            writeNullable(out, favorite.getCreatedAt() != null ? favorite.getCreatedAt().toString() : null);
+            writeNullable(out, favorite.getProductName());
+            out.writeBoolean(favorite.getProductPrice() != null);
+            if (favorite.getProductPrice() != null) {
+                out.writeDouble(favorite.getProductPrice());
+            }
+            writeNullable(out, favorite.getProductImageUrl());
+            writeNullable(out, favorite.getCategory());
+        }
+    }
+
+    static FavoriteWrite readFrom(DataInput in) throws IOException {
+        long sequence = in.readLong();
+        Type type = Type.values()[in.readByte()];
+        Favorite favorite = new Favorite(in.readUTF(), in.readUTF());
+        if (type == Type.ADD) {
+            favorite.setId(readNullable(in));
+            String createdAt = readNullable(in);
+            favorite.setCreatedAt(createdAt != null ? LocalDateTime.parse(createdAt) : null);
+            favorite.setProductName(readNullable(in));
+            favorite.setProductPrice(in.readBoolean() ? in.readDouble() : null);
+            favorite.setProductImageUrl(readNullable(in));
+            favorite.setCategory(readNullable(in));
+        }
+        return new FavoriteWrite(sequence, type, favorite);
+    }
+
+    private static void writeNullable(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,241 @@
+package com.phoneaccessories.favorites.service;
+
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Bloom filter over the product IDs a user has favorited, sized from the number of favorites it
+ * is built from.
+ *
+ * <p>A build leaves room for as many favorites again (at least {@value #MIN_CAPACITY}), and takes
+ * enough bits for a false-positive rate of {@value #FALSE_POSITIVE_RATE} at that capacity,
+ * rounded up to a power of two, with the number of hash functions that is optimal for them. A
+ * user with 100 favorites gets 4096 bits and 14 hashes, one with 20000 favorites 1 Mi bits and 18.
+ *
+ * <p>The serialized form starts with a {@value #HEADER_BYTES}-byte header that {@link #ADD_SCRIPT}
+ * reads with BITFIELD: the log2 of the number of data bits (u8 at bit 0), the number of hashes
+ * (u8 at bit 8), the capacity (u32 at bit 32) and the number of products added (u32 at bit 64).
+ * The data bits follow in Redis bitmap ordering (bit 0 is the most significant bit of byte 0).
+ * A bitmap without a header was not built completely and is not trusted for negative answers.
+ */
+public final class FavoritesBloomFilter {
+
+    /** False-positive rate once the filter holds as many products as its capacity. */
+    static final double FALSE_POSITIVE_RATE = 0.001;
+
+    /** Smallest capacity, so that users with few favorites can add some before a rebuild. */
+    static final int MIN_CAPACITY = 64;
+
+    /** Log2 of the largest number of data bits (1 MiB). */
+    static final int MAX_BITS_LOG2 = 23;
+
+    static final int HEADER_BYTES = 12;
+
+    private static final int HEADER_BITS = HEADER_BYTES * 8;
+    private static final int MIN_BITS_LOG2 = 3;
+    private static final int MAX_HASHES = 32;
+
+    /**
+     * Adds products to a built filter in place, given the two 32-bit hash halves of each one as
+     * arguments. Drops the filter instead if that would exceed its capacity, so that the next read
+     * rebuilds it larger. Returns 1 if added, 0 if there is no built filter, -1 if dropped.
+     */
+    static final RedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>(
+            "local h = redis.call('bitfield', KEYS[1], 'GET', 'u8', 0, 'GET', 'u8', 8, 'GET', 'u32', 32, 'GET', 'u32', 64)"
+                    + " if h[1] == 0 then return 0 end"
+                    + " local added = #ARGV / 2"
+                    + " if h[4] + added > h[3] then redis.call('del', KEYS[1]) return -1 end"
+                    + " local bits = 2 ^ h[1]"
+                    + " for j = 1, #ARGV, 2 do"
+                    + " local h1, h2 = tonumber(ARGV[j]), tonumber(ARGV[j + 1])"
+                    + " for i = 0, h[2] - 1 do redis.call('setbit', KEYS[1], " + HEADER_BITS + " + (h1 + i * h2 + (i * i * i - i) / 6) % bits, 1) end"
+                    + " end"
+                    + " redis.call('bitfield', KEYS[1], 'INCRBY', 'u32', 64, added)"
+                    + " return 1",
+            Long.class);
+
+    private final byte[] bytes;
+    private final int bitsLog2;
+    private final int hashes;
+
+    private FavoritesBloomFilter(byte[] bytes) {
+        this.bytes = bytes;
+        this.bitsLog2 = bytes[0];
+        this.hashes = bytes[1];
+    }
+
+    /**
+     * Build a complete filter for the given product IDs, sized from their number.
+     */
+    public static FavoritesBloomFilter of(Collection<String> productIds) {
+        long capacity = Math.max(MIN_CAPACITY, 2L * productIds.size());
+        double bitsNeeded = capacity * -Math.log(FALSE_POSITIVE_RATE) / (Math.log(2) * Math.log(2));
+        int bitsLog2 = Math.max(MIN_BITS_LOG2, Math.min(MAX_BITS_LOG2, 64 - Long.numberOfLeadingZeros((long) Math.ceil(bitsNeeded) - 1)));
+        int hashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round((double) (1L << bitsLog2) / capacity * Math.log(2))));
+
+        byte[] bytes = new byte[HEADER_BYTES + (1 << bitsLog2) / 8];
+        bytes[0] = (byte) bitsLog2;
+        bytes[1] = (byte) hashes;
+        writeInt(bytes, 4, (int) Math.min(capacity, 0xffffffffL));
+        FavoritesBloomFilter filter = new FavoritesBloomFilter(bytes);
+        for (String productId : productIds) {
+            filter.add(productId);
+        }
+        return filter;
+    }
+
+    /**
+     * Wrap a bitmap read from Redis.
+     *
+     * @return the filter, or null if the bitmap is missing or was not completely built
+     */
+    public static FavoritesBloomFilter fromBytes(byte[] value) {
+        if (value == null || value.length < HEADER_BYTES) {
+            return null;
+        }
+        int bitsLog2 = value[0];
+        if (bitsLog2 < MIN_BITS_LOG2 || bitsLog2 > MAX_BITS_LOG2 || value[1] < 1
+                || value.length < HEADER_BYTES + (1 << bitsLog2) / 8) {
+            return null;
+        }
+        return new FavoritesBloomFilter(Arrays.copyOf(value, HEADER_BYTES + (1 << bitsLog2) / 8));
+    }
+
+    /**
+     * Arguments of {@link #ADD_SCRIPT} for the given product IDs.
+     */
+    static List<String> addArguments(Collection<String> productIds) {
+        List<String> arguments = new ArrayList<>(2 * productIds.size());
+        for (String productId : productIds) {
+            long hash = hash(productId);
+            arguments.add(Long.toString(low(hash)));
+            arguments.add(Long.toString(high(hash)));
+        }
+        return arguments;
+    }
+
+    /**
+     * Bit offsets in the serialized bitmap that represent the given product ID.
+     */
+    long[] offsets(String productId) {
+        long hash = hash(productId);
+        long h1 = low(hash);
+        long h2 = high(hash);
+
+        // Enhanced double hashing, computed like the script does: the sum stays exact in a Lua double
+        long mask = (1L << bitsLog2) - 1;
+        long[] offsets = new long[hashes];
+        for (long i = 0; i < hashes; i++) {
+            offsets[(int) i] = HEADER_BITS + ((h1 + i * h2 + (i * i * i - i) / 6) & mask);
+        }
+        return offsets;
+    }
+
+    public void add(String productId) {
+        for (long offset : offsets(productId)) {
+            set((int) offset);
+        }
+        writeInt(bytes, 8, readInt(bytes, 8) + 1);
+    }
+
+    /**
+     * @return false if the product is definitely not a favorite, true if it may be
+     */
+    public boolean mightContain(String productId) {
+        for (long offset : offsets(productId)) {
+            if (!get((int) offset)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int bits() {
+        return 1 << bitsLog2;
+    }
+
+    public int hashes() {
+        return hashes;
+    }
+
+    /**
+     * @return how many products the filter takes before an add drops it for a rebuild
+     */
+    public long capacity() {
+        return Integer.toUnsignedLong(readInt(bytes, 4));
+    }
+
+    /**
+     * @return how many products were added, at build time and since
+     */
+    public long entries() {
+        return Integer.toUnsignedLong(readInt(bytes, 8));
+    }
+
+    public byte[] toBytes() {
+        return bytes.clone();
+    }
+
+    /**
+     * Size of the serialized bitmap, as stored in Redis and held in process.
+     */
+    public int sizeInBytes() {
+        return bytes.length;
+    }
+
+    private void set(int offset) {
+        bytes[offset >>> 3] |= (byte) (0x80 >>> (offset & 7));
+    }
+
+    private boolean get(int offset) {
+        return (bytes[offset >>> 3] & (0x80 >>> (offset & 7))) != 0;
+    }
+
+    private static long low(long hash) {
+        return hash & 0xffffffffL;
+    }
+
+    private static long high(long hash) {
+        return hash >>> 32;
+    }
+
+    private static int readInt(byte[] bytes, int index) {
+        return (bytes[index] & 0xff) << 24 | (bytes[index + 1] & 0xff) << 16
+                | (bytes[index + 2] & 0xff) << 8 | bytes[index + 3] & 0xff;
+    }
+
+    private static void writeInt(byte[] bytes, int index, int value) {
+        bytes[index] = (byte) (value >>> 24);
+        bytes[index + 1] = (byte) (value >>> 16);
+        bytes[index + 2] = (byte) (value >>> 8);
+        bytes[index + 3] = (byte) value;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 mixer so that both halves
+     * are well distributed. Also hashes products for {@link HeavyHitterSketch}.
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,221 @@
+package com.phoneaccessories.favorites.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Count-min sketch of how often products were favorited, with the products most likely to be
+ * the heaviest hitters.
+ *
+ * <p>A product's count is the smallest of its {@code depth} counters, so it is never
+ * underestimated and is overestimated by at most about {@code e / width} of the total with
+ * high probability. Products whose estimate beat the smallest candidate when they were counted
+ * are kept as candidates, up to {@code capacity} of them; only candidates can be reported as top
+ * products. Sketches of the same dimensions merge by adding counters, so sketches of several
+ * time buckets or replicas combine into one.
+ *
+ * <p>Safe for concurrent use.
+ */
+final class HeavyHitterSketch {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final int depth;
+    private final int width;
+    private final int capacity;
+    private final int[] counters;
+    private final Map<String, Integer> candidates = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    HeavyHitterSketch(int depth, int width, int capacity) {
+        this.depth = depth;
+        this.width = width;
+        this.capacity = capacity;
+        this.counters = new int[depth * width];
+    }
+
+    /**
+     * Count one favorite of a product.
+     */
+    void add(String productId) {
+        long hash = FavoritesBloomFilter.hash(productId);
+        lock.lock();
+        try {
+            int estimate = Integer.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                int index = row * width + index(hash, row);
+                estimate = Math.min(estimate, ++counters[index]);
+            }
+            offer(productId, estimate);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the estimated number of favorites of the product, never below the true number
+     */
+    int estimate(String productId) {
+        long hash = FavoritesBloomFilter.hash(productId);
+        lock.lock();
+        try {
+            return estimate(hash);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Add the counts and candidates of another sketch of the same dimensions to this one.
+     */
+    void merge(HeavyHitterSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Cannot merge sketches of different dimensions");
+        }
+        int[] otherCounters;
+        List<String> otherCandidates;
+        other.lock.lock();
+        try {
+            otherCounters = other.counters.clone();
+            otherCandidates = new ArrayList<>(other.candidates.keySet());
+        } finally {
+            other.lock.unlock();
+        }
+
+        lock.lock();
+        try {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] += otherCounters[i];
+            }
+            // Merged counts moved, so every candidate competes with its new estimate
+            List<String> all = new ArrayList<>(candidates.keySet());
+            all.addAll(otherCandidates);
+            candidates.clear();
+            for (String productId : all) {
+                offer(productId, estimate(FavoritesBloomFilter.hash(productId)));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The candidates with the highest estimates, highest first, selected with a bounded min-heap.
+     *
+     * @param k the number of products
+     * @return up to {@code k} products with their estimated counts
+     */
+    List<Map.Entry<String, Integer>> top(int k) {
+        lock.lock();
+        try {
+            PriorityQueue<Map.Entry<String, Integer>> heap = new PriorityQueue<>(Map.Entry.comparingByValue());
+            for (String productId : candidates.keySet()) {
+                heap.add(Map.entry(productId, estimate(FavoritesBloomFilter.hash(productId))));
+                if (heap.size() > k) {
+                    heap.poll();
+                }
+            }
+            List<Map.Entry<String, Integer>> top = new ArrayList<>(heap);
+            top.sort(Map.Entry.<String, Integer>comparingByValue(Comparator.reverseOrder())
+                    .thenComparing(Map.Entry.comparingByKey()));
+            return top;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(counters.length * 4 + 64);
+        lock.lock();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(depth);
+            out.writeInt(width);
+            for (int counter : counters) {
+                out.writeInt(counter);
+            }
+            out.writeInt(candidates.size());
+            for (String productId : candidates.keySet()) {
+                out.writeUTF(productId);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Read a sketch written by {@link #toBytes()}.
+     *
+     * @return the sketch, or null if it was written in another format or with other dimensions
+     */
+    static HeavyHitterSketch fromBytes(byte[] value, int depth, int width, int capacity) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            if (in.readByte() != FORMAT_VERSION || in.readInt() != depth || in.readInt() != width) {
+                return null;
+            }
+            HeavyHitterSketch sketch = new HeavyHitterSketch(depth, width, capacity);
+            for (int i = 0; i < sketch.counters.length; i++) {
+                sketch.counters[i] = in.readInt();
+            }
+            int candidates = in.readInt();
+            for (int i = 0; i < candidates; i++) {
+                String productId = in.readUTF();
+                sketch.offer(productId, sketch.estimate(FavoritesBloomFilter.hash(productId)));
+            }
+            return sketch;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Keep the product as a candidate if there is room or it beats the smallest candidate. The
+     * linear scan for the smallest is cheap next to hashing while capacity stays in the tens.
+     */
+    private void offer(String productId, int estimate) {
+        if (candidates.containsKey(productId) || candidates.size() < capacity) {
+            candidates.put(productId, estimate);
+            return;
+        }
+        Map.Entry<String, Integer> smallest = null;
+        for (Map.Entry<String, Integer> candidate : candidates.entrySet()) {
+            if (smallest == null || candidate.getValue() < smallest.getValue()) {
+                smallest = candidate;
+            }
+        }
+        if (smallest != null && estimate > smallest.getValue()) {
+            candidates.remove(smallest.getKey());
+            candidates.put(productId, estimate);
+        }
+    }
+
+    private int estimate(long hash) {
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters[row * width + index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    /**
+     * Counter of a row, by double hashing the two halves of the 64-bit product hash.
+     */
+    private int index(long hash, int row) {
+        int combined = (int) hash + row * (int) (hash >>> 32);
+        return Math.floorMod(combined, width);
+    }
+}
@@ -0,0 +1,58 @@
+package com.phoneaccessories.favorites.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
+
+import java.io.IOException;
+
+/**
+ * Stores cached values as JSON, the format used before {@link BinaryCacheCodec}.
+ *
+ * <p>Kept for rolling upgrades: replicas configured with it write values that older replicas
+ * can still read.
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    private final ObjectMapper objectMapper;
+
+    public JsonCacheCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte[] encodeFavorite(FavoriteResponse favorite) {
+        return write(favorite);
+    }
+
+    @Override
+    public FavoriteResponse decodeFavorite(byte[] value) {
+        return read(value, FavoriteResponse.class);
+    }
+
+    @Override
+    public byte[] encodeFavorites(UserFavoritesResponse favorites) {
+        return write(favorites);
+    }
+
+    @Override
+    public UserFavoritesResponse decodeFavorites(byte[] value) {
+        return read(value, UserFavoritesResponse.class);
+    }
+
+    private byte[] write(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot encode cached value: " + e.getMessage(), e);
+        }
+    }
+
+    private <T> T read(byte[] value, Class<T> type) {
+        try {
+            return objectMapper.readValue(value, type);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot decode cached value: " + e.getMessage(), e);
+        }
+    }
+}
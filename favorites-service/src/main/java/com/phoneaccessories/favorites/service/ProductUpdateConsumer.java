@@ -0,0 +1,132 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.ProductUpdateEvent;
+import com.phoneaccessories.favorites.event.ProductEventBroker;
+import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Copies product catalog changes into the product details stored on favorites.
+ *
+ * <p>Events are coalesced per product and applied once per window: the users holding stale
+ * copies are found in one query, all products are updated in one bulk write, and only those
+ * users' cached lists are evicted. A price changed several times within a window costs one
+ * update. A failed flush keeps its events for the next window. Events are acknowledged to the
+ * broker once their update is written, so those still pending when the process stops are
+ * delivered again.
+ */
+@Service
+public class ProductUpdateConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProductUpdateConsumer.class);
+
+    private final FavoriteRepository favoriteRepository;
+    private final CacheService cacheService;
+    private final ObjectProvider<ProductEventBroker> broker;
+    private final Map<String, PendingUpdate> pending = new ConcurrentHashMap<>();
+    private final Counter received;
+    private final Counter applied;
+
+    public ProductUpdateConsumer(FavoriteRepository favoriteRepository,
+                                 CacheService cacheService,
+                                 ObjectProvider<ProductEventBroker> broker,
+                                 MeterRegistry meterRegistry) {
+        this.favoriteRepository = favoriteRepository;
+        this.cacheService = cacheService;
+        this.broker = broker;
+        this.received = Counter.builder("favorites.product-events.received")
+                .description("Product update events received")
+                .register(meterRegistry);
+        this.applied = Counter.builder("favorites.product-events.applied")
+                .description("Favorites updated from product update events")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start consuming once the application is ready, if a broker is configured.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        broker.ifAvailable(available -> {
+            available.subscribe(this::accept);
+            logger.info("Consuming product update events");
+        });
+    }
+
+    /**
+     * Queue an event for the next flush, merging it into any pending event for the product.
+     *
+     * @param event the product update
+     * @param acknowledge run once the update is written
+     */
+    public void accept(ProductUpdateEvent event, Runnable acknowledge) {
+        received.increment();
+        pending.merge(event.getProductId(), new PendingUpdate(event, List.of(acknowledge)), PendingUpdate::mergedWith);
+    }
+
+    /**
+     * Apply the pending events.
+     *
+     * @return the number of favorites updated
+     */
+    @Scheduled(fixedDelayString = "${favorites.product-events.window:500}")
+    public long flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        List<PendingUpdate> updates = new ArrayList<>(pending.size());
+        for (String productId : List.copyOf(pending.keySet())) {
+            PendingUpdate update = pending.remove(productId);
+            if (update != null) {
+                updates.add(update);
+            }
+        }
+        List<ProductUpdateEvent> batch = updates.stream().map(PendingUpdate::event).toList();
+
+        long modified;
+        try {
+            // Users are looked up before the update, which is what makes their copies stale
+            Set<String> userIds = favoriteRepository.findUserIdsAffectedBy(batch);
+            modified = userIds.isEmpty() ? 0 : favoriteRepository.applyProductUpdates(batch);
+            if (!userIds.isEmpty()) {
+                cacheService.evictUserFavoritesCaches(userIds);
+                applied.increment(modified);
+                logger.debug("Applied {} product updates to {} favorites of {} users", batch.size(), modified, userIds.size());
+            }
+        } catch (RuntimeException e) {
+            // Events that arrived meanwhile are newer and win the merge
+            updates.forEach(update -> pending.merge(update.event().getProductId(), update, (newer, older) -> older.mergedWith(newer)));
+            logger.warn("Applying {} product updates failed, retrying next window: {}", batch.size(), e.getMessage());
+            return 0;
+        }
+        updates.forEach(update -> update.acknowledgements().forEach(Runnable::run));
+        return modified;
+    }
+
+    /**
+     * An event merged from those received for a product, with their acknowledgements.
+     */
+    private record PendingUpdate(ProductUpdateEvent event, List<Runnable> acknowledgements) {
+
+        PendingUpdate mergedWith(PendingUpdate newer) {
+            List<Runnable> merged = new ArrayList<>(acknowledgements);
+            merged.addAll(newer.acknowledgements);
+            return new PendingUpdate(event.mergedWith(newer.event), merged);
+        }
+    }
+}
@@ -0,0 +1,540 @@
+package com.phoneaccessories.favorites.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.connection.RedisStringCommands.SetOption;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.phoneaccessories.favorites.service.CacheKeys.DELTA_FIELD;
+import static com.phoneaccessories.favorites.service.CacheKeys.EXPIRES_FIELD;
+import static com.phoneaccessories.favorites.service.CacheKeys.LOADED_FIELD;
+import static com.phoneaccessories.favorites.service.CacheKeys.PRODUCT_FIELD_PREFIX;
+import static com.phoneaccessories.favorites.service.CacheKeys.metaValue;
+import static com.phoneaccessories.favorites.service.CacheKeys.pageField;
+import static com.phoneaccessories.favorites.service.CacheKeys.productField;
+import static com.phoneaccessories.favorites.service.CacheService.CACHED_ORDER;
+import static com.phoneaccessories.favorites.service.CacheService.CACHE_FILTER_SCRIPT;
+import static com.phoneaccessories.favorites.service.CacheService.CACHE_PAGE_SCRIPT;
+import static com.phoneaccessories.favorites.service.CacheService.REPLACE_FAVORITES_SCRIPT;
+
+/**
+ * Non-blocking counterpart of {@link CacheService}, used by the reactive stack.
+ *
+ * <p>It reads and writes the same keys, hash layout and codec as {@link CacheService} and
+ * publishes the same invalidations, so both stacks can share a Redis during a migration. It keeps
+ * no local tier of values: only the per-user cache generations are held in process, and dropped
+ * when an invalidation for them is broadcast. Commands issued together are sent without waiting
+ * for each other's replies on the shared multiplexed connection.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveCacheService.class);
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final CacheCodec codec;
+    private final CacheKeys cacheKeys;
+    private final Duration ttl;
+    private final String invalidationChannel;
+    private final Cache<String, Long> generations;
+
+    private final CacheMetrics.Lookups favoritesLookups;
+    private final CacheMetrics.Lookups pagesLookups;
+    private final CacheMetrics.Lookups existsLookups;
+    private final CacheMetrics.Lookups countLookups;
+    private final CacheMetrics.Lookups bloomLookups;
+
+    private Disposable subscription;
+
+    public ReactiveCacheService(ReactiveRedisTemplate<String, String> redisTemplate,
+                                CacheCodec codec,
+                                MeterRegistry meterRegistry,
+                                @Value("${cache.redis.key-prefix}") String keyPrefix,
+                                @Value("${cache.redis.ttl}") long ttlSeconds,
+                                @Value("${cache.local.ttl:60}") long localTtlSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.codec = codec;
+        this.cacheKeys = new CacheKeys(keyPrefix);
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.invalidationChannel = cacheKeys.invalidationChannel();
+        this.generations = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofSeconds(Math.min(localTtlSeconds, ttlSeconds)))
+                .build();
+
+        CacheMetrics metrics = new CacheMetrics(meterRegistry);
+        this.favoritesLookups = metrics.lookups(CacheMetrics.FAVORITES);
+        this.pagesLookups = metrics.lookups(CacheMetrics.PAGES);
+        this.existsLookups = metrics.lookups(CacheMetrics.EXISTS);
+        this.countLookups = metrics.lookups(CacheMetrics.COUNT);
+        this.bloomLookups = metrics.lookups(CacheMetrics.BLOOM);
+    }
+
+    /**
+     * Listen for invalidation broadcasts, resubscribing with backoff while Redis is unreachable.
+     */
+    @PostConstruct
+    public void subscribe() {
+        // Deferred: creating the listener container connects, and a retry must create a new one
+        subscription = Flux.defer(() -> redisTemplate.listenToChannel(invalidationChannel))
+                .map(ReactiveSubscription.Message::getMessage)
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .doBeforeRetry(signal -> logger.warn(
+                                "Cache invalidation subscription failed, generations expire by TTL only until retried: {}",
+                                signal.failure().getMessage())))
+                .subscribe(generations::invalidate);
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Mark the start of a load of a user's favorites, before the repository is queried.
+     *
+     * @see CacheService#startFavoritesLoad(String)
+     */
+    public Mono<CacheService.FavoritesLoad> startFavoritesLoad(String userId) {
+        return generation(userId).flatMap(generation -> redisTemplate.opsForValue()
+                .get(cacheKeys.userKey(userId, generation, "writes"))
+                .map(Long::parseLong)
+                .defaultIfEmpty(0L)
+                .map(writes -> new CacheService.FavoritesLoad(generation, writes)));
+    }
+
+    /**
+     * Cache user favorites.
+     *
+     * @see CacheService#cacheUserFavorites(String, CacheService.FavoritesLoad, UserFavoritesResponse, Duration)
+     */
+    public Mono<Void> cacheUserFavorites(String userId, CacheService.FavoritesLoad load, UserFavoritesResponse response,
+                                         Duration recomputeTime) {
+        Map<String, byte[]> fields = new HashMap<>();
+        try {
+            for (FavoriteResponse favorite : response.getFavorites()) {
+                fields.put(productField(favorite.getProductId()), codec.encodeFavorite(favorite));
+            }
+        } catch (IllegalArgumentException e) {
+            logger.error("Error serializing favorites for caching: {}", e.getMessage());
+            return Mono.empty();
+        }
+        fields.put(LOADED_FIELD, metaValue(1));
+        fields.put(DELTA_FIELD, metaValue(recomputeTime.toMillis()));
+        fields.put(EXPIRES_FIELD, metaValue(System.currentTimeMillis() + ttl.toMillis()));
+
+        String prefix = cacheKeys.userPrefix(userId, load.generation());
+        String key = prefix + "favorites";
+        String buildKey = key + ":build:" + UUID.randomUUID();
+        return hashOperations().putAll(buildKey, fields)
+                .then(redisTemplate.expire(buildKey, ttl))
+                .then(redisTemplate.execute(REPLACE_FAVORITES_SCRIPT, List.of(buildKey, key, prefix + "writes"),
+                        List.of(Long.toString(load.writes()))).next())
+                .doOnNext(renamed -> logger.debug(renamed == 1
+                        ? "Cached favorites for user: {}"
+                        : "Favorites of user {} were written while loading, not caching them", userId))
+                .then();
+    }
+
+    /**
+     * Get cached user favorites.
+     *
+     * @return the cached favorites, or empty if not cached
+     */
+    public Mono<UserFavoritesResponse> getCachedUserFavorites(String userId) {
+        return buildKey(userId, "favorites")
+                .flatMap(key -> hashOperations().entries(key).collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                        .doOnError(e -> favoritesLookups.redisErrors.increment()))
+                .flatMap(fields -> {
+                    if (!fields.containsKey(LOADED_FIELD)) {
+                        favoritesLookups.redisMisses.increment();
+                        logger.debug("Cache miss for user favorites: {}", userId);
+                        return Mono.empty();
+                    }
+
+                    favoritesLookups.redisHits.increment();
+                    List<FavoriteResponse> favorites = new ArrayList<>(fields.size());
+                    try {
+                        for (Map.Entry<String, byte[]> field : fields.entrySet()) {
+                            if (field.getKey().startsWith(PRODUCT_FIELD_PREFIX)) {
+                                favorites.add(codec.decodeFavorite(field.getValue()));
+                            }
+                        }
+                    } catch (IllegalArgumentException e) {
+                        favoritesLookups.redisErrors.increment();
+                        logger.error("Error deserializing cached favorites: {}", e.getMessage());
+                        return Mono.empty();
+                    }
+                    favorites.sort(CACHED_ORDER);
+                    return Mono.just(new UserFavoritesResponse(userId, favorites));
+                });
+    }
+
+    /**
+     * Write added and removed favorites through to the cache.
+     *
+     * @see CacheService#updateCachedFavorites(String, List, Collection)
+     */
+    public Mono<Void> updateCachedFavorites(String userId, List<FavoriteResponse> added, Collection<String> removed) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return Mono.empty();
+        }
+
+        Map<String, byte[]> values = new HashMap<>();
+        try {
+            for (FavoriteResponse favorite : added) {
+                values.put(favorite.getProductId(), codec.encodeFavorite(favorite));
+            }
+        } catch (IllegalArgumentException e) {
+            logger.error("Error serializing favorite for caching: {}", e.getMessage());
+            return evictUserFavoritesCache(userId);
+        }
+        long countDelta = (long) added.size() - removed.size();
+
+        return userPrefix(userId).flatMap(prefix -> {
+            String key = prefix + "favorites";
+            String filterKey = prefix + "bloom";
+            String countKey = prefix + "count";
+            String writesKey = prefix + "writes";
+            List<String> evicted = new ArrayList<>();
+            evicted.add(key);
+            evicted.add(filterKey);
+
+            List<Mono<?>> commands = new ArrayList<>();
+            commands.add(redisTemplate.opsForValue().increment(writesKey).then(redisTemplate.expire(writesKey, ttl)));
+            // The list and the exists keys keep the expiry they got when loaded
+            List<Mono<?>> puts = new ArrayList<>();
+            values.forEach((productId, value) -> {
+                String existsKey = prefix + "exists:" + productId;
+                evicted.add(existsKey);
+                puts.add(hashOperations().put(key, productField(productId), value));
+                commands.add(updateExists(existsKey, "true"));
+            });
+            if (!values.isEmpty()) {
+                // HSET creates a missing hash without a TTL, drop it rather than let it outlive
+                // every TTL
+                commands.add(Mono.when(puts)
+                        .then(redisTemplate.getExpire(key))
+                        .filter(Duration.ZERO::equals)
+                        .flatMap(persistent -> redisTemplate.delete(key)));
+                commands.add(redisTemplate.execute(FavoritesBloomFilter.ADD_SCRIPT, List.of(filterKey),
+                        FavoritesBloomFilter.addArguments(values.keySet())).then());
+            }
+            if (!removed.isEmpty()) {
+                commands.add(hashOperations().remove(key, removed.stream().map(CacheKeys::productField).toArray()));
+                for (String productId : removed) {
+                    String existsKey = prefix + "exists:" + productId;
+                    evicted.add(existsKey);
+                    commands.add(updateExists(existsKey, "false"));
+                }
+            }
+            commands.add(redisTemplate.delete(prefix + "pages"));
+
+            Mono<Void> count = Mono.empty();
+            if (countDelta != 0) {
+                evicted.add(countKey);
+                // INCRBY creates a missing key from the delta alone; drop such a count so that it
+                // is loaded again from the counter
+                count = redisTemplate.opsForValue().increment(countKey, countDelta)
+                        .flatMap(value -> value == countDelta
+                                ? redisTemplate.delete(countKey).then()
+                                : redisTemplate.expire(countKey, ttl).then());
+            }
+
+            return Mono.when(count, Mono.when(commands))
+                    .then(publish(evicted))
+                    .doOnSuccess(done -> logger.debug("Updated cached favorites for user {}: {} added, {} removed",
+                            userId, added.size(), removed.size()));
+        });
+    }
+
+    /**
+     * Cache one page of a user's favorites.
+     *
+     * @see CacheService#cacheFavoritesPage(String, CacheService.FavoritesLoad, int, String, UserFavoritesResponse)
+     */
+    public Mono<Void> cacheFavoritesPage(String userId, CacheService.FavoritesLoad load, int limit, String cursor,
+                                         UserFavoritesResponse page) {
+        byte[] value;
+        try {
+            value = codec.encodeFavorites(page);
+        } catch (IllegalArgumentException e) {
+            logger.error("Error serializing favorites page for caching: {}", e.getMessage());
+            return Mono.empty();
+        }
+
+        String prefix = cacheKeys.userPrefix(userId, load.generation());
+        List<byte[]> args = List.of(metaValue(load.writes()), pageField(limit, cursor).getBytes(StandardCharsets.UTF_8),
+                value, metaValue(ttl.getSeconds()));
+        return redisTemplate.execute(CACHE_PAGE_SCRIPT, List.of(prefix + "pages", prefix + "writes"), args,
+                        RedisElementWriter.from(RedisSerializer.byteArray()),
+                        RedisElementReader.from(new GenericToStringSerializer<>(Long.class)))
+                .then();
+    }
+
+    /**
+     * Get a cached page of a user's favorites.
+     *
+     * @return the cached page, or empty if not cached
+     */
+    public Mono<UserFavoritesResponse> getCachedFavoritesPage(String userId, int limit, String cursor) {
+        return buildKey(userId, "pages")
+                .flatMap(key -> hashOperations().get(key, pageField(limit, cursor))
+                        .doOnError(e -> pagesLookups.redisErrors.increment()))
+                .flatMap(value -> {
+                    pagesLookups.redisHits.increment();
+                    try {
+                        return Mono.just(codec.decodeFavorites(value));
+                    } catch (IllegalArgumentException e) {
+                        pagesLookups.redisErrors.increment();
+                        logger.error("Error deserializing cached favorites page: {}", e.getMessage());
+                        return Mono.empty();
+                    }
+                })
+                .switchIfEmpty(Mono.fromRunnable(pagesLookups.redisMisses::increment));
+    }
+
+    /**
+     * Cache favorite existence.
+     */
+    public Mono<Void> cacheFavoriteExists(String userId, String productId, boolean exists) {
+        return buildKey(userId, "exists", productId)
+                .flatMap(key -> redisTemplate.opsForValue().set(key, String.valueOf(exists), ttl))
+                .then();
+    }
+
+    /**
+     * Get cached favorite existence.
+     *
+     * @return cached existence, or empty if not cached
+     */
+    public Mono<Boolean> getCachedFavoriteExists(String userId, String productId) {
+        return buildKey(userId, "exists", productId)
+                .flatMap(key -> redisTemplate.opsForValue().get(key)
+                        .doOnError(e -> existsLookups.redisErrors.increment()))
+                .map(Boolean::valueOf)
+                .doOnNext(exists -> existsLookups.redisHits.increment())
+                .switchIfEmpty(Mono.fromRunnable(existsLookups.redisMisses::increment));
+    }
+
+    /**
+     * Get cached existence for several products with one HMGET on the favorites hash and one MGET
+     * on the existence keys, sent together.
+     *
+     * @return existence per product ID; products missing from the map were not cached
+     */
+    public Mono<Map<String, Boolean>> getCachedFavoritesExist(String userId, List<String> productIds) {
+        return userPrefix(userId).flatMap(prefix -> {
+            List<String> fields = new ArrayList<>(productIds.size() + 1);
+            fields.add(LOADED_FIELD);
+            productIds.forEach(productId -> fields.add(productField(productId)));
+            List<String> existsKeys = productIds.stream().map(productId -> prefix + "exists:" + productId).toList();
+
+            return Mono.zip(hashOperations().multiGet(prefix + "favorites", fields),
+                            redisTemplate.opsForValue().multiGet(existsKeys))
+                    .doOnError(e -> existsLookups.redisErrors.increment())
+                    .map(replies -> {
+                        List<byte[]> hashValues = replies.getT1();
+                        List<String> existsValues = replies.getT2();
+                        boolean loaded = present(hashValues.get(0));
+
+                        Map<String, Boolean> found = new HashMap<>();
+                        for (int i = 0; i < productIds.size(); i++) {
+                            if (loaded) {
+                                found.put(productIds.get(i), present(hashValues.get(i + 1)));
+                            } else if (present(existsValues.get(i))) {
+                                found.put(productIds.get(i), Boolean.valueOf(existsValues.get(i)));
+                            }
+                        }
+                        existsLookups.redisHits.increment(found.size());
+                        existsLookups.redisMisses.increment(productIds.size() - found.size());
+                        return found;
+                    });
+        });
+    }
+
+    /**
+     * Cache existence for several products.
+     */
+    public Mono<Void> cacheFavoritesExist(String userId, Map<String, Boolean> existence) {
+        return userPrefix(userId)
+                .flatMap(prefix -> Mono.when(existence.entrySet().stream()
+                        .map(entry -> redisTemplate.opsForValue()
+                                .set(prefix + "exists:" + entry.getKey(), String.valueOf(entry.getValue()), ttl))
+                        .toList()));
+    }
+
+    /**
+     * Cache the number of favorites of a user unless a count is already cached.
+     *
+     * @see CacheService#cacheFavoriteCount(String, long)
+     */
+    public Mono<Void> cacheFavoriteCount(String userId, long count) {
+        return buildKey(userId, "count")
+                .flatMap(key -> redisTemplate.opsForValue().setIfAbsent(key, String.valueOf(count), ttl))
+                .then();
+    }
+
+    /**
+     * Get the cached number of favorites of a user.
+     *
+     * @return cached count, or empty if not cached
+     */
+    public Mono<Long> getCachedFavoriteCount(String userId) {
+        return buildKey(userId, "count")
+                .flatMap(key -> redisTemplate.opsForValue().get(key)
+                        .doOnError(e -> countLookups.redisErrors.increment()))
+                .map(Long::valueOf)
+                .doOnNext(count -> countLookups.redisHits.increment())
+                .switchIfEmpty(Mono.fromRunnable(countLookups.redisMisses::increment));
+    }
+
+    /**
+     * Get the user's Bloom filter.
+     *
+     * @return the filter, or empty if it is missing or was never completely built
+     */
+    public Mono<FavoritesBloomFilter> getFavoritesFilter(String userId) {
+        return buildKey(userId, "bloom")
+                .flatMap(key -> redisTemplate.execute(connection -> connection.stringCommands().get(raw(key))).next()
+                        .doOnError(e -> bloomLookups.redisErrors.increment()))
+                .mapNotNull(value -> {
+                    byte[] bytes = new byte[value.remaining()];
+                    value.get(bytes);
+                    return FavoritesBloomFilter.fromBytes(bytes);
+                })
+                .doOnNext(filter -> bloomLookups.redisHits.increment())
+                .switchIfEmpty(Mono.fromRunnable(bloomLookups.redisMisses::increment));
+    }
+
+    /**
+     * Cache a Bloom filter built from the user's complete favorites, unless a write went through
+     * since the build began.
+     *
+     * @see CacheService#cacheFavoritesFilter(String, CacheService.FavoritesLoad, FavoritesBloomFilter)
+     */
+    public Mono<Void> cacheFavoritesFilter(String userId, CacheService.FavoritesLoad load, FavoritesBloomFilter filter) {
+        String prefix = cacheKeys.userPrefix(userId, load.generation());
+        List<byte[]> args = List.of(metaValue(load.writes()), filter.toBytes(),
+                metaValue(ttl.getSeconds()));
+        return redisTemplate.execute(CACHE_FILTER_SCRIPT, List.of(prefix + "bloom", prefix + "writes"), args,
+                        RedisElementWriter.from(RedisSerializer.byteArray()),
+                        RedisElementReader.from(new GenericToStringSerializer<>(Long.class)))
+                .then(publish(List.of(prefix + "bloom")));
+    }
+
+    /**
+     * Evict the user's favorites and pages.
+     */
+    public Mono<Void> evictUserFavoritesCache(String userId) {
+        return userPrefix(userId)
+                .flatMap(prefix -> Mono.when(redisTemplate.delete(prefix + "favorites", prefix + "pages"),
+                                redisTemplate.opsForValue().increment(prefix + "writes")
+                                        .then(redisTemplate.expire(prefix + "writes", ttl)))
+                        .then(publish(List.of(prefix + "favorites"))));
+    }
+
+    /**
+     * Evict all cache entries for a user by bumping the user's cache generation.
+     *
+     * @see CacheService#evictAllUserCache(String)
+     */
+    public Mono<Void> evictAllUserCache(String userId) {
+        String generationKey = cacheKeys.generationKey(userId);
+        return redisTemplate.opsForValue().increment(generationKey)
+                .doOnNext(generation -> {
+                    generations.invalidate(generationKey);
+                    logger.debug("Evicted all cache entries for user: {} (generation {})", userId, generation);
+                })
+                .then(publish(List.of(generationKey)));
+    }
+
+    /**
+     * Broadcast that the given keys changed, so blocking replicas drop their local copies.
+     */
+    private Mono<Void> publish(List<String> keys) {
+        return Flux.fromIterable(keys)
+                .flatMap(key -> redisTemplate.convertAndSend(invalidationChannel, key))
+                .then();
+    }
+
+    private Mono<String> buildKey(String userId, String... parts) {
+        return generation(userId).map(generation -> cacheKeys.userKey(userId, generation, parts));
+    }
+
+    /**
+     * Prefix of the user's keys in the current cache generation, ending with a colon.
+     */
+    private Mono<String> userPrefix(String userId) {
+        return generation(userId).map(generation -> cacheKeys.userPrefix(userId, generation));
+    }
+
+    private Mono<Long> generation(String userId) {
+        String generationKey = cacheKeys.generationKey(userId);
+        Long cached = generations.getIfPresent(generationKey);
+        return cached != null
+                ? Mono.just(cached)
+                : redisTemplate.opsForValue().get(generationKey)
+                        .map(Long::parseLong)
+                        .defaultIfEmpty(0L)
+                        .doOnNext(value -> generations.put(generationKey, value));
+    }
+
+    private ReactiveHashOperations<String, String, byte[]> hashOperations() {
+        return redisTemplate.opsForHash();
+    }
+
+    /**
+     * Update a cached exists key, keeping its TTL; a missing key is left missing.
+     */
+    private Mono<Boolean> updateExists(String key, String value) {
+        return redisTemplate.execute(connection -> connection.stringCommands()
+                .set(raw(key), raw(value), Expiration.keepTtl(), SetOption.ifPresent())).next();
+    }
+
+    private static ByteBuffer raw(String key) {
+        return ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Whether a multi-get reply holds a value; absent values may come back as null or empty.
+     */
+    private static boolean present(Object value) {
+        return value != null && !(value instanceof byte[] bytes && bytes.length == 0);
+    }
+}
@@ -0,0 +1,38 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.FavoriteExportFilter;
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.repository.ReactiveFavoriteRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+/**
+ * Reactive counterpart of {@link FavoriteExportService}: the favorites are emitted as the client
+ * consumes them, and the cursor fetches the next batch only when the previous one was written.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFavoriteExportService {
+
+    private final ReactiveFavoriteRepository favoriteRepository;
+    private final int batchSize;
+
+    public ReactiveFavoriteExportService(ReactiveFavoriteRepository favoriteRepository,
+                                         @Value("${favorites.export.batch-size:1000}") int batchSize) {
+        this.favoriteRepository = favoriteRepository;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * The favorites matching an export filter.
+     *
+     * @param filter the export criteria
+     */
+    public Flux<FavoriteResponse> export(FavoriteExportFilter filter) {
+        return favoriteRepository.findForExport(filter, batchSize)
+                .map(FavoriteMapper::toResponse)
+                .limitRate(batchSize);
+    }
+}
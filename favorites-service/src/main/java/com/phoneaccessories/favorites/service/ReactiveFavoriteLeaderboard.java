@@ -0,0 +1,151 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.ProductFavoriteCount;
+import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.repository.ReactiveFavoriteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.core.ReactiveHashOperations;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveZSetOperations;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Non-blocking counterpart of {@link FavoriteLeaderboard}, used by the reactive stack.
+ *
+ * <p>It updates and reads the same sorted sets; rebuilds are left to {@link FavoriteLeaderboard},
+ * which runs in both stacks.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFavoriteLeaderboard {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveFavoriteLeaderboard.class);
+
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final ReactiveFavoriteRepository favoriteRepository;
+    private final FavoriteLeaderboard leaderboard;
+
+    public ReactiveFavoriteLeaderboard(ReactiveRedisTemplate<String, String> redisTemplate,
+                                       ReactiveFavoriteRepository favoriteRepository,
+                                       FavoriteLeaderboard leaderboard) {
+        this.redisTemplate = redisTemplate;
+        this.favoriteRepository = favoriteRepository;
+        this.leaderboard = leaderboard;
+    }
+
+    /**
+     * Whether the leaderboard is maintained.
+     *
+     * @see FavoriteLeaderboard#isEnabled()
+     */
+    public boolean isEnabled() {
+        return leaderboard.isEnabled();
+    }
+
+    /**
+     * Count added favorites and discount removed ones. Failures are logged, not signalled.
+     *
+     * @see FavoriteLeaderboard#recordChanges(Collection, Collection)
+     */
+    public Mono<Void> recordChanges(Collection<Favorite> added, Collection<String> removed) {
+        if (!leaderboard.isEnabled() || (added.isEmpty() && removed.isEmpty())) {
+            return Mono.empty();
+        }
+
+        List<String> removedIds = new ArrayList<>(removed);
+        Mono<List<byte[]>> categories = removedIds.isEmpty()
+                ? Mono.just(List.of())
+                : hashOperations().multiGet(leaderboard.productCategoriesKey(), removedIds);
+
+        return categories.flatMap(removedCategories -> {
+            ReactiveZSetOperations<String, String> zSet = redisTemplate.opsForZSet();
+            List<Mono<?>> commands = new ArrayList<>();
+            for (Favorite favorite : added) {
+                commands.add(zSet.incrementScore(leaderboard.productsKey(), favorite.getProductId(), 1));
+                if (favorite.getCategory() != null) {
+                    commands.add(zSet.incrementScore(leaderboard.categoryKey(favorite.getCategory()), favorite.getProductId(), 1));
+                    commands.add(hashOperations().put(leaderboard.productCategoriesKey(), favorite.getProductId(),
+                            favorite.getCategory().getBytes(StandardCharsets.UTF_8)));
+                    commands.add(redisTemplate.opsForSet().add(leaderboard.categoriesKey(), favorite.getCategory()));
+                }
+            }
+
+            Set<String> decremented = new LinkedHashSet<>();
+            for (int i = 0; i < removedIds.size(); i++) {
+                decremented.add(leaderboard.productsKey());
+                commands.add(zSet.incrementScore(leaderboard.productsKey(), removedIds.get(i), -1));
+                byte[] category = removedCategories.get(i);
+                if (category != null && category.length > 0) {
+                    String key = leaderboard.categoryKey(new String(category, StandardCharsets.UTF_8));
+                    decremented.add(key);
+                    commands.add(zSet.incrementScore(key, removedIds.get(i), -1));
+                }
+            }
+
+            // Products nobody favorites any more leave the sets, once the decrements are applied
+            return Mono.when(commands).then(Mono.when(decremented.stream()
+                    .map(key -> zSet.removeRangeByScore(key, Range.closed(Double.NEGATIVE_INFINITY, 0.0)))
+                    .toList()));
+        }).onErrorResume(e -> {
+            logger.warn("Could not update the favorites leaderboard, it is off until rebuilt: {}", e.getMessage());
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * Get the most favorited products.
+     *
+     * @see FavoriteLeaderboard#top(String, int)
+     */
+    public Mono<List<ProductFavoriteCount>> top(String category, int k) {
+        String key = category != null ? leaderboard.categoryKey(category) : leaderboard.productsKey();
+        return redisTemplate.opsForZSet().reverseRangeWithScores(key, Range.closed(0L, (long) k - 1))
+                .map(entry -> new ProductFavoriteCount(entry.getValue(), category,
+                        entry.getScore() != null ? entry.getScore().longValue() : 0))
+                .collectList();
+    }
+
+    /**
+     * Get how many users favorited each of several products.
+     *
+     * @see FavoriteLeaderboard#counts(Collection)
+     */
+    public Mono<Map<String, Long>> counts(Collection<String> productIds) {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(productIds));
+        if (ids.isEmpty()) {
+            return Mono.just(Map.of());
+        }
+        if (!leaderboard.isEnabled()) {
+            return countFromFavorites(ids);
+        }
+        return redisTemplate.opsForZSet().score(leaderboard.productsKey(), ids.toArray())
+                .flatMap(scores -> !FavoriteLeaderboard.isUnscored(scores)
+                        ? Mono.just(FavoriteLeaderboard.toCounts(ids, scores))
+                        : redisTemplate.hasKey(leaderboard.productsKey())
+                                .flatMap(exists -> exists
+                                        ? Mono.just(FavoriteLeaderboard.toCounts(ids, scores))
+                                        : countFromFavorites(ids)));
+    }
+
+    private Mono<Map<String, Long>> countFromFavorites(List<String> ids) {
+        return favoriteRepository.countByProductIdIn(ids)
+                .collectList()
+                .map(productCounts -> FavoriteLeaderboard.fromProductCounts(ids, productCounts));
+    }
+
+    private ReactiveHashOperations<String, String, byte[]> hashOperations() {
+        return redisTemplate.opsForHash();
+    }
+}
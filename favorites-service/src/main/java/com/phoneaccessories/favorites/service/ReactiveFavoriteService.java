@@ -0,0 +1,362 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.AddFavoriteRequest;
+import com.phoneaccessories.favorites.dto.FavoriteBatchOperation;
+import com.phoneaccessories.favorites.dto.FavoriteBatchResponse;
+import com.phoneaccessories.favorites.dto.FavoriteBatchResult;
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
+import com.phoneaccessories.favorites.exception.DuplicateFavoriteException;
+import com.phoneaccessories.favorites.exception.FavoriteNotFoundException;
+import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import com.phoneaccessories.favorites.repository.ReactiveFavoriteCounterRepository;
+import com.phoneaccessories.favorites.repository.ReactiveFavoriteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking counterpart of {@link FavoriteService}, used by the reactive stack.
+ *
+ * <p>Writes, counters, pagination, Bloom filters and batch operations behave as in
+ * {@link FavoriteService}, and concurrent cache misses for a user share one load. Recompute
+ * leases and refresh-ahead, which exist to spare blocked request threads, are left out.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFavoriteService {
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveFavoriteService.class);
+
+    private final ReactiveFavoriteRepository favoriteRepository;
+    private final ReactiveFavoriteCounterRepository favoriteCounterRepository;
+    private final ReactiveCacheService cacheService;
+    private final ReactiveFavoriteLeaderboard leaderboard;
+    private final TrendingFavorites trending;
+    private final Map<String, Mono<UserFavoritesResponse>> favoritesLoads = new ConcurrentHashMap<>();
+
+    public ReactiveFavoriteService(ReactiveFavoriteRepository favoriteRepository,
+                                   ReactiveFavoriteCounterRepository favoriteCounterRepository,
+                                   ReactiveCacheService cacheService,
+                                   ReactiveFavoriteLeaderboard leaderboard,
+                                   TrendingFavorites trending) {
+        this.favoriteRepository = favoriteRepository;
+        this.favoriteCounterRepository = favoriteCounterRepository;
+        this.cacheService = cacheService;
+        this.leaderboard = leaderboard;
+        this.trending = trending;
+    }
+
+    /**
+     * Add a product to user's favorites.
+     */
+    public Mono<FavoriteResponse> addFavorite(String userId, AddFavoriteRequest request) {
+        logger.debug("Adding product {} to favorites for user {}", request.getProductId(), userId);
+
+        Favorite favorite = FavoriteMapper.toFavorite(userId, request);
+        return favoriteRepository.insertIfAbsent(favorite)
+                .flatMap(inserted -> {
+                    if (!inserted) {
+                        return Mono.error(new DuplicateFavoriteException("Product is already in favorites"));
+                    }
+                    FavoriteResponse response = FavoriteMapper.toResponse(favorite);
+                    trending.record(favorite.getProductId());
+                    return favoriteCounterRepository.increment(userId, 1)
+                            .then(cacheService.updateCachedFavorites(userId, List.of(response), List.of()))
+                            .then(leaderboard.recordChanges(List.of(favorite), List.of()))
+                            .thenReturn(response);
+                });
+    }
+
+    /**
+     * Remove a product from user's favorites.
+     */
+    public Mono<Void> removeFavorite(String userId, String productId) {
+        logger.debug("Removing product {} from favorites for user {}", productId, userId);
+
+        return favoriteRepository.deleteByUserIdAndProductId(userId, productId)
+                .flatMap(deleted -> deleted == 0
+                        ? Mono.error(new FavoriteNotFoundException("Favorite not found"))
+                        : favoriteCounterRepository.increment(userId, -1)
+                                .then(cacheService.updateCachedFavorites(userId, List.of(), List.of(productId)))
+                                .then(leaderboard.recordChanges(List.of(), List.of(productId))));
+    }
+
+    /**
+     * Add and remove several favorites at once.
+     *
+     * @see FavoriteService#applyBatch(String, List)
+     */
+    public Mono<FavoriteBatchResponse> applyBatch(String userId, List<FavoriteBatchOperation> operations) {
+        logger.debug("Applying {} favorite operations for user {}", operations.size(), userId);
+
+        Set<String> productIds = new HashSet<>();
+        for (FavoriteBatchOperation operation : operations) {
+            if (!productIds.add(operation.getProductId())) {
+                return Mono.error(new IllegalArgumentException(
+                        "Product " + operation.getProductId() + " appears more than once in the batch"));
+            }
+        }
+
+        Map<String, Favorite> additions = new LinkedHashMap<>();
+        List<String> removals = new ArrayList<>();
+        for (FavoriteBatchOperation operation : operations) {
+            if (operation.getAction() == FavoriteBatchOperation.Action.ADD) {
+                additions.put(operation.getProductId(), FavoriteMapper.toFavorite(userId, operation));
+            } else {
+                removals.add(operation.getProductId());
+            }
+        }
+
+        Mono<Set<String>> existingRemovals = removals.isEmpty()
+                ? Mono.just(Set.of())
+                : favoriteRepository.findProductIdsByUserIdAndProductIdIn(userId, removals)
+                        .map(Favorite::getProductId)
+                        .collect(Collectors.toSet());
+
+        return existingRemovals.flatMap(existing -> favoriteRepository
+                .bulkWrite(userId, new ArrayList<>(additions.values()), removals)
+                .flatMap(removedCount -> {
+                    long addedCount = additions.values().stream().filter(favorite -> favorite.getId() != null).count();
+                    Mono<Void> counter = addedCount != removedCount
+                            ? favoriteCounterRepository.increment(userId, addedCount - removedCount)
+                            : Mono.empty();
+
+                    List<Favorite> inserted = new ArrayList<>();
+                    List<FavoriteResponse> added = new ArrayList<>();
+                    List<FavoriteBatchResult> results = new ArrayList<>(operations.size());
+                    for (FavoriteBatchOperation operation : operations) {
+                        String productId = operation.getProductId();
+                        if (operation.getAction() == FavoriteBatchOperation.Action.ADD) {
+                            Favorite favorite = additions.get(productId);
+                            if (favorite.getId() != null) {
+                                inserted.add(favorite);
+                                FavoriteResponse response = FavoriteMapper.toResponse(favorite);
+                                added.add(response);
+                                results.add(new FavoriteBatchResult(productId, operation.getAction(), FavoriteBatchResult.Status.ADDED, response));
+                            } else {
+                                results.add(new FavoriteBatchResult(productId, operation.getAction(), FavoriteBatchResult.Status.ALREADY_EXISTS, null));
+                            }
+                        } else {
+                            FavoriteBatchResult.Status status = existing.contains(productId)
+                                    ? FavoriteBatchResult.Status.REMOVED
+                                    : FavoriteBatchResult.Status.NOT_FOUND;
+                            results.add(new FavoriteBatchResult(productId, operation.getAction(), status, null));
+                        }
+                    }
+
+                    List<String> removed = removals.stream().filter(existing::contains).collect(Collectors.toList());
+                    inserted.forEach(favorite -> trending.record(favorite.getProductId()));
+                    return counter
+                            .then(cacheService.updateCachedFavorites(userId, added, removed))
+                            .then(leaderboard.recordChanges(inserted, removed))
+                            .thenReturn(new FavoriteBatchResponse(userId, results));
+                }));
+    }
+
+    /**
+     * Get all favorite products for a user. Concurrent cache misses for the same user share one load.
+     */
+    public Mono<UserFavoritesResponse> getUserFavorites(String userId) {
+        logger.debug("Retrieving favorites for user {}", userId);
+
+        return cacheService.getCachedUserFavorites(userId)
+                .switchIfEmpty(Mono.defer(() -> favoritesLoads.computeIfAbsent(userId, this::sharedFavoritesLoad)));
+    }
+
+    /**
+     * Start a load of a user's favorites shared by its subscribers. Once complete it releases its
+     * own entry only, as {@link SingleFlight} does, never a load started after it.
+     */
+    private Mono<UserFavoritesResponse> sharedFavoritesLoad(String userId) {
+        AtomicReference<Mono<UserFavoritesResponse>> flight = new AtomicReference<>();
+        flight.set(loadUserFavorites(userId)
+                .doFinally(signal -> favoritesLoads.remove(userId, flight.get()))
+                .cache());
+        return flight.get();
+    }
+
+    /**
+     * Get one page of a user's favorites, newest first.
+     *
+     * @see FavoriteService#getUserFavoritesPage(String, int, String)
+     */
+    public Mono<UserFavoritesResponse> getUserFavoritesPage(String userId, int limit, String cursor) {
+        logger.debug("Retrieving {} favorites for user {} after cursor {}", limit, userId, cursor);
+
+        FavoritesCursor after;
+        try {
+            after = cursor != null ? FavoritesCursor.decode(cursor) : null;
+        } catch (IllegalArgumentException e) {
+            return Mono.error(e);
+        }
+
+        return cacheService.getCachedFavoritesPage(userId, limit, cursor)
+                .switchIfEmpty(Mono.defer(() -> cacheService.startFavoritesLoad(userId).flatMap(load -> favoriteRepository.findPageByUserId(
+                                userId,
+                                after != null ? after.getCreatedAt() : null,
+                                after != null ? after.getId() : null,
+                                limit + 1)
+                        .collectList()
+                        .flatMap(favorites -> {
+                            boolean hasMore = favorites.size() > limit;
+                            List<Favorite> page = hasMore ? favorites.subList(0, limit) : favorites;
+
+                            UserFavoritesResponse response = new UserFavoritesResponse(
+                                    userId,
+                                    page.stream()
+                                            .map(FavoriteMapper::toResponse)
+                                            .collect(Collectors.toList())
+                            );
+                            if (hasMore) {
+                                Favorite last = page.get(page.size() - 1);
+                                response.setNextCursor(new FavoritesCursor(last.getCreatedAt(), last.getId()).encode());
+                            }
+
+                            return cacheService.cacheFavoritesPage(userId, load, limit, cursor, response).thenReturn(response);
+                        }))));
+    }
+
+    /**
+     * Check if a product is in user's favorites.
+     */
+    public Mono<Boolean> isFavorite(String userId, String productId) {
+        logger.debug("Checking if product {} is favorite for user {}", productId, userId);
+
+        // Most products are not favorites: answer those without an existence lookup
+        return getFavoritesFilter(userId).flatMap(filter -> {
+            if (!filter.mightContain(productId)) {
+                return Mono.just(false);
+            }
+            return cacheService.getCachedFavoriteExists(userId, productId)
+                    .switchIfEmpty(Mono.defer(() -> favoriteRepository.existsByUserIdAndProductId(userId, productId)
+                            .flatMap(exists -> cacheService.cacheFavoriteExists(userId, productId, exists).thenReturn(exists))));
+        });
+    }
+
+    /**
+     * Check which of the given products are in user's favorites.
+     *
+     * @see FavoriteService#areFavorites(String, List)
+     */
+    public Mono<Map<String, Boolean>> areFavorites(String userId, List<String> productIds) {
+        logger.debug("Checking {} products against favorites of user {}", productIds.size(), userId);
+
+        Set<String> requested = new LinkedHashSet<>(productIds);
+        return getFavoritesFilter(userId).flatMap(filter -> {
+            List<String> candidates = requested.stream()
+                    .filter(filter::mightContain)
+                    .collect(Collectors.toList());
+            Mono<Map<String, Boolean>> cached = candidates.isEmpty()
+                    ? Mono.just(Map.of())
+                    : cacheService.getCachedFavoritesExist(userId, candidates);
+
+            return cached.flatMap(found -> {
+                List<String> misses = candidates.stream()
+                        .filter(productId -> !found.containsKey(productId))
+                        .collect(Collectors.toList());
+                Mono<Map<String, Boolean>> loaded = misses.isEmpty()
+                        ? Mono.just(Map.of())
+                        : favoriteRepository.findProductIdsByUserIdAndProductIdIn(userId, misses)
+                                .map(Favorite::getProductId)
+                                .collect(Collectors.toSet())
+                                .flatMap(favoriteIds -> {
+                                    Map<String, Boolean> existence = new LinkedHashMap<>();
+                                    misses.forEach(productId -> existence.put(productId, favoriteIds.contains(productId)));
+                                    return cacheService.cacheFavoritesExist(userId, existence).thenReturn(existence);
+                                });
+
+                return loaded.map(fromRepository -> {
+                    Map<String, Boolean> result = new LinkedHashMap<>();
+                    for (String productId : requested) {
+                        result.put(productId, found.containsKey(productId)
+                                ? found.get(productId)
+                                : fromRepository.getOrDefault(productId, false));
+                    }
+                    return result;
+                });
+            });
+        });
+    }
+
+    /**
+     * Get the count of favorites for a user from the materialized counter.
+     *
+     * @see FavoriteService#getFavoriteCount(String)
+     */
+    public Mono<Long> getFavoriteCount(String userId) {
+        logger.debug("Counting favorites for user {}", userId);
+
+        return cacheService.getCachedFavoriteCount(userId)
+                .switchIfEmpty(Mono.defer(() -> favoriteCounterRepository.findById(userId)
+                        .map(FavoriteCounter::getCount)
+                        .switchIfEmpty(Mono.defer(() -> favoriteRepository.countByUserId(userId)
+                                .flatMap(count -> favoriteCounterRepository.initialize(userId, count))))
+                        .flatMap(count -> cacheService.cacheFavoriteCount(userId, count).thenReturn(count))));
+    }
+
+    /**
+     * Remove all favorites for a user.
+     */
+    public Mono<Long> removeAllFavorites(String userId) {
+        logger.debug("Removing all favorites for user {}", userId);
+
+        // The delete does not say which products it removed, so the leaderboard asks first
+        Mono<List<String>> productIds = leaderboard.isEnabled()
+                ? favoriteRepository.findProductIdsByUserId(userId).map(Favorite::getProductId).collectList()
+                : Mono.just(List.of());
+
+        return productIds.flatMap(removed -> favoriteRepository.deleteByUserId(userId)
+                .flatMap(deletedCount -> (deletedCount > 0
+                        ? favoriteCounterRepository.increment(userId, -deletedCount)
+                        : Mono.<Void>empty())
+                        // Invalidate every cache entry of the user
+                        .then(cacheService.evictAllUserCache(userId))
+                        .then(deletedCount > 0 ? leaderboard.recordChanges(List.of(), removed) : Mono.<Void>empty())
+                        .thenReturn(deletedCount)));
+    }
+
+    /**
+     * Load a user's favorites from the repository and cache them.
+     */
+    private Mono<UserFavoritesResponse> loadUserFavorites(String userId) {
+        return cacheService.startFavoritesLoad(userId).flatMap(load -> {
+            long start = System.nanoTime();
+            return favoriteRepository.findByUserId(userId)
+                    .map(FavoriteMapper::toResponse)
+                    .collectList()
+                    .flatMap(favorites -> {
+                        UserFavoritesResponse response = new UserFavoritesResponse(userId, favorites);
+                        return cacheService.cacheUserFavorites(userId, load, response, Duration.ofNanos(System.nanoTime() - start))
+                                .thenReturn(response);
+                    });
+        });
+    }
+
+    /**
+     * Get the user's Bloom filter, rebuilding it from the repository when missing, expired or full.
+     */
+    private Mono<FavoritesBloomFilter> getFavoritesFilter(String userId) {
+        return cacheService.getFavoritesFilter(userId)
+                .switchIfEmpty(Mono.defer(() -> cacheService.startFavoritesLoad(userId)
+                        .flatMap(load -> favoriteRepository.findProductIdsByUserId(userId)
+                                .map(Favorite::getProductId)
+                                .collectList()
+                                .map(FavoritesBloomFilter::of)
+                                .flatMap(filter -> cacheService.cacheFavoritesFilter(userId, load, filter).thenReturn(filter)))));
+    }
+}
@@ -0,0 +1,182 @@
+package com.phoneaccessories.favorites.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Redis leases letting a single node recompute a cache entry or run a job.
+ *
+ * <p>A lease is a {@code SET NX PX} key holding a random token; it expires on its own if the
+ * holder dies. Renewing and releasing compare the token and update the key in one Lua script,
+ * so a holder whose lease expired and was taken by another node never extends or drops that
+ * node's lease.
+ *
+ * <p>Recompute leases ({@link #tryAcquire(String)}) only coalesce cache loads: nodes that do not
+ * get one wait for it to be released and then read the entry the holder cached. When disabled,
+ * or when Redis fails, every acquisition succeeds, so each node only coalesces its own loads.
+ *
+ * <p>Job leases ({@link #tryAcquire(String, Duration)}) are always taken, with a TTL chosen by
+ * the job to cover a run; a job that may outlive it renews the lease between steps and stops
+ * when it was lost. When Redis is unavailable no node gets the lease and the job waits for its
+ * next run.
+ */
+@Service
+public class RedisLeaseLock {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisLeaseLock.class);
+
+    private static final long POLL_INTERVAL_MILLIS = 25;
+
+    /** Prefix of tokens handed out without Redis, which have no key to renew or release. */
+    private static final String LOCAL_TOKEN_PREFIX = "local:";
+
+    /** Extends the key if it still holds the token; returns 1 if it did. */
+    static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end",
+            Long.class);
+
+    /** Deletes the key if it still holds the token; returns the number of keys deleted. */
+    static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final String keyPrefix;
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Duration wait;
+
+    public RedisLeaseLock(RedisTemplate<String, String> redisTemplate,
+                          @Value("${cache.redis.key-prefix}") String keyPrefix,
+                          @Value("${cache.lease.enabled:false}") boolean enabled,
+                          @Value("${cache.lease.ttl:5000}") long ttlMillis,
+                          @Value("${cache.lease.wait:2000}") long waitMillis) {
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = keyPrefix;
+        this.enabled = enabled;
+        this.ttl = Duration.ofMillis(ttlMillis);
+        this.wait = Duration.ofMillis(waitMillis);
+    }
+
+    /**
+     * Try to take a recompute lease.
+     *
+     * @param name the lease name
+     * @return the token to release the lease with, or empty if another node holds it
+     */
+    public Optional<String> tryAcquire(String name) {
+        if (!enabled) {
+            return Optional.of(LOCAL_TOKEN_PREFIX + UUID.randomUUID());
+        }
+
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(buildKey(name), token, ttl);
+            return Boolean.TRUE.equals(acquired) ? Optional.of(token) : Optional.empty();
+        } catch (RuntimeException e) {
+            // Without Redis there is nothing to coordinate with; load locally
+            logger.warn("Could not acquire lease {}: {}", name, e.getMessage());
+            return Optional.of(LOCAL_TOKEN_PREFIX + token);
+        }
+    }
+
+    /**
+     * Try to take a job lease.
+     *
+     * @param name the job name
+     * @param ttl how long the lease is held unless renewed or released
+     * @return the token to renew and release the lease with, or empty if another node holds it
+     */
+    public Optional<String> tryAcquire(String name, Duration ttl) {
+        String token = UUID.randomUUID().toString();
+        try {
+            Boolean acquired = redisTemplate.opsForValue().setIfAbsent(buildKey(name), token, ttl);
+            return Boolean.TRUE.equals(acquired) ? Optional.of(token) : Optional.empty();
+        } catch (RuntimeException e) {
+            logger.warn("Could not acquire job lease {}: {}", name, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Extend the lease if it is still held with the given token.
+     *
+     * @param name the lease name
+     * @param token the token returned by {@link #tryAcquire(String, Duration)}
+     * @param ttl how long the lease is held from now
+     * @return true if the lease is still held
+     */
+    public boolean renew(String name, String token, Duration ttl) {
+        try {
+            Long renewed = redisTemplate.execute(RENEW_SCRIPT, List.of(buildKey(name)),
+                    token, Long.toString(ttl.toMillis()));
+            return renewed != null && renewed == 1L;
+        } catch (RuntimeException e) {
+            logger.warn("Could not renew lease {}: {}", name, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Release the lease if it is still held with the given token.
+     *
+     * @param name the lease name
+     * @param token the token returned by {@code tryAcquire}
+     */
+    public void release(String name, String token) {
+        if (token.startsWith(LOCAL_TOKEN_PREFIX)) {
+            return;
+        }
+
+        try {
+            redisTemplate.execute(RELEASE_SCRIPT, List.of(buildKey(name)), token);
+        } catch (RuntimeException e) {
+            logger.warn("Could not release lease {}, it expires on its own: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Wait until a recompute lease is released or expires, or the configured wait time elapses.
+     *
+     * @param name the lease name
+     * @return true if the lease was released in time
+     */
+    public boolean awaitRelease(String name) {
+        if (!enabled) {
+            return true;
+        }
+
+        String key = buildKey(name);
+        long deadline = System.nanoTime() + wait.toNanos();
+        try {
+            while (Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+                if (System.nanoTime() >= deadline) {
+                    logger.debug("Gave up waiting for lease {}", name);
+                    return false;
+                }
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (RuntimeException e) {
+            logger.warn("Could not check lease {}: {}", name, e.getMessage());
+            return false;
+        }
+    }
+
+    private String buildKey(String name) {
+        return keyPrefix + ":lease:" + name;
+    }
+}
@@ -0,0 +1,277 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.ProductFavoriteCount;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Products favorited most over the last hour, day or other configured window.
+ *
+ * <p>Each add is counted in process, in a {@link HeavyHitterSketch} of the current time bucket.
+ * A scheduled sync publishes the buckets this replica changed to Redis, one hash per bucket with
+ * a field per replica, and reads the other replicas' buckets. Buckets that can no longer change
+ * are read once and kept. It then merges the buckets of each window into the top products, so
+ * that requests read a precomputed list and never wait on Redis or a merge. Results are as old
+ * as the last sync.
+ *
+ * <p>Every process publishes under a new ID, so the counts of a replica that restarted stay in
+ * Redis until their buckets leave the longest window.
+ */
+@Service
+public class TrendingFavorites {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrendingFavorites.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final Clock clock;
+    private final String keyPrefix;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final boolean enabled;
+    private final List<String> windowNames;
+    private final List<Duration> windows;
+    private final long bucketMillis;
+    private final long settleMillis;
+    private final long retentionMillis;
+    private final int depth;
+    private final int width;
+    private final int capacity;
+
+    private final Map<Long, HeavyHitterSketch> local = new ConcurrentHashMap<>();
+    private final Set<Long> changed = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    // Guarded by syncLock
+    private final Map<Long, Map<String, HeavyHitterSketch>> remote = new HashMap<>();
+    private final Set<Long> settled = new HashSet<>();
+    private volatile Map<Duration, List<ProductFavoriteCount>> trending = Map.of();
+
+    @Autowired
+    public TrendingFavorites(RedisTemplate<String, String> redisTemplate,
+                             @Value("${cache.redis.key-prefix}") String keyPrefix,
+                             @Value("${favorites.trending.enabled:true}") boolean enabled,
+                             @Value("${favorites.trending.windows:1h,24h}") List<String> windows,
+                             @Value("${favorites.trending.bucket:5m}") String bucket,
+                             @Value("${favorites.trending.sync-interval:10000}") long syncIntervalMillis,
+                             @Value("${favorites.trending.sketch-width:1024}") int width,
+                             @Value("${favorites.trending.sketch-depth:4}") int depth,
+                             @Value("${favorites.trending.candidates:100}") int capacity) {
+        this(redisTemplate, Clock.systemUTC(), keyPrefix, enabled, windows, bucket, syncIntervalMillis, width, depth, capacity);
+    }
+
+    TrendingFavorites(RedisTemplate<String, String> redisTemplate, Clock clock, String keyPrefix, boolean enabled,
+                      List<String> windows, String bucket, long syncIntervalMillis, int width, int depth, int capacity) {
+        this.redisTemplate = redisTemplate;
+        this.clock = clock;
+        this.keyPrefix = keyPrefix;
+        this.enabled = enabled;
+        this.windowNames = windows.stream().map(String::trim).toList();
+        this.windows = windowNames.stream().map(DurationStyle::detectAndParse).toList();
+        this.bucketMillis = DurationStyle.detectAndParse(bucket).toMillis();
+        // Other replicas may still publish a bucket up to one sync after it ends
+        this.settleMillis = 2 * syncIntervalMillis;
+        this.retentionMillis = this.windows.stream().mapToLong(Duration::toMillis).max().orElse(bucketMillis);
+        this.width = width;
+        this.depth = depth;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Count one favorite of a product. Only touches memory.
+     *
+     * @param productId the favorited product
+     */
+    public void record(String productId) {
+        if (!enabled) {
+            return;
+        }
+        long bucket = clock.millis() / bucketMillis;
+        local.computeIfAbsent(bucket, key -> newSketch()).add(productId);
+        changed.add(bucket);
+    }
+
+    /**
+     * Get the products favorited most over a window, as of the last sync.
+     *
+     * @param window one of the configured windows, such as {@code 1h}
+     * @param k the number of products
+     * @return up to {@code k} products with their estimated favorites in the window, most first
+     * @throws IllegalArgumentException if the window is not configured
+     */
+    public List<ProductFavoriteCount> trending(String window, int k) {
+        Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(window);
+        } catch (IllegalArgumentException e) {
+            duration = null;
+        }
+        if (duration == null || !windows.contains(duration)) {
+            throw new IllegalArgumentException("Window must be one of " + String.join(", ", windowNames));
+        }
+
+        List<ProductFavoriteCount> top = trending.getOrDefault(duration, List.of());
+        return top.subList(0, Math.min(k, top.size()));
+    }
+
+    /**
+     * Exchange buckets with the other replicas through Redis and recompute the trending products.
+     * Without Redis the products are computed from this replica's counts alone.
+     */
+    @Scheduled(fixedDelayString = "${favorites.trending.sync-interval:10000}")
+    public void sync() {
+        if (!enabled) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            long now = clock.millis();
+            long oldest = (now - retentionMillis) / bucketMillis;
+            local.keySet().removeIf(bucket -> bucket < oldest);
+            remote.keySet().removeIf(bucket -> bucket < oldest);
+            settled.removeIf(bucket -> bucket < oldest);
+
+            try {
+                publish();
+                fetch(oldest, now);
+            } catch (RuntimeException e) {
+                logger.warn("Could not sync trending favorites with other replicas: {}", e.getMessage());
+            }
+
+            Map<Duration, List<ProductFavoriteCount>> computed = new LinkedHashMap<>();
+            for (Duration window : windows) {
+                computed.put(window, compute(now, window));
+            }
+            trending = computed;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Write the buckets changed since the last sync, in one pipelined round trip.
+     */
+    private void publish() {
+        List<Long> buckets = new ArrayList<>(changed);
+        Map<String, byte[]> writes = new HashMap<>();
+        for (Long bucket : buckets) {
+            // Unmarked first, so that a favorite counted while serializing marks it again
+            changed.remove(bucket);
+            HeavyHitterSketch sketch = local.get(bucket);
+            if (sketch != null) {
+                writes.put(bucketKey(bucket), sketch.toBytes());
+            }
+        }
+        if (writes.isEmpty()) {
+            return;
+        }
+
+        Duration ttl = Duration.ofMillis(retentionMillis + bucketMillis + settleMillis);
+        try {
+            pipelined(operations -> writes.forEach((key, value) -> {
+                operations.opsForHash().put(key, instanceId, value);
+                operations.expire(key, ttl);
+            }));
+        } catch (RuntimeException e) {
+            changed.addAll(buckets);
+            throw e;
+        }
+    }
+
+    /**
+     * Read the other replicas' buckets that are new or may still change, in one pipelined round trip.
+     */
+    @SuppressWarnings("unchecked")
+    private void fetch(long oldest, long now) {
+        List<Long> buckets = new ArrayList<>();
+        for (long bucket = oldest; bucket <= now / bucketMillis; bucket++) {
+            if (!settled.contains(bucket)) {
+                buckets.add(bucket);
+            }
+        }
+
+        List<Object> replies = pipelined(operations -> buckets.forEach(bucket -> operations.opsForHash().entries(bucketKey(bucket))));
+        for (int i = 0; i < buckets.size(); i++) {
+            long bucket = buckets.get(i);
+            Map<String, HeavyHitterSketch> replicas = new HashMap<>();
+            Map<String, byte[]> entries = i < replies.size() ? (Map<String, byte[]>) replies.get(i) : null;
+            if (entries != null) {
+                entries.forEach((replica, value) -> {
+                    HeavyHitterSketch sketch = replica.equals(instanceId) ? null : HeavyHitterSketch.fromBytes(value, depth, width, capacity);
+                    if (sketch != null) {
+                        replicas.put(replica, sketch);
+                    }
+                });
+            }
+            remote.put(bucket, replicas);
+            if ((bucket + 1) * bucketMillis + settleMillis <= now) {
+                settled.add(bucket);
+            }
+        }
+    }
+
+    /**
+     * Merge the local and remote buckets overlapping the window and take their top products.
+     */
+    private List<ProductFavoriteCount> compute(long now, Duration window) {
+        long first = (now - window.toMillis()) / bucketMillis;
+        HeavyHitterSketch merged = newSketch();
+        for (long bucket = first; bucket <= now / bucketMillis; bucket++) {
+            HeavyHitterSketch sketch = local.get(bucket);
+            if (sketch != null) {
+                merged.merge(sketch);
+            }
+            remote.getOrDefault(bucket, Collections.emptyMap()).values().forEach(merged::merge);
+        }
+
+        List<ProductFavoriteCount> top = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : merged.top(capacity)) {
+            top.add(new ProductFavoriteCount(entry.getKey(), null, entry.getValue()));
+        }
+        return top;
+    }
+
+    private HeavyHitterSketch newSketch() {
+        return new HeavyHitterSketch(depth, width, capacity);
+    }
+
+    /**
+     * Run the given commands in a single pipelined round trip.
+     *
+     * @return the deserialized replies, in command order
+     */
+    @SuppressWarnings("unchecked")
+    private List<Object> pipelined(Consumer<RedisOperations<String, String>> commands) {
+        return redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                commands.accept((RedisOperations<String, String>) operations);
+                return null;
+            }
+        });
+    }
+
+    private String bucketKey(long bucket) {
+        return keyPrefix + ":trending:" + bucketMillis + ":" + bucket;
+    }
+}
@@ -0,0 +1,357 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.exception.WriteBacklogFullException;
+import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.repository.FavoriteCounterRepository;
+import com.phoneaccessories.favorites.repository.FavoriteCounterRepositoryCustom.CounterChange;
+import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Write-behind mode of {@link FavoriteService#addFavorite} and {@link FavoriteService#removeFavorite},
+ * enabled with {@code favorites.write-behind.enabled=true}.
+ *
+ * <p>A write is acknowledged once it is durable in the local {@link WriteBehindLog}; the caller
+ * then writes it through to the cache. A scheduled flush group-commits the logged writes to
+ * MongoDB: the last write of each favorite in one bulk write, counter changes in another, and
+ * then the written favorites are patched into the cache again, since a list loaded from MongoDB
+ * in between would lack them. Writes left in the log by a crash are flushed after the restart.
+ *
+ * <p>The log is local: its directory must outlive the process, for example on a persistent
+ * volume, or acknowledged writes are lost with the instance.
+ *
+ * <p>Whether a write changes anything is decided against this log and MongoDB, so only one
+ * instance may log writes: two logs would flush an add on one instance and a remove on the other
+ * in either order. The writer takes a {@link RedisLeaseLock} at startup, waiting at most its TTL for
+ * a previous instance's lock to expire, and fails to start if another instance holds it; deploy
+ * a single replica, replaced rather than rolled. The lock is renewed by the flush thread; while
+ * it is lost, writes are refused.
+ *
+ * <p>Flushes run on their own thread every {@code favorites.write-behind.flush-interval}
+ * milliseconds, not on the shared scheduler, whose jobs may take much longer.
+ */
+@Service
+@ConditionalOnProperty(name = "favorites.write-behind.enabled", havingValue = "true")
+public class WriteBehindFavoriteWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindFavoriteWriter.class);
+
+    private static final int LOCK_STRIPES = 1024;
+
+    static final String JOB_LOCK = "favorites:write-behind";
+
+    private final FavoriteRepository favoriteRepository;
+    private final FavoriteCounterRepository favoriteCounterRepository;
+    private final CacheService cacheService;
+    private final RedisLeaseLock jobLock;
+    private final WriteBehindLog log;
+    private final long flushInterval;
+    private final Duration lockTtl;
+    private final int batchSize;
+    private final int maxBacklog;
+    private final ReentrantLock[] favoriteLocks = new ReentrantLock[LOCK_STRIPES];
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Timer appendTimer;
+    private final Timer flushTimer;
+    private ScheduledExecutorService flushExecutor;
+    // The job lock token, null while another instance may hold the lock
+    private volatile String lockToken;
+    private long renewAt;
+
+    public WriteBehindFavoriteWriter(FavoriteRepository favoriteRepository,
+                                     FavoriteCounterRepository favoriteCounterRepository,
+                                     CacheService cacheService,
+                                     RedisLeaseLock jobLock,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${favorites.write-behind.directory:data/write-behind}") String directory,
+                                     @Value("${favorites.write-behind.segment-bytes:67108864}") long segmentBytes,
+                                     @Value("${favorites.write-behind.batch-size:1000}") int batchSize,
+                                     @Value("${favorites.write-behind.max-backlog:100000}") int maxBacklog,
+                                     @Value("${favorites.write-behind.flush-interval:50}") long flushInterval,
+                                     @Value("${favorites.write-behind.lock-ttl:30000}") long lockTtl) throws IOException {
+        this.favoriteRepository = favoriteRepository;
+        this.favoriteCounterRepository = favoriteCounterRepository;
+        this.cacheService = cacheService;
+        this.jobLock = jobLock;
+        this.log = new WriteBehindLog(Path.of(directory), segmentBytes);
+        this.flushInterval = flushInterval;
+        this.lockTtl = Duration.ofMillis(lockTtl);
+        this.batchSize = batchSize;
+        this.maxBacklog = maxBacklog;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            favoriteLocks[i] = new ReentrantLock();
+        }
+
+        Gauge.builder("favorites.write-behind.backlog", log, WriteBehindLog::backlog)
+                .description("Favorite writes logged but not yet flushed to MongoDB")
+                .register(meterRegistry);
+        this.appendTimer = Timer.builder("favorites.write-behind.append")
+                .description("Time to make a favorite write durable in the local log")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("favorites.write-behind.flush")
+                .description("Time to flush a batch of favorite writes to MongoDB")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Take the job lock and start flushing.
+     *
+     * @throws IllegalStateException if another instance still holds the lock after its TTL
+     */
+    @PostConstruct
+    public void start() throws InterruptedException {
+        long deadline = System.nanoTime() + lockTtl.toNanos();
+        Optional<String> token = jobLock.tryAcquire(JOB_LOCK, lockTtl);
+        while (token.isEmpty()) {
+            if (System.nanoTime() >= deadline) {
+                throw new IllegalStateException("Another instance holds the write-behind log lock; "
+                        + "write-behind mode supports a single replica");
+            }
+            logger.info("Waiting for the write-behind log lock");
+            Thread.sleep(Math.min(1000, lockTtl.toMillis()));
+            token = jobLock.tryAcquire(JOB_LOCK, lockTtl);
+        }
+        lockToken = token.get();
+        renewAt = System.nanoTime() + lockTtl.toNanos() / 3;
+        if (log.isFresh()) {
+            // Counters may hold sequence numbers of a log that was lost with its directory
+            favoriteCounterRepository.clearSequences();
+        }
+
+        flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushExecutor.scheduleWithFixedDelay(this::scheduledFlush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Log the addition of a favorite.
+     *
+     * @param favorite the favorite; an ID is assigned to it
+     * @param stored whether the user has the product in MongoDB, ignoring logged writes
+     * @return true if logged, false if the user already has the product
+     */
+    public boolean add(Favorite favorite, BooleanSupplier stored) {
+        return write(FavoriteWrite.add(favorite), stored, false);
+    }
+
+    /**
+     * Log the removal of a favorite.
+     *
+     * @param userId the user ID
+     * @param productId the product ID
+     * @param stored whether the user has the product in MongoDB, ignoring logged writes
+     * @return true if logged, false if the user does not have the product
+     */
+    public boolean remove(String userId, String productId, BooleanSupplier stored) {
+        return write(FavoriteWrite.remove(userId, productId), stored, true);
+    }
+
+    private boolean write(FavoriteWrite write, BooleanSupplier stored, boolean expectPresent) {
+        Favorite favorite = write.favorite();
+        // Writes of one favorite are decided one at a time, so each sees the previous one
+        ReentrantLock lock = favoriteLocks[Math.floorMod(write.key().hashCode(), LOCK_STRIPES)];
+        lock.lock();
+        try {
+            if (lockToken == null) {
+                throw new WriteBacklogFullException("The write-behind log lock is not held, retry later");
+            }
+            FavoriteWrite pending = log.pending(favorite.getUserId(), favorite.getProductId());
+            boolean present = pending != null ? pending.type() == FavoriteWrite.Type.ADD : stored.getAsBoolean();
+            if (present != expectPresent) {
+                return false;
+            }
+            if (log.backlog() >= maxBacklog) {
+                throw new WriteBacklogFullException("Too many favorite writes are waiting, retry later");
+            }
+
+            if (write.type() == FavoriteWrite.Type.ADD) {
+                favorite.setId(new ObjectId().toHexString());
+            }
+            long start = System.nanoTime();
+            log.append(write);
+            appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not log favorite write", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The products of a user whose latest logged write adds them, not yet flushed to MongoDB.
+     */
+    public List<String> pendingAdds(String userId) {
+        return log.pendingAdds(userId);
+    }
+
+    private void scheduledFlush() {
+        try {
+            if (System.nanoTime() >= renewAt) {
+                renewLock();
+            }
+            flush();
+        } catch (RuntimeException e) {
+            // An exception would cancel the schedule
+            logger.warn("Scheduled write-behind flush failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Renew the job lock, or take it again once lost; the logged writes are flushed either way.
+     */
+    private void renewLock() {
+        renewAt = System.nanoTime() + lockTtl.toNanos() / 3;
+        String token = lockToken;
+        if (token != null && jobLock.renew(JOB_LOCK, token, lockTtl)) {
+            return;
+        }
+        if (token != null) {
+            logger.error("Lost the write-behind log lock, refusing writes until it is taken again");
+            lockToken = null;
+        }
+        jobLock.tryAcquire(JOB_LOCK, lockTtl).ifPresent(acquired -> {
+            logger.info("Took the write-behind log lock again");
+            lockToken = acquired;
+        });
+    }
+
+    /**
+     * Flush logged writes to MongoDB, batch by batch.
+     *
+     * @return true if nothing is left to flush
+     */
+    public boolean flush() {
+        flushLock.lock();
+        try {
+            while (true) {
+                List<FavoriteWrite> batch = log.peek(batchSize);
+                if (batch.isEmpty()) {
+                    return true;
+                }
+
+                Timer.Sample sample = Timer.start();
+                try {
+                    Map<String, UserWrites> byUser = apply(batch);
+                    log.commit(batch.get(batch.size() - 1).sequence());
+                    patchCache(byUser);
+                } catch (RuntimeException | IOException e) {
+                    logger.warn("Flushing {} favorite writes failed, retrying: {}", batch.size(), e.getMessage());
+                    return false;
+                } finally {
+                    sample.stop(flushTimer);
+                }
+                logger.debug("Flushed {} favorite writes", batch.size());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Write a batch to MongoDB. Only the last write of each favorite is applied, except that a
+     * favorite removed and added again replaces the stored document, so that MongoDB keeps the ID
+     * and creation time the cache was given. Each write
+     * changes the user's counter, since it was only logged if it changed the favorites. Both
+     * writes can be repeated: a batch that failed is applied again by the next flush, or after a
+     * restart as the start of a larger batch, and counter changes already made are skipped by
+     * their sequence number.
+     */
+    private Map<String, UserWrites> apply(List<FavoriteWrite> batch) {
+        Map<String, FavoriteWrite> last = new LinkedHashMap<>();
+        Set<String> removed = new HashSet<>();
+        List<CounterChange> changes = new ArrayList<>(batch.size());
+        for (FavoriteWrite write : batch) {
+            last.put(write.key(), write);
+            if (write.type() == FavoriteWrite.Type.REMOVE) {
+                removed.add(write.key());
+            }
+            changes.add(new CounterChange(write.favorite().getUserId(), write.sequence(),
+                    write.type() == FavoriteWrite.Type.ADD ? 1L : -1L));
+        }
+
+        List<Favorite> additions = new ArrayList<>();
+        List<Favorite> removals = new ArrayList<>();
+        Map<String, UserWrites> byUser = new LinkedHashMap<>();
+        for (FavoriteWrite write : last.values()) {
+            UserWrites userWrites = byUser.computeIfAbsent(write.favorite().getUserId(), userId -> new UserWrites());
+            if (write.type() == FavoriteWrite.Type.ADD) {
+                additions.add(write.favorite());
+                if (removed.contains(write.key())) {
+                    removals.add(write.favorite());
+                }
+                userWrites.added.add(FavoriteMapper.toResponse(write.favorite()));
+            } else {
+                removals.add(write.favorite());
+                userWrites.removed.add(write.favorite().getProductId());
+            }
+        }
+
+        favoriteRepository.applyWrites(additions, removals);
+        favoriteCounterRepository.incrementOnce(changes);
+        return byUser;
+    }
+
+    private void patchCache(Map<String, UserWrites> byUser) {
+        try {
+            byUser.forEach((userId, writes) -> cacheService.applyFavoriteChanges(userId, writes.added, writes.removed));
+        } catch (RuntimeException e) {
+            logger.warn("Could not patch flushed favorite writes into the cache: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            try {
+                flushExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        log.close();
+        String token = lockToken;
+        if (token != null) {
+            lockToken = null;
+            jobLock.release(JOB_LOCK, token);
+        }
+    }
+
+    private static final class UserWrites {
+        final List<FavoriteResponse> added = new ArrayList<>();
+        final List<String> removed = new ArrayList<>();
+    }
+}
@@ -0,0 +1,459 @@
+package com.phoneaccessories.favorites.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Local append-only log of favorite writes that have not reached MongoDB yet.
+ *
+ * <p>Writes are appended to segment files named after their first sequence number. Each record
+ * is its length, a CRC32C of the payload and the payload. An append returns once the record is
+ * fsync'd; concurrent appenders share one fsync (group commit): while one of them syncs, the
+ * others wait, and the next sync covers everything appended meanwhile.
+ *
+ * <p>Flushed writes are committed by sequence number: the number is stored in a checkpoint file
+ * and segments holding only committed records are deleted. On startup the records after the
+ * checkpoint are read back as unflushed; a torn record at the end of a segment, left by a crash
+ * during its append, is truncated.
+ *
+ * <p>Locks are {@link ReentrantLock}s rather than monitors, so that appending virtual threads
+ * unmount while they wait for a sync.
+ */
+final class WriteBehindLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindLog.class);
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final long segmentBytes;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Guarded by appendLock
+    private final Deque<FavoriteWrite> unflushed = new ArrayDeque<>();
+    // Latest unflushed write per user and product
+    private final Map<String, Map<String, FavoriteWrite>> latest = new HashMap<>();
+    private final NavigableMap<Long, Path> segments = new TreeMap<>();
+    private FileChannel channel;
+    private long channelSize;
+    private long nextSequence = 1;
+    private long appendedSequence;
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition syncDone = syncLock.newCondition();
+    // Guarded by syncLock
+    private long syncedSequence;
+    private boolean syncing;
+
+    private volatile IOException failure;
+    private final boolean fresh;
+
+    WriteBehindLog(Path directory, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        recover(readCheckpoint());
+        this.fresh = nextSequence == 1;
+        openSegment(nextSequence);
+    }
+
+    /**
+     * Whether the log has never held a write, so that it numbers writes from 1: sequence numbers
+     * of a log that used the directory before are not continued if the directory was emptied.
+     */
+    boolean isFresh() {
+        return fresh;
+    }
+
+    /**
+     * Append a write and wait until it is durable.
+     *
+     * @param write the write
+     * @return the write with its sequence number
+     * @throws IOException if the write could not be made durable; after a failed fsync the log
+     *                     refuses further appends, since the state of the file is unknown
+     */
+    FavoriteWrite append(FavoriteWrite write) throws IOException {
+        FavoriteWrite sequenced;
+        appendLock.lock();
+        try {
+            checkHealthy();
+            sequenced = write.withSequence(nextSequence);
+            ByteBuffer record = encode(sequenced);
+            if (channelSize > 0 && channelSize + record.remaining() > segmentBytes) {
+                roll(sequenced.sequence());
+            }
+
+            long start = channelSize;
+            try {
+                while (record.hasRemaining()) {
+                    channelSize += channel.write(record);
+                }
+            } catch (IOException e) {
+                // Drop the partial record so that later records stay readable
+                channel.truncate(start);
+                channelSize = start;
+                throw e;
+            }
+
+            nextSequence++;
+            appendedSequence = sequenced.sequence();
+            unflushed.addLast(sequenced);
+            track(sequenced);
+        } finally {
+            appendLock.unlock();
+        }
+
+        sync(sequenced.sequence());
+        return sequenced;
+    }
+
+    /**
+     * The latest unflushed write of a favorite.
+     *
+     * @return the write, or null if every write of the favorite was committed
+     */
+    FavoriteWrite pending(String userId, String productId) {
+        appendLock.lock();
+        try {
+            Map<String, FavoriteWrite> writes = latest.get(userId);
+            return writes != null ? writes.get(productId) : null;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * The products of a user whose latest unflushed write adds them.
+     */
+    List<String> pendingAdds(String userId) {
+        appendLock.lock();
+        try {
+            Map<String, FavoriteWrite> writes = latest.getOrDefault(userId, Map.of());
+            List<String> productIds = new ArrayList<>();
+            writes.forEach((productId, write) -> {
+                if (write.type() == FavoriteWrite.Type.ADD) {
+                    productIds.add(productId);
+                }
+            });
+            return productIds;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * The oldest unflushed writes, in append order.
+     *
+     * @param max the maximum number of writes
+     */
+    List<FavoriteWrite> peek(int max) {
+        appendLock.lock();
+        try {
+            List<FavoriteWrite> writes = new ArrayList<>(Math.min(max, unflushed.size()));
+            Iterator<FavoriteWrite> iterator = unflushed.iterator();
+            while (writes.size() < max && iterator.hasNext()) {
+                writes.add(iterator.next());
+            }
+            return writes;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of unflushed writes
+     */
+    int backlog() {
+        appendLock.lock();
+        try {
+            return unflushed.size();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Mark the writes up to a sequence number as flushed, and delete the segments that hold
+     * nothing else.
+     *
+     * @param sequence the sequence number of the last flushed write
+     */
+    void commit(long sequence) throws IOException {
+        List<Path> obsolete = new ArrayList<>();
+        appendLock.lock();
+        try {
+            while (!unflushed.isEmpty() && unflushed.peekFirst().sequence() <= sequence) {
+                untrack(unflushed.pollFirst());
+            }
+
+            // A segment ends where the next one starts; the current one is never deleted
+            Iterator<Map.Entry<Long, Path>> iterator = segments.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, Path> segment = iterator.next();
+                Long next = segments.higherKey(segment.getKey());
+                if (next == null || next - 1 > sequence) {
+                    break;
+                }
+                obsolete.add(segment.getValue());
+                iterator.remove();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+
+        // The checkpoint is durable before the segments it covers are gone
+        writeCheckpoint(sequence);
+        for (Path segment : obsolete) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            if (channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Wait until a sequence number is durable, syncing the file if no other appender is.
+     */
+    private void sync(long sequence) throws IOException {
+        syncLock.lock();
+        try {
+            while (syncedSequence < sequence) {
+                checkHealthy();
+                if (syncing) {
+                    syncDone.await();
+                    continue;
+                }
+
+                syncing = true;
+                long target = 0;
+                IOException error = null;
+                syncLock.unlock();
+                try {
+                    FileChannel current;
+                    appendLock.lock();
+                    try {
+                        target = appendedSequence;
+                        current = channel;
+                    } finally {
+                        appendLock.unlock();
+                    }
+                    current.force(false);
+                } catch (ClosedChannelException e) {
+                    // Rolled over meanwhile, and synced before it was closed
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    if (error == null) {
+                        syncedSequence = Math.max(syncedSequence, target);
+                    } else {
+                        failure = error;
+                    }
+                    syncDone.signalAll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the write-behind log to sync");
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void checkHealthy() throws IOException {
+        IOException error = failure;
+        if (error != null) {
+            throw new IOException("Write-behind log failed to sync", error);
+        }
+    }
+
+    private void roll(long firstSequence) throws IOException {
+        channel.force(false);
+        channel.close();
+        openSegment(firstSequence);
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        Path path = directory.resolve(String.format("%020d%s", firstSequence, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        channelSize = 0;
+        segments.put(firstSequence, path);
+        syncDirectory();
+    }
+
+    private void track(FavoriteWrite write) {
+        latest.computeIfAbsent(write.favorite().getUserId(), userId -> new HashMap<>())
+                .put(write.favorite().getProductId(), write);
+    }
+
+    private void untrack(FavoriteWrite write) {
+        Map<String, FavoriteWrite> writes = latest.get(write.favorite().getUserId());
+        if (writes != null && writes.remove(write.favorite().getProductId(), write) && writes.isEmpty()) {
+            latest.remove(write.favorite().getUserId());
+        }
+    }
+
+    private void recover(long checkpoint) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+        }
+
+        long lastSequence = checkpoint;
+        for (Path segment : segments.values()) {
+            for (FavoriteWrite write : readSegment(segment)) {
+                lastSequence = Math.max(lastSequence, write.sequence());
+                if (write.sequence() > checkpoint) {
+                    unflushed.addLast(write);
+                    track(write);
+                }
+            }
+        }
+        nextSequence = lastSequence + 1;
+        appendedSequence = lastSequence;
+        syncedSequence = lastSequence;
+        if (!unflushed.isEmpty()) {
+            logger.info("Recovered {} unflushed favorite writes from {}", unflushed.size(), directory);
+        }
+    }
+
+    /**
+     * Read the valid records of a segment, truncating it after the last one.
+     */
+    private static List<FavoriteWrite> readSegment(Path segment) throws IOException {
+        List<FavoriteWrite> writes = new ArrayList<>();
+        long validBytes = 0;
+        try (InputStream file = Files.newInputStream(segment);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return writes;
+                }
+                int checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (checksum(payload) != checksum) {
+                    break;
+                }
+                writes.add(FavoriteWrite.readFrom(new DataInputStream(new ByteArrayInputStream(payload))));
+                validBytes += HEADER_BYTES + length;
+            }
+        } catch (EOFException e) {
+            // Torn record
+        }
+
+        logger.warn("Truncating torn write-behind record in {} at byte {}", segment.getFileName(), validBytes);
+        try (FileChannel truncated = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            truncated.truncate(validBytes);
+            truncated.force(true);
+        }
+        return writes;
+    }
+
+    private long readCheckpoint() throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(path, StandardCharsets.US_ASCII).trim());
+    }
+
+    private void writeCheckpoint(long sequence) throws IOException {
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            file.write(ByteBuffer.wrap(Long.toString(sequence).getBytes(StandardCharsets.US_ASCII)));
+            file.force(true);
+        }
+        Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+    }
+
+    /**
+     * Make created, renamed and deleted files durable. Not every platform can sync a directory.
+     */
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            logger.debug("Could not sync directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private static ByteBuffer encode(FavoriteWrite write) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        write.writeTo(new DataOutputStream(bytes));
+        byte[] payload = bytes.toByteArray();
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length);
+        record.putInt(checksum(payload));
+        record.put(payload);
+        return record.flip();
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
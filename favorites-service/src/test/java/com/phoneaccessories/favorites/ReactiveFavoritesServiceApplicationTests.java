@@ -0,0 +1,32 @@
+package com.phoneaccessories.favorites;
+
+import com.phoneaccessories.favorites.controller.FavoriteController;
+import com.phoneaccessories.favorites.controller.ReactiveFavoriteController;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.reactive.server.ReactiveWebServerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+@SpringBootTest
+@ActiveProfiles("reactive")
+class ReactiveFavoritesServiceApplicationTests {
+
+	@Autowired
+	private ApplicationContext context;
+
+	@Test
+	void contextLoadsReactiveStack() {
+		assertNotNull(context.getBean(ReactiveFavoriteController.class));
+		assertEquals(0, context.getBeanNamesForType(FavoriteController.class).length);
+		// Netty rather than Tomcat, which is on the classpath for the servlet stack
+		assertInstanceOf(NettyReactiveWebServerFactory.class, context.getBean(ReactiveWebServerFactory.class));
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.phoneaccessories.favorites.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrencyLimitFilterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ConcurrencyLimitFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new ConcurrencyLimitFilter(1, Duration.ZERO, new ObjectMapper().findAndRegisterModules(), meterRegistry);
+    }
+
+    @Test
+    void releasesPermitWhenRequestReturns() throws Exception {
+        assertEquals(200, handle(request("/favorites/user-1"), (req, res) -> { }).getStatus());
+        assertEquals(200, handle(request("/favorites/user-1"), (req, res) -> { }).getStatus());
+        assertEquals(0, activeRequests());
+    }
+
+    @Test
+    void exportHoldsPermitUntilResponseCompletes() throws Exception {
+        MockHttpServletRequest export = request("/favorites/products/export");
+        // As for a StreamingResponseBody, the chain returns once async processing has started
+        handle(export, (req, res) -> req.startAsync());
+        assertEquals(1, activeRequests());
+
+        MockHttpServletResponse rejected = handle(request("/favorites/user-1"), (req, res) -> { });
+        assertEquals(503, rejected.getStatus());
+
+        ((MockAsyncContext) export.getAsyncContext()).complete();
+        assertEquals(0, activeRequests());
+        assertEquals(200, handle(request("/favorites/user-1"), (req, res) -> { }).getStatus());
+    }
+
+    @Test
+    void releasesPermitOfAsyncRequestOnce() throws Exception {
+        MockHttpServletRequest export = request("/favorites/products/export");
+        handle(export, (req, res) -> req.startAsync());
+
+        MockAsyncContext asyncContext = (MockAsyncContext) export.getAsyncContext();
+        asyncContext.complete();
+        asyncContext.complete();
+
+        assertEquals(0, activeRequests());
+        // A second release would have let two requests in at once
+        handle(request("/favorites/products/export"), (req, res) -> req.startAsync());
+        assertEquals(503, handle(request("/favorites/user-1"), (req, res) -> { }).getStatus());
+    }
+
+    private MockHttpServletResponse handle(MockHttpServletRequest request, FilterChain chain) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setAsyncSupported(true);
+        return request;
+    }
+
+    private double activeRequests() {
+        return meterRegistry.get("favorites.requests.active").gauge().value();
+    }
+}
@@ -0,0 +1,112 @@
+package com.phoneaccessories.favorites.config;
+
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.result.DeleteResult;
+import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MongoIndexInitializerTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private IndexOperations favoriteIndexes;
+
+    @Mock
+    private IndexOperations counterIndexes;
+
+    @Mock
+    private MongoCollection<Document> collection;
+
+    @Mock
+    private AggregateIterable<Document> aggregation;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(mongoTemplate.indexOps(Favorite.class)).thenReturn(favoriteIndexes);
+        lenient().when(mongoTemplate.indexOps(FavoriteCounter.class)).thenReturn(counterIndexes);
+        lenient().when(mongoTemplate.getCollectionName(Favorite.class)).thenReturn("favorites");
+        lenient().when(mongoTemplate.getCollection("favorites")).thenReturn(collection);
+        lenient().when(favoriteIndexes.getIndexInfo()).thenReturn(List.of());
+        lenient().when(collection.aggregate(anyList())).thenReturn(aggregation);
+        lenient().when(aggregation.allowDiskUse(true)).thenReturn(aggregation);
+    }
+
+    @Test
+    void ensureIndexes_ByDefaultReportsDuplicatesAndSkipsUniqueIndex() {
+        when(aggregation.first()).thenReturn(new Document("duplicates", 3L));
+        MongoIndexInitializer initializer = new MongoIndexInitializer(mongoTemplate, mappingContext(), false);
+
+        initializer.ensureIndexes();
+
+        verify(collection, never()).deleteMany(any(Bson.class));
+        verify(favoriteIndexes, never()).ensureIndex(argThat(index -> named(index, MongoIndexInitializer.UNIQUE_INDEX)));
+        verify(favoriteIndexes).ensureIndex(argThat(index -> named(index, "product_id")));
+        Health health = initializer.health();
+        assertEquals(new Status(MongoIndexInitializer.DUPLICATES_STATUS), health.getStatus());
+        assertEquals(3L, health.getDetails().get("duplicateFavorites"));
+    }
+
+    @Test
+    void ensureIndexes_BuildsUniqueIndexWithoutDuplicates() {
+        when(aggregation.first()).thenReturn(null);
+        MongoIndexInitializer initializer = new MongoIndexInitializer(mongoTemplate, mappingContext(), false);
+
+        initializer.ensureIndexes();
+
+        verify(favoriteIndexes).ensureIndex(argThat(index -> named(index, MongoIndexInitializer.UNIQUE_INDEX)));
+        assertEquals(Status.UP, initializer.health().getStatus());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ensureIndexes_WithDedupeDeletesDuplicatesThenBuildsUniqueIndex() {
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        when(cursor.hasNext()).thenReturn(true, false);
+        when(cursor.next()).thenReturn(new Document("ids", List.of("older", "newer")));
+        when(aggregation.iterator()).thenReturn(cursor);
+        when(collection.deleteMany(any(Bson.class))).thenReturn(DeleteResult.acknowledged(1));
+        MongoIndexInitializer initializer = new MongoIndexInitializer(mongoTemplate, mappingContext(), true);
+
+        initializer.ensureIndexes();
+
+        verify(collection).deleteMany(any(Bson.class));
+        verify(favoriteIndexes).ensureIndex(argThat(index -> named(index, MongoIndexInitializer.UNIQUE_INDEX)));
+        assertEquals(Status.UP, initializer.health().getStatus());
+    }
+
+    private static MongoMappingContext mappingContext() {
+        // Java time types are simple values, as with the application's conversions
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+        return mappingContext;
+    }
+
+    private static boolean named(IndexDefinition index, String name) {
+        return index != null && name.equals(index.getIndexOptions().get("name"));
+    }
+}
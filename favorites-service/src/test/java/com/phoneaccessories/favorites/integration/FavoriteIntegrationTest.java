@@ -2,6 +2,10 @@ package com.phoneaccessories.favorites.integration;
 
 import com.phoneaccessories.favorites.FavoritesServiceApplication;
 import com.phoneaccessories.favorites.dto.AddFavoriteRequest;
+import com.phoneaccessories.favorites.dto.FavoriteBatchOperation;
+import com.phoneaccessories.favorites.dto.FavoriteBatchRequest;
+import com.phoneaccessories.favorites.dto.FavoriteBatchResponse;
+import com.phoneaccessories.favorites.dto.FavoriteBatchResult;
 import com.phoneaccessories.favorites.dto.FavoriteResponse;
 import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
 import com.phoneaccessories.favorites.model.Favorite;
@@ -23,6 +27,9 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 import org.testcontainers.utility.DockerImageName;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -131,6 +138,33 @@ class FavoriteIntegrationTest {
         assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
     }
 
+    @Test
+    void applyBatch_MixedOperations() {
+        favoriteRepository.save(new Favorite(USER_ID, "to-remove", PRODUCT_NAME, PRODUCT_PRICE, PRODUCT_IMAGE, CATEGORY));
+        favoriteRepository.save(new Favorite(USER_ID, "already-there", PRODUCT_NAME, PRODUCT_PRICE, PRODUCT_IMAGE, CATEGORY));
+        FavoriteBatchRequest request = new FavoriteBatchRequest(List.of(
+            new FavoriteBatchOperation(FavoriteBatchOperation.Action.ADD, PRODUCT_ID),
+            new FavoriteBatchOperation(FavoriteBatchOperation.Action.ADD, "already-there"),
+            new FavoriteBatchOperation(FavoriteBatchOperation.Action.REMOVE, "to-remove"),
+            new FavoriteBatchOperation(FavoriteBatchOperation.Action.REMOVE, "never-added")
+        ));
+
+        ResponseEntity<FavoriteBatchResponse> response = restTemplate.postForEntity(
+            baseUrl + "/" + USER_ID + "/batch",
+            request,
+            FavoriteBatchResponse.class
+        );
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(
+            List.of(FavoriteBatchResult.Status.ADDED, FavoriteBatchResult.Status.ALREADY_EXISTS,
+                FavoriteBatchResult.Status.REMOVED, FavoriteBatchResult.Status.NOT_FOUND),
+            response.getBody().getResults().stream().map(FavoriteBatchResult::getStatus).toList()
+        );
+        assertTrue(favoriteRepository.existsByUserIdAndProductId(USER_ID, PRODUCT_ID));
+        assertFalse(favoriteRepository.existsByUserIdAndProductId(USER_ID, "to-remove"));
+    }
+
     @Test
     void removeFavorite_Success() {
         // Add favorite to remove
@@ -215,6 +249,50 @@ class FavoriteIntegrationTest {
         assertTrue(response.getBody().getFavorites().isEmpty());
     }
 
+    @Test
+    void getUserFavorites_PagesNewestFirst() {
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        for (int i = 0; i < 5; i++) {
+            Favorite favorite = new Favorite(USER_ID, "product-" + i, PRODUCT_NAME, PRODUCT_PRICE, PRODUCT_IMAGE, CATEGORY);
+            // Two favorites share a creation date to exercise the _id tie-break
+            favorite.setCreatedAt(now.plusSeconds(Math.min(i, 3)));
+            favoriteRepository.save(favorite);
+        }
+
+        List<String> productIds = new ArrayList<>();
+        String cursor = null;
+        do {
+            String url = baseUrl + "/" + USER_ID + "?limit=2" + (cursor != null ? "&cursor=" + cursor : "");
+            ResponseEntity<UserFavoritesResponse> response = restTemplate.getForEntity(url, UserFavoritesResponse.class);
+            assertEquals(HttpStatus.OK, response.getStatusCode());
+            response.getBody().getFavorites().forEach(favorite -> productIds.add(favorite.getProductId()));
+            cursor = response.getBody().getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(List.of("product-4", "product-3", "product-2", "product-1", "product-0"), productIds);
+    }
+
+    @Test
+    void getUserFavorites_RejectsInvalidLimit() {
+        ResponseEntity<Map> response = restTemplate.getForEntity(baseUrl + "/" + USER_ID + "?limit=0", Map.class);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void addFavorite_ProductIdNamedLikeCacheMetadataIsCachedAsAProduct() {
+        AddFavoriteRequest request = new AddFavoriteRequest("m:loaded", PRODUCT_NAME, PRODUCT_PRICE, PRODUCT_IMAGE, CATEGORY);
+        restTemplate.getForEntity(baseUrl + "/" + USER_ID, UserFavoritesResponse.class);
+
+        ResponseEntity<FavoriteResponse> added = restTemplate.postForEntity(baseUrl + "/" + USER_ID, request, FavoriteResponse.class);
+        restTemplate.delete(baseUrl + "/" + USER_ID + "/m:loaded");
+        ResponseEntity<UserFavoritesResponse> response = restTemplate.getForEntity(baseUrl + "/" + USER_ID, UserFavoritesResponse.class);
+
+        assertEquals(HttpStatus.CREATED, added.getStatusCode());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(0, response.getBody().getTotalCount());
+    }
+
     @Test
     void isFavorite_True() {
         // Add favorite
@@ -0,0 +1,81 @@
+package com.phoneaccessories.favorites.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCacheCodecTest {
+
+    private final JsonCacheCodec jsonCodec = new JsonCacheCodec(new ObjectMapper().findAndRegisterModules());
+    private final BinaryCacheCodec codec = new BinaryCacheCodec(jsonCodec, 512);
+
+    @Test
+    void favoriteRoundTripsAndIsSmallerThanJson() {
+        FavoriteResponse favorite = favorite(1);
+
+        byte[] value = codec.encodeFavorite(favorite);
+
+        assertEquals(BinaryCacheCodec.VERSION, value[0]);
+        assertEquals(favorite.toString(), codec.decodeFavorite(value).toString());
+        assertTrue(value.length < jsonCodec.encodeFavorite(favorite).length / 2);
+    }
+
+    @Test
+    void nullFieldsRoundTrip() {
+        FavoriteResponse favorite = new FavoriteResponse();
+        favorite.setProductId("product-1");
+
+        assertEquals(favorite.toString(), codec.decodeFavorite(codec.encodeFavorite(favorite)).toString());
+    }
+
+    @Test
+    void largeListIsCompressed() {
+        List<FavoriteResponse> favorites = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            favorites.add(favorite(i));
+        }
+        UserFavoritesResponse page = new UserFavoritesResponse("user-1", favorites);
+        page.setNextCursor("next");
+
+        byte[] compressed = codec.encodeFavorites(page);
+        byte[] uncompressed = new BinaryCacheCodec(jsonCodec, 0).encodeFavorites(page);
+
+        assertEquals(BinaryCacheCodec.FLAG_COMPRESSED, compressed[1]);
+        assertEquals(0, uncompressed[1]);
+        assertTrue(compressed.length < uncompressed.length);
+        assertEquals(page.toString(), codec.decodeFavorites(compressed).toString());
+        assertEquals(page.toString(), codec.decodeFavorites(uncompressed).toString());
+    }
+
+    @Test
+    void decodesLegacyJson() {
+        UserFavoritesResponse page = new UserFavoritesResponse("user-1", List.of(favorite(1)));
+
+        assertEquals(page.toString(), codec.decodeFavorites(jsonCodec.encodeFavorites(page)).toString());
+    }
+
+    @Test
+    void rejectsUnknownVersionAndTruncatedValues() {
+        byte[] value = codec.encodeFavorite(favorite(1));
+        byte[] unknownVersion = value.clone();
+        unknownVersion[0] = 2;
+
+        assertThrows(IllegalArgumentException.class, () -> codec.decodeFavorite(unknownVersion));
+        assertThrows(IllegalArgumentException.class, () -> codec.decodeFavorite(Arrays.copyOf(value, value.length - 1)));
+        assertThrows(IllegalArgumentException.class, () -> codec.decodeFavorite(new byte[0]));
+    }
+
+    private static FavoriteResponse favorite(int i) {
+        return new FavoriteResponse("65a1f0c2e4b0a1b2c3d4e5f" + (i % 10), "user-1", "product-" + i,
+                "Silicone Case " + i, 19.99 + i, "https://cdn.example.com/images/product-" + i + ".jpg",
+                "cases", LocalDateTime.of(2024, 1, 1, 12, 0, 0, 123_456_789).plusMinutes(i));
+    }
+}
@@ -0,0 +1,28 @@
+package com.phoneaccessories.favorites.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheKeysTest {
+
+    private final CacheKeys cacheKeys = new CacheKeys("test");
+
+    @Test
+    void userKey_EmbedsGeneration() {
+        // Both stacks read and write these keys, and replicas of either drop them on invalidation
+        assertEquals("test:user:u1:g3:favorites", cacheKeys.userKey("u1", 3, "favorites"));
+        assertEquals("test:user:u1:g3:exists:p1", cacheKeys.userKey("u1", 3, "exists", "p1"));
+        assertEquals("test:user:u1:g3:", cacheKeys.userPrefix("u1", 3));
+        assertEquals("test:user:u1:generation", cacheKeys.generationKey("u1"));
+        assertEquals("test:cache:invalidation", cacheKeys.invalidationChannel());
+    }
+
+    @Test
+    void fields_KeepProductsApartFromMetadata() {
+        assertEquals("p:m:loaded", CacheKeys.productField(CacheKeys.LOADED_FIELD));
+        assertEquals("20:", CacheKeys.pageField(20, null));
+        assertEquals(1234L, CacheKeys.parseMillis(CacheKeys.metaValue(1234)));
+        assertEquals(0L, CacheKeys.parseMillis(null));
+    }
+}
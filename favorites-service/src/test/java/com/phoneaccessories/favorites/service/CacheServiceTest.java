@@ -6,16 +6,38 @@ import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisKeyCommands;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.serializer.RedisSerializer;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -28,22 +50,74 @@ class CacheServiceTest {
     @Mock
     private ValueOperations<String, String> valueOperations;
 
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
     private CacheService cacheService;
-    private ObjectMapper objectMapper;
+    private CacheCodec codec;
+    private SimpleMeterRegistry meterRegistry;
     private static final String USER_ID = "test-user-id";
+    private static final String FAVORITES_KEY = "test:user:" + USER_ID + ":g0:favorites";
+    private static final String BLOOM_KEY = "test:user:" + USER_ID + ":g0:bloom";
+    private static final String PAGES_KEY = "test:user:" + USER_ID + ":g0:pages";
+    private static final String COUNT_KEY = "test:user:" + USER_ID + ":g0:count";
+    private static final String WRITES_KEY = "test:user:" + USER_ID + ":g0:writes";
+    private static final CacheService.FavoritesLoad LOAD = new CacheService.FavoritesLoad(0, 0);
+
+    private final List<Object> published = new ArrayList<>();
+    private boolean pipelining;
 
     @BeforeEach
     void setUp() {
-        objectMapper = new ObjectMapper();
+        ObjectMapper objectMapper = new ObjectMapper();
         objectMapper.findAndRegisterModules(); // For LocalDateTime serialization
+        codec = new BinaryCacheCodec(new JsonCacheCodec(objectMapper), 512);
         
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        meterRegistry = new SimpleMeterRegistry();
+
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        lenient().when(valueOperations.get("test:user:" + USER_ID + ":generation")).thenReturn(null);
+        lenient().when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            pipelining = true;
+            try {
+                invocation.getArgument(0, SessionCallback.class).execute(redisTemplate);
+            } finally {
+                pipelining = false;
+            }
+            return List.of();
+        });
+        // Jedis refuses to publish in a pipeline
+        lenient().when(redisTemplate.execute(eq(CacheService.PUBLISH_SCRIPT), anyList(), any(Object[].class))).thenAnswer(invocation -> {
+            assertFalse(pipelining, "Published in a pipeline");
+            Object[] arguments = invocation.getArguments();
+            assertEquals(cacheService.getInvalidationChannel(), arguments[2]);
+            published.addAll(Arrays.asList(arguments).subList(3, arguments.length));
+            return (long) arguments.length - 3;
+        });
+        lenient().when(redisTemplate.execute(eq(FavoritesBloomFilter.ADD_SCRIPT), anyList(), any(Object[].class))).thenAnswer(invocation -> {
+            assertFalse(pipelining, "Script run in a pipeline");
+            return 1L;
+        });
+        // No writes since the load began: the built hash is renamed over the cached one
+        lenient().when(redisTemplate.execute(eq(CacheService.REPLACE_FAVORITES_SCRIPT), anyList(), any())).thenAnswer(invocation -> {
+            assertFalse(pipelining, "Script run in a pipeline");
+            List<String> keys = invocation.getArgument(1);
+            redisTemplate.rename(keys.get(0), keys.get(1));
+            return 1L;
+        });
         
         cacheService = new CacheService(
             redisTemplate,
-            objectMapper,
-            "test:",
-            300 // 5 minutes TTL
+            codec,
+            meterRegistry,
+            "test",
+            300, // 5 minutes TTL
+            1000,
+            60,
+            1.0,
+            false,
+            0
         );
     }
 
@@ -66,14 +140,65 @@ class CacheServiceTest {
         );
 
         // Cache the favorites
-        cacheService.cacheUserFavorites(USER_ID, favoritesResponse);
+        cacheService.cacheUserFavorites(USER_ID, LOAD, favoritesResponse, Duration.ofMillis(20));
 
-        // Verify that Redis operations were called
-        verify(valueOperations).set(
-            eq("test:user:" + USER_ID + ":favorites"),
-            any(String.class),
-            any()
+        // Verify that the favorites were written as one hash with the loaded marker, then renamed over the cached one
+        verify(hashOperations).putAll(
+            startsWith(FAVORITES_KEY + ":build:"),
+            argThat(fields -> fields.containsKey("p:test-product") && fields.containsKey(CacheKeys.LOADED_FIELD))
         );
+        verify(redisTemplate).expire(startsWith(FAVORITES_KEY + ":build:"), eq(Duration.ofSeconds(300)));
+        verify(redisTemplate).rename(startsWith(FAVORITES_KEY + ":build:"), eq(FAVORITES_KEY));
+        verify(redisTemplate).execute(eq(CacheService.REPLACE_FAVORITES_SCRIPT),
+            argThat(keys -> keys.size() == 3 && keys.get(1).equals(FAVORITES_KEY) && keys.get(2).equals(WRITES_KEY)), eq("0"));
+    }
+
+    @Test
+    void cacheUserFavorites_SkippedWhenWrittenWhileLoading() {
+        when(valueOperations.get(WRITES_KEY)).thenReturn("2");
+        CacheService.FavoritesLoad load = cacheService.startFavoritesLoad(USER_ID);
+        when(redisTemplate.execute(eq(CacheService.REPLACE_FAVORITES_SCRIPT), anyList(), any())).thenReturn(0L);
+
+        cacheService.cacheUserFavorites(USER_ID, load, new UserFavoritesResponse(USER_ID, List.of(testFavorite())), Duration.ofMillis(20));
+
+        assertEquals(new CacheService.FavoritesLoad(0, 2), load);
+        verify(redisTemplate).execute(eq(CacheService.REPLACE_FAVORITES_SCRIPT), anyList(), eq("2"));
+        verify(redisTemplate, never()).rename(anyString(), anyString());
+        // Not served from the local tier either
+        assertTrue(cacheService.getCachedUserFavorites(USER_ID).isEmpty());
+        verify(hashOperations).entries(FAVORITES_KEY);
+    }
+
+    @Test
+    void cacheUserFavorites_WritesUnderTheGenerationTheLoadBeganIn() {
+        cacheService.cacheUserFavorites(USER_ID, new CacheService.FavoritesLoad(3, 0),
+            new UserFavoritesResponse(USER_ID, List.of(testFavorite())), Duration.ofMillis(20));
+
+        verify(redisTemplate).rename(startsWith("test:user:" + USER_ID + ":g3:favorites:build:"), eq("test:user:" + USER_ID + ":g3:favorites"));
+    }
+
+    @Test
+    void cacheUserFavorites_ReloadDropsFavoritesRemovedSince() {
+        // Redis hashes as maps, for the commands the reload sends
+        Map<String, Map<Object, Object>> hashes = new HashMap<>();
+        doAnswer(invocation -> {
+            hashes.computeIfAbsent(invocation.getArgument(0), key -> new HashMap<>()).putAll(invocation.getArgument(1));
+            return null;
+        }).when(hashOperations).putAll(anyString(), anyMap());
+        doAnswer(invocation -> {
+            hashes.put(invocation.getArgument(1), hashes.remove(invocation.getArgument(0)));
+            return null;
+        }).when(redisTemplate).rename(anyString(), anyString());
+        FavoriteResponse kept = testFavorite();
+        FavoriteResponse removed = testFavorite();
+        removed.setProductId("removed-product");
+
+        cacheService.cacheUserFavorites(USER_ID, LOAD, new UserFavoritesResponse(USER_ID, List.of(kept, removed)), Duration.ofMillis(20));
+        cacheService.cacheUserFavorites(USER_ID, LOAD, new UserFavoritesResponse(USER_ID, List.of(kept)), Duration.ofMillis(20));
+
+        assertEquals(Set.of(FAVORITES_KEY), hashes.keySet());
+        assertEquals(Set.of("p:test-product", CacheKeys.LOADED_FIELD, CacheKeys.DELTA_FIELD, CacheKeys.EXPIRES_FIELD),
+            hashes.get(FAVORITES_KEY).keySet());
     }
 
     @Test
@@ -89,17 +214,15 @@ class CacheServiceTest {
             "Test Category",
             LocalDateTime.now()
         );
-        UserFavoritesResponse expectedResponse = new UserFavoritesResponse(
-            USER_ID,
-            Arrays.asList(favorite)
-        );
 
         // Mock Redis response
-        when(valueOperations.get(anyString()))
-            .thenReturn(objectMapper.writeValueAsString(expectedResponse));
+        when(hashOperations.entries(FAVORITES_KEY)).thenReturn(Map.of(
+            CacheKeys.LOADED_FIELD, ascii("1"),
+            "p:test-product", codec.encodeFavorite(favorite)
+        ));
 
         // Get from cache
-        Optional<UserFavoritesResponse> result = cacheService.getUserFavorites(USER_ID);
+        Optional<UserFavoritesResponse> result = cacheService.getCachedUserFavorites(USER_ID);
 
         // Verify
         assertTrue(result.isPresent());
@@ -108,13 +231,108 @@ class CacheServiceTest {
         assertEquals("test-product", result.get().getFavorites().get(0).getProductId());
     }
 
+    @Test
+    void cacheUserFavorites_StoresRecomputeTimeAndExpiry() {
+        long before = System.currentTimeMillis();
+
+        cacheService.cacheUserFavorites(USER_ID, LOAD, new UserFavoritesResponse(USER_ID, List.of()), Duration.ofMillis(20));
+
+        verify(hashOperations).putAll(startsWith(FAVORITES_KEY + ":build:"), argThat(fields ->
+            Arrays.equals(ascii("20"), (byte[]) fields.get(CacheKeys.DELTA_FIELD))
+                && Long.parseLong(new String((byte[]) fields.get(CacheKeys.EXPIRES_FIELD), StandardCharsets.US_ASCII)) >= before + 300_000));
+    }
+
+    @Test
+    void getUserFavorites_CacheHitSkipsMetadataFields() throws Exception {
+        when(hashOperations.entries(FAVORITES_KEY)).thenReturn(Map.of(
+            CacheKeys.LOADED_FIELD, ascii("1"),
+            CacheKeys.DELTA_FIELD, ascii("20"),
+            CacheKeys.EXPIRES_FIELD, ascii(String.valueOf(System.currentTimeMillis() + 300_000)),
+            "p:test-product", codec.encodeFavorite(testFavorite())
+        ));
+
+        Optional<UserFavoritesResponse> result = cacheService.getCachedUserFavorites(USER_ID);
+
+        assertTrue(result.isPresent());
+        assertEquals(1, result.get().getTotalCount());
+    }
+
+    @Test
+    void getUserFavorites_ReadsJsonWrittenByOlderReplicas() {
+        when(hashOperations.entries(FAVORITES_KEY)).thenReturn(Map.of(
+            CacheKeys.LOADED_FIELD, ascii("1"),
+            "p:test-product", ascii("{\"productId\":\"test-product\",\"productPrice\":9.5}")
+        ));
+
+        Optional<UserFavoritesResponse> result = cacheService.getCachedUserFavorites(USER_ID);
+
+        assertTrue(result.isPresent());
+        assertEquals(9.5, result.get().getFavorites().get(0).getProductPrice());
+    }
+
+    @Test
+    void getUserFavorites_UnknownFormatVersionIsAMiss() {
+        when(hashOperations.entries(FAVORITES_KEY)).thenReturn(Map.of(
+            CacheKeys.LOADED_FIELD, ascii("1"),
+            "p:test-product", new byte[] {99, 0}
+        ));
+
+        assertTrue(cacheService.getCachedUserFavorites(USER_ID).isEmpty());
+    }
+
+    @Test
+    void cacheFavoriteExists_AsyncFillWritesRedisOnFillThread() {
+        CacheService asyncCacheService = new CacheService(redisTemplate, codec, meterRegistry, "test", 300, 1000, 60, 1.0, true, 10);
+        try {
+            asyncCacheService.cacheFavoriteExists(USER_ID, "test-product", true);
+
+            assertEquals(Optional.of(true), asyncCacheService.getCachedFavoriteExists(USER_ID, "test-product"));
+            verify(valueOperations, timeout(1000)).set("test:user:" + USER_ID + ":g0:exists:test-product", "true", Duration.ofSeconds(300));
+        } finally {
+            asyncCacheService.shutdown();
+        }
+    }
+
+    @Test
+    void shouldRefreshEarly_FalseWhileFarFromExpiry() {
+        cacheService.cacheUserFavorites(USER_ID, LOAD, new UserFavoritesResponse(USER_ID, List.of()), Duration.ofMillis(20));
+
+        assertFalse(cacheService.shouldRefreshEarly(USER_ID));
+    }
+
+    @Test
+    void shouldRefreshEarly_TrueWhenRecomputeTimeDwarfsRemainingTtl() {
+        // -delta * ln(random) stays above the 300s TTL unless random > 0.99999
+        cacheService.cacheUserFavorites(USER_ID, LOAD, new UserFavoritesResponse(USER_ID, List.of()), Duration.ofDays(365));
+
+        assertTrue(cacheService.shouldRefreshEarly(USER_ID));
+        assertEquals(1, meterRegistry.get("favorites.cache.early.refreshes").counter().count());
+    }
+
+    @Test
+    void shouldRefreshEarly_TrueOnceExpired() throws Exception {
+        when(hashOperations.entries(FAVORITES_KEY)).thenReturn(Map.of(
+            CacheKeys.LOADED_FIELD, ascii("1"),
+            CacheKeys.DELTA_FIELD, ascii("20"),
+            CacheKeys.EXPIRES_FIELD, ascii(String.valueOf(System.currentTimeMillis() - 1))
+        ));
+        cacheService.getCachedUserFavorites(USER_ID);
+
+        assertTrue(cacheService.shouldRefreshEarly(USER_ID));
+    }
+
+    @Test
+    void shouldRefreshEarly_FalseWithoutCachedEntry() {
+        assertFalse(cacheService.shouldRefreshEarly(USER_ID));
+    }
+
     @Test
     void getUserFavorites_CacheMiss() {
         // Mock Redis response
-        when(valueOperations.get(anyString())).thenReturn(null);
+        when(hashOperations.entries(FAVORITES_KEY)).thenReturn(Map.of());
 
         // Get from cache
-        Optional<UserFavoritesResponse> result = cacheService.getUserFavorites(USER_ID);
+        Optional<UserFavoritesResponse> result = cacheService.getCachedUserFavorites(USER_ID);
 
         // Verify
         assertFalse(result.isPresent());
@@ -125,20 +343,474 @@ class CacheServiceTest {
         // Invalidate cache
         cacheService.invalidateUserFavorites(USER_ID);
 
-        // Verify that Redis delete operation was called
-        verify(redisTemplate).delete("test:user:" + USER_ID + ":favorites");
+        // Verify that Redis delete operation was called, and loads in flight are not cached
+        verify(redisTemplate).delete(FAVORITES_KEY);
+        verify(valueOperations).increment(WRITES_KEY);
     }
 
     @Test
-    void cacheUserFavorites_HandlesJsonProcessingException() throws Exception {
+    void cacheUserFavorites_HandlesEncodingFailure() throws Exception {
         // Prepare test data that will cause serialization to fail
-        UserFavoritesResponse response = mock(UserFavoritesResponse.class);
-        when(response.getUserId()).thenThrow(new RuntimeException("Test exception"));
+        FavoriteResponse favorite = mock(FavoriteResponse.class);
+        when(favorite.getProductName()).thenThrow(new IllegalArgumentException("Test exception"));
+        UserFavoritesResponse response = new UserFavoritesResponse(USER_ID, Arrays.asList(favorite));
 
         // Cache the favorites
-        cacheService.cacheUserFavorites(USER_ID, response);
+        cacheService.cacheUserFavorites(USER_ID, LOAD, response, Duration.ofMillis(20));
 
         // Verify that no Redis operations were performed
-        verify(valueOperations, never()).set(any(), any(), any());
+        verify(redisTemplate, never()).executePipelined(any(SessionCallback.class));
+    }
+
+    @Test
+    void getCachedUserFavorites_SecondReadServedFromLocalTier() throws Exception {
+        when(hashOperations.entries(FAVORITES_KEY)).thenReturn(Map.of(
+            CacheKeys.LOADED_FIELD, ascii("1"),
+            "p:test-product", codec.encodeFavorite(testFavorite())
+        ));
+
+        cacheService.getCachedUserFavorites(USER_ID);
+        Optional<UserFavoritesResponse> result = cacheService.getCachedUserFavorites(USER_ID);
+
+        assertTrue(result.isPresent());
+        verify(hashOperations, times(1)).entries(FAVORITES_KEY);
+        assertEquals(1.0, lookups(CacheMetrics.FAVORITES, "local", "hit"));
+        assertEquals(1.0, lookups(CacheMetrics.FAVORITES, "local", "miss"));
+        assertEquals(1.0, lookups(CacheMetrics.FAVORITES, "redis", "hit"));
+    }
+
+    @Test
+    void invalidateUserFavorites_BroadcastsToReplicas() {
+        cacheService.cacheUserFavorites(USER_ID, LOAD, new UserFavoritesResponse(USER_ID, Arrays.asList(testFavorite())), Duration.ofMillis(20));
+
+        cacheService.invalidateUserFavorites(USER_ID);
+
+        verify(redisTemplate).convertAndSend(cacheService.getInvalidationChannel(), FAVORITES_KEY);
+        assertFalse(cacheService.getCachedUserFavorites(USER_ID).isPresent());
+    }
+
+    @Test
+    void onMessage_EvictsLocalEntry() {
+        cacheService.cacheFavoriteExists(USER_ID, "test-product", true);
+        assertEquals(Optional.of(true), cacheService.getCachedFavoriteExists(USER_ID, "test-product"));
+
+        String key = "test:user:" + USER_ID + ":g0:exists:test-product";
+        cacheService.onMessage(new DefaultMessage(
+                cacheService.getInvalidationChannel().getBytes(StandardCharsets.UTF_8),
+                key.getBytes(StandardCharsets.UTF_8)), null);
+
+        assertFalse(cacheService.getCachedFavoriteExists(USER_ID, "test-product").isPresent());
+        verify(valueOperations).get(key);
+    }
+
+    @Test
+    void evictAllUserCache_BumpsGenerationWithoutScanningKeys() {
+        when(valueOperations.increment("test:user:" + USER_ID + ":generation")).thenReturn(1L);
+
+        cacheService.cacheUserFavorites(USER_ID, LOAD, new UserFavoritesResponse(USER_ID, Arrays.asList(testFavorite())), Duration.ofMillis(20));
+        when(valueOperations.get("test:user:" + USER_ID + ":generation")).thenReturn("1");
+        cacheService.evictAllUserCache(USER_ID);
+
+        assertFalse(cacheService.getCachedUserFavorites(USER_ID).isPresent());
+        verify(hashOperations).entries("test:user:" + USER_ID + ":g1:favorites");
+        verify(redisTemplate, never()).keys(anyString());
+    }
+
+    @Test
+    void applyFavoriteChanges_DropsCountInsteadOfAdjustingIt() {
+        cacheService.applyFavoriteChanges(USER_ID, Arrays.asList(testFavorite()), List.of());
+
+        verify(redisTemplate).delete("test:user:" + USER_ID + ":g0:count");
+        verify(valueOperations, never()).increment(anyString(), anyLong());
+        verify(hashOperations).put(eq(FAVORITES_KEY), eq("p:test-product"), any());
+    }
+
+    @Test
+    void evictUserFavoritesCaches_ReadsGenerationsInOneRoundTrip() {
+        when(valueOperations.multiGet(List.of("test:user:user-1:generation", "test:user:user-2:generation")))
+            .thenReturn(Arrays.asList("3", null));
+
+        cacheService.evictUserFavoritesCaches(List.of("user-1", "user-2"));
+
+        assertInvalidated("test:user:user-1:g3:favorites");
+        assertInvalidated("test:user:user-2:g0:favorites");
+        verify(valueOperations, never()).get(anyString());
+    }
+
+    @Test
+    void getCachedUserFavorites_PartialHashIsAMiss() throws Exception {
+        // Only a write-through entry, no loaded marker: the list is incomplete
+        when(hashOperations.entries(FAVORITES_KEY)).thenReturn(Map.of(
+            "p:test-product", codec.encodeFavorite(testFavorite())
+        ));
+
+        assertFalse(cacheService.getCachedUserFavorites(USER_ID).isPresent());
+    }
+
+    @Test
+    void addCachedFavorite_WritesThroughWithoutDroppingList() {
+        cacheService.addCachedFavorite(USER_ID, testFavorite());
+
+        verify(hashOperations).put(eq(FAVORITES_KEY), eq("p:test-product"), any(byte[].class));
+        assertExistsUpdated("test-product", "true");
+        verify(redisTemplate, never()).delete(FAVORITES_KEY);
+        assertInvalidated(FAVORITES_KEY);
+    }
+
+    @Test
+    void addCachedFavorite_KeepsExpiryOfCachedListAndExistsKeys() {
+        cacheService.addCachedFavorite(USER_ID, testFavorite());
+
+        verify(hashOperations, never()).put(eq(FAVORITES_KEY), eq(CacheKeys.EXPIRES_FIELD), any());
+        verify(redisTemplate, never()).expire(eq(FAVORITES_KEY), any(Duration.class));
+        verify(valueOperations, never()).set(anyString(), anyString(), any(Duration.class));
+    }
+
+    @Test
+    void addCachedFavorite_DropsHashCreatedByWrite() {
+        // TTL replying -1: the hash has no expiry, so it was not loaded but created by HSET
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            invocation.getArgument(0, SessionCallback.class).execute(redisTemplate);
+            return List.of(8L, -1L);
+        });
+
+        cacheService.addCachedFavorite(USER_ID, testFavorite());
+
+        verify(redisTemplate).getExpire(FAVORITES_KEY);
+        verify(redisTemplate).delete(FAVORITES_KEY);
+    }
+
+    @Test
+    void addCachedFavorite_KeepsLoadedHash() {
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            invocation.getArgument(0, SessionCallback.class).execute(redisTemplate);
+            return List.of(8L, 120L);
+        });
+
+        cacheService.addCachedFavorite(USER_ID, testFavorite());
+
+        verify(redisTemplate, never()).delete(FAVORITES_KEY);
+    }
+
+    @Test
+    void addCachedFavorite_AddsToBloomFilterWithoutExtendingIt() {
+        cacheService.addCachedFavorite(USER_ID, testFavorite());
+
+        List<String> arguments = FavoritesBloomFilter.addArguments(List.of("test-product"));
+        verify(redisTemplate).execute(eq(FavoritesBloomFilter.ADD_SCRIPT), eq(List.of(BLOOM_KEY)),
+            eq(arguments.get(0)), eq(arguments.get(1)));
+        verify(redisTemplate, never()).expire(eq(BLOOM_KEY), any(Duration.class));
+        assertInvalidated(BLOOM_KEY);
+    }
+
+    @Test
+    void addCachedFavorite_CountsWriteBeforeAddingToBloomFilter() {
+        cacheService.addCachedFavorite(USER_ID, testFavorite());
+
+        // A filter rebuild that read the counter before the add must not be cached after it
+        InOrder order = inOrder(valueOperations, redisTemplate);
+        order.verify(valueOperations).increment(WRITES_KEY);
+        order.verify(redisTemplate).execute(eq(FavoritesBloomFilter.ADD_SCRIPT), eq(List.of(BLOOM_KEY)), any(Object[].class));
+        verify(valueOperations, times(1)).increment(WRITES_KEY);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getFavoritesFilter_ReadsBitmapOnceThenServesLocalMirror() {
+        when(redisTemplate.execute(any(RedisCallback.class)))
+            .thenReturn(FavoritesBloomFilter.of(List.of("test-product")).toBytes());
+
+        FavoritesBloomFilter first = cacheService.getFavoritesFilter(USER_ID).orElseThrow();
+        FavoritesBloomFilter second = cacheService.getFavoritesFilter(USER_ID).orElseThrow();
+
+        assertTrue(first.mightContain("test-product"));
+        assertSame(first, second);
+        verify(redisTemplate, times(1)).execute(any(RedisCallback.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void getFavoritesFilter_IgnoresBitmapWithoutHeader() {
+        // A bitmap created by SETBIT alone, without a complete build
+        byte[] partial = new byte[FavoritesBloomFilter.of(List.of()).sizeInBytes()];
+        partial[FavoritesBloomFilter.HEADER_BYTES] = (byte) 0xff;
+        when(redisTemplate.execute(any(RedisCallback.class))).thenReturn(partial);
+
+        assertTrue(cacheService.getFavoritesFilter(USER_ID).isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void cacheFavoritesFilter_SetsFilterUnlessWrittenSinceBuildBegan() {
+        FavoritesBloomFilter filter = FavoritesBloomFilter.of(List.of("test-product"));
+
+        cacheService.cacheFavoritesFilter(USER_ID, new CacheService.FavoritesLoad(0, 3), filter);
+
+        verify(redisTemplate).execute(eq(CacheService.CACHE_FILTER_SCRIPT), any(RedisSerializer.class), any(RedisSerializer.class),
+            eq(List.of(BLOOM_KEY, WRITES_KEY)), aryEq("3".getBytes(StandardCharsets.US_ASCII)),
+            aryEq(filter.toBytes()), aryEq("300".getBytes(StandardCharsets.US_ASCII)));
+        verify(redisTemplate).convertAndSend(cacheService.getInvalidationChannel(), BLOOM_KEY);
+    }
+
+    @Test
+    void addCachedFavorite_DropsCachedPages() {
+        cacheService.addCachedFavorite(USER_ID, testFavorite());
+
+        verify(redisTemplate).delete(PAGES_KEY);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void cacheFavoritesPage_StoresPageInUserPagesHashUnlessWrittenSinceLoadBegan() {
+        UserFavoritesResponse page = new UserFavoritesResponse(USER_ID, List.of(testFavorite()));
+        page.setNextCursor("next");
+
+        cacheService.cacheFavoritesPage(USER_ID, new CacheService.FavoritesLoad(0, 3), 20, "cursor", page);
+
+        // The script sets the TTL only on a new hash, so fills do not extend older pages
+        verify(redisTemplate).execute(eq(CacheService.CACHE_PAGE_SCRIPT), any(RedisSerializer.class), any(RedisSerializer.class),
+            eq(List.of(PAGES_KEY, WRITES_KEY)), aryEq("3".getBytes(StandardCharsets.US_ASCII)),
+            aryEq("20:cursor".getBytes(StandardCharsets.UTF_8)),
+            argThat(value -> "next".equals(codec.decodeFavorites((byte[]) value).getNextCursor())),
+            aryEq("300".getBytes(StandardCharsets.US_ASCII)));
+        verify(hashOperations, never()).put(eq(PAGES_KEY), any(), any());
+        verify(redisTemplate, never()).expire(eq(PAGES_KEY), any(Duration.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void cacheFavoritesPage_SkippedWhenWrittenBetweenLoadAndFill() {
+        long[] writes = {0};
+        when(valueOperations.get(WRITES_KEY)).thenAnswer(invocation -> Long.toString(writes[0]));
+        when(valueOperations.increment(WRITES_KEY)).thenAnswer(invocation -> ++writes[0]);
+        List<Long> results = new ArrayList<>();
+        // Compares the counter read when the load began with the current one, as the script does
+        when(redisTemplate.execute(eq(CacheService.CACHE_PAGE_SCRIPT), any(RedisSerializer.class), any(RedisSerializer.class),
+            anyList(), any(Object[].class))).thenAnswer(invocation -> {
+                long result = Long.toString(writes[0]).equals(new String(invocation.getArgument(4, byte[].class), StandardCharsets.US_ASCII)) ? 1L : 0L;
+                results.add(result);
+                return result;
+            });
+
+        CacheService.FavoritesLoad load = cacheService.startFavoritesLoad(USER_ID);
+        cacheService.addCachedFavorite(USER_ID, testFavorite());
+        cacheService.cacheFavoritesPage(USER_ID, load, 20, null, new UserFavoritesResponse(USER_ID, List.of()));
+
+        verify(redisTemplate).delete(PAGES_KEY);
+        assertEquals(List.of(0L), results);
+
+        // A load that began after the write caches its page
+        cacheService.cacheFavoritesPage(USER_ID, cacheService.startFavoritesLoad(USER_ID), 20, null,
+            new UserFavoritesResponse(USER_ID, List.of(testFavorite())));
+        assertEquals(List.of(0L, 1L), results);
+    }
+
+    @Test
+    void getCachedFavoritesPage_Hit() throws Exception {
+        UserFavoritesResponse page = new UserFavoritesResponse(USER_ID, List.of(testFavorite()));
+        page.setNextCursor("next");
+        when(hashOperations.get(PAGES_KEY, "20:")).thenReturn(codec.encodeFavorites(page));
+
+        Optional<UserFavoritesResponse> result = cacheService.getCachedFavoritesPage(USER_ID, 20, null);
+
+        assertTrue(result.isPresent());
+        assertEquals(1, result.get().getTotalCount());
+        assertEquals("next", result.get().getNextCursor());
+    }
+
+    @Test
+    void getCachedFavoritesPage_Miss() {
+        assertTrue(cacheService.getCachedFavoritesPage(USER_ID, 20, null).isEmpty());
+        assertEquals(1, lookups(CacheMetrics.PAGES, CacheService.TIER_REDIS, "miss"));
+    }
+
+    @Test
+    void updateCachedFavorites_WritesBatchInOnePipelineThenBroadcasts() {
+        cacheService.updateCachedFavorites(USER_ID, List.of(testFavorite()), List.of("removed-a", "removed-b"));
+
+        verify(redisTemplate, times(1)).executePipelined(any(SessionCallback.class));
+        verify(hashOperations).put(eq(FAVORITES_KEY), eq("p:test-product"), any(byte[].class));
+        verify(hashOperations).delete(FAVORITES_KEY, "p:removed-a", "p:removed-b");
+        verify(valueOperations).increment(WRITES_KEY);
+        verify(redisTemplate).expire(WRITES_KEY, Duration.ofSeconds(300));
+        assertExistsUpdated("removed-a", "false");
+        assertExistsUpdated("removed-b", "false");
+        verify(redisTemplate).delete(PAGES_KEY);
+        assertInvalidated(FAVORITES_KEY);
+        assertInvalidated(BLOOM_KEY);
+        assertInvalidated("test:user:" + USER_ID + ":g0:exists:removed-a");
+    }
+
+    @Test
+    void updateCachedFavorites_IncrementsCachedCount() {
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            invocation.getArgument(0, SessionCallback.class).execute(redisTemplate);
+            return List.of(8L);
+        });
+
+        cacheService.updateCachedFavorites(USER_ID, List.of(testFavorite()), List.of());
+
+        verify(valueOperations).increment(COUNT_KEY, 1);
+        verify(redisTemplate, never()).delete(COUNT_KEY);
+        assertInvalidated(COUNT_KEY);
+    }
+
+    @Test
+    void updateCachedFavorites_DropsCountCreatedByIncrement() {
+        // INCRBY replying with the delta itself means there was no cached count
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            invocation.getArgument(0, SessionCallback.class).execute(redisTemplate);
+            return List.of(-1L);
+        });
+
+        cacheService.updateCachedFavorites(USER_ID, List.of(), List.of("test-product"));
+
+        verify(valueOperations).increment(COUNT_KEY, -1);
+        verify(redisTemplate).delete(COUNT_KEY);
+    }
+
+    @Test
+    void cacheFavoriteCount_KeepsCountMaintainedByIncrements() {
+        when(valueOperations.setIfAbsent(COUNT_KEY, "5", Duration.ofSeconds(300))).thenReturn(false);
+        when(valueOperations.get(COUNT_KEY)).thenReturn("6");
+
+        cacheService.cacheFavoriteCount(USER_ID, 5);
+
+        assertEquals(Optional.of(6L), cacheService.getCachedFavoriteCount(USER_ID));
+    }
+
+    @Test
+    void getCachedFavoriteCount_SecondReadServedFromLocalTier() {
+        when(valueOperations.get(COUNT_KEY)).thenReturn("6");
+
+        cacheService.getCachedFavoriteCount(USER_ID);
+        assertEquals(Optional.of(6L), cacheService.getCachedFavoriteCount(USER_ID));
+
+        verify(valueOperations, times(1)).get(COUNT_KEY);
+    }
+
+    @Test
+    void removeCachedFavorite_DeletesHashField() {
+        cacheService.removeCachedFavorite(USER_ID, "test-product");
+
+        verify(hashOperations).delete(FAVORITES_KEY, "p:test-product");
+        assertExistsUpdated("test-product", "false");
+        verify(redisTemplate, never()).getExpire(FAVORITES_KEY);
+        verify(redisTemplate, never()).delete(FAVORITES_KEY);
+    }
+
+    @Test
+    void removeCachedFavorite_ProductNamedLikeMetadataKeepsLoadedMarker() {
+        cacheService.removeCachedFavorite(USER_ID, CacheKeys.LOADED_FIELD);
+
+        verify(hashOperations).delete(FAVORITES_KEY, "p:" + CacheKeys.LOADED_FIELD);
+        verify(hashOperations, never()).delete(FAVORITES_KEY, CacheKeys.LOADED_FIELD);
+    }
+
+    @Test
+    void getCachedFavoritesExist_AnswersFromLoadedHashInOneRoundTrip() {
+        // HMGET [m:loaded, p:a, p:b] and MGET [exists:a, exists:b] replies
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(List.of(
+            Arrays.asList(ascii("1"), codec.encodeFavorite(testFavorite()), null),
+            Arrays.asList(null, null)
+        ));
+
+        Map<String, Boolean> result = cacheService.getCachedFavoritesExist(USER_ID, List.of("a", "b"));
+
+        assertEquals(Map.of("a", true, "b", false), result);
+        verify(redisTemplate, times(1)).executePipelined(any(SessionCallback.class));
+    }
+
+    @Test
+    void getCachedFavoritesExist_FallsBackToExistsKeysWhenHashNotLoaded() {
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenReturn(List.of(
+            Arrays.asList(null, null, null),
+            Arrays.asList("true", null)
+        ));
+
+        Map<String, Boolean> result = cacheService.getCachedFavoritesExist(USER_ID, List.of("a", "b"));
+
+        assertEquals(Map.of("a", true), result);
+    }
+
+    @Test
+    void getCachedFavoriteExists_RedisFailureCountedAsError() {
+        when(valueOperations.get("test:user:" + USER_ID + ":g0:exists:test-product"))
+            .thenThrow(new RedisConnectionFailureException("down"));
+
+        assertThrows(RedisConnectionFailureException.class,
+            () -> cacheService.getCachedFavoriteExists(USER_ID, "test-product"));
+
+        assertEquals(1, lookups(CacheMetrics.EXISTS, CacheService.TIER_REDIS, "error"));
+        assertEquals(0, lookups(CacheMetrics.EXISTS, CacheService.TIER_REDIS, "miss"));
+        assertEquals(1, meterRegistry.get("favorites.cache.redis")
+            .tag("operation", "getCachedFavoriteExists")
+            .tag("exception", "RedisConnectionFailureException")
+            .timer()
+            .count());
+    }
+
+    @Test
+    void cacheUserFavorites_RecordsPayloadSizeAndRedisTime() {
+        FavoriteResponse favorite = testFavorite();
+
+        cacheService.cacheUserFavorites(USER_ID, LOAD, new UserFavoritesResponse(USER_ID, List.of(favorite)), Duration.ofMillis(20));
+
+        DistributionSummary payload = meterRegistry.get("favorites.cache.payload").tag("cache", CacheMetrics.FAVORITES).summary();
+        assertEquals(1, payload.count());
+        assertEquals(codec.encodeFavorite(favorite).length, payload.totalAmount());
+        assertEquals(1, meterRegistry.get("favorites.cache.redis")
+            .tag("operation", "cacheUserFavorites")
+            .tag("exception", "none")
+            .timer()
+            .count());
+    }
+
+    private FavoriteResponse testFavorite() {
+        return new FavoriteResponse(
+            "test-id",
+            USER_ID,
+            "test-product",
+            "Test Product",
+            99.99,
+            "http://example.com/image.jpg",
+            "Test Category",
+            LocalDateTime.now()
+        );
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void assertInvalidated(String key) {
+        assertTrue(published.contains(key), key + " was not invalidated");
+    }
+
+    /**
+     * Replay the connection callbacks against a mock, to check that an exists key was only
+     * updated if present and kept its TTL.
+     */
+    @SuppressWarnings("unchecked")
+    private void assertExistsUpdated(String productId, String value) {
+        ArgumentCaptor<RedisCallback<?>> callbacks = ArgumentCaptor.forClass(RedisCallback.class);
+        verify(redisTemplate, atLeastOnce()).execute(callbacks.capture());
+        RedisConnection connection = mock(RedisConnection.class);
+        RedisStringCommands stringCommands = mock(RedisStringCommands.class);
+        when(connection.stringCommands()).thenReturn(stringCommands);
+        callbacks.getAllValues().forEach(callback -> callback.doInRedis(connection));
+
+        verify(stringCommands).set(aryEq(("test:user:" + USER_ID + ":g0:exists:" + productId).getBytes(StandardCharsets.UTF_8)),
+            aryEq(value.getBytes(StandardCharsets.UTF_8)), argThat(Expiration::isKeepTtl),
+            eq(RedisStringCommands.SetOption.SET_IF_PRESENT));
+    }
+
+    private double lookups(String cache, String tier, String result) {
+        return meterRegistry.get("favorites.cache.requests")
+            .tag("cache", cache)
+            .tag("tier", tier)
+            .tag("result", result)
+            .counter()
+            .count();
     }
 }
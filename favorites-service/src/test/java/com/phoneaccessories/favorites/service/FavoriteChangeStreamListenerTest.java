@@ -0,0 +1,133 @@
+package com.phoneaccessories.favorites.service;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.phoneaccessories.favorites.dto.FavoriteResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FavoriteChangeStreamListenerTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private CacheService cacheService;
+
+    @Mock
+    private RedisLeaseLock jobLock;
+
+    private FavoriteChangeStreamListener listener;
+
+    @BeforeEach
+    void setUp() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        lenient().when(mongoTemplate.getConverter()).thenReturn(converter);
+        listener = listener(true);
+    }
+
+    private FavoriteChangeStreamListener listener(boolean preImages) {
+        return new FavoriteChangeStreamListener(mongoTemplate, cacheService, jobLock, new SimpleMeterRegistry(),
+                "test", preImages, 500, 30_000);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void apply_GroupsChangesPerUserInStreamOrder() {
+        listener.apply(List.of(
+                change("insert", null, favorite("user-1", "product-1")),
+                change("insert", null, favorite("user-1", "product-2")),
+                change("delete", favorite("user-1", "product-2"), null),
+                change("delete", favorite("user-2", "product-3"), null)
+        ));
+
+        ArgumentCaptor<List<FavoriteResponse>> upserted = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Collection<String>> removed = ArgumentCaptor.forClass(Collection.class);
+        verify(cacheService).applyFavoriteChanges(eq("user-1"), upserted.capture(), removed.capture());
+        assertEquals(List.of("product-1"), upserted.getValue().stream().map(FavoriteResponse::getProductId).toList());
+        assertEquals(Set.of("product-2"), Set.copyOf(removed.getValue()));
+        verify(cacheService).applyFavoriteChanges("user-2", List.of(), Set.of("product-3"));
+    }
+
+    @Test
+    void apply_UpdateCarriesCurrentProductDetails() {
+        Document updated = favorite("user-1", "product-1").append("product_price", 5.0);
+
+        listener.apply(List.of(change("update", favorite("user-1", "product-1"), updated)));
+
+        verify(cacheService).applyFavoriteChanges(eq("user-1"),
+                argThat(upserted -> upserted.size() == 1 && upserted.get(0).getProductPrice() == 5.0),
+                eq(Set.of()));
+    }
+
+    @Test
+    void apply_DeleteWithoutPreImageIsLeftToTtl() {
+        listener.apply(List.of(change("delete", null, null)));
+
+        verify(cacheService, never()).applyFavoriteChanges(any(), anyList(), anyCollection());
+    }
+
+    @Test
+    void apply_UpdateWithoutPreImageEvictsTheUser() {
+        listener.apply(List.of(change("update", null, favorite("user-1", "product-1"))));
+
+        verify(cacheService).evictAllUserCache("user-1");
+        verify(cacheService, never()).applyFavoriteChanges(any(), anyList(), anyCollection());
+    }
+
+    @Test
+    void apply_WithoutPreImagesInsertsEvictTheUser() {
+        listener = listener(false);
+
+        listener.apply(List.of(
+                change("insert", null, favorite("user-1", "product-1")),
+                change("insert", null, favorite("user-1", "product-2"))
+        ));
+
+        verify(cacheService).evictAllUserCache("user-1");
+        verify(cacheService, never()).applyFavoriteChanges(any(), anyList(), anyCollection());
+    }
+
+    private static Document favorite(String userId, String productId) {
+        return new Document("_id", userId + "-" + productId)
+                .append("user_id", userId)
+                .append("product_id", productId)
+                .append("product_name", "Product")
+                .append("product_price", 10.0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ChangeStreamDocument<Document> change(String operation, Document before, Document after) {
+        ChangeStreamDocument<Document> change = mock(ChangeStreamDocument.class);
+        lenient().when(change.getOperationTypeString()).thenReturn(operation);
+        lenient().when(change.getFullDocumentBeforeChange()).thenReturn(before);
+        lenient().when(change.getFullDocument()).thenReturn(after);
+        return change;
+    }
+}
@@ -0,0 +1,106 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import com.phoneaccessories.favorites.repository.FavoriteCounterRepository;
+import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FavoriteCounterReconcilerTest {
+
+    @Mock
+    private FavoriteRepository favoriteRepository;
+
+    @Mock
+    private FavoriteCounterRepository favoriteCounterRepository;
+
+    @Mock
+    private CacheService cacheService;
+
+    @Mock
+    private RedisLeaseLock jobLock;
+
+    private FavoriteCounterReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        reconciler = new FavoriteCounterReconciler(favoriteRepository, favoriteCounterRepository, cacheService, jobLock,
+                600_000, 7_200_000);
+    }
+
+    @Test
+    void reconcile_RecountsTouchedCountersAndReplacesDriftedOnes() {
+        when(jobLock.tryAcquire(any(), eq(Duration.ofMinutes(10)))).thenReturn(Optional.of("token"));
+        when(jobLock.renew(any(), eq("token"), any())).thenReturn(true);
+        when(favoriteCounterRepository.findUpdatedSince(any())).thenReturn(List.of(
+                new FavoriteCounter("user-1", 3), new FavoriteCounter("user-2", 5)));
+        when(favoriteRepository.countByUserId("user-1")).thenReturn(4L);
+        when(favoriteRepository.countByUserId("user-2")).thenReturn(5L);
+        when(favoriteCounterRepository.replaceCount("user-1", 3, 4)).thenReturn(true);
+
+        assertEquals(1, reconciler.reconcile());
+
+        verify(favoriteCounterRepository, never()).replaceCount(eq("user-2"), anyLong(), anyLong());
+        verify(favoriteCounterRepository, never()).save(any());
+        verify(cacheService).evictFavoriteCount("user-1");
+        verify(jobLock).release(any(), eq("token"));
+    }
+
+    @Test
+    void reconcile_OnlyChecksCountersTouchedWithinTheWindow() {
+        when(jobLock.tryAcquire(any(), any())).thenReturn(Optional.of("token"));
+        LocalDateTime before = LocalDateTime.now().minusHours(2);
+
+        reconciler.reconcile();
+
+        verify(favoriteCounterRepository).findUpdatedSince(argThat(since ->
+                !since.isBefore(before) && since.isBefore(LocalDateTime.now().minusMinutes(119))));
+    }
+
+    @Test
+    void reconcile_LeavesCountersThatMovedMeanwhile() {
+        when(jobLock.tryAcquire(any(), any())).thenReturn(Optional.of("token"));
+        when(jobLock.renew(any(), eq("token"), any())).thenReturn(true);
+        when(favoriteCounterRepository.findUpdatedSince(any())).thenReturn(List.of(new FavoriteCounter("user-1", 3)));
+        when(favoriteRepository.countByUserId("user-1")).thenReturn(4L);
+        when(favoriteCounterRepository.replaceCount("user-1", 3, 4)).thenReturn(false);
+
+        assertEquals(0, reconciler.reconcile());
+
+        verify(cacheService, never()).evictFavoriteCount(any());
+    }
+
+    @Test
+    void reconcile_WritesNothingOnceTheLockWasLost() {
+        when(jobLock.tryAcquire(any(), any())).thenReturn(Optional.of("token"));
+        when(jobLock.renew(any(), eq("token"), any())).thenReturn(false);
+        when(favoriteCounterRepository.findUpdatedSince(any())).thenReturn(List.of(new FavoriteCounter("user-1", 3)));
+        when(favoriteRepository.countByUserId("user-1")).thenReturn(4L);
+
+        assertEquals(0, reconciler.reconcile());
+
+        verify(favoriteCounterRepository, never()).replaceCount(any(), anyLong(), anyLong());
+    }
+
+    @Test
+    void reconcile_SkipsWhileAnotherNodeHoldsTheLock() {
+        when(jobLock.tryAcquire(any(), any())).thenReturn(Optional.empty());
+
+        assertEquals(0, reconciler.reconcile());
+
+        verify(favoriteCounterRepository, never()).findUpdatedSince(any());
+    }
+}
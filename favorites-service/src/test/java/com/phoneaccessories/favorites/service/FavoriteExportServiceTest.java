@@ -0,0 +1,76 @@
+package com.phoneaccessories.favorites.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.phoneaccessories.favorites.dto.FavoriteExportFilter;
+import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FavoriteExportServiceTest {
+
+    @Mock
+    private FavoriteRepository favoriteRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private FavoriteExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new FavoriteExportService(favoriteRepository, objectMapper, 2);
+    }
+
+    @Test
+    void export_WritesOneJsonObjectPerLineAndClosesCursor() throws Exception {
+        AtomicBoolean closed = new AtomicBoolean();
+        Stream<Favorite> favorites = IntStream.range(0, 5)
+                .mapToObj(i -> new Favorite("user-1", "product-" + i, "Case", 9.99, null, "Cases"))
+                .onClose(() -> closed.set(true));
+        when(favoriteRepository.streamForExport(any(FavoriteExportFilter.class), eq(2))).thenReturn(favorites);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = exportService.export(new FavoriteExportFilter("user-1", null, null, null), out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n", -1);
+        assertEquals(5, count);
+        assertEquals(6, lines.length);
+        assertEquals("", lines[5]);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertEquals("product-0", first.get("productId").asText());
+        assertEquals("user-1", first.get("userId").asText());
+        assertTrue(closed.get());
+    }
+
+    @Test
+    void export_EmptyResultWritesNothing() throws Exception {
+        when(favoriteRepository.streamForExport(any(FavoriteExportFilter.class), eq(2))).thenReturn(Stream.empty());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(0, exportService.export(new FavoriteExportFilter(null, "Cases", null, null), out));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    void filter_RejectsEmptyDateRange() {
+        LocalDateTime now = LocalDateTime.now();
+        assertThrows(IllegalArgumentException.class, () -> new FavoriteExportFilter(null, null, now, now));
+    }
+}
@@ -0,0 +1,267 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.ProductFavoriteCount;
+import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.ZSetOperations.TypedTuple;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FavoriteLeaderboardTest {
+
+    private static final String PRODUCTS_KEY = "test:leaderboard:products";
+    private static final String CASES_KEY = "test:leaderboard:category:Cases";
+    private static final String PRODUCT_CATEGORIES_KEY = "test:leaderboard:product-categories";
+    private static final String CATEGORIES_KEY = "test:leaderboard:categories";
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @Mock
+    private SetOperations<String, String> setOperations;
+
+    @Mock
+    private FavoriteRepository favoriteRepository;
+
+    @Mock
+    private RedisLeaseLock jobLock;
+
+    private FavoriteLeaderboard leaderboard;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        lenient().when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        lenient().when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        lenient().when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            invocation.getArgument(0, SessionCallback.class).execute(redisTemplate);
+            return List.of();
+        });
+
+        leaderboard = new FavoriteLeaderboard(redisTemplate, favoriteRepository, jobLock, Runnable::run, "test", true, 3, 600_000);
+    }
+
+    @Test
+    void recordChanges_CountsAddsAndDiscountsRemovalsInTheirCategory() {
+        Favorite added = new Favorite("user-1", "product-1", "Case", 9.99, null, "Cases");
+        when(hashOperations.multiGet(PRODUCT_CATEGORIES_KEY, List.of("product-2", "product-3")))
+            .thenReturn(Arrays.asList(bytes("Cases"), null));
+
+        leaderboard.recordChanges(List.of(added), List.of("product-2", "product-3"));
+
+        verify(zSetOperations).incrementScore(PRODUCTS_KEY, "product-1", 1);
+        verify(zSetOperations).incrementScore(CASES_KEY, "product-1", 1);
+        verify(hashOperations).put(eq(PRODUCT_CATEGORIES_KEY), eq("product-1"), argThat(value -> Arrays.equals((byte[]) value, bytes("Cases"))));
+        verify(setOperations).add(CATEGORIES_KEY, "Cases");
+        verify(zSetOperations).incrementScore(PRODUCTS_KEY, "product-2", -1);
+        verify(zSetOperations).incrementScore(CASES_KEY, "product-2", -1);
+        verify(zSetOperations).incrementScore(PRODUCTS_KEY, "product-3", -1);
+        verify(zSetOperations, never()).incrementScore(CASES_KEY, "product-3", -1);
+        verify(zSetOperations).removeRangeByScore(PRODUCTS_KEY, Double.NEGATIVE_INFINITY, 0);
+        verify(zSetOperations).removeRangeByScore(CASES_KEY, Double.NEGATIVE_INFINITY, 0);
+        // All of it in one pipeline
+        verify(redisTemplate, times(1)).executePipelined(any(SessionCallback.class));
+    }
+
+    @Test
+    void recordChanges_AddsOnlySkipCategoryLookup() {
+        leaderboard.recordChanges(List.of(new Favorite("user-1", "product-1")), List.of());
+
+        verify(zSetOperations).incrementScore(PRODUCTS_KEY, "product-1", 1);
+        verify(hashOperations, never()).multiGet(any(), any());
+        verify(zSetOperations, never()).removeRangeByScore(any(), anyDouble(), anyDouble());
+    }
+
+    @Test
+    void recordChanges_LogsRedisFailure() {
+        when(redisTemplate.executePipelined(any(SessionCallback.class)))
+            .thenThrow(new RedisConnectionFailureException("down"));
+
+        assertDoesNotThrow(() -> leaderboard.recordChanges(List.of(new Favorite("user-1", "product-1")), List.of()));
+    }
+
+    @Test
+    void recordChanges_DisabledDoesNothing() {
+        leaderboard = new FavoriteLeaderboard(redisTemplate, favoriteRepository, jobLock, Runnable::run, "test", false, 3, 600_000);
+
+        leaderboard.recordChanges(List.of(new Favorite("user-1", "product-1")), List.of("product-2"));
+
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void top_ReadsCategorySetMostFavoritedFirst() {
+        Set<TypedTuple<String>> entries = new LinkedHashSet<>(List.of(
+            new DefaultTypedTuple<>("product-1", 7.0),
+            new DefaultTypedTuple<>("product-2", 3.0)));
+        when(zSetOperations.reverseRangeWithScores(CASES_KEY, 0, 1)).thenReturn(entries);
+
+        List<ProductFavoriteCount> top = leaderboard.top("Cases", 2);
+
+        assertEquals(2, top.size());
+        assertEquals("product-1", top.get(0).getProductId());
+        assertEquals(7, top.get(0).getCount());
+        assertEquals("Cases", top.get(0).getCategory());
+        assertEquals("product-2", top.get(1).getProductId());
+    }
+
+    @Test
+    void counts_ReadsDistinctProductsWithOneScoreLookup() {
+        when(zSetOperations.score(PRODUCTS_KEY, "product-1", "product-2", "product-3"))
+            .thenReturn(Arrays.asList(4.0, null, -1.0));
+
+        Map<String, Long> counts = leaderboard.counts(List.of("product-1", "product-2", "product-1", "product-3"));
+
+        assertEquals(List.of("product-1", "product-2", "product-3"), List.copyOf(counts.keySet()));
+        assertEquals(4L, counts.get("product-1"));
+        assertEquals(0L, counts.get("product-2"));
+        // Decrements that ran ahead of a rebuild never show as negative counts
+        assertEquals(0L, counts.get("product-3"));
+    }
+
+    @Test
+    void counts_MissingSetCountsInMongo() {
+        when(zSetOperations.score(PRODUCTS_KEY, "product-1", "product-2")).thenReturn(Arrays.asList(null, null));
+        when(redisTemplate.hasKey(PRODUCTS_KEY)).thenReturn(false);
+        when(favoriteRepository.countByProductIdIn(List.of("product-1", "product-2")))
+            .thenReturn(List.of(new ProductFavoriteCount("product-2", null, 5)));
+
+        Map<String, Long> counts = leaderboard.counts(List.of("product-1", "product-2"));
+
+        assertEquals(Map.of("product-1", 0L, "product-2", 5L), counts);
+    }
+
+    @Test
+    void counts_DisabledCountsInMongo() {
+        leaderboard = new FavoriteLeaderboard(redisTemplate, favoriteRepository, jobLock, Runnable::run, "test", false, 3, 600_000);
+        when(favoriteRepository.countByProductIdIn(List.of("product-1")))
+            .thenReturn(List.of(new ProductFavoriteCount("product-1", null, 2)));
+
+        assertEquals(Map.of("product-1", 2L), leaderboard.counts(List.of("product-1")));
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void counts_NoProductsSkipsRedis() {
+        assertEquals(Map.of(), leaderboard.counts(List.of()));
+
+        verifyNoInteractions(zSetOperations);
+    }
+
+    @Test
+    void partitionBounds_SplitsIdRangeIntoEqualTimeSpans() {
+        stubIdRange(1_000, 1_299);
+
+        List<String> bounds = leaderboard.partitionBounds();
+
+        assertEquals(4, bounds.size());
+        assertNull(bounds.get(0));
+        assertEquals(1_100, new ObjectId(bounds.get(1)).getTimestamp());
+        assertEquals(1_200, new ObjectId(bounds.get(2)).getTimestamp());
+        assertNull(bounds.get(3));
+    }
+
+    @Test
+    void partitionBounds_EmptyCollectionIsOnePartition() {
+        when(favoriteRepository.findFirstByOrderByIdAsc()).thenReturn(Optional.empty());
+        when(favoriteRepository.findFirstByOrderByIdDesc()).thenReturn(Optional.empty());
+
+        assertEquals(Arrays.asList(null, null), leaderboard.partitionBounds());
+    }
+
+    @Test
+    void rebuild_MergesPartitionCountsAndSwapsSetsIn() {
+        when(jobLock.tryAcquire(any(), any())).thenReturn(Optional.of("token"));
+        when(jobLock.renew(any(), eq("token"), any())).thenReturn(true);
+        stubIdRange(1_000, 1_299);
+        // The same product shows up in two partitions
+        when(favoriteRepository.countByProduct(any(), any())).thenReturn(
+            List.of(new ProductFavoriteCount("product-1", "Cases", 2)),
+            List.of(new ProductFavoriteCount("product-1", "Cases", 3), new ProductFavoriteCount("product-2", null, 1)),
+            List.of());
+        when(setOperations.members(CATEGORIES_KEY)).thenReturn(Set.of("Cases", "Chargers"));
+
+        assertEquals(2, leaderboard.rebuild());
+
+        verify(favoriteRepository, times(3)).countByProduct(any(), any());
+        List<Set<TypedTuple<String>>> written = new ArrayList<>();
+        verify(zSetOperations).add(eq(PRODUCTS_KEY + ":rebuild:token"), argThat((Set<TypedTuple<String>> entries) -> written.add(entries)));
+        assertTrue(written.get(0).contains(new DefaultTypedTuple<>("product-1", 5.0)));
+        assertTrue(written.get(0).contains(new DefaultTypedTuple<>("product-2", 1.0)));
+        verify(zSetOperations).add(eq(CASES_KEY + ":rebuild:token"), eq(Set.of(new DefaultTypedTuple<>("product-1", 5.0))));
+        verify(redisTemplate).rename(PRODUCTS_KEY + ":rebuild:token", PRODUCTS_KEY);
+        verify(redisTemplate).rename(CASES_KEY + ":rebuild:token", CASES_KEY);
+        verify(redisTemplate).rename(PRODUCT_CATEGORIES_KEY + ":rebuild:token", PRODUCT_CATEGORIES_KEY);
+        verify(redisTemplate).rename(CATEGORIES_KEY + ":rebuild:token", CATEGORIES_KEY);
+        // A category without favorites any more loses its set
+        verify(redisTemplate).delete("test:leaderboard:category:Chargers");
+        verify(jobLock).release(any(), eq("token"));
+    }
+
+    @Test
+    void rebuild_SkipsWhileAnotherNodeRebuilds() {
+        when(jobLock.tryAcquire(any(), any())).thenReturn(Optional.empty());
+
+        assertEquals(0, leaderboard.rebuild());
+
+        verifyNoInteractions(favoriteRepository, redisTemplate);
+    }
+
+    @Test
+    void rebuild_LeavesTheSetsAloneOnceTheLockWasLost() {
+        when(jobLock.tryAcquire(any(), any())).thenReturn(Optional.of("token"));
+        when(jobLock.renew(any(), eq("token"), any())).thenReturn(false);
+        stubIdRange(1_000, 1_299);
+        when(favoriteRepository.countByProduct(any(), any())).thenReturn(List.of(new ProductFavoriteCount("product-1", "Cases", 2)));
+
+        assertEquals(0, leaderboard.rebuild());
+
+        verifyNoInteractions(redisTemplate);
+        verify(jobLock).release(any(), eq("token"));
+    }
+
+    private void stubIdRange(long firstSecond, long lastSecond) {
+        Favorite first = new Favorite("user-1", "product-1");
+        first.setId(new ObjectId(new Date(firstSecond * 1000)).toHexString());
+        Favorite last = new Favorite("user-2", "product-2");
+        last.setId(new ObjectId(new Date(lastSecond * 1000)).toHexString());
+        when(favoriteRepository.findFirstByOrderByIdAsc()).thenReturn(Optional.of(first));
+        when(favoriteRepository.findFirstByOrderByIdDesc()).thenReturn(Optional.of(last));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,26 +1,46 @@
 package com.phoneaccessories.favorites.service;
 
 import com.phoneaccessories.favorites.dto.AddFavoriteRequest;
+import com.phoneaccessories.favorites.dto.FavoriteBatchOperation;
+import com.phoneaccessories.favorites.dto.FavoriteBatchResponse;
+import com.phoneaccessories.favorites.dto.FavoriteBatchResult;
 import com.phoneaccessories.favorites.dto.FavoriteResponse;
 import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
 import com.phoneaccessories.favorites.exception.DuplicateFavoriteException;
 import com.phoneaccessories.favorites.exception.FavoriteNotFoundException;
 import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import com.phoneaccessories.favorites.repository.FavoriteCounterRepository;
 import com.phoneaccessories.favorites.repository.FavoriteRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -30,10 +50,24 @@ class FavoriteServiceTest {
     @Mock
     private FavoriteRepository favoriteRepository;
 
+    @Mock
+    private FavoriteCounterRepository favoriteCounterRepository;
+
     @Mock
     private CacheService cacheService;
 
-    @InjectMocks
+    @Mock
+    private FavoriteLeaderboard leaderboard;
+
+    @Mock
+    private TrendingFavorites trending;
+
+    @Mock
+    private RedisLeaseLock leaseLock;
+
+    @Mock
+    private Executor refreshExecutor;
+
     private FavoriteService favoriteService;
 
     private Favorite testFavorite;
@@ -47,6 +81,9 @@ class FavoriteServiceTest {
 
     @BeforeEach
     void setUp() {
+        favoriteService = new FavoriteService(favoriteRepository, favoriteCounterRepository, cacheService, leaderboard, trending, leaseLock,
+                refreshExecutor, 8, new StaticListableBeanFactory().getBeanProvider(WriteBehindFavoriteWriter.class));
+
         // Setup test favorite
         testFavorite = new Favorite(USER_ID, PRODUCT_ID, PRODUCT_NAME, PRODUCT_PRICE, PRODUCT_IMAGE, CATEGORY);
         testFavorite.setId("test-favorite-id");
@@ -63,55 +100,122 @@ class FavoriteServiceTest {
 
     @Test
     void addFavorite_Success() {
-        when(favoriteRepository.existsByUserIdAndProductId(USER_ID, PRODUCT_ID)).thenReturn(false);
-        when(favoriteRepository.save(any(Favorite.class))).thenReturn(testFavorite);
+        when(favoriteRepository.insertIfAbsent(any(Favorite.class))).thenAnswer(invocation -> {
+            invocation.getArgument(0, Favorite.class).setId("test-favorite-id");
+            return true;
+        });
 
         FavoriteResponse response = favoriteService.addFavorite(USER_ID, testRequest);
 
         assertNotNull(response);
+        assertEquals("test-favorite-id", response.getFavoriteId());
         assertEquals(PRODUCT_ID, response.getProductId());
         assertEquals(USER_ID, response.getUserId());
         assertEquals(PRODUCT_NAME, response.getProductName());
         assertEquals(PRODUCT_PRICE, response.getProductPrice());
         assertEquals(PRODUCT_IMAGE, response.getProductImageUrl());
         assertEquals(CATEGORY, response.getCategory());
-        verify(cacheService).invalidateUserFavorites(USER_ID);
+        verify(cacheService).addCachedFavorite(eq(USER_ID), any(FavoriteResponse.class));
+        verify(cacheService, never()).invalidateUserFavorites(any());
+        verify(favoriteCounterRepository).increment(USER_ID, 1);
+        verify(leaderboard).recordChanges(
+            argThat(added -> added.size() == 1 && added.iterator().next().getCategory().equals(CATEGORY)), eq(List.of()));
+        verify(trending).record(PRODUCT_ID);
     }
 
     @Test
     void addFavorite_DuplicateProduct() {
-        when(favoriteRepository.existsByUserIdAndProductId(USER_ID, PRODUCT_ID)).thenReturn(true);
+        when(favoriteRepository.insertIfAbsent(any(Favorite.class))).thenReturn(false);
 
         assertThrows(DuplicateFavoriteException.class, () -> 
             favoriteService.addFavorite(USER_ID, testRequest)
         );
 
+        verify(favoriteRepository, never()).existsByUserIdAndProductId(any(), any());
         verify(favoriteRepository, never()).save(any());
-        verify(cacheService, never()).invalidateUserFavorites(any());
+        verify(favoriteCounterRepository, never()).increment(any(), anyLong());
+        verify(cacheService, never()).addCachedFavorite(any(), any());
+        verifyNoInteractions(leaderboard, trending);
+    }
+
+    @Test
+    void applyBatch_ReportsOutcomePerOperation() {
+        FavoriteBatchOperation addNew = new FavoriteBatchOperation(FavoriteBatchOperation.Action.ADD, "new-product");
+        FavoriteBatchOperation addExisting = new FavoriteBatchOperation(FavoriteBatchOperation.Action.ADD, "existing-product");
+        FavoriteBatchOperation removeExisting = new FavoriteBatchOperation(FavoriteBatchOperation.Action.REMOVE, PRODUCT_ID);
+        FavoriteBatchOperation removeMissing = new FavoriteBatchOperation(FavoriteBatchOperation.Action.REMOVE, "missing-product");
+        when(favoriteRepository.findProductIdsByUserIdAndProductIdIn(USER_ID, List.of(PRODUCT_ID, "missing-product")))
+            .thenReturn(List.of(testFavorite));
+        when(favoriteRepository.bulkWrite(eq(USER_ID), anyList(), eq(List.of(PRODUCT_ID, "missing-product")))).thenAnswer(invocation -> {
+            List<Favorite> additions = invocation.getArgument(1);
+            assertEquals(2, additions.size());
+            additions.get(0).setId("new-id");
+            return 1L;
+        });
+
+        FavoriteBatchResponse response = favoriteService.applyBatch(USER_ID, List.of(addNew, removeExisting, addExisting, removeMissing));
+
+        List<FavoriteBatchResult> results = response.getResults();
+        assertEquals(4, results.size());
+        assertEquals(FavoriteBatchResult.Status.ADDED, results.get(0).getStatus());
+        assertEquals("new-id", results.get(0).getFavorite().getFavoriteId());
+        assertEquals(FavoriteBatchResult.Status.REMOVED, results.get(1).getStatus());
+        assertEquals(FavoriteBatchResult.Status.ALREADY_EXISTS, results.get(2).getStatus());
+        assertEquals(FavoriteBatchResult.Status.NOT_FOUND, results.get(3).getStatus());
+        verify(cacheService).updateCachedFavorites(eq(USER_ID),
+            argThat(added -> added.size() == 1 && added.get(0).getProductId().equals("new-product")),
+            eq(List.of(PRODUCT_ID)));
+        // One added and one removed leave the counter unchanged
+        verify(favoriteCounterRepository, never()).increment(any(), anyLong());
+        verify(leaderboard).recordChanges(
+            argThat(added -> added.size() == 1 && added.iterator().next().getProductId().equals("new-product")),
+            eq(List.of(PRODUCT_ID)));
+        verify(trending).record("new-product");
+        verifyNoMoreInteractions(trending);
+    }
+
+    @Test
+    void applyBatch_AddsOnlySkipExistenceQuery() {
+        when(favoriteRepository.bulkWrite(eq(USER_ID), anyList(), eq(List.of()))).thenReturn(0L);
+
+        favoriteService.applyBatch(USER_ID, List.of(new FavoriteBatchOperation(FavoriteBatchOperation.Action.ADD, PRODUCT_ID)));
+
+        verify(favoriteRepository, never()).findProductIdsByUserIdAndProductIdIn(any(), any());
+    }
+
+    @Test
+    void applyBatch_RejectsRepeatedProduct() {
+        List<FavoriteBatchOperation> operations = List.of(
+            new FavoriteBatchOperation(FavoriteBatchOperation.Action.ADD, PRODUCT_ID),
+            new FavoriteBatchOperation(FavoriteBatchOperation.Action.REMOVE, PRODUCT_ID)
+        );
+
+        assertThrows(IllegalArgumentException.class, () -> favoriteService.applyBatch(USER_ID, operations));
+        verify(favoriteRepository, never()).bulkWrite(any(), any(), any());
     }
 
     @Test
     void removeFavorite_Success() {
-        when(favoriteRepository.findByUserIdAndProductId(USER_ID, PRODUCT_ID))
-            .thenReturn(Optional.of(testFavorite));
+        when(favoriteRepository.deleteByUserIdAndProductId(USER_ID, PRODUCT_ID)).thenReturn(1L);
 
         favoriteService.removeFavorite(USER_ID, PRODUCT_ID);
 
-        verify(favoriteRepository).delete(testFavorite);
-        verify(cacheService).invalidateUserFavorites(USER_ID);
+        verify(favoriteCounterRepository).increment(USER_ID, -1);
+        verify(cacheService).removeCachedFavorite(USER_ID, PRODUCT_ID);
+        verify(cacheService, never()).invalidateUserFavorites(any());
+        verify(leaderboard).recordChanges(List.of(), List.of(PRODUCT_ID));
     }
 
     @Test
     void removeFavorite_NotFound() {
-        when(favoriteRepository.findByUserIdAndProductId(USER_ID, PRODUCT_ID))
-            .thenReturn(Optional.empty());
+        when(favoriteRepository.deleteByUserIdAndProductId(USER_ID, PRODUCT_ID)).thenReturn(0L);
 
         assertThrows(FavoriteNotFoundException.class, () -> 
             favoriteService.removeFavorite(USER_ID, PRODUCT_ID)
         );
 
-        verify(favoriteRepository, never()).delete(any());
-        verify(cacheService, never()).invalidateUserFavorites(any());
+        verify(favoriteCounterRepository, never()).increment(any(), anyLong());
+        verify(cacheService, never()).removeCachedFavorite(any(), any());
     }
 
     @Test
@@ -140,6 +244,48 @@ class FavoriteServiceTest {
         verify(favoriteRepository, never()).findByUserId(any());
     }
 
+    @Test
+    void getUserFavorites_RefreshesAheadOfExpiryInBackground() {
+        UserFavoritesResponse cachedResponse = new UserFavoritesResponse(USER_ID, List.of());
+        when(cacheService.getCachedUserFavorites(USER_ID)).thenReturn(Optional.of(cachedResponse));
+        when(cacheService.shouldRefreshEarly(USER_ID)).thenReturn(true);
+        when(leaseLock.tryAcquire("user-favorites:" + USER_ID)).thenReturn(Optional.of("token"));
+        when(favoriteRepository.findByUserId(USER_ID)).thenReturn(List.of(testFavorite));
+
+        // The caller gets the cached list; the reload is only queued
+        assertSame(cachedResponse, favoriteService.getUserFavorites(USER_ID));
+        assertSame(cachedResponse, favoriteService.getUserFavorites(USER_ID));
+        verify(favoriteRepository, never()).findByUserId(any());
+
+        ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(refreshExecutor, times(1)).execute(refresh.capture());
+        refresh.getValue().run();
+
+        verify(favoriteRepository).findByUserId(USER_ID);
+        verify(cacheService).cacheUserFavorites(eq(USER_ID), any(), argThat(response -> response.getTotalCount() == 1), any(Duration.class));
+    }
+
+    @Test
+    void getUserFavorites_SkipsEarlyRefreshBeyondConcurrencyLimit() {
+        favoriteService = new FavoriteService(favoriteRepository, favoriteCounterRepository, cacheService, leaderboard, trending, leaseLock,
+                refreshExecutor, 1, new StaticListableBeanFactory().getBeanProvider(WriteBehindFavoriteWriter.class));
+        when(cacheService.getCachedUserFavorites(any())).thenReturn(Optional.of(new UserFavoritesResponse(USER_ID, List.of())));
+        when(cacheService.shouldRefreshEarly(any())).thenReturn(true);
+
+        favoriteService.getUserFavorites("user-1");
+        favoriteService.getUserFavorites("user-2");
+
+        // The second refresh finds no permit while the first is still queued
+        ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+        verify(refreshExecutor, times(1)).execute(refresh.capture());
+
+        // Once the first refresh has run, the permit is free again
+        when(leaseLock.tryAcquire(any())).thenReturn(Optional.of("token"));
+        refresh.getValue().run();
+        favoriteService.getUserFavorites("user-2");
+        verify(refreshExecutor, times(2)).execute(any());
+    }
+
     @Test
     void getUserFavorites_FromDatabase() {
         // Setup cache miss
@@ -152,7 +298,110 @@ class FavoriteServiceTest {
         assertEquals(USER_ID, response.getUserId());
         assertEquals(1, response.getFavorites().size());
         assertEquals(PRODUCT_ID, response.getFavorites().get(0).getProductId());
-        verify(cacheService).cacheUserFavorites(eq(USER_ID), any(UserFavoritesResponse.class));
+        verify(cacheService).cacheUserFavorites(eq(USER_ID), any(), any(UserFavoritesResponse.class), any(Duration.class));
+    }
+
+    @Test
+    void getUserFavorites_ConcurrentMissesShareOneLoad() throws Exception {
+        when(cacheService.getCachedUserFavorites(USER_ID)).thenReturn(Optional.empty());
+        when(leaseLock.tryAcquire("user-favorites:" + USER_ID)).thenReturn(Optional.of("token"));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(favoriteRepository.findByUserId(USER_ID)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await();
+            return List.of(testFavorite);
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<UserFavoritesResponse> leader = executor.submit(() -> favoriteService.getUserFavorites(USER_ID));
+            loading.await();
+            List<Future<UserFavoritesResponse>> waiters = List.of(
+                executor.submit(() -> favoriteService.getUserFavorites(USER_ID)),
+                executor.submit(() -> favoriteService.getUserFavorites(USER_ID)),
+                executor.submit(() -> favoriteService.getUserFavorites(USER_ID))
+            );
+            // Let the waiters reach the in-flight load before it completes
+            Thread.sleep(100);
+            release.countDown();
+
+            UserFavoritesResponse response = leader.get(5, TimeUnit.SECONDS);
+            for (Future<UserFavoritesResponse> waiter : waiters) {
+                assertSame(response, waiter.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(favoriteRepository, times(1)).findByUserId(USER_ID);
+        verify(cacheService, times(1)).cacheUserFavorites(eq(USER_ID), any(), any(UserFavoritesResponse.class), any(Duration.class));
+        verify(leaseLock).release("user-favorites:" + USER_ID, "token");
+    }
+
+    @Test
+    void getUserFavorites_ReadsResultOfNodeHoldingLease() {
+        UserFavoritesResponse cachedResponse = new UserFavoritesResponse(USER_ID, List.of());
+        when(cacheService.getCachedUserFavorites(USER_ID))
+            .thenReturn(Optional.empty())
+            .thenReturn(Optional.of(cachedResponse));
+        when(leaseLock.tryAcquire("user-favorites:" + USER_ID)).thenReturn(Optional.empty());
+        when(leaseLock.awaitRelease("user-favorites:" + USER_ID)).thenReturn(true);
+
+        UserFavoritesResponse response = favoriteService.getUserFavorites(USER_ID);
+
+        assertSame(cachedResponse, response);
+        verify(favoriteRepository, never()).findByUserId(any());
+        verify(leaseLock, never()).release(any(), any());
+    }
+
+    @Test
+    void getUserFavoritesPage_FetchesOneExtraToBuildNextCursor() {
+        Favorite older = new Favorite(USER_ID, "older-product");
+        older.setId("older-id");
+        older.setCreatedAt(testFavorite.getCreatedAt().minusMinutes(1));
+        when(cacheService.getCachedFavoritesPage(USER_ID, 1, null)).thenReturn(Optional.empty());
+        CacheService.FavoritesLoad load = new CacheService.FavoritesLoad(0, 4);
+        when(cacheService.startFavoritesLoad(USER_ID)).thenReturn(load);
+        when(favoriteRepository.findPageByUserId(USER_ID, null, null, 2)).thenReturn(List.of(testFavorite, older));
+
+        UserFavoritesResponse page = favoriteService.getUserFavoritesPage(USER_ID, 1, null);
+
+        assertEquals(1, page.getTotalCount());
+        assertEquals(PRODUCT_ID, page.getFavorites().get(0).getProductId());
+        FavoritesCursor next = FavoritesCursor.decode(page.getNextCursor());
+        assertEquals(testFavorite.getCreatedAt(), next.getCreatedAt());
+        assertEquals(testFavorite.getId(), next.getId());
+        verify(cacheService).cacheFavoritesPage(USER_ID, load, 1, null, page);
+    }
+
+    @Test
+    void getUserFavoritesPage_ContinuesAfterCursorAndEndsWithoutNextCursor() {
+        FavoritesCursor cursor = new FavoritesCursor(LocalDateTime.of(2024, 1, 2, 3, 4, 5), "last-id");
+        String token = cursor.encode();
+        when(cacheService.getCachedFavoritesPage(USER_ID, 10, token)).thenReturn(Optional.empty());
+        when(favoriteRepository.findPageByUserId(USER_ID, cursor.getCreatedAt(), "last-id", 11)).thenReturn(List.of(testFavorite));
+
+        UserFavoritesResponse page = favoriteService.getUserFavoritesPage(USER_ID, 10, token);
+
+        assertEquals(1, page.getTotalCount());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getUserFavoritesPage_FromCache() {
+        UserFavoritesResponse cachedPage = new UserFavoritesResponse(USER_ID, List.of());
+        when(cacheService.getCachedFavoritesPage(USER_ID, 20, null)).thenReturn(Optional.of(cachedPage));
+
+        assertSame(cachedPage, favoriteService.getUserFavoritesPage(USER_ID, 20, null));
+        verify(favoriteRepository, never()).findPageByUserId(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void getUserFavoritesPage_RejectsMalformedCursor() {
+        assertThrows(IllegalArgumentException.class, () -> favoriteService.getUserFavoritesPage(USER_ID, 20, "not a cursor"));
+        assertThrows(IllegalArgumentException.class, () -> favoriteService.getUserFavoritesPage(USER_ID, 20, "bm9zZXBhcmF0b3I"));
+        verify(favoriteRepository, never()).findPageByUserId(any(), any(), any(), anyInt());
     }
 
     @Test
@@ -165,11 +414,12 @@ class FavoriteServiceTest {
         assertNotNull(response);
         assertEquals(USER_ID, response.getUserId());
         assertTrue(response.getFavorites().isEmpty());
-        verify(cacheService).cacheUserFavorites(eq(USER_ID), any(UserFavoritesResponse.class));
+        verify(cacheService).cacheUserFavorites(eq(USER_ID), any(), any(UserFavoritesResponse.class), any(Duration.class));
     }
 
     @Test
     void isFavorite_True() {
+        when(cacheService.getFavoritesFilter(USER_ID)).thenReturn(Optional.of(FavoritesBloomFilter.of(List.of(PRODUCT_ID))));
         when(favoriteRepository.existsByUserIdAndProductId(USER_ID, PRODUCT_ID)).thenReturn(true);
 
         boolean result = favoriteService.isFavorite(USER_ID, PRODUCT_ID);
@@ -179,10 +429,132 @@ class FavoriteServiceTest {
 
     @Test
     void isFavorite_False() {
+        when(cacheService.getFavoritesFilter(USER_ID)).thenReturn(Optional.of(FavoritesBloomFilter.of(List.of(PRODUCT_ID))));
         when(favoriteRepository.existsByUserIdAndProductId(USER_ID, PRODUCT_ID)).thenReturn(false);
 
         boolean result = favoriteService.isFavorite(USER_ID, PRODUCT_ID);
 
         assertFalse(result);
     }
+
+    @Test
+    void isFavorite_RuledOutByBloomFilter() {
+        when(cacheService.getFavoritesFilter(USER_ID)).thenReturn(Optional.of(FavoritesBloomFilter.of(List.of("other-product"))));
+
+        boolean result = favoriteService.isFavorite(USER_ID, PRODUCT_ID);
+
+        assertFalse(result);
+        verify(cacheService, never()).getCachedFavoriteExists(any(), any());
+        verify(cacheService, never()).cacheFavoriteExists(any(), any(), anyBoolean());
+        verify(favoriteRepository, never()).existsByUserIdAndProductId(any(), any());
+    }
+
+    @Test
+    void isFavorite_RebuildsMissingBloomFilter() {
+        when(cacheService.getFavoritesFilter(USER_ID)).thenReturn(Optional.empty());
+        when(favoriteRepository.findProductIdsByUserId(USER_ID)).thenReturn(List.of(testFavorite));
+        when(favoriteRepository.existsByUserIdAndProductId(USER_ID, PRODUCT_ID)).thenReturn(true);
+
+        boolean result = favoriteService.isFavorite(USER_ID, PRODUCT_ID);
+
+        assertTrue(result);
+        verify(cacheService).cacheFavoritesFilter(eq(USER_ID), any(), argThat(filter -> filter.mightContain(PRODUCT_ID)));
+    }
+
+    @Test
+    void isFavorite_RebuiltBloomFilterHoldsPendingWriteBehindAdds() {
+        WriteBehindFavoriteWriter writeBehind = mock(WriteBehindFavoriteWriter.class);
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("writeBehind", writeBehind);
+        favoriteService = new FavoriteService(favoriteRepository, favoriteCounterRepository, cacheService, leaderboard, trending, leaseLock,
+                refreshExecutor, 8, beanFactory.getBeanProvider(WriteBehindFavoriteWriter.class));
+        when(cacheService.getFavoritesFilter(USER_ID)).thenReturn(Optional.empty());
+        when(favoriteRepository.findProductIdsByUserId(USER_ID)).thenReturn(List.of());
+        when(writeBehind.pendingAdds(USER_ID)).thenReturn(List.of(PRODUCT_ID));
+        when(cacheService.getCachedFavoriteExists(USER_ID, PRODUCT_ID)).thenReturn(Optional.of(true));
+
+        assertTrue(favoriteService.isFavorite(USER_ID, PRODUCT_ID));
+        verify(cacheService).cacheFavoritesFilter(eq(USER_ID), any(), argThat(filter -> filter.mightContain(PRODUCT_ID)));
+    }
+
+    @Test
+    void getFavoriteCount_FromCache() {
+        when(cacheService.getCachedFavoriteCount(USER_ID)).thenReturn(Optional.of(7L));
+
+        assertEquals(7L, favoriteService.getFavoriteCount(USER_ID));
+        verify(favoriteRepository, never()).countByUserId(any());
+        verify(favoriteCounterRepository, never()).findById(any());
+    }
+
+    @Test
+    void getFavoriteCount_FromCounterWithoutCountingDocuments() {
+        when(cacheService.getCachedFavoriteCount(USER_ID)).thenReturn(Optional.empty());
+        when(favoriteCounterRepository.findById(USER_ID)).thenReturn(Optional.of(new FavoriteCounter(USER_ID, 3)));
+
+        assertEquals(3L, favoriteService.getFavoriteCount(USER_ID));
+        verify(favoriteRepository, never()).countByUserId(any());
+        verify(cacheService).cacheFavoriteCount(USER_ID, 3);
+    }
+
+    @Test
+    void getFavoriteCount_InitializesMissingCounter() {
+        when(cacheService.getCachedFavoriteCount(USER_ID)).thenReturn(Optional.empty());
+        when(favoriteCounterRepository.findById(USER_ID)).thenReturn(Optional.empty());
+        when(favoriteRepository.countByUserId(USER_ID)).thenReturn(4L);
+        when(favoriteCounterRepository.initialize(USER_ID, 4)).thenReturn(4L);
+
+        assertEquals(4L, favoriteService.getFavoriteCount(USER_ID));
+        verify(cacheService).cacheFavoriteCount(USER_ID, 4);
+    }
+
+    @Test
+    void removeAllFavorites_DecrementsCounter() {
+        when(favoriteRepository.deleteByUserId(USER_ID)).thenReturn(5L);
+
+        assertEquals(5L, favoriteService.removeAllFavorites(USER_ID));
+        verify(favoriteCounterRepository).increment(USER_ID, -5);
+        verify(cacheService).evictAllUserCache(USER_ID);
+        verify(favoriteRepository, never()).findProductIdsByUserId(any());
+    }
+
+    @Test
+    void removeAllFavorites_DiscountsRemovedProductsOnLeaderboard() {
+        Favorite other = new Favorite(USER_ID, "other-product");
+        when(leaderboard.isEnabled()).thenReturn(true);
+        when(favoriteRepository.findProductIdsByUserId(USER_ID)).thenReturn(List.of(testFavorite, other));
+        when(favoriteRepository.deleteByUserId(USER_ID)).thenReturn(2L);
+
+        favoriteService.removeAllFavorites(USER_ID);
+
+        verify(leaderboard).recordChanges(List.of(), List.of(PRODUCT_ID, "other-product"));
+    }
+
+    @Test
+    void areFavorites_QueriesMongoOnlyForCacheMisses() {
+        when(cacheService.getFavoritesFilter(USER_ID)).thenReturn(Optional.of(
+            FavoritesBloomFilter.of(List.of("cached-product", PRODUCT_ID, "other-product"))));
+        when(cacheService.getCachedFavoritesExist(eq(USER_ID), any())).thenReturn(Map.of("cached-product", true));
+        when(favoriteRepository.findProductIdsByUserIdAndProductIdIn(USER_ID, List.of(PRODUCT_ID, "other-product")))
+            .thenReturn(List.of(testFavorite));
+
+        Map<String, Boolean> result = favoriteService.areFavorites(
+            USER_ID, List.of("cached-product", PRODUCT_ID, "other-product", PRODUCT_ID));
+
+        assertEquals(List.of("cached-product", PRODUCT_ID, "other-product"), List.copyOf(result.keySet()));
+        assertTrue(result.get("cached-product"));
+        assertTrue(result.get(PRODUCT_ID));
+        assertFalse(result.get("other-product"));
+        verify(cacheService).cacheFavoritesExist(USER_ID, Map.of(PRODUCT_ID, true, "other-product", false));
+    }
+
+    @Test
+    void areFavorites_SkipsLookupsForProductsRuledOutByBloomFilter() {
+        when(cacheService.getFavoritesFilter(USER_ID)).thenReturn(Optional.of(FavoritesBloomFilter.of(List.of(PRODUCT_ID))));
+        when(cacheService.getCachedFavoritesExist(USER_ID, Set.of(PRODUCT_ID))).thenReturn(Map.of(PRODUCT_ID, true));
+
+        Map<String, Boolean> result = favoriteService.areFavorites(USER_ID, List.of("other-product", PRODUCT_ID));
+
+        assertEquals(Map.of("other-product", false, PRODUCT_ID, true), result);
+        verify(favoriteRepository, never()).findProductIdsByUserIdAndProductIdIn(any(), any());
+    }
 }
@@ -0,0 +1,132 @@
+package com.phoneaccessories.favorites.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FavoritesBloomFilterTest {
+
+    private static final int PROBES = 200_000;
+
+    @Test
+    void mightContain_HasNoFalseNegatives() {
+        List<String> productIds = productIds("product-", 500);
+        FavoritesBloomFilter filter = FavoritesBloomFilter.of(productIds);
+
+        productIds.forEach(productId -> assertTrue(filter.mightContain(productId)));
+    }
+
+    @Test
+    void mightContain_FalsePositiveRateStaysLowForTypicalUsers() {
+        // Measured rates are about 0.0004% at 100 favorites and 0.0001% at 500
+        assertTrue(falsePositiveRate(100) < 0.0001);
+        assertTrue(falsePositiveRate(500) < 0.0001);
+    }
+
+    @Test
+    void mightContain_FalsePositiveRateStaysLowForHeavyUsers() {
+        // A fixed 8192-bit filter would answer yes to nearly everything at 20000 favorites
+        assertTrue(falsePositiveRate(20_000) < 0.001);
+    }
+
+    @Test
+    void of_SizesFilterFromFavoriteCount() {
+        FavoritesBloomFilter empty = FavoritesBloomFilter.of(List.of());
+        FavoritesBloomFilter typical = FavoritesBloomFilter.of(productIds("product-", 100));
+        FavoritesBloomFilter heavy = FavoritesBloomFilter.of(productIds("product-", 20_000));
+
+        assertEquals(FavoritesBloomFilter.MIN_CAPACITY, empty.capacity());
+        assertEquals(1024, empty.bits());
+        assertEquals(200, typical.capacity());
+        assertEquals(4096, typical.bits());
+        assertEquals(14, typical.hashes());
+        assertEquals(100, typical.entries());
+        assertEquals(40_000, heavy.capacity());
+        assertEquals(1 << 20, heavy.bits());
+        assertEquals(18, heavy.hashes());
+    }
+
+    @Test
+    void toBytes_RoundTripsThroughRedisRepresentation() {
+        FavoritesBloomFilter filter = FavoritesBloomFilter.of(List.of("a", "b"));
+
+        byte[] bytes = filter.toBytes();
+        FavoritesBloomFilter restored = FavoritesBloomFilter.fromBytes(bytes);
+
+        assertEquals(FavoritesBloomFilter.HEADER_BYTES + 1024 / 8, bytes.length);
+        assertEquals(filter.sizeInBytes(), bytes.length);
+        assertNotNull(restored);
+        assertTrue(restored.mightContain("a"));
+        assertTrue(restored.mightContain("b"));
+        assertEquals(2, restored.entries());
+    }
+
+    @Test
+    void fromBytes_RejectsIncompleteBitmaps() {
+        assertNull(FavoritesBloomFilter.fromBytes(null));
+        assertNull(FavoritesBloomFilter.fromBytes(new byte[16]));
+        assertNull(FavoritesBloomFilter.fromBytes(new byte[FavoritesBloomFilter.of(List.of()).sizeInBytes()]));
+
+        byte[] truncated = FavoritesBloomFilter.of(List.of("a")).toBytes();
+        assertNull(FavoritesBloomFilter.fromBytes(Arrays.copyOf(truncated, truncated.length - 1)));
+    }
+
+    @Test
+    void toBytes_HeaderIsReadableWithBitfield() {
+        byte[] bytes = FavoritesBloomFilter.of(productIds("product-", 100)).toBytes();
+
+        // BITFIELD GET u8 0, u8 8, u32 32 and u32 64 are big-endian, most significant bit first
+        assertEquals(12, bytes[0]);
+        assertEquals(14, bytes[1]);
+        assertArrayEquals(new byte[] {0, 0, 0, (byte) 200}, Arrays.copyOfRange(bytes, 4, 8));
+        assertArrayEquals(new byte[] {0, 0, 0, 100}, Arrays.copyOfRange(bytes, 8, 12));
+    }
+
+    @Test
+    void offsets_UseRedisBitOrderAfterHeader() {
+        FavoritesBloomFilter filter = FavoritesBloomFilter.of(List.of());
+        filter.add("a");
+        byte[] bytes = filter.toBytes();
+
+        for (long offset : filter.offsets("a")) {
+            assertTrue(offset >= FavoritesBloomFilter.HEADER_BYTES * 8);
+            assertNotEquals(0, bytes[(int) (offset / 8)] & (0x80 >>> (offset % 8)));
+        }
+    }
+
+    @Test
+    void addArguments_ReproduceOffsetsTheWayTheScriptComputesThem() {
+        FavoritesBloomFilter filter = FavoritesBloomFilter.of(productIds("product-", 100));
+        List<String> arguments = FavoritesBloomFilter.addArguments(List.of("a"));
+        double h1 = Double.parseDouble(arguments.get(0));
+        double h2 = Double.parseDouble(arguments.get(1));
+
+        long[] offsets = filter.offsets("a");
+        for (int i = 0; i < offsets.length; i++) {
+            assertEquals(offsets[i], (long) (FavoritesBloomFilter.HEADER_BYTES * 8 + (h1 + i * h2 + (i * i * i - i) / 6) % filter.bits()));
+        }
+    }
+
+    private static double falsePositiveRate(int favorites) {
+        FavoritesBloomFilter filter = FavoritesBloomFilter.of(productIds("product-", favorites));
+        int falsePositives = 0;
+        for (String productId : productIds("other-", PROBES)) {
+            if (filter.mightContain(productId)) {
+                falsePositives++;
+            }
+        }
+        return (double) falsePositives / PROBES;
+    }
+
+    private static List<String> productIds(String prefix, int count) {
+        List<String> productIds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            productIds.add(prefix + i);
+        }
+        return productIds;
+    }
+}
@@ -0,0 +1,88 @@
+package com.phoneaccessories.favorites.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeavyHitterSketchTest {
+
+    @Test
+    void estimate_NeverUndercountsAndStaysCloseUnderNoise() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(4, 1024, 20);
+        for (int i = 0; i < 500; i++) {
+            sketch.add("hot");
+        }
+        for (int i = 0; i < 20_000; i++) {
+            sketch.add("product-" + i);
+        }
+
+        int estimate = sketch.estimate("hot");
+        assertTrue(estimate >= 500);
+        // e / width of the 20,500 favorites is about 54
+        assertTrue(estimate < 560, "estimate " + estimate);
+        assertEquals(0, new HeavyHitterSketch(4, 1024, 20).estimate("hot"));
+    }
+
+    @Test
+    void top_FindsHeavyHittersAmongManyLightProducts() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(4, 1024, 20);
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 3; i++) {
+                for (int times = 0; times <= i; times++) {
+                    sketch.add("hot-" + i);
+                }
+            }
+            for (int i = 0; i < 50; i++) {
+                sketch.add("product-" + (round * 50 + i));
+            }
+        }
+
+        List<Map.Entry<String, Integer>> top = sketch.top(3);
+
+        assertEquals(List.of("hot-2", "hot-1", "hot-0"), top.stream().map(Map.Entry::getKey).toList());
+        assertTrue(top.get(0).getValue() >= 300);
+    }
+
+    @Test
+    void merge_AddsCountsAndKeepsCandidatesOfBoth() {
+        HeavyHitterSketch left = new HeavyHitterSketch(4, 256, 2);
+        HeavyHitterSketch right = new HeavyHitterSketch(4, 256, 2);
+        for (int i = 0; i < 5; i++) {
+            left.add("a");
+            right.add("a");
+            right.add("b");
+        }
+        left.add("c");
+
+        left.merge(right);
+
+        assertEquals(10, left.estimate("a"));
+        assertEquals(List.of("a", "b"), left.top(5).stream().map(Map.Entry::getKey).toList());
+        assertThrows(IllegalArgumentException.class, () -> left.merge(new HeavyHitterSketch(4, 128, 2)));
+    }
+
+    @Test
+    void toBytes_RoundTripsCountsAndCandidates() {
+        HeavyHitterSketch sketch = new HeavyHitterSketch(4, 256, 10);
+        sketch.add("a");
+        sketch.add("a");
+        sketch.add("b");
+
+        HeavyHitterSketch restored = HeavyHitterSketch.fromBytes(sketch.toBytes(), 4, 256, 10);
+
+        assertNotNull(restored);
+        assertEquals(2, restored.estimate("a"));
+        assertEquals(List.of(Map.entry("a", 2), Map.entry("b", 1)), restored.top(10));
+    }
+
+    @Test
+    void fromBytes_RejectsOtherDimensions() {
+        byte[] bytes = new HeavyHitterSketch(4, 256, 10).toBytes();
+
+        assertNull(HeavyHitterSketch.fromBytes(bytes, 4, 512, 10));
+        assertNull(HeavyHitterSketch.fromBytes(new byte[3], 4, 256, 10));
+    }
+}
@@ -0,0 +1,117 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.ProductUpdateEvent;
+import com.phoneaccessories.favorites.event.InMemoryProductEventBroker;
+import com.phoneaccessories.favorites.event.ProductEventBroker;
+import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductUpdateConsumerTest {
+
+    @Mock
+    private FavoriteRepository favoriteRepository;
+
+    @Mock
+    private CacheService cacheService;
+
+    private final InMemoryProductEventBroker broker = new InMemoryProductEventBroker();
+
+    private ProductUpdateConsumer consumer;
+
+    @BeforeEach
+    void setUp() {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(Map.of("broker", broker));
+        consumer = new ProductUpdateConsumer(favoriteRepository, cacheService,
+                beanFactory.getBeanProvider(ProductEventBroker.class), new SimpleMeterRegistry());
+        consumer.subscribe();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_CoalescesEventsPerProduct() {
+        when(favoriteRepository.findUserIdsAffectedBy(anyCollection())).thenReturn(Set.of("user-1"));
+        when(favoriteRepository.applyProductUpdates(anyCollection())).thenReturn(1L);
+
+        broker.publish(new ProductUpdateEvent("product-1", "Case", 10.0, null, null));
+        broker.publish(new ProductUpdateEvent("product-1", null, 8.0, null, null));
+
+        assertEquals(1, consumer.flush());
+
+        ArgumentCaptor<Collection<ProductUpdateEvent>> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(favoriteRepository).applyProductUpdates(batch.capture());
+        ProductUpdateEvent merged = batch.getValue().iterator().next();
+        assertEquals(1, batch.getValue().size());
+        assertEquals("Case", merged.getProductName());
+        assertEquals(8.0, merged.getProductPrice());
+        verify(cacheService).evictUserFavoritesCaches(Set.of("user-1"));
+    }
+
+    @Test
+    void flush_SkipsWriteWhenNoFavoriteIsStale() {
+        when(favoriteRepository.findUserIdsAffectedBy(anyCollection())).thenReturn(Set.of());
+
+        broker.publish(new ProductUpdateEvent("product-1", "Case", 10.0, null, null));
+
+        assertEquals(0, consumer.flush());
+
+        verify(favoriteRepository, never()).applyProductUpdates(anyCollection());
+        verifyNoInteractions(cacheService);
+    }
+
+    @Test
+    void flush_AcknowledgesEventsOnceWritten() {
+        when(favoriteRepository.findUserIdsAffectedBy(anyCollection()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(Set.of("user-1"));
+        when(favoriteRepository.applyProductUpdates(anyCollection())).thenReturn(1L);
+        AtomicInteger acknowledged = new AtomicInteger();
+
+        consumer.accept(new ProductUpdateEvent("product-1", "Case", 10.0, null, null), acknowledged::incrementAndGet);
+        consumer.accept(new ProductUpdateEvent("product-1", null, 8.0, null, null), acknowledged::incrementAndGet);
+        consumer.flush();
+        assertEquals(0, acknowledged.get());
+
+        consumer.flush();
+        assertEquals(2, acknowledged.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_KeepsEventsForNextWindowOnFailure() {
+        when(favoriteRepository.findUserIdsAffectedBy(anyCollection()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(Set.of("user-1"));
+        when(favoriteRepository.applyProductUpdates(anyCollection())).thenReturn(1L);
+
+        broker.publish(new ProductUpdateEvent("product-1", "Case", 10.0, null, null));
+        assertEquals(0, consumer.flush());
+
+        broker.publish(new ProductUpdateEvent("product-1", null, 8.0, null, null));
+        assertEquals(1, consumer.flush());
+
+        ArgumentCaptor<Collection<ProductUpdateEvent>> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(favoriteRepository).applyProductUpdates(batch.capture());
+        ProductUpdateEvent merged = List.copyOf(batch.getValue()).get(0);
+        assertEquals("Case", merged.getProductName());
+        assertEquals(8.0, merged.getProductPrice());
+    }
+}
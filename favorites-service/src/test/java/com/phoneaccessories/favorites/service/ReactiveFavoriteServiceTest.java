@@ -0,0 +1,271 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.AddFavoriteRequest;
+import com.phoneaccessories.favorites.dto.FavoriteBatchOperation;
+import com.phoneaccessories.favorites.dto.FavoriteBatchResult;
+import com.phoneaccessories.favorites.dto.UserFavoritesResponse;
+import com.phoneaccessories.favorites.exception.DuplicateFavoriteException;
+import com.phoneaccessories.favorites.exception.FavoriteNotFoundException;
+import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.model.FavoriteCounter;
+import com.phoneaccessories.favorites.repository.ReactiveFavoriteCounterRepository;
+import com.phoneaccessories.favorites.repository.ReactiveFavoriteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveFavoriteServiceTest {
+
+    @Mock
+    private ReactiveFavoriteRepository favoriteRepository;
+
+    @Mock
+    private ReactiveFavoriteCounterRepository favoriteCounterRepository;
+
+    @Mock
+    private ReactiveCacheService cacheService;
+
+    @Mock
+    private ReactiveFavoriteLeaderboard leaderboard;
+
+    @Mock
+    private TrendingFavorites trending;
+
+    @InjectMocks
+    private ReactiveFavoriteService favoriteService;
+
+    private Favorite testFavorite;
+    private AddFavoriteRequest testRequest;
+    private static final String USER_ID = "test-user-id";
+    private static final String PRODUCT_ID = "test-product-id";
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(leaderboard.recordChanges(anyCollection(), anyCollection())).thenReturn(Mono.empty());
+
+        testFavorite = new Favorite(USER_ID, PRODUCT_ID, "Test Product", 99.99, "http://example.com/image.jpg", "Test Category");
+        testFavorite.setId("test-favorite-id");
+        testFavorite.setCreatedAt(LocalDateTime.now());
+
+        testRequest = new AddFavoriteRequest();
+        testRequest.setProductId(PRODUCT_ID);
+        testRequest.setProductName("Test Product");
+        testRequest.setProductPrice(99.99);
+    }
+
+    @Test
+    void addFavorite_Success() {
+        when(favoriteRepository.insertIfAbsent(any(Favorite.class))).thenAnswer(invocation -> {
+            invocation.getArgument(0, Favorite.class).setId("test-favorite-id");
+            return Mono.just(true);
+        });
+        when(favoriteCounterRepository.increment(USER_ID, 1)).thenReturn(Mono.empty());
+        when(cacheService.updateCachedFavorites(eq(USER_ID), anyList(), anyCollection())).thenReturn(Mono.empty());
+
+        StepVerifier.create(favoriteService.addFavorite(USER_ID, testRequest))
+                .assertNext(response -> {
+                    assertEquals("test-favorite-id", response.getFavoriteId());
+                    assertEquals(PRODUCT_ID, response.getProductId());
+                })
+                .verifyComplete();
+
+        verify(cacheService).updateCachedFavorites(eq(USER_ID),
+                argThat(added -> added.size() == 1 && added.get(0).getProductId().equals(PRODUCT_ID)),
+                eq(List.of()));
+    }
+
+    @Test
+    void addFavorite_DuplicateProduct() {
+        when(favoriteRepository.insertIfAbsent(any(Favorite.class))).thenReturn(Mono.just(false));
+
+        StepVerifier.create(favoriteService.addFavorite(USER_ID, testRequest))
+                .verifyError(DuplicateFavoriteException.class);
+
+        verifyNoInteractions(favoriteCounterRepository, cacheService);
+    }
+
+    @Test
+    void removeFavorite_NotFound() {
+        when(favoriteRepository.deleteByUserIdAndProductId(USER_ID, PRODUCT_ID)).thenReturn(Mono.just(0L));
+
+        StepVerifier.create(favoriteService.removeFavorite(USER_ID, PRODUCT_ID))
+                .verifyError(FavoriteNotFoundException.class);
+
+        verifyNoInteractions(favoriteCounterRepository, cacheService);
+    }
+
+    @Test
+    void applyBatch_ReportsOutcomePerOperation() {
+        FavoriteBatchOperation add = new FavoriteBatchOperation();
+        add.setAction(FavoriteBatchOperation.Action.ADD);
+        add.setProductId("product-new");
+        add.setProductName("New");
+        add.setProductPrice(1.0);
+        FavoriteBatchOperation remove = new FavoriteBatchOperation(FavoriteBatchOperation.Action.REMOVE, "product-missing");
+
+        when(favoriteRepository.findProductIdsByUserIdAndProductIdIn(USER_ID, List.of("product-missing")))
+                .thenReturn(Flux.empty());
+        when(favoriteRepository.bulkWrite(eq(USER_ID), anyList(), anyCollection())).thenAnswer(invocation -> {
+            List<Favorite> additions = invocation.getArgument(1);
+            additions.get(0).setId("generated-id");
+            return Mono.just(0L);
+        });
+        when(favoriteCounterRepository.increment(USER_ID, 1)).thenReturn(Mono.empty());
+        when(cacheService.updateCachedFavorites(eq(USER_ID), anyList(), anyCollection())).thenReturn(Mono.empty());
+
+        StepVerifier.create(favoriteService.applyBatch(USER_ID, List.of(add, remove)))
+                .assertNext(response -> {
+                    assertEquals(FavoriteBatchResult.Status.ADDED, response.getResults().get(0).getStatus());
+                    assertEquals(FavoriteBatchResult.Status.NOT_FOUND, response.getResults().get(1).getStatus());
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void getUserFavorites_FromCache() {
+        UserFavoritesResponse cached = new UserFavoritesResponse(USER_ID, List.of());
+        when(cacheService.getCachedUserFavorites(USER_ID)).thenReturn(Mono.just(cached));
+
+        StepVerifier.create(favoriteService.getUserFavorites(USER_ID))
+                .expectNext(cached)
+                .verifyComplete();
+
+        verifyNoInteractions(favoriteRepository);
+    }
+
+    @Test
+    void getUserFavorites_ConcurrentMissesShareOneLoad() {
+        Sinks.Many<Favorite> favorites = Sinks.many().unicast().onBackpressureBuffer();
+        when(cacheService.getCachedUserFavorites(USER_ID)).thenReturn(Mono.empty());
+        when(cacheService.startFavoritesLoad(USER_ID)).thenReturn(Mono.just(new CacheService.FavoritesLoad(0, 0)));
+        when(favoriteRepository.findByUserId(USER_ID)).thenReturn(favorites.asFlux());
+        when(cacheService.cacheUserFavorites(eq(USER_ID), any(), any(UserFavoritesResponse.class), any())).thenReturn(Mono.empty());
+
+        Mono<UserFavoritesResponse> first = favoriteService.getUserFavorites(USER_ID).cache();
+        Mono<UserFavoritesResponse> second = favoriteService.getUserFavorites(USER_ID).cache();
+        first.subscribe();
+        second.subscribe();
+
+        favorites.tryEmitNext(testFavorite);
+        favorites.tryEmitComplete();
+
+        assertEquals(1, first.block().getFavorites().size());
+        assertSame(first.block(), second.block());
+        verify(favoriteRepository, times(1)).findByUserId(USER_ID);
+        verify(cacheService, times(1)).cacheUserFavorites(eq(USER_ID), any(), any(UserFavoritesResponse.class), any());
+    }
+
+    @Test
+    void getUserFavorites_CompletedLoadLeavesNextLoadShared() {
+        Sinks.Many<Favorite> firstFavorites = Sinks.many().unicast().onBackpressureBuffer();
+        Sinks.Many<Favorite> secondFavorites = Sinks.many().unicast().onBackpressureBuffer();
+        when(cacheService.getCachedUserFavorites(USER_ID)).thenReturn(Mono.empty());
+        when(cacheService.startFavoritesLoad(USER_ID)).thenReturn(Mono.just(new CacheService.FavoritesLoad(0, 0)));
+        when(favoriteRepository.findByUserId(USER_ID)).thenReturn(firstFavorites.asFlux(), secondFavorites.asFlux());
+        when(cacheService.cacheUserFavorites(eq(USER_ID), any(), any(UserFavoritesResponse.class), any())).thenReturn(Mono.empty());
+
+        Mono<UserFavoritesResponse> first = favoriteService.getUserFavorites(USER_ID).cache();
+        first.subscribe();
+        firstFavorites.tryEmitComplete();
+        assertTrue(first.block().getFavorites().isEmpty());
+
+        // The next miss starts a load of its own, which callers overlapping it share
+        Mono<UserFavoritesResponse> second = favoriteService.getUserFavorites(USER_ID).cache();
+        Mono<UserFavoritesResponse> third = favoriteService.getUserFavorites(USER_ID).cache();
+        second.subscribe();
+        third.subscribe();
+        secondFavorites.tryEmitNext(testFavorite);
+        secondFavorites.tryEmitComplete();
+
+        assertEquals(1, second.block().getFavorites().size());
+        assertSame(second.block(), third.block());
+        verify(favoriteRepository, times(2)).findByUserId(USER_ID);
+    }
+
+    @Test
+    void isFavorite_FilterMissSkipsLookups() {
+        when(cacheService.getFavoritesFilter(USER_ID)).thenReturn(Mono.just(FavoritesBloomFilter.of(List.of("other-product"))));
+
+        StepVerifier.create(favoriteService.isFavorite(USER_ID, PRODUCT_ID))
+                .expectNext(false)
+                .verifyComplete();
+
+        verify(cacheService, never()).getCachedFavoriteExists(any(), any());
+        verifyNoInteractions(favoriteRepository);
+    }
+
+    @Test
+    void areFavorites_CombinesCacheAndRepository() {
+        when(cacheService.getFavoritesFilter(USER_ID))
+                .thenReturn(Mono.just(FavoritesBloomFilter.of(List.of("cached", "stored"))));
+        when(cacheService.getCachedFavoritesExist(USER_ID, List.of("cached", "stored")))
+                .thenReturn(Mono.just(Map.of("cached", true)));
+        Favorite stored = new Favorite(USER_ID, "stored", "Stored", 1.0, null, null);
+        when(favoriteRepository.findProductIdsByUserIdAndProductIdIn(USER_ID, List.of("stored")))
+                .thenReturn(Flux.just(stored));
+        when(cacheService.cacheFavoritesExist(USER_ID, Map.of("stored", true))).thenReturn(Mono.empty());
+
+        StepVerifier.create(favoriteService.areFavorites(USER_ID, List.of("cached", "stored")))
+                .expectNext(Map.of("cached", true, "stored", true))
+                .verifyComplete();
+    }
+
+    @Test
+    void getFavoriteCount_InitializesMissingCounter() {
+        when(cacheService.getCachedFavoriteCount(USER_ID)).thenReturn(Mono.empty());
+        when(favoriteCounterRepository.findById(USER_ID)).thenReturn(Mono.empty());
+        when(favoriteRepository.countByUserId(USER_ID)).thenReturn(Mono.just(3L));
+        when(favoriteCounterRepository.initialize(USER_ID, 3L)).thenReturn(Mono.just(3L));
+        when(cacheService.cacheFavoriteCount(USER_ID, 3L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(favoriteService.getFavoriteCount(USER_ID))
+                .expectNext(3L)
+                .verifyComplete();
+    }
+
+    @Test
+    void getFavoriteCount_FromCounter() {
+        when(cacheService.getCachedFavoriteCount(USER_ID)).thenReturn(Mono.empty());
+        when(favoriteCounterRepository.findById(USER_ID)).thenReturn(Mono.just(new FavoriteCounter(USER_ID, 5L)));
+        when(cacheService.cacheFavoriteCount(USER_ID, 5L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(favoriteService.getFavoriteCount(USER_ID))
+                .expectNext(5L)
+                .verifyComplete();
+
+        verify(favoriteRepository, never()).countByUserId(any());
+    }
+
+    @Test
+    void removeAllFavorites_AdjustsCounterAndEvicts() {
+        when(favoriteRepository.deleteByUserId(USER_ID)).thenReturn(Mono.just(2L));
+        when(favoriteCounterRepository.increment(USER_ID, -2)).thenReturn(Mono.empty());
+        when(cacheService.evictAllUserCache(USER_ID)).thenReturn(Mono.empty());
+
+        StepVerifier.create(favoriteService.removeAllFavorites(USER_ID))
+                .expectNext(2L)
+                .verifyComplete();
+
+        verify(cacheService).evictAllUserCache(USER_ID);
+    }
+}
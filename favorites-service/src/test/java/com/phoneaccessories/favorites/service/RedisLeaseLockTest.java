@@ -0,0 +1,116 @@
+package com.phoneaccessories.favorites.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RedisLeaseLockTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @Test
+    void release_DeletesWithCompareAndDeleteScript() {
+        RedisLeaseLock lock = new RedisLeaseLock(redisTemplate, "test", true, 5000, 2000);
+
+        lock.release("user-favorites:user1", "token");
+
+        verify(redisTemplate).execute(RedisLeaseLock.RELEASE_SCRIPT, List.of("test:lease:user-favorites:user1"), "token");
+        verify(redisTemplate, never()).delete(anyString());
+    }
+
+    @Test
+    void release_SkipsRedisForLeasesTakenWhileDisabled() {
+        RedisLeaseLock lock = new RedisLeaseLock(redisTemplate, "test", false, 5000, 2000);
+
+        Optional<String> token = lock.tryAcquire("user-favorites:user1");
+        assertTrue(token.isPresent());
+        lock.release("user-favorites:user1", token.get());
+
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    void release_SkipsRedisForLeasesTakenWhileRedisWasDown() {
+        RedisLeaseLock lock = new RedisLeaseLock(redisTemplate, "test", true, 5000, 2000);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(any(), any(), any(Duration.class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        Optional<String> token = lock.tryAcquire("user-favorites:user1");
+        assertTrue(token.isPresent());
+        lock.release("user-favorites:user1", token.get());
+
+        verify(redisTemplate, never()).execute(any(), anyList(), any());
+    }
+
+    @Test
+    void release_IgnoresRedisErrors() {
+        RedisLeaseLock lock = new RedisLeaseLock(redisTemplate, "test", true, 5000, 2000);
+        when(redisTemplate.execute(eq(RedisLeaseLock.RELEASE_SCRIPT), anyList(), any()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        lock.release("user-favorites:user1", "token");
+    }
+
+    @Test
+    void tryAcquireJob_IsTakenEvenWhenLeasesAreDisabled() {
+        RedisLeaseLock lock = new RedisLeaseLock(redisTemplate, "test", false, 5000, 2000);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq("test:lease:job"), any(), eq(Duration.ofMinutes(1)))).thenReturn(false);
+
+        assertTrue(lock.tryAcquire("job", Duration.ofMinutes(1)).isEmpty());
+    }
+
+    @Test
+    void tryAcquireJob_FailsClosedWhenRedisIsDown() {
+        RedisLeaseLock lock = new RedisLeaseLock(redisTemplate, "test", false, 5000, 2000);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(any(), any(), any(Duration.class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        assertTrue(lock.tryAcquire("job", Duration.ofMinutes(1)).isEmpty());
+    }
+
+    @Test
+    void renew_ExtendsWithCompareAndExpireScript() {
+        RedisLeaseLock lock = new RedisLeaseLock(redisTemplate, "test", false, 5000, 2000);
+        when(redisTemplate.execute(RedisLeaseLock.RENEW_SCRIPT, List.of("test:lease:job"), "token", "60000"))
+                .thenReturn(1L);
+
+        assertTrue(lock.renew("job", "token", Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void renew_ReportsLostLease() {
+        RedisLeaseLock lock = new RedisLeaseLock(redisTemplate, "test", false, 5000, 2000);
+        when(redisTemplate.execute(eq(RedisLeaseLock.RENEW_SCRIPT), anyList(), any(), any())).thenReturn(0L);
+
+        assertFalse(lock.renew("job", "token", Duration.ofMinutes(1)));
+    }
+
+    @Test
+    void renew_ReportsRedisErrorsAsLost() {
+        RedisLeaseLock lock = new RedisLeaseLock(redisTemplate, "test", false, 5000, 2000);
+        when(redisTemplate.execute(eq(RedisLeaseLock.RENEW_SCRIPT), anyList(), any(), any()))
+                .thenThrow(new RedisConnectionFailureException("down"));
+
+        assertFalse(lock.renew("job", "token", Duration.ofMinutes(1)));
+    }
+}
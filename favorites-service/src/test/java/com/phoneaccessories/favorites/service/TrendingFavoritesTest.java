@@ -0,0 +1,145 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.dto.ProductFavoriteCount;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TrendingFavoritesTest {
+
+    private static final long BUCKET_MILLIS = Duration.ofMinutes(5).toMillis();
+    private static final long START = 1_000 * BUCKET_MILLIS;
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @Mock
+    private Clock clock;
+
+    private final List<Map<Object, Object>> redisBuckets = new ArrayList<>();
+    private TrendingFavorites trending;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(clock.millis()).thenReturn(START);
+        lenient().when(redisTemplate.opsForHash()).thenReturn(hashOperations);
+        // Every HGETALL answers the next stubbed bucket, or an empty hash
+        lenient().when(hashOperations.entries(any())).thenAnswer(invocation ->
+            redisBuckets.isEmpty() ? Map.of() : redisBuckets.remove(0));
+        lenient().when(redisTemplate.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            List<Object> replies = new ArrayList<>();
+            HashOperations<String, Object, Object> recording = mock(HashOperations.class);
+            lenient().when(recording.entries(any())).thenAnswer(entries -> {
+                replies.add(hashOperations.entries(entries.getArgument(0)));
+                return null;
+            });
+            RedisTemplate<String, String> pipeline = mock(RedisTemplate.class);
+            lenient().when(pipeline.opsForHash()).thenReturn(recording);
+            invocation.getArgument(0, SessionCallback.class).execute(pipeline);
+            return replies;
+        });
+
+        trending = new TrendingFavorites(redisTemplate, clock, "test", true, List.of("1h", "24h"), "5m", 10_000, 1024, 4, 10);
+    }
+
+    @Test
+    void trending_RanksProductsRecordedWithinWindowAfterSync() {
+        record("product-a", 3);
+        record("product-b", 5);
+
+        assertEquals(List.of(), trending.trending("1h", 10));
+        trending.sync();
+
+        List<ProductFavoriteCount> top = trending.trending("1h", 10);
+        assertEquals(List.of("product-b", "product-a"), top.stream().map(ProductFavoriteCount::getProductId).toList());
+        assertEquals(5, top.get(0).getCount());
+        assertEquals(1, trending.trending("60m", 1).size());
+    }
+
+    @Test
+    void trending_DropsFavoritesOlderThanWindow() {
+        record("product-a", 3);
+        when(clock.millis()).thenReturn(START + Duration.ofHours(2).toMillis());
+        record("product-b", 1);
+
+        trending.sync();
+
+        assertEquals(List.of("product-b"), trending.trending("1h", 10).stream().map(ProductFavoriteCount::getProductId).toList());
+        assertEquals(List.of("product-a", "product-b"), trending.trending("24h", 10).stream().map(ProductFavoriteCount::getProductId).toList());
+    }
+
+    @Test
+    void trending_RejectsUnconfiguredWindow() {
+        assertThrows(IllegalArgumentException.class, () -> trending.trending("2h", 10));
+        assertThrows(IllegalArgumentException.class, () -> trending.trending("soon", 10));
+    }
+
+    @Test
+    void sync_PublishesChangedBucketsAndMergesOtherReplicas() {
+        HeavyHitterSketch other = new HeavyHitterSketch(4, 1024, 10);
+        for (int i = 0; i < 4; i++) {
+            other.add("product-c");
+        }
+        // 24h of buckets are read, oldest first: the other replica counted in the newest one
+        for (int i = 0; i < 288; i++) {
+            redisBuckets.add(Map.of());
+        }
+        redisBuckets.add(Map.of("other-replica", other.toBytes()));
+        record("product-a", 1);
+
+        trending.sync();
+
+        verify(hashOperations, times(289)).entries(any());
+        assertEquals(List.of("product-c", "product-a"),
+            trending.trending("1h", 10).stream().map(ProductFavoriteCount::getProductId).toList());
+    }
+
+    @Test
+    void sync_ReadsSettledBucketsOnlyOnce() {
+        trending.sync();
+        clearInvocations(hashOperations);
+        when(clock.millis()).thenReturn(START + 60_000);
+
+        trending.sync();
+
+        // Only the current bucket and the previous one, still open to late publishes, are read again
+        verify(hashOperations, times(2)).entries(any());
+    }
+
+    @Test
+    void sync_FallsBackToLocalCountsWithoutRedis() {
+        when(redisTemplate.executePipelined(any(SessionCallback.class)))
+            .thenThrow(new RedisConnectionFailureException("down"));
+        record("product-a", 2);
+
+        trending.sync();
+
+        assertEquals(2, trending.trending("1h", 10).get(0).getCount());
+    }
+
+    private void record(String productId, int times) {
+        for (int i = 0; i < times; i++) {
+            trending.record(productId);
+        }
+    }
+}
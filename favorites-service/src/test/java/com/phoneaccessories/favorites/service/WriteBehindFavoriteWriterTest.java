@@ -0,0 +1,197 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.exception.WriteBacklogFullException;
+import com.phoneaccessories.favorites.model.Favorite;
+import com.phoneaccessories.favorites.repository.FavoriteCounterRepository;
+import com.phoneaccessories.favorites.repository.FavoriteCounterRepositoryCustom.CounterChange;
+import com.phoneaccessories.favorites.repository.FavoriteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WriteBehindFavoriteWriterTest {
+
+    private static final String USER_ID = "test-user-id";
+
+    @Mock
+    private FavoriteRepository favoriteRepository;
+
+    @Mock
+    private FavoriteCounterRepository favoriteCounterRepository;
+
+    @Mock
+    private CacheService cacheService;
+
+    @Mock
+    private RedisLeaseLock jobLock;
+
+    @TempDir
+    Path directory;
+
+    private WriteBehindFavoriteWriter writer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        lenient().when(jobLock.tryAcquire(eq(WriteBehindFavoriteWriter.JOB_LOCK), any())).thenReturn(Optional.of("token"));
+        writer = newWriter();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        writer.close();
+    }
+
+    @Test
+    void add_PendingWriteDecidesOverStoredState() {
+        assertTrue(writer.add(favorite("product-1"), () -> false));
+
+        // Not in Mongo yet, but already added
+        assertFalse(writer.add(favorite("product-1"), () -> false));
+        assertTrue(writer.remove(USER_ID, "product-1", () -> false));
+        assertFalse(writer.remove(USER_ID, "product-1", () -> true));
+    }
+
+    @Test
+    void flush_AppliesLastWritePerFavoriteAndNetCounterChange() {
+        writer.add(favorite("product-1"), () -> false);
+        writer.add(favorite("product-2"), () -> false);
+        writer.remove(USER_ID, "product-2", () -> false);
+
+        assertTrue(writer.flush());
+
+        verify(favoriteRepository).applyWrites(
+                argThat(additions -> additions.size() == 1 && additions.iterator().next().getProductId().equals("product-1")),
+                argThat(removals -> removals.size() == 1 && removals.iterator().next().getProductId().equals("product-2")));
+        verify(favoriteCounterRepository).incrementOnce(List.of(
+                new CounterChange(USER_ID, 1, 1), new CounterChange(USER_ID, 2, 1), new CounterChange(USER_ID, 3, -1)));
+        verify(cacheService).applyFavoriteChanges(eq(USER_ID),
+                argThat(added -> added.size() == 1 && added.get(0).getFavoriteId() != null),
+                eq(List.of("product-2")));
+    }
+
+    @Test
+    void flush_RemovedAndAddedAgainReplacesStoredFavorite() {
+        Favorite readded = favorite("product-1");
+        assertTrue(writer.remove(USER_ID, "product-1", () -> true));
+        assertTrue(writer.add(readded, () -> true));
+
+        assertTrue(writer.flush());
+
+        // Removed by user and product unless it has the new ID, then inserted with it
+        verify(favoriteRepository).applyWrites(
+                argThat(additions -> additions.size() == 1 && additions.iterator().next().getId().equals(readded.getId())),
+                argThat(removals -> removals.size() == 1 && readded.getId().equals(removals.iterator().next().getId())));
+        verify(favoriteCounterRepository).incrementOnce(List.of(
+                new CounterChange(USER_ID, 1, -1), new CounterChange(USER_ID, 2, 1)));
+        verify(cacheService).applyFavoriteChanges(eq(USER_ID),
+                argThat(added -> added.size() == 1 && added.get(0).getFavoriteId().equals(readded.getId())),
+                eq(List.of()));
+    }
+
+    @Test
+    void flush_FailedBatchIsRetriedAfterRestart() throws Exception {
+        doThrow(new DataAccessResourceFailureException("down")).when(favoriteRepository).applyWrites(anyCollection(), anyCollection());
+        writer.add(favorite("product-1"), () -> false);
+
+        assertFalse(writer.flush());
+
+        writer.close();
+        reset(favoriteRepository);
+        writer = newWriter();
+        assertTrue(writer.flush());
+        verify(favoriteRepository).applyWrites(argThat(additions -> additions.size() == 1), anyCollection());
+        verify(favoriteCounterRepository).incrementOnce(anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_BatchReplayedAfterFailedCommitCountsEachChangeOnce() throws Exception {
+        // Skips changes not above the stored sequence number, as the guarded $inc does
+        Map<String, Long> sequences = new HashMap<>();
+        long[] count = {0};
+        doAnswer(invocation -> {
+            for (CounterChange change : (List<CounterChange>) invocation.getArgument(0)) {
+                if (change.sequence() > sequences.getOrDefault(change.userId(), 0L)) {
+                    count[0] += change.delta();
+                    sequences.put(change.userId(), change.sequence());
+                }
+            }
+            return null;
+        }).when(favoriteCounterRepository).incrementOnce(anyList());
+        writer.add(favorite("product-1"), () -> false);
+
+        // The checkpoint cannot be written while a directory is in the way of its temporary file
+        Path blocker = Files.createDirectory(directory.resolve("checkpoint.tmp"));
+        assertFalse(writer.flush());
+        writer.close();
+        Files.delete(blocker);
+
+        // Replayed after the restart as the start of a larger batch
+        writer = newWriter();
+        writer.add(favorite("product-2"), () -> false);
+        assertTrue(writer.flush());
+
+        verify(favoriteCounterRepository).incrementOnce(List.of(new CounterChange(USER_ID, 1, 1)));
+        verify(favoriteCounterRepository).incrementOnce(List.of(new CounterChange(USER_ID, 1, 1), new CounterChange(USER_ID, 2, 1)));
+        assertEquals(2, count[0]);
+        // Only the log started on the empty directory clears the stored sequence numbers
+        verify(favoriteCounterRepository, times(1)).clearSequences();
+    }
+
+    @Test
+    void start_FailsWhileAnotherInstanceHoldsTheLock() throws IOException {
+        WriteBehindFavoriteWriter other = new WriteBehindFavoriteWriter(favoriteRepository, favoriteCounterRepository,
+                cacheService, jobLock, new SimpleMeterRegistry(), directory.resolve("other").toString(), 1 << 20, 1000, 1000,
+                60_000, 10);
+        when(jobLock.tryAcquire(eq(WriteBehindFavoriteWriter.JOB_LOCK), any())).thenReturn(Optional.empty());
+
+        assertThrows(IllegalStateException.class, other::start);
+        assertThrows(WriteBacklogFullException.class, () -> other.add(favorite("product-1"), () -> false));
+        other.close();
+    }
+
+    @Test
+    void pendingAdds_ListsLoggedAddsUntilFlushed() {
+        writer.add(favorite("product-1"), () -> false);
+        writer.add(favorite("product-2"), () -> false);
+        writer.remove(USER_ID, "product-2", () -> false);
+
+        assertEquals(List.of("product-1"), writer.pendingAdds(USER_ID));
+        writer.flush();
+        assertEquals(List.of(), writer.pendingAdds(USER_ID));
+    }
+
+    private WriteBehindFavoriteWriter newWriter() throws Exception {
+        // Flushes are triggered by the tests; the schedule does not run within them
+        WriteBehindFavoriteWriter writer = new WriteBehindFavoriteWriter(favoriteRepository, favoriteCounterRepository,
+                cacheService, jobLock, new SimpleMeterRegistry(), directory.toString(), 1 << 20, 1000, 1000, 60_000, 30_000);
+        writer.start();
+        return writer;
+    }
+
+    private static Favorite favorite(String productId) {
+        return new Favorite(USER_ID, productId, "Case", 9.99, null, null);
+    }
+}
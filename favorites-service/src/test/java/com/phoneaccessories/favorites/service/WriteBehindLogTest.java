@@ -0,0 +1,120 @@
+package com.phoneaccessories.favorites.service;
+
+import com.phoneaccessories.favorites.model.Favorite;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopen_RecoversUnflushedWrites() throws IOException {
+        try (WriteBehindLog log = new WriteBehindLog(directory, 1 << 20)) {
+            log.append(FavoriteWrite.add(favorite("user-1", "product-1")));
+            log.append(FavoriteWrite.remove("user-1", "product-2"));
+        }
+
+        try (WriteBehindLog log = new WriteBehindLog(directory, 1 << 20)) {
+            List<FavoriteWrite> writes = log.peek(10);
+            assertEquals(2, writes.size());
+            assertEquals(FavoriteWrite.Type.ADD, writes.get(0).type());
+            assertEquals("Case", writes.get(0).favorite().getProductName());
+            assertEquals(9.99, writes.get(0).favorite().getProductPrice());
+            assertEquals(FavoriteWrite.Type.REMOVE, writes.get(1).type());
+            assertEquals(3, log.append(FavoriteWrite.remove("user-1", "product-1")).sequence());
+        }
+    }
+
+    @Test
+    void commit_SkipsFlushedWritesAndDeletesTheirSegments() throws IOException {
+        try (WriteBehindLog log = new WriteBehindLog(directory, 64)) {
+            for (int i = 0; i < 5; i++) {
+                log.append(FavoriteWrite.add(favorite("user-1", "product-" + i)));
+            }
+            log.commit(4);
+            assertEquals(1, log.backlog());
+            assertNull(log.pending("user-1", "product-0"));
+            assertNotNull(log.pending("user-1", "product-4"));
+            assertEquals(List.of("product-4"), log.pendingAdds("user-1"));
+        }
+
+        try (WriteBehindLog log = new WriteBehindLog(directory, 64)) {
+            assertEquals(List.of(5L), log.peek(10).stream().map(FavoriteWrite::sequence).toList());
+        }
+        assertTrue(segments().size() <= 3);
+    }
+
+    @Test
+    void reopen_TruncatesTornRecord() throws IOException {
+        try (WriteBehindLog log = new WriteBehindLog(directory, 1 << 20)) {
+            log.append(FavoriteWrite.add(favorite("user-1", "product-1")));
+            log.append(FavoriteWrite.add(favorite("user-1", "product-2")));
+        }
+        Path segment = segments().get(0);
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            file.truncate(file.size() - 3);
+        }
+
+        try (WriteBehindLog log = new WriteBehindLog(directory, 1 << 20)) {
+            assertEquals(1, log.backlog());
+            log.append(FavoriteWrite.add(favorite("user-1", "product-3")));
+        }
+        try (WriteBehindLog log = new WriteBehindLog(directory, 1 << 20)) {
+            assertEquals(List.of("product-1", "product-3"),
+                    log.peek(10).stream().map(write -> write.favorite().getProductId()).toList());
+        }
+    }
+
+    @Test
+    void append_ConcurrentAppendsAreAllDurable() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (WriteBehindLog log = new WriteBehindLog(directory, 4096)) {
+            List<Future<FavoriteWrite>> appends = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String productId = "product-" + i;
+                appends.add(executor.submit(() -> log.append(FavoriteWrite.add(favorite("user-1", productId)))));
+            }
+            for (Future<FavoriteWrite> append : appends) {
+                append.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        try (WriteBehindLog log = new WriteBehindLog(directory, 4096)) {
+            List<Long> sequences = log.peek(1000).stream().map(FavoriteWrite::sequence).toList();
+            assertEquals(200, sequences.size());
+            for (int i = 0; i < sequences.size(); i++) {
+                assertEquals(i + 1, sequences.get(i));
+            }
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    private static Favorite favorite(String userId, String productId) {
+        Favorite favorite = new Favorite(userId, productId, "Case", 9.99, null, "Cases");
+        favorite.setId("id-" + productId);
+        return favorite;
+    }
+}